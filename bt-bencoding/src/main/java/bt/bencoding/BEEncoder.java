@@ -25,6 +25,7 @@ import bt.bencoding.model.BEString;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +44,9 @@ public class BEEncoder {
     private static final Charset defaultCharset = Charset.forName("UTF-8");
     private static final BEEncoder instance = new BEEncoder();
 
+    // integers, that can be negated without overflow
+    private static final int MAX_LONG_BITS = Long.SIZE - 1;
+
     /**
      * Get default encoder.
      *
@@ -82,7 +86,7 @@ public class BEEncoder {
 
         BigInteger value = integer.getValue();
         write(out, BEParser.INTEGER_PREFIX);
-        write(out, Integer.toString(value.intValueExact()).getBytes(defaultCharset));
+        write(out, value.toString().getBytes(defaultCharset));
         write(out, BEParser.EOF);
     }
 
@@ -115,7 +119,127 @@ public class BEEncoder {
 
         write(out, BEParser.MAP_PREFIX);
 
-        TreeMap<byte[], BEObject<?>> values = map.getValue().entrySet().stream()
+        TreeMap<byte[], BEObject<?>> values = sortedEntries(map);
+
+        for (Map.Entry<byte[], BEObject<?>> e : values.entrySet()) {
+            encodeString(e.getKey(), out);
+            e.getValue().writeTo(out);
+        }
+
+        write(out, BEParser.EOF);
+    }
+
+    /**
+     * Calculate the length of the object's bencoded representation
+     * without actually encoding it.
+     *
+     * @return Number of bytes, that the object would occupy when bencoded
+     * @since 1.8
+     */
+    public int encodedLength(BEObject<?> object) {
+
+        Objects.requireNonNull(object);
+
+        switch (object.getType()) {
+            case STRING: {
+                return encodedStringLength(((BEString) object).getContentLength());
+            }
+            case INTEGER: {
+                BigInteger value = ((BEInteger) object).getValue();
+                int digits = (value.bitLength() < MAX_LONG_BITS) ?
+                        decimalLength(value.longValue()) : value.toString().length();
+                return digits + 2;
+            }
+            case LIST: {
+                int length = 2;
+                for (BEObject<?> value : ((BEList) object).getValue()) {
+                    length += encodedLength(value);
+                }
+                return length;
+            }
+            case MAP: {
+                int length = 2;
+                for (Map.Entry<String, BEObject<?>> e : ((BEMap) object).getValue().entrySet()) {
+                    length += encodedStringLength(utf8Length(e.getKey()));
+                    length += encodedLength(e.getValue());
+                }
+                return length;
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown type: " + object.getType().name().toLowerCase());
+            }
+        }
+    }
+
+    /**
+     * Write bencoded object directly to a buffer.
+     *
+     * <p>Buffer's position is advanced by the number of bytes written.
+     * If there is not enough space, then nothing is written.
+     *
+     * @return true, if the object has been written; false, if buffer does not have enough space remaining
+     * @see #encodedLength(BEObject)
+     * @since 1.8
+     */
+    public boolean encode(BEObject<?> object, ByteBuffer buffer) {
+
+        Objects.requireNonNull(object);
+
+        if (buffer.remaining() < encodedLength(object)) {
+            return false;
+        }
+        write(object, buffer);
+        return true;
+    }
+
+    private void write(BEObject<?> object, ByteBuffer buffer) {
+        switch (object.getType()) {
+            case STRING: {
+                BEString string = (BEString) object;
+                writeDecimal(buffer, string.getContentLength());
+                buffer.put((byte) ':');
+                buffer.put(string.getValueAsBuffer());
+                break;
+            }
+            case INTEGER: {
+                BigInteger value = ((BEInteger) object).getValue();
+                buffer.put((byte) BEParser.INTEGER_PREFIX);
+                if (value.bitLength() < MAX_LONG_BITS) {
+                    writeDecimal(buffer, value.longValue());
+                } else {
+                    buffer.put(value.toString().getBytes(defaultCharset));
+                }
+                buffer.put((byte) BEParser.EOF);
+                break;
+            }
+            case LIST: {
+                buffer.put((byte) BEParser.LIST_PREFIX);
+                for (BEObject<?> value : ((BEList) object).getValue()) {
+                    write(value, buffer);
+                }
+                buffer.put((byte) BEParser.EOF);
+                break;
+            }
+            case MAP: {
+                buffer.put((byte) BEParser.MAP_PREFIX);
+                for (Map.Entry<byte[], BEObject<?>> e : sortedEntries((BEMap) object).entrySet()) {
+                    byte[] key = e.getKey();
+                    writeDecimal(buffer, key.length);
+                    buffer.put((byte) ':');
+                    buffer.put(key);
+                    write(e.getValue(), buffer);
+                }
+                buffer.put((byte) BEParser.EOF);
+                break;
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown type: " + object.getType().name().toLowerCase());
+            }
+        }
+    }
+
+    private static TreeMap<byte[], BEObject<?>> sortedEntries(BEMap map) {
+        return map.getValue().entrySet().stream()
                 .collect(Collectors.toMap(
                         e -> e.getKey().getBytes(defaultCharset),
                         Map.Entry::getValue,
@@ -123,13 +247,60 @@ public class BEEncoder {
                             throw new IllegalStateException();
                         },
                         () -> new TreeMap<>(ByteStringComparator.comparator())));
+    }
 
-        for (Map.Entry<byte[], BEObject<?>> e : values.entrySet()) {
-            encodeString(e.getKey(), out);
-            e.getValue().writeTo(out);
+    private static int encodedStringLength(int length) {
+        return decimalLength(length) + 1 + length;
+    }
+
+    private static int decimalLength(long value) {
+        int length = 1;
+        if (value < 0) {
+            length++;
+            value = -value;
         }
+        while (value >= 10) {
+            value /= 10;
+            length++;
+        }
+        return length;
+    }
 
-        write(out, BEParser.EOF);
+    private static void writeDecimal(ByteBuffer buffer, long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int length = decimalLength(value);
+        int position = buffer.position();
+        for (int i = position + length - 1; i >= position; i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(position + length);
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    // malformed surrogate is replaced with '?'
+                    length += 1;
+                }
+            } else {
+                length += 3;
+            }
+        }
+        return length;
     }
 
     private void write(OutputStream out, int i) throws IOException {
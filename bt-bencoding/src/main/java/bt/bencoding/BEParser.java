@@ -25,11 +25,16 @@ import bt.bencoding.model.BEString;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 /**
  * BEncoding parser. Should be closed when the source is processed.
  *
+ * <p>Parsed objects do not copy their binary representations,
+ * but rather reference ranges of the source document instead.
+ * Hence, the source array (if provided by the caller) must not be modified afterwards.
+ *
  * @since 1.0
  */
 public class BEParser implements AutoCloseable {
@@ -40,7 +45,7 @@ public class BEParser implements AutoCloseable {
     static final char LIST_PREFIX = 'l';
     static final char MAP_PREFIX = 'd';
 
-    private Scanner scanner;
+    private final Scanner scanner;
     private final BEType type;
     private Object parsedObject;
 
@@ -52,10 +57,10 @@ public class BEParser implements AutoCloseable {
      */
     public BEParser(URL url) {
         Objects.requireNonNull(url, "Missing URL");
-        try {
-            this.scanner = new Scanner(url.openStream());
+        try (InputStream in = url.openStream()) {
+            this.scanner = new Scanner(in, Integer.MAX_VALUE);
         } catch (IOException e) {
-            throw new BtParseException("Failed to open stream for URL: " + url, new byte[0], e);
+            throw new BtParseException("Failed to read from URL: " + url, new byte[0], e);
         }
         this.type = getTypeForPrefix((char) scanner.peek());
     }
@@ -67,8 +72,25 @@ public class BEParser implements AutoCloseable {
      * @since 1.0
      */
     public BEParser(InputStream in) {
+        this(in, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create a parser for the provided binary input, that is limited in size.
+     * Use this constructor for untrusted sources, e.g. network responses.
+     *
+     * @param in Input's content must be a well-formed bencoded document.
+     * @param maxLength Maximum length of the document in bytes;
+     *                  reading stops and {@link BtParseException} is thrown as soon as it's exceeded
+     * @since 1.8
+     */
+    public BEParser(InputStream in, int maxLength) {
         Objects.requireNonNull(in, "Input stream is null");
-        this.scanner = new Scanner(in);
+        try {
+            this.scanner = new Scanner(in, maxLength);
+        } catch (IOException e) {
+            throw new BtParseException("Failed to read from input stream", new byte[0], e);
+        }
         this.type = getTypeForPrefix((char) scanner.peek());
     }
 
@@ -87,6 +109,48 @@ public class BEParser implements AutoCloseable {
         this.type = getTypeForPrefix((char) scanner.peek());
     }
 
+    /**
+     * Create a parser for the provided bencoded document.
+     * Parsing starts at the buffer's current position and does not change it.
+     *
+     * <p>If the buffer is backed by an accessible array, then the document is not copied.
+     *
+     * @param buffer Bencoded document.
+     * @since 1.8
+     */
+    public BEParser(ByteBuffer buffer) {
+
+        if (buffer == null || !buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Can't parse buffer: null or empty");
+        }
+        if (buffer.hasArray()) {
+            this.scanner = new Scanner(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            byte[] bs = new byte[buffer.remaining()];
+            buffer.duplicate().get(bs);
+            this.scanner = new Scanner(bs);
+        }
+        this.type = getTypeForPrefix((char) scanner.peek());
+    }
+
+    /**
+     * Enable lazy decoding: nested dictionaries and lists of the root object
+     * are only checked for well-formedness, and their values are decoded on first access.
+     *
+     * <p>Useful, when only a few entries of a large document are needed.
+     * Must be called before the root object is read.
+     *
+     * @return This parser
+     * @since 1.8
+     */
+    public BEParser lazy() {
+        if (parsedObject != null) {
+            throw new IllegalStateException("Root object has already been read");
+        }
+        scanner.setLazy(true);
+        return this;
+    }
+
     /**
      * Read type of the root object of the bencoded document that this parser was created for.
      *
@@ -134,26 +198,6 @@ public class BEParser implements AutoCloseable {
         }
     }
 
-    static BEObjectBuilder<? extends BEObject<?>> builderForType(BEType type) {
-        switch (type) {
-            case STRING: {
-                return new BEStringBuilder();
-            }
-            case INTEGER: {
-                return new BEIntegerBuilder();
-            }
-            case LIST: {
-                return new BEListBuilder();
-            }
-            case MAP: {
-                return new BEMapBuilder();
-            }
-            default: {
-                throw new IllegalStateException("Unknown type: " + type.name().toLowerCase());
-            }
-        }
-    }
-
     /**
      * Try to read the document's root object as a bencoded string.
      *
@@ -161,7 +205,7 @@ public class BEParser implements AutoCloseable {
      * @since 1.0
      */
     public BEString readString() {
-        return readObject(BEType.STRING, BEStringBuilder.class);
+        return readObject(BEType.STRING, BEString.class);
     }
 
     /**
@@ -171,7 +215,7 @@ public class BEParser implements AutoCloseable {
      * @since 1.0
      */
     public BEInteger readInteger() {
-        return readObject(BEType.INTEGER, BEIntegerBuilder.class);
+        return readObject(BEType.INTEGER, BEInteger.class);
     }
 
     /**
@@ -181,7 +225,7 @@ public class BEParser implements AutoCloseable {
      * @since 1.0
      */
     public BEList readList() {
-        return readObject(BEType.LIST, BEListBuilder.class);
+        return readObject(BEType.LIST, BEList.class);
     }
 
     /**
@@ -191,19 +235,17 @@ public class BEParser implements AutoCloseable {
      * @since 1.0
      */
     public BEMap readMap() {
-        return readObject(BEType.MAP, BEMapBuilder.class);
+        return readObject(BEType.MAP, BEMap.class);
     }
 
-    private <T extends BEObject> T readObject(BEType type, Class<? extends BEObjectBuilder<T>> builderClass) {
+    private <T extends BEObject<?>> T readObject(BEType type, Class<T> objectClass) {
 
         assertType(type);
 
-        @SuppressWarnings("unchecked")
-        T result = (T) parsedObject;
+        T result = objectClass.cast(parsedObject);
         if (result == null) {
             try {
-                // relying on the default constructor being present
-                parsedObject = result = scanner.readObject(builderClass.newInstance());
+                parsedObject = result = scanner.readObject(objectClass);
             } catch (Exception e) {
                 throw new BtParseException("Failed to read from encoded data", scanner.getScannedContents(), e);
             }
@@ -225,8 +267,6 @@ public class BEParser implements AutoCloseable {
 
     @Override
     public void close() {
-        if (scanner != null) {
-            scanner.close();
-        }
+        // source is read into memory on creation, nothing to release
     }
 }
@@ -14,92 +14,347 @@
  * limitations under the License.
  */
 
+
 package bt.bencoding;
 
+import bt.bencoding.model.BEInteger;
+import bt.bencoding.model.BEList;
+import bt.bencoding.model.BEMap;
 import bt.bencoding.model.BEObject;
+import bt.bencoding.model.BEString;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PushbackInputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Reads bencoded objects directly from the source array.
+ *
+ * <p>Parsed objects do not hold copies of their binary representations,
+ * but rather ranges of the (shared) source array.
+ *
+ * <p>In lazy mode nested dictionaries and lists are only checked for well-formedness
+ * and are decoded on first access to their values.
+ */
 class Scanner {
 
-    private final MemoizingPushbackInputStream source;
+    static final char STRING_DELIMITER = ':';
+
+    private static final Charset keyCharset = Charset.forName("UTF-8");
+    private static final Charset digitsCharset = Charset.forName("US-ASCII");
+
+    // max number of decimal digits, that are guaranteed to fit into a long
+    private static final int MAX_LONG_DIGITS = 18;
+    // some VMs reserve header words in arrays
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final byte[] source;
+    private final int limit;
+    private int position;
+    private int objectStart;
+    private boolean lazy;
 
     Scanner(byte[] bs) {
-        this(new ByteArrayInputStream(bs));
+        this(bs, 0, bs.length);
     }
 
-    Scanner(InputStream in) {
-        source = new MemoizingPushbackInputStream(in);
+    Scanner(byte[] source, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > source.length - length) {
+            throw new IndexOutOfBoundsException("Invalid range: offset {" + offset + "}, length {" + length
+                    + "}, source length {" + source.length + "}");
+        }
+        this.source = source;
+        this.position = offset;
+        this.objectStart = offset;
+        this.limit = offset + length;
     }
 
-    <T extends BEObject> T readObject(BEObjectBuilder<T> builder) throws Exception {
+    /**
+     * Read the whole document from the stream.
+     *
+     * @param maxLength Maximum length of the document; reading fails as soon as it's exceeded
+     * @throws IOException if the stream could not be read, or the document is longer than allowed
+     */
+    Scanner(InputStream in, int maxLength) throws IOException {
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("Invalid max length: " + maxLength);
+        }
+        // one extra byte to detect, that the limit has been exceeded
+        int capacity = (int) Math.min((long) maxLength + 1, MAX_ARRAY_LENGTH);
+        byte[] buf = new byte[Math.min(8192, capacity)];
+        int count = 0;
+        int read;
+        while ((read = in.read(buf, count, buf.length - count)) != -1) {
+            count += read;
+            if (count > maxLength || count == MAX_ARRAY_LENGTH) {
+                throw new IOException("Document is too large; max length: " + maxLength);
+            }
+            if (count == buf.length) {
+                buf = Arrays.copyOf(buf, (int) Math.min((long) buf.length * 2, capacity));
+            }
+        }
+        this.source = buf;
+        this.limit = count;
+    }
 
-        source.resetContents();
+    void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
 
-        int c;
-        while ((c = source.read()) != -1 && builder.accept(c))
-            ;
-        return builder.build();
+    <T extends BEObject<?>> T readObject(Class<T> type) {
+        objectStart = position;
+        return type.cast(readObject());
     }
 
     int peek() {
-        return source.peek();
+        return (position < limit) ? (source[position] & 0xFF) : -1;
     }
 
+    /**
+     * @return Range of the source, that has been scanned while reading the last object
+     */
     byte[] getScannedContents() {
-        return source.getContents();
+        return Arrays.copyOfRange(source, objectStart, position);
     }
 
-    void close() {
-        try {
-            source.close();
-        } catch (IOException e) {
-            // do nothing
+    private BEObject<?> readObject() {
+        int c = peek();
+        if (c == -1) {
+            throw new IllegalStateException("Unexpected end of data");
+        }
+        switch (BEParser.getTypeForPrefix((char) c)) {
+            case STRING: {
+                return readString();
+            }
+            case INTEGER: {
+                return readInteger();
+            }
+            case LIST: {
+                return readList();
+            }
+            case MAP: {
+                return readMap();
+            }
+            default: {
+                throw new IllegalStateException("Invalid type prefix: " + (char) c);
+            }
         }
     }
 
-    private static class MemoizingPushbackInputStream extends InputStream {
+    private BEString readString() {
+        int length = readStringLength();
+        BEString string = new BEString(source, position, length);
+        position += length;
+        return string;
+    }
 
-        private PushbackInputStream delegate;
-        private ByteArrayOutputStream buf;
+    private String readKey() {
+        int length = readStringLength();
+        String key = new String(source, position, length, keyCharset);
+        position += length;
+        return key;
+    }
 
-        MemoizingPushbackInputStream(InputStream delegate) {
-            this.delegate = new PushbackInputStream(delegate);
-            buf = new ByteArrayOutputStream();
+    private int readStringLength() {
+        long length = 0;
+        int digits = 0;
+        int c;
+        while ((c = next()) != STRING_DELIMITER) {
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException(
+                        "Unexpected token while reading string's length (as ASCII char): " + (char) c);
+            }
+            length = length * 10 + (c - '0');
+            if (length > limit - position) {
+                throw new IllegalStateException("Can't build string: insufficient content");
+            }
+            digits++;
+        }
+        if (digits == 0) {
+            throw new IllegalArgumentException("Can't build string: missing length");
         }
+        if (length > limit - position) {
+            throw new IllegalStateException("Can't build string: insufficient content");
+        }
+        return (int) length;
+    }
+
+    private BEInteger readInteger() {
+        int start = position;
+        skipInteger();
+
+        // digits are located between the prefix and the terminator
+        int digitsStart = start + 1;
+        int digitsEnd = position - 1;
+        boolean negative = (source[digitsStart] == '-');
+        int digits = digitsEnd - digitsStart - (negative ? 1 : 0);
 
-        @Override
-        public int read() throws IOException {
-            int c = delegate.read();
-            buf.write(c);
-            return c;
+        BigInteger result;
+        if (digits <= MAX_LONG_DIGITS) {
+            long value = 0;
+            for (int i = digitsEnd - digits; i < digitsEnd; i++) {
+                value = value * 10 + (source[i] - '0');
+            }
+            result = BigInteger.valueOf(negative ? -value : value);
+        } else {
+            result = new BigInteger(new String(source, digitsStart, digitsEnd - digitsStart, digitsCharset));
         }
+        return new BEInteger(source, start, position - start, result);
+    }
 
-        public int peek() {
-            try {
-                int c = delegate.read();
-                delegate.unread(c);
-                return c;
-            } catch (IOException e) {
-                throw new RuntimeException("Unexpected I/O exception", e);
+    private void skipInteger() {
+        expectPrefix(BEParser.INTEGER_PREFIX);
+
+        if (peek() == '-') {
+            position++;
+        }
+        int digitsStart = position;
+        int c;
+        while ((c = next()) != BEParser.EOF) {
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Unexpected token while reading integer (as ASCII char): " + (char) c);
+            }
+        }
+        if (position - 1 == digitsStart) {
+            throw new IllegalArgumentException("Can't build integer: no digits");
+        }
+    }
+
+    private BEList readList() {
+        int start = position;
+        List<BEObject<?>> objects = decodeList();
+        return new BEList(source, start, position - start, objects);
+    }
+
+    private BEMap readMap() {
+        int start = position;
+        Map<String, BEObject<?>> map = decodeMap();
+        return new BEMap(source, start, position - start, map);
+    }
+
+    private List<BEObject<?>> decodeList() {
+        expectPrefix(BEParser.LIST_PREFIX);
+
+        List<BEObject<?>> objects = new ArrayList<>();
+        while (peekNotEOF()) {
+            objects.add(readElement());
+        }
+        position++;
+        return objects;
+    }
+
+    private Map<String, BEObject<?>> decodeMap() {
+        expectPrefix(BEParser.MAP_PREFIX);
+
+        Map<String, BEObject<?>> map = new HashMap<>();
+        while (peekNotEOF()) {
+            String key = readKey();
+            map.put(key, readElement());
+        }
+        position++;
+        return map;
+    }
+
+    private BEObject<?> readElement() {
+        if (lazy) {
+            switch (peek()) {
+                case BEParser.LIST_PREFIX: {
+                    int start = position;
+                    skipObject();
+                    int length = position - start;
+                    return new BEList(source, start, length, () -> nestedScanner(start, length).decodeList());
+                }
+                case BEParser.MAP_PREFIX: {
+                    int start = position;
+                    skipObject();
+                    int length = position - start;
+                    return new BEMap(source, start, length, () -> nestedScanner(start, length).decodeMap());
+                }
+                default: {
+                    break;
+                }
             }
         }
+        return readObject();
+    }
 
-        public void resetContents() {
-            buf = new ByteArrayOutputStream();
+    private Scanner nestedScanner(int offset, int length) {
+        Scanner scanner = new Scanner(source, offset, length);
+        scanner.setLazy(true);
+        return scanner;
+    }
+
+    /**
+     * Check that the next object is well-formed and move past it without decoding.
+     */
+    private void skipObject() {
+        int c = peek();
+        if (c == -1) {
+            throw new IllegalStateException("Unexpected end of data");
         }
+        switch (BEParser.getTypeForPrefix((char) c)) {
+            case STRING: {
+                skipString();
+                break;
+            }
+            case INTEGER: {
+                skipInteger();
+                break;
+            }
+            case LIST: {
+                position++;
+                while (peekNotEOF()) {
+                    skipObject();
+                }
+                position++;
+                break;
+            }
+            case MAP: {
+                position++;
+                while (peekNotEOF()) {
+                    skipString();
+                    skipObject();
+                }
+                position++;
+                break;
+            }
+            default: {
+                throw new IllegalStateException("Invalid type prefix: " + (char) c);
+            }
+        }
+    }
+
+    private void skipString() {
+        int length = readStringLength();
+        position += length;
+    }
 
-        public byte[] getContents() {
-            return buf.toByteArray();
+    private void expectPrefix(char prefix) {
+        int c = next();
+        if (c != prefix) {
+            throw new IllegalArgumentException("Invalid prefix (as ASCII char): " + (char) c
+                    + "; expected: " + prefix);
         }
+    }
+
+    private boolean peekNotEOF() {
+        int c = peek();
+        if (c == -1) {
+            throw new IllegalStateException("Can't build object -- content was not terminated");
+        }
+        return c != BEParser.EOF;
+    }
 
-        @Override
-        public void close() throws IOException {
-            delegate.close();
+    private int next() {
+        if (position >= limit) {
+            throw new IllegalStateException("Unexpected end of data");
         }
+        return source[position++] & 0xFF;
     }
 }
@@ -33,7 +33,7 @@ import java.math.BigInteger;
  */
 public class BEInteger implements BEObject<BigInteger> {
 
-    private byte[] content;
+    private ContentRange content;
     private BigInteger value;
     private BEEncoder encoder;
 
@@ -43,6 +43,24 @@ public class BEInteger implements BEObject<BigInteger> {
      * @since 1.0
      */
     public BEInteger(byte[] content, BigInteger value) {
+        this(new ContentRange(content), value);
+    }
+
+    /**
+     * Create a integer, that is backed by a range of the source document.
+     * The source array is not copied and must not be modified afterwards.
+     *
+     * @param source Source document
+     * @param offset Offset of this integer's binary representation in the source document
+     * @param length Length of this integer's binary representation
+     * @param value Parsed value
+     * @since 1.8
+     */
+    public BEInteger(byte[] source, int offset, int length, BigInteger value) {
+        this(new ContentRange(source, offset, length), value);
+    }
+
+    private BEInteger(ContentRange content, BigInteger value) {
         this.content = content;
         this.value = value;
         encoder = BEEncoder.encoder();
@@ -55,7 +73,12 @@ public class BEInteger implements BEObject<BigInteger> {
 
     @Override
     public byte[] getContent() {
-        return content;
+        return content.toArray();
+    }
+
+    @Override
+    public int getContentLength() {
+        return content.getLength();
     }
 
     @Override
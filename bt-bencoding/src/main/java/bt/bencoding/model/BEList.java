@@ -24,6 +24,7 @@ import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * BEncoded list. May contain objects of different types.
@@ -32,8 +33,9 @@ import java.util.List;
  */
 public class BEList implements BEObject<List<? extends BEObject<?>>> {
 
-    private byte[] content;
-    private List<? extends BEObject<?>> value;
+    private ContentRange content;
+    private volatile List<? extends BEObject<?>> value;
+    private Supplier<? extends List<? extends BEObject<?>>> valueSupplier;
     private BEEncoder encoder;
 
     /**
@@ -42,11 +44,46 @@ public class BEList implements BEObject<List<? extends BEObject<?>>> {
      * @since 1.0
      */
     public BEList(byte[] content, List<? extends BEObject<?>> value) {
+        this(new ContentRange(content), value);
+    }
+
+    /**
+     * Create a list, that is backed by a range of the source document.
+     * The source array is not copied and must not be modified afterwards.
+     *
+     * @param source Source document
+     * @param offset Offset of this list's binary representation in the source document
+     * @param length Length of this list's binary representation
+     * @param value Parsed value
+     * @since 1.8
+     */
+    public BEList(byte[] source, int offset, int length, List<? extends BEObject<?>> value) {
+        this(new ContentRange(source, offset, length), value);
+    }
+
+    private BEList(ContentRange content, List<? extends BEObject<?>> value) {
         this.content = content;
         this.value = Collections.unmodifiableList(value);
         encoder = BEEncoder.encoder();
     }
 
+    /**
+     * Create a list, that is backed by a range of the source document
+     * and is decoded on first access to its value.
+     * The source array is not copied and must not be modified afterwards.
+     *
+     * @param source Source document
+     * @param offset Offset of this list's binary representation in the source document
+     * @param length Length of this list's binary representation
+     * @param valueSupplier Decodes the value; invoked at most once
+     * @since 1.8
+     */
+    public BEList(byte[] source, int offset, int length, Supplier<? extends List<? extends BEObject<?>>> valueSupplier) {
+        this.content = new ContentRange(source, offset, length);
+        this.valueSupplier = valueSupplier;
+        encoder = BEEncoder.encoder();
+    }
+
     @Override
     public BEType getType() {
         return BEType.LIST;
@@ -54,11 +91,24 @@ public class BEList implements BEObject<List<? extends BEObject<?>>> {
 
     @Override
     public byte[] getContent() {
-        return content;
+        return content.toArray();
+    }
+
+    @Override
+    public int getContentLength() {
+        return content.getLength();
     }
 
     @Override
     public List<? extends BEObject<?>> getValue() {
+        if (value == null) {
+            synchronized (this) {
+                if (value == null) {
+                    value = Collections.unmodifiableList(valueSupplier.get());
+                    valueSupplier = null;
+                }
+            }
+        }
         return value;
     }
 
@@ -69,7 +119,7 @@ public class BEList implements BEObject<List<? extends BEObject<?>>> {
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return getValue().hashCode();
     }
 
     @Override
@@ -83,11 +133,11 @@ public class BEList implements BEObject<List<? extends BEObject<?>>> {
             return true;
         }
 
-        return value.equals(((BEList) obj).getValue());
+        return getValue().equals(((BEList) obj).getValue());
     }
 
     @Override
     public String toString() {
-        return Arrays.toString(value.toArray());
+        return Arrays.toString(getValue().toArray());
     }
 }
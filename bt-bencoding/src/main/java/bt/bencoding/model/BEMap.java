@@ -24,6 +24,7 @@ import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * BEncoded dictionary.
@@ -32,8 +33,9 @@ import java.util.Map;
  */
 public class BEMap implements BEObject<Map<String, BEObject<?>>> {
 
-    private byte[] content;
-    private Map<String, BEObject<?>> value;
+    private ContentRange content;
+    private volatile Map<String, BEObject<?>> value;
+    private Supplier<? extends Map<String, BEObject<?>>> valueSupplier;
     private BEEncoder encoder;
 
     /**
@@ -42,11 +44,46 @@ public class BEMap implements BEObject<Map<String, BEObject<?>>> {
      * @since 1.0
      */
     public BEMap(byte[] content, Map<String, BEObject<?>> value) {
+        this(new ContentRange(content), value);
+    }
+
+    /**
+     * Create a dictionary, that is backed by a range of the source document.
+     * The source array is not copied and must not be modified afterwards.
+     *
+     * @param source Source document
+     * @param offset Offset of this dictionary's binary representation in the source document
+     * @param length Length of this dictionary's binary representation
+     * @param value Parsed value
+     * @since 1.8
+     */
+    public BEMap(byte[] source, int offset, int length, Map<String, BEObject<?>> value) {
+        this(new ContentRange(source, offset, length), value);
+    }
+
+    private BEMap(ContentRange content, Map<String, BEObject<?>> value) {
         this.content = content;
         this.value = Collections.unmodifiableMap(value);
         encoder = BEEncoder.encoder();
     }
 
+    /**
+     * Create a dictionary, that is backed by a range of the source document
+     * and is decoded on first access to its value.
+     * The source array is not copied and must not be modified afterwards.
+     *
+     * @param source Source document
+     * @param offset Offset of this dictionary's binary representation in the source document
+     * @param length Length of this dictionary's binary representation
+     * @param valueSupplier Decodes the value; invoked at most once
+     * @since 1.8
+     */
+    public BEMap(byte[] source, int offset, int length, Supplier<? extends Map<String, BEObject<?>>> valueSupplier) {
+        this.content = new ContentRange(source, offset, length);
+        this.valueSupplier = valueSupplier;
+        encoder = BEEncoder.encoder();
+    }
+
     @Override
     public BEType getType() {
         return BEType.MAP;
@@ -54,11 +91,24 @@ public class BEMap implements BEObject<Map<String, BEObject<?>>> {
 
     @Override
     public byte[] getContent() {
-        return content;
+        return content.toArray();
+    }
+
+    @Override
+    public int getContentLength() {
+        return content.getLength();
     }
 
     @Override
     public Map<String, BEObject<?>> getValue() {
+        if (value == null) {
+            synchronized (this) {
+                if (value == null) {
+                    value = Collections.unmodifiableMap(valueSupplier.get());
+                    valueSupplier = null;
+                }
+            }
+        }
         return value;
     }
 
@@ -69,7 +119,7 @@ public class BEMap implements BEObject<Map<String, BEObject<?>>> {
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return getValue().hashCode();
     }
 
     @Override
@@ -83,11 +133,11 @@ public class BEMap implements BEObject<Map<String, BEObject<?>>> {
             return true;
         }
 
-        return value.equals(((BEMap) obj).getValue());
+        return getValue().equals(((BEMap) obj).getValue());
     }
 
     @Override
     public String toString() {
-        return value.toString();
+        return getValue().toString();
     }
 }
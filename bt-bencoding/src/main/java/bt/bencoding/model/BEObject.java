@@ -42,6 +42,15 @@ public interface BEObject<T> {
      */
     byte[] getContent();
 
+    /**
+     * @return Length of this object's binary representation;
+     *         unlike {@link #getContent()} does not require the contents to be copied from source
+     * @since 1.8
+     */
+    default int getContentLength() {
+        return getContent().length;
+    }
+
     /**
      * @return Object's value
      * @since 1.0
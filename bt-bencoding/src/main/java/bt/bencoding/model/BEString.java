@@ -21,8 +21,8 @@ import bt.bencoding.BEType;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.Arrays;
 
 /**
  * BEncoded string.
@@ -32,7 +32,7 @@ import java.util.Arrays;
 public class BEString implements BEObject<byte[]> {
     private static final Charset defaultCharset = Charset.forName("UTF-8");
 
-    private byte[] content;
+    private ContentRange content;
     private BEEncoder encoder;
 
     private volatile String stringValue;
@@ -44,6 +44,23 @@ public class BEString implements BEObject<byte[]> {
      * @since 1.0
      */
     public BEString(byte[] content) {
+        this(new ContentRange(content));
+    }
+
+    /**
+     * Create a string, that is backed by a range of the source document.
+     * The source array is not copied and must not be modified afterwards.
+     *
+     * @param source Source document
+     * @param offset Offset of this string's value in the source document
+     * @param length Length of this string's value
+     * @since 1.8
+     */
+    public BEString(byte[] source, int offset, int length) {
+        this(new ContentRange(source, offset, length));
+    }
+
+    private BEString(ContentRange content) {
         this.content = content;
         this.encoder = BEEncoder.encoder();
         this.lock = new Object();
@@ -56,12 +73,25 @@ public class BEString implements BEObject<byte[]> {
 
     @Override
     public byte[] getContent() {
-        return content;
+        return content.toArray();
+    }
+
+    @Override
+    public int getContentLength() {
+        return content.getLength();
     }
 
     @Override
     public byte[] getValue() {
-        return content;
+        return content.toArray();
+    }
+
+    /**
+     * @return Read-only view of this string's value, that does not involve copying
+     * @since 1.8
+     */
+    public ByteBuffer getValueAsBuffer() {
+        return content.toBuffer();
     }
 
     @Override
@@ -70,12 +100,12 @@ public class BEString implements BEObject<byte[]> {
     }
 
     public String getValue(Charset charset) {
-        return new String(content, charset);
+        return new String(content.getSource(), content.getOffset(), content.getLength(), charset);
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(content);
+        return content.contentHashCode();
     }
 
     @Override
@@ -89,7 +119,7 @@ public class BEString implements BEObject<byte[]> {
             return true;
         }
 
-        return Arrays.equals(content, ((BEString) obj).getContent());
+        return content.contentEquals(((BEString) obj).content);
     }
 
     @Override
@@ -97,7 +127,7 @@ public class BEString implements BEObject<byte[]> {
         if (stringValue == null) {
             synchronized (lock) {
                 if (stringValue == null) {
-                    stringValue = new String(content, defaultCharset);
+                    stringValue = getValue(defaultCharset);
                 }
             }
         }
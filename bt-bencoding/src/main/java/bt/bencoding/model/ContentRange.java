@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.bencoding.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Range of the source document, that holds binary representation of a bencoded object.
+ *
+ * <p>Allows to share a single source array among all objects, that have been read from it,
+ * and to defer copying of the contents until it is actually requested.
+ *
+ * @since 1.8
+ */
+final class ContentRange {
+
+    private final byte[] source;
+    private final int offset;
+    private final int length;
+
+    private volatile byte[] contents;
+
+    /**
+     * @param contents Binary representation of an object; may be null,
+     *                 if the object has been created programmatically rather than read from source
+     */
+    ContentRange(byte[] contents) {
+        this.source = contents;
+        this.offset = 0;
+        this.length = (contents == null) ? 0 : contents.length;
+        this.contents = contents;
+    }
+
+    ContentRange(byte[] source, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > source.length - length) {
+            throw new IndexOutOfBoundsException("Invalid range: offset {" + offset + "}, length {" + length
+                    + "}, source length {" + source.length + "}");
+        }
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    byte[] getSource() {
+        return source;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * @return Copy of this range, that is created once and cached for subsequent calls
+     */
+    byte[] toArray() {
+        byte[] contents = this.contents;
+        if (contents == null && source != null) {
+            // concurrent callers may end up creating identical copies, which is harmless
+            contents = Arrays.copyOfRange(source, offset, offset + length);
+            this.contents = contents;
+        }
+        return contents;
+    }
+
+    /**
+     * @return Read-only view of this range, backed by the source array
+     */
+    ByteBuffer toBuffer() {
+        if (source == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(source, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    int contentHashCode() {
+        if (source == null) {
+            return 0;
+        }
+        int result = 1;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            result = 31 * result + source[i];
+        }
+        return result;
+    }
+
+    boolean contentEquals(ContentRange that) {
+        if (source == null || that.source == null) {
+            return source == that.source;
+        }
+        if (length != that.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (source[offset + i] != that.source[that.offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
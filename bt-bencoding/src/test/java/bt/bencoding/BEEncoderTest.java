@@ -26,6 +26,7 @@ import org.junit.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -33,7 +34,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class BEEncoderTest {
 
@@ -91,6 +95,52 @@ public class BEEncoderTest {
         assertEquals(m, parser.readMap().getValue());
     }
 
+    @Test
+    public void testEncode_Buffer() {
+
+        BEString s = new BEString("some string1:2#3".getBytes(defaultCharset));
+        BEInteger negative = new BEInteger(null, BigInteger.valueOf(-1234567890123L));
+        BEInteger zero = new BEInteger(null, BigInteger.ZERO);
+        BEInteger big = new BEInteger(null, new BigInteger("123456789012345678901234567890"));
+
+        Map<String, BEObject<?>> m = new HashMap<>();
+        m.put("list", new BEList(null, Arrays.asList(s, negative, zero, big)));
+        m.put("\u043a\u043b\u044e\u0447", s);
+        m.put("empty", new BEMap(null, new HashMap<>()));
+        BEMap map = new BEMap(null, m);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            map.writeTo(out);
+        } catch (IOException e) {
+            // can't happen
+        }
+        byte[] expected = new BEParser(out.toByteArray()).readMap().getContent();
+        assertEquals(expected.length, BEEncoder.encoder().encodedLength(map));
+
+        ByteBuffer buffer = ByteBuffer.allocate(expected.length + 1);
+        buffer.put((byte) 1);
+        assertTrue(BEEncoder.encoder().encode(map, buffer));
+        assertEquals(expected.length + 1, buffer.position());
+
+        byte[] actual = new byte[expected.length];
+        buffer.position(1);
+        buffer.get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testEncode_Buffer_InsufficientSpace() {
+
+        BEList list = new BEList(null, Arrays.asList(
+                new BEString("abc".getBytes(defaultCharset)), new BEInteger(null, BigInteger.TEN)));
+        assertEquals("l3:abci10ee".length(), BEEncoder.encoder().encodedLength(list));
+
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        assertFalse(BEEncoder.encoder().encode(list, buffer));
+        assertEquals(0, buffer.position());
+    }
+
     private static BEParser encodeAndCreateParser(BEObject<?> object) {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         try {
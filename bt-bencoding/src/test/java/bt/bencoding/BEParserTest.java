@@ -17,19 +17,25 @@
 package bt.bencoding;
 
 import bt.bencoding.model.BEList;
+import bt.bencoding.model.BEMap;
 import bt.bencoding.model.BEObject;
 import bt.bencoding.model.BEString;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class BEParserTest {
 
@@ -143,4 +149,132 @@ public class BEParserTest {
                         .collect(Collectors.toList())
                         .toArray());
     }
+
+    @Test
+    public void testParse_Integer_Big() {
+        BEParser parser = new BEParser("i-123456789012345678901234567890e".getBytes());
+        assertEquals(new BigInteger("-123456789012345678901234567890"), parser.readInteger().getValue());
+    }
+
+    @Test
+    public void testParse_Map_ContentIsSourceRange() {
+        String info = "d6:lengthi1024e4:name4:file6:pieces4:abcde";
+        BEParser parser = new BEParser(("d4:info" + info + "3:urli1ee").getBytes(charset));
+
+        BEMap map = parser.readMap();
+        assertArrayEquals(("d4:info" + info + "3:urli1ee").getBytes(charset), map.getContent());
+
+        BEMap infoMap = (BEMap) map.getValue().get("info");
+        assertEquals(info.length(), infoMap.getContentLength());
+        assertArrayEquals(info.getBytes(charset), infoMap.getContent());
+
+        BEString pieces = (BEString) infoMap.getValue().get("pieces");
+        assertEquals(4, pieces.getContentLength());
+        assertEquals(ByteBuffer.wrap("abcd".getBytes(charset)), pieces.getValueAsBuffer());
+        assertTrue(pieces.getValueAsBuffer().isReadOnly());
+        assertEquals(new BEString("abcd".getBytes(charset)), pieces);
+        assertEquals(new BEString("abcd".getBytes(charset)).hashCode(), pieces.hashCode());
+    }
+
+    @Test
+    public void testParse_ByteBuffer_FromPosition() {
+        byte[] bytes = "xxd1:ai1ee<trailing data>".getBytes(charset);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(2);
+
+        BEParser parser = new BEParser(buffer);
+        assertEquals(BEType.MAP, parser.readType());
+        BEMap map = parser.readMap();
+        assertEquals("d1:ai1ee".length(), map.getContentLength());
+        assertEquals(BigInteger.ONE, map.getValue().get("a").getValue());
+        assertEquals(2, buffer.position());
+    }
+
+    @Test
+    public void testParse_ByteBuffer_Direct() {
+        byte[] bytes = "l1:a1:be".getBytes(charset);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+
+        BEList list = new BEParser(buffer).readList();
+        assertArrayEquals(bytes, list.getContent());
+        assertEquals(2, list.getValue().size());
+    }
+
+    @Test
+    public void testParse_Exception_ScannedContents() {
+        try {
+            new BEParser("d1:al1:b".getBytes(charset)).readMap();
+            fail("Exception expected");
+        } catch (BtParseException e) {
+            assertArrayEquals("d1:al1:b".getBytes(charset), e.getScannedContents());
+        }
+    }
+
+    @Test
+    public void testParse_String_Exception_NonDigitLength() {
+        try {
+            new BEParser("1a:b".getBytes(charset)).readString();
+            fail("Exception expected");
+        } catch (BtParseException e) {
+            assertFalse(e.getScannedContents().length == 0);
+        }
+    }
+
+    @Test
+    public void testParse_Lazy() {
+        String files = "ld6:lengthi1e4:pathl1:aeed6:lengthi2e4:pathl1:beee";
+        BEParser parser = new BEParser(("d5:files" + files + "4:name4:teste").getBytes(charset)).lazy();
+
+        BEMap map = parser.readMap();
+        assertEquals("test", ((BEString) map.getValue().get("name")).getValue(charset));
+
+        BEList list = (BEList) map.getValue().get("files");
+        assertArrayEquals(files.getBytes(charset), list.getContent());
+        assertEquals(2, list.getValue().size());
+
+        BEMap file = (BEMap) list.getValue().get(1);
+        assertEquals(BigInteger.valueOf(2), file.getValue().get("length").getValue());
+        assertEquals(new BEParser(files.getBytes(charset)).readList(), list);
+    }
+
+    @Test(expected = BtParseException.class)
+    public void testParse_Lazy_Exception_MalformedNestedObject() {
+        new BEParser("d1:ad1:bi1-eee".getBytes(charset)).lazy().readMap();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testParse_Lazy_Exception_AlreadyRead() {
+        BEParser parser = new BEParser("le".getBytes(charset));
+        parser.readList();
+        parser.lazy();
+    }
+
+    @Test
+    public void testParse_Stream_WithinMaxLength() {
+        byte[] bytes = "d1:ai1ee".getBytes(charset);
+        BEMap map = new BEParser(new ByteArrayInputStream(bytes), bytes.length).readMap();
+        assertEquals(BigInteger.ONE, map.getValue().get("a").getValue());
+    }
+
+    @Test
+    public void testParse_Stream_Exception_MaxLengthExceeded() {
+        // endless list of empty strings
+        long[] read = new long[1];
+        InputStream in = new InputStream() {
+            @Override
+            public int read() {
+                return (read[0]++ == 0) ? 'l' : ((read[0] % 2 == 0) ? '0' : ':');
+            }
+        };
+
+        try {
+            new BEParser(in, 100_000);
+            fail("Exception expected");
+        } catch (BtParseException e) {
+            // reading stops as soon as the limit is exceeded
+            assertEquals(100_001, read[0]);
+        }
+    }
 }
@@ -16,6 +16,8 @@
 
 package bt.data;
 
+import bt.data.file.FileHandlePool;
+import bt.data.file.FileSystemStorage;
 import bt.metainfo.Torrent;
 
 /**
@@ -26,15 +28,31 @@ public class DataDescriptorFactory implements IDataDescriptorFactory {
 
     private ChunkVerifier verifier;
     private int transferBlockSize;
+    private FileHandlePool filePool;
 
     public DataDescriptorFactory(ChunkVerifier verifier,
                                  int transferBlockSize) {
+        this(verifier, transferBlockSize, null);
+    }
+
+    /**
+     * @param filePool Runtime-wide pool of open files, that is used by file system storages,
+     *                 which have been created without an explicit pool; may be null
+     * @since 1.8
+     */
+    public DataDescriptorFactory(ChunkVerifier verifier,
+                                 int transferBlockSize,
+                                 FileHandlePool filePool) {
         this.verifier = verifier;
         this.transferBlockSize = transferBlockSize;
+        this.filePool = filePool;
     }
 
     @Override
     public DataDescriptor createDescriptor(Torrent torrent, Storage storage) {
+        if (filePool != null && storage instanceof FileSystemStorage) {
+            storage = ((FileSystemStorage) storage).withDefaultFilePool(filePool);
+        }
         return new DefaultDataDescriptor(storage, torrent, verifier, transferBlockSize);
     }
 }
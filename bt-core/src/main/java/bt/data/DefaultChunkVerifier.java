@@ -50,11 +50,11 @@ public class DefaultChunkVerifier implements ChunkVerifier {
                     bitfield.getPiecesTotal() + ", number of chunks: " + chunks.size());
         }
 
-        ChunkDescriptor[] arr = chunks.toArray(new ChunkDescriptor[chunks.size()]);
+        // chunk descriptors might be materialized on demand, so don't copy them all at once
         if (numOfHashingThreads > 1) {
-            collectParallel(arr, bitfield);
+            collectParallel(chunks, bitfield);
         } else {
-            createWorker(arr, 0, arr.length, bitfield).run();
+            createWorker(chunks, 0, chunks.size(), bitfield).run();
         }
         // try to purge all data that was loaded by the verifiers
         System.gc();
@@ -69,22 +69,22 @@ public class DefaultChunkVerifier implements ChunkVerifier {
         return Arrays.equals(expected, actual);
     }
 
-    private List<ChunkDescriptor> collectParallel(ChunkDescriptor[] chunks, Bitfield bitfield) {
+    private void collectParallel(List<ChunkDescriptor> chunks, Bitfield bitfield) {
         int n = numOfHashingThreads;
         ExecutorService workers = Executors.newFixedThreadPool(n);
 
         List<Future<?>> futures = new ArrayList<>();
 
-        int batchSize = chunks.length / n;
+        int batchSize = chunks.size() / n;
         int i, limit = 0;
-        while ((i = limit) < chunks.length) {
+        while ((i = limit) < chunks.size()) {
             if (futures.size() == n - 1) {
                 // assign the remaining bits to the last worker
-                limit = chunks.length;
+                limit = chunks.size();
             } else {
                 limit = i + batchSize;
             }
-            futures.add(workers.submit(createWorker(chunks, i, Math.min(chunks.length, limit), bitfield)));
+            futures.add(workers.submit(createWorker(chunks, i, Math.min(chunks.size(), limit), bitfield)));
         }
 
         if (LOGGER.isDebugEnabled()) {
@@ -114,20 +114,19 @@ public class DefaultChunkVerifier implements ChunkVerifier {
             throw new BtException("Failed to verify torrent data:" +
                     errors.stream().map(this::errorToString).reduce(String::concat).get());
         }
-
-        return Arrays.asList(chunks);
     }
 
-    private Runnable createWorker(ChunkDescriptor[] chunks,
+    private Runnable createWorker(List<ChunkDescriptor> chunks,
                                   int from,
                                   int to,
                                   Bitfield bitfield) {
         return () -> {
             int i = from;
             while (i < to) {
+                ChunkDescriptor chunk = chunks.get(i);
                 // optimization to speedup the initial verification of torrent's data
                 int[] emptyUnits = new int[]{0};
-                chunks[i].getData().visitUnits((u, off, lim) -> {
+                chunk.getData().visitUnits((u, off, lim) -> {
                     // limit of 0 means an empty file,
                     // and we don't want to account for those
                     if (u.size() == 0 && lim != 0) {
@@ -139,7 +138,7 @@ public class DefaultChunkVerifier implements ChunkVerifier {
                 // if any of this chunk's storage units is empty,
                 // then the chunk is neither complete nor verified
                 if (emptyUnits[0] == 0) {
-                    boolean verified = verify(chunks[i]);
+                    boolean verified = verify(chunk);
                     if (verified) {
                         bitfield.markVerified(i);
                     }
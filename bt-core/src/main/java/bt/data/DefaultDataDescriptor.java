@@ -17,33 +17,36 @@
 package bt.data;
 
 import bt.BtException;
-import bt.data.range.BlockRange;
-import bt.data.range.Ranges;
 import bt.metainfo.Torrent;
 import bt.metainfo.TorrentFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 class DefaultDataDescriptor implements DataDescriptor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultDataDescriptor.class);
 
+    private static final int CHUNK_HASH_LENGTH = 20;
+
     private Storage storage;
 
     private Torrent torrent;
-    private List<ChunkDescriptor> chunkDescriptors;
+    private LazyChunkDescriptorList chunkDescriptors;
     private Bitfield bitfield;
 
-    private Map<Integer, List<TorrentFile>> filesForPieces;
-    private Set<StorageUnit> storageUnits;
+    private Map<StorageUnit, TorrentFile> storageUnitsToFiles;
+
+    private long chunkSize;
+    private FileOffsetIndex fileIndex;
+    // non-empty files in the same order as their storage units in the index
+    private List<TorrentFile> nonEmptyFiles;
 
     private ChunkVerifier verifier;
 
@@ -68,20 +71,17 @@ class DefaultDataDescriptor implements DataDescriptor {
             transferBlockSize = chunkSize;
         }
 
-        int chunksTotal = (int) Math.ceil(totalSize / chunkSize);
-        Map<Integer, List<TorrentFile>> filesForPieces = new HashMap<>((int)(chunksTotal / 0.75d) + 1);
-        List<ChunkDescriptor> chunks = new ArrayList<>(chunksTotal + 1);
-
-        Iterator<byte[]> chunkHashes = torrent.getChunkHashes().iterator();
-
         Map<StorageUnit, TorrentFile> storageUnitsToFilesMap = new LinkedHashMap<>((int)(files.size() / 0.75d) + 1);
         files.forEach(f -> storageUnitsToFilesMap.put(storage.getUnit(torrent, f), f));
 
         // filter out empty files (and create them at once)
         List<StorageUnit> nonEmptyStorageUnits = new ArrayList<>();
-        for (StorageUnit unit : storageUnitsToFilesMap.keySet()) {
+        List<TorrentFile> nonEmptyFiles = new ArrayList<>();
+        for (Map.Entry<StorageUnit, TorrentFile> entry : storageUnitsToFilesMap.entrySet()) {
+            StorageUnit unit = entry.getKey();
             if (unit.capacity() > 0) {
                 nonEmptyStorageUnits.add(unit);
+                nonEmptyFiles.add(entry.getValue());
             } else {
                 try {
                     // TODO: think about adding some explicit "initialization/creation" method
@@ -92,48 +92,42 @@ class DefaultDataDescriptor implements DataDescriptor {
             }
         }
 
+        FileOffsetIndex fileIndex = null;
+        DataRange data = null;
         if (nonEmptyStorageUnits.size() > 0) {
-            long limitInLastUnit = nonEmptyStorageUnits.get(nonEmptyStorageUnits.size() - 1).capacity();
-            DataRange data = new ReadWriteDataRange(nonEmptyStorageUnits, 0, limitInLastUnit);
-
-            long off, lim;
-            long remaining = totalSize;
-            while (remaining > 0) {
-                off = chunks.size() * chunkSize;
-                lim = Math.min(chunkSize, remaining);
-
-                DataRange subrange = data.getSubrange(off, lim);
-
-                if (!chunkHashes.hasNext()) {
-                    throw new BtException("Wrong number of chunk hashes in the torrent: too few");
-                }
-
-                List<TorrentFile> chunkFiles = new ArrayList<>();
-                subrange.visitUnits((unit, off1, lim1) -> chunkFiles.add(storageUnitsToFilesMap.get(unit)));
-                filesForPieces.put(chunks.size(), chunkFiles);
-
-                chunks.add(buildChunkDescriptor(subrange, transferBlockSize, chunkHashes.next()));
-
-                remaining -= chunkSize;
-            }
+            fileIndex = new FileOffsetIndex(nonEmptyStorageUnits);
+            data = new ReadWriteDataRange(fileIndex);
+        } else {
+            totalSize = 0;
         }
 
-        if (chunkHashes.hasNext()) {
-            throw new BtException("Wrong number of chunk hashes in the torrent: too many");
-        }
+        LazyChunkDescriptorList chunks = new LazyChunkDescriptorList(data, totalSize, chunkSize, transferBlockSize,
+                packChunkHashes(torrent.getChunkHashes(), totalSize, chunkSize));
 
         this.bitfield = buildBitfield(chunks);
+        chunks.attachBitfield(bitfield);
         this.chunkDescriptors = chunks;
-        this.storageUnits = storageUnitsToFilesMap.keySet();
-        this.filesForPieces = filesForPieces;
+        this.storageUnitsToFiles = storageUnitsToFilesMap;
+        this.chunkSize = chunkSize;
+        this.fileIndex = fileIndex;
+        this.nonEmptyFiles = nonEmptyFiles;
     }
 
-    private ChunkDescriptor buildChunkDescriptor(DataRange data, long blockSize, byte[] checksum) {
-        BlockRange<DataRange> blockData = Ranges.blockRange(data, blockSize);
-        DataRange synchronizedData = Ranges.synchronizedDataRange(blockData);
-        BlockSet synchronizedBlockSet = Ranges.synchronizedBlockSet(blockData.getBlockSet());
+    private static byte[] packChunkHashes(Iterable<byte[]> chunkHashes, long totalSize, long chunkSize) {
+        long chunksTotal = (totalSize + chunkSize - 1) / chunkSize;
+        byte[] packed = new byte[(int) (chunksTotal * CHUNK_HASH_LENGTH)];
 
-        return new DefaultChunkDescriptor(synchronizedData, synchronizedBlockSet, checksum);
+        Iterator<byte[]> iter = chunkHashes.iterator();
+        for (int i = 0; i < chunksTotal; i++) {
+            if (!iter.hasNext()) {
+                throw new BtException("Wrong number of chunk hashes in the torrent: too few");
+            }
+            System.arraycopy(iter.next(), 0, packed, i * CHUNK_HASH_LENGTH, CHUNK_HASH_LENGTH);
+        }
+        if (iter.hasNext()) {
+            throw new BtException("Wrong number of chunk hashes in the torrent: too many");
+        }
+        return packed;
     }
 
     private Bitfield buildBitfield(List<ChunkDescriptor> chunks) {
@@ -158,12 +152,16 @@ class DefaultDataDescriptor implements DataDescriptor {
             throw new IllegalArgumentException("Invalid piece index: " + pieceIndex +
                     ", expected 0.." + bitfield.getPiecesTotal());
         }
-        return filesForPieces.get(pieceIndex);
+        long offset = pieceIndex * chunkSize;
+        long limit = Math.min(offset + chunkSize, fileIndex.getTotalSize());
+        int firstFile = fileIndex.getUnitIndex(offset);
+        int lastFile = fileIndex.getUnitIndex(limit - 1);
+        return Collections.unmodifiableList(nonEmptyFiles.subList(firstFile, lastFile + 1));
     }
 
     @Override
     public void close() {
-        storageUnits.forEach(unit -> {
+        storageUnitsToFiles.keySet().forEach(unit -> {
             try {
                 unit.close();
             } catch (Exception e) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.data;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sorted index of "virtual" offsets of storage units in a contiguous data range.
+ *
+ * Offset of each unit is the sum of capacities of all preceding units,
+ * so that the unit, that contains a given offset, can be found with a binary search.
+ * Instances of this class are immutable and can be shared by all ranges, that are built on top of the same units.
+ *
+ * @since 1.8
+ */
+class FileOffsetIndex {
+
+    private final StorageUnit[] units;
+
+    /**
+     * Offset of the n-th unit is at position n; total size of all units is at the last position.
+     */
+    private final long[] offsets;
+
+    /**
+     * @param units Storage units in the order in which they appear in the data range
+     * @since 1.8
+     */
+    FileOffsetIndex(List<StorageUnit> units) {
+        this.units = units.toArray(new StorageUnit[units.size()]);
+        this.offsets = new long[units.size() + 1];
+        for (int i = 0; i < this.units.length; i++) {
+            offsets[i + 1] = offsets[i] + this.units[i].capacity();
+        }
+    }
+
+    /**
+     * @return Number of units
+     * @since 1.8
+     */
+    int size() {
+        return units.length;
+    }
+
+    /**
+     * @return Storage unit at a given position
+     * @since 1.8
+     */
+    StorageUnit getUnit(int unitIndex) {
+        return units[unitIndex];
+    }
+
+    /**
+     * @return Offset of the beginning of a given unit
+     * @since 1.8
+     */
+    long getOffset(int unitIndex) {
+        return offsets[unitIndex];
+    }
+
+    /**
+     * @return Total size of all units
+     * @since 1.8
+     */
+    long getTotalSize() {
+        return offsets[units.length];
+    }
+
+    /**
+     * Find the unit, that contains the byte at a given offset.
+     * Empty units are never returned.
+     *
+     * @param offset Offset from the beginning of the first unit (0-based)
+     * @return Index of the unit
+     * @since 1.8
+     */
+    int getUnitIndex(long offset) {
+        if (offset < 0 || offset >= getTotalSize()) {
+            throw new IllegalArgumentException("Invalid offset: " + offset + ", expected 0.." + (getTotalSize() - 1));
+        }
+        // search for the last unit, that begins at or before the offset
+        int i = Arrays.binarySearch(offsets, 0, units.length, offset);
+        if (i < 0) {
+            return -i - 2;
+        }
+        // skip empty units, that begin at the same offset
+        while (i < units.length - 1 && offsets[i + 1] == offset) {
+            i++;
+        }
+        return i;
+    }
+}
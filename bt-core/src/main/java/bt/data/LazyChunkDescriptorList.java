@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.data;
+
+import bt.data.range.BlockRange;
+import bt.data.range.Ranges;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * List of torrent's chunk descriptors, that are materialized on demand.
+ *
+ * Only the torrent's data range and a single packed array of chunk hashes are kept in memory permanently.
+ * Descriptors of incomplete chunks are created on first access and cached (because they track
+ * the availability of chunk's blocks) until the chunk has been verified.
+ * Verified chunks are represented by short-lived descriptors, that are created anew on each access.
+ *
+ * Until the bitfield is attached, descriptors are not cached at all,
+ * so that the initial verification of torrent's data does not retain descriptors for all chunks.
+ *
+ * @since 1.8
+ */
+class LazyChunkDescriptorList extends AbstractList<ChunkDescriptor> implements RandomAccess {
+
+    private static final int HASH_LENGTH = 20;
+    private static final int MIN_PURGE_THRESHOLD = 64;
+
+    private final DataRange data;
+    private final long totalSize;
+    private final long chunkSize;
+    private final long blockSize;
+    private final int chunkCount;
+    private final byte[] chunkHashes;
+
+    private final ConcurrentMap<Integer, ChunkDescriptor> incompleteChunks;
+    private volatile Bitfield bitfield;
+    private volatile int purgeThreshold;
+
+    /**
+     * @param data Torrent's data
+     * @param totalSize Total size of torrent's data
+     * @param chunkSize Size of a chunk
+     * @param blockSize Size of a transfer block
+     * @param chunkHashes Hashes of all chunks, packed into a single array
+     * @since 1.8
+     */
+    LazyChunkDescriptorList(DataRange data, long totalSize, long chunkSize, long blockSize, byte[] chunkHashes) {
+        this.data = data;
+        this.totalSize = totalSize;
+        this.chunkSize = chunkSize;
+        this.blockSize = blockSize;
+        this.chunkCount = (int) ((totalSize + chunkSize - 1) / chunkSize);
+        this.chunkHashes = chunkHashes;
+        this.incompleteChunks = new ConcurrentHashMap<>();
+        this.purgeThreshold = MIN_PURGE_THRESHOLD;
+    }
+
+    /**
+     * Start caching descriptors of incomplete chunks.
+     *
+     * @param bitfield Bitfield, that is used to determine if a chunk has been verified
+     * @since 1.8
+     */
+    void attachBitfield(Bitfield bitfield) {
+        this.bitfield = bitfield;
+    }
+
+    @Override
+    public ChunkDescriptor get(int index) {
+        if (index < 0 || index >= chunkCount) {
+            throw new IndexOutOfBoundsException("Invalid chunk index: " + index + ", expected 0.." + (chunkCount - 1));
+        }
+
+        Bitfield bitfield = this.bitfield;
+        if (bitfield == null) {
+            return buildChunkDescriptor(index);
+        } else if (bitfield.isVerified(index)) {
+            incompleteChunks.remove(index);
+            return buildVerifiedChunkDescriptor(index);
+        }
+
+        ChunkDescriptor chunk = incompleteChunks.get(index);
+        if (chunk == null) {
+            purgeVerifiedChunks(bitfield);
+            chunk = incompleteChunks.computeIfAbsent(index, this::buildChunkDescriptor);
+        }
+        return chunk;
+    }
+
+    @Override
+    public int size() {
+        return chunkCount;
+    }
+
+    /**
+     * @return Number of chunk descriptors, that are currently retained in memory
+     * @since 1.8
+     */
+    int getMaterializedCount() {
+        return incompleteChunks.size();
+    }
+
+    private void purgeVerifiedChunks(Bitfield bitfield) {
+        // amortized: the cache is only inspected, when it has doubled in size since the last purge
+        if (incompleteChunks.size() >= purgeThreshold) {
+            incompleteChunks.keySet().removeIf(bitfield::isVerified);
+            purgeThreshold = Math.max(MIN_PURGE_THRESHOLD, incompleteChunks.size() * 2);
+        }
+    }
+
+    private ChunkDescriptor buildChunkDescriptor(int index) {
+        BlockRange<DataRange> blockData = Ranges.blockRange(getChunkData(index), blockSize);
+        // writes of different blocks are not serialized, and the block set is updated atomically
+        DataRange synchronizedData = Ranges.synchronizedDataRange(blockData);
+
+        return new DefaultChunkDescriptor(synchronizedData, blockData.getBlockSet(), getChecksum(index));
+    }
+
+    private ChunkDescriptor buildVerifiedChunkDescriptor(int index) {
+        DataRange chunkData = getChunkData(index);
+        return new DefaultChunkDescriptor(chunkData, new CompleteBlockSet(chunkData.length(), blockSize), getChecksum(index));
+    }
+
+    private DataRange getChunkData(int index) {
+        long offset = index * chunkSize;
+        return data.getSubrange(offset, Math.min(chunkSize, totalSize - offset));
+    }
+
+    private byte[] getChecksum(int index) {
+        int offset = index * HASH_LENGTH;
+        return Arrays.copyOfRange(chunkHashes, offset, offset + HASH_LENGTH);
+    }
+
+    /**
+     * Block set of a chunk, that has been downloaded and verified.
+     */
+    private static class CompleteBlockSet implements BlockSet {
+
+        private final long length;
+        private final long blockSize;
+
+        CompleteBlockSet(long length, long blockSize) {
+            this.length = length;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        public int blockCount() {
+            return (int) ((length + blockSize - 1) / blockSize);
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public long blockSize() {
+            return blockSize;
+        }
+
+        @Override
+        public long lastBlockSize() {
+            long lastBlockSize = length % blockSize;
+            return (lastBlockSize > 0) ? lastBlockSize : blockSize;
+        }
+
+        @Override
+        public boolean isPresent(int blockIndex) {
+            if (blockIndex < 0 || blockIndex >= blockCount()) {
+                throw new IllegalArgumentException("Invalid block index: " + blockIndex + ". Expected 0.." + (blockCount() - 1));
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isComplete() {
+            return true;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+    }
+}
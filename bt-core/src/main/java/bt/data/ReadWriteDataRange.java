@@ -17,8 +17,6 @@
 package bt.data;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -26,27 +24,19 @@ import java.util.List;
  */
 class ReadWriteDataRange implements DataRange {
 
-    private final List<StorageUnit> units;
-    private final int firstUnit;
-    private final int lastUnit;
-    private final long offsetInFirstUnit;
-    private final long limitInLastUnit;
-
-    private final long length;
+    /**
+     * Index of all units, that this range (and all of its' subranges) may access.
+     */
+    private final FileOffsetIndex index;
 
     /**
-     * This is a "map" of this range's "virtual addresses" (offsets) into the range's files.
-     * Size of this map is equal to the number of range's files.
-     * The number x at some position n is the "virtual" offset that designates the beginning
-     * of the n-th file. So, a request to build a range beginning with offset x,
-     * will translate to offset 0 in the n-th file (i.e. the beginning of the file).
-     *
-     * Obviously, the number at position 0 is always 0
-     * and translates into the offset in the first file in the range (this offset is set upon creation of the range).
-     *
-     * Also, it's guaranted that the address at position n+1 is always greater than address at position n.
+     * "Virtual" offsets of the beginning (inclusive) and the end (exclusive) of this range in the index.
      */
-    private long[] fileOffsets;
+    private final long start;
+    private final long end;
+
+    private final int firstUnit;
+    private final int lastUnit;
 
     /**
      * Create a data range.
@@ -60,86 +50,59 @@ class ReadWriteDataRange implements DataRange {
     public ReadWriteDataRange(List<StorageUnit> units,
                               long offsetInFirstUnit,
                               long limitInLastUnit) {
-        this(units,
-             0,
+        this(validate(units, offsetInFirstUnit, limitInLastUnit),
              offsetInFirstUnit,
-             units.size() - 1,
-             limitInLastUnit);
+             calculateOffsetOfLastUnit(units) + limitInLastUnit);
     }
 
-    private ReadWriteDataRange(List<StorageUnit> units,
-                               int firstUnit,
-                               long offsetInFirstUnit,
-                               int lastUnit,
-                               long limitInLastUnit) {
+    /**
+     * Create a data range, that spans all units in the index.
+     *
+     * @since 1.8
+     */
+    ReadWriteDataRange(FileOffsetIndex index) {
+        this(index, 0, index.getTotalSize());
+    }
 
+    private ReadWriteDataRange(FileOffsetIndex index, long start, long end) {
+        this.index = index;
+        this.start = start;
+        this.end = end;
+        this.firstUnit = index.getUnitIndex(start);
+        this.lastUnit = index.getUnitIndex(end - 1);
+    }
+
+    private static FileOffsetIndex validate(List<StorageUnit> units, long offsetInFirstUnit, long limitInLastUnit) {
         if (units.isEmpty()) {
             throw new IllegalArgumentException("Empty list of units");
         }
-        if (firstUnit < 0 || firstUnit > units.size() - 1) {
-            throw new IllegalArgumentException("Invalid first unit index: " + firstUnit + ", expected 0.." + (units.size() - 1));
-        }
-        if (lastUnit < 0 || lastUnit > units.size() - 1) {
-            throw new IllegalArgumentException("Invalid last unit index: " + lastUnit + ", expected 0.." + (units.size() - 1));
-        }
-        if (firstUnit > lastUnit) {
-            throw new IllegalArgumentException("First unit index is greater than last unit index: " + firstUnit + " > " + lastUnit);
-        }
-        if (offsetInFirstUnit < 0 || offsetInFirstUnit > units.get(firstUnit).capacity() - 1) {
+        StorageUnit firstUnit = units.get(0), lastUnit = units.get(units.size() - 1);
+        if (offsetInFirstUnit < 0 || offsetInFirstUnit > firstUnit.capacity() - 1) {
             throw new IllegalArgumentException("Invalid offset in first unit: " + offsetInFirstUnit +
-                    ", expected 0.." + (units.get(firstUnit).capacity() - 1));
+                    ", expected 0.." + (firstUnit.capacity() - 1));
         }
-        if (limitInLastUnit <= 0 || limitInLastUnit > units.get(lastUnit).capacity()) {
+        if (limitInLastUnit <= 0 || limitInLastUnit > lastUnit.capacity()) {
             throw new IllegalArgumentException("Invalid limit in last unit: " + limitInLastUnit +
-                    ", expected 1.." + (units.get(lastUnit).capacity()));
+                    ", expected 1.." + (lastUnit.capacity()));
         }
-        if (firstUnit == lastUnit && offsetInFirstUnit >= limitInLastUnit) {
+        if (units.size() == 1 && offsetInFirstUnit >= limitInLastUnit) {
             throw new IllegalArgumentException("Offset is greater than limit in a single-unit range: " +
                     offsetInFirstUnit + " >= " + limitInLastUnit);
         }
-
-        this.units = units;
-        this.fileOffsets = calculateOffsets(units, offsetInFirstUnit);
-
-        this.firstUnit = firstUnit;
-        this.lastUnit = lastUnit;
-        this.offsetInFirstUnit = offsetInFirstUnit;
-        this.limitInLastUnit = limitInLastUnit;
-
-        this.length = calculateLength(units, offsetInFirstUnit, limitInLastUnit);
-    }
-
-    private static long calculateLength(List<StorageUnit> units, long offsetInFirstUnit, long limitInLastUnit) {
-        long size;
-        if (units.size() == 1) {
-            size = limitInLastUnit - offsetInFirstUnit;
-        } else {
-            size = units.get(0).capacity() - offsetInFirstUnit;
-            for (int i = 1; i < units.size() - 1; i++) {
-                size += units.get(i).capacity();
-            }
-            size += limitInLastUnit;
-        }
-        return size;
+        return new FileOffsetIndex(units);
     }
 
-    private static long[] calculateOffsets(List<StorageUnit> units, long offsetInFirstUnit) {
-        long[] fileOffsets = new long[units.size()];
-        // first "virtual" address (first file begins with offset 0)
-        fileOffsets[0] = 0;
-        if (units.size() > 1) {
-            // it's possible that chunk does not have access to the entire first file
-            fileOffsets[1] = units.get(0).capacity() - offsetInFirstUnit;
-        }
-        for (int i = 2; i < units.size(); i++) {
-            fileOffsets[i] = fileOffsets[i - 1] + units.get(i - 1).capacity();
+    private static long calculateOffsetOfLastUnit(List<StorageUnit> units) {
+        long offset = 0;
+        for (int i = 0; i < units.size() - 1; i++) {
+            offset += units.get(i).capacity();
         }
-        return fileOffsets;
+        return offset;
     }
 
     @Override
     public long length() {
-        return length;
+        return end - start;
     }
 
     @Override
@@ -156,68 +119,14 @@ class ReadWriteDataRange implements DataRange {
         if (offset == 0 && length == length()) {
             return this;
         }
-
-        int firstRequestedFileIndex,
-            lastRequestedFileIndex;
-
-        long offsetInFirstRequestedFile,
-             limitInLastRequestedFile;
-
-        // determine the file that the requested block begins in
-        firstRequestedFileIndex = -1;
-        for (int i = 0; i < units.size(); i++) {
-            if (offset < fileOffsets[i]) {
-                firstRequestedFileIndex = i - 1;
-                break;
-            } else if (i == units.size() - 1) {
-                // reached the last file
-                firstRequestedFileIndex = i;
-            }
-        }
-
-        offsetInFirstRequestedFile = offset - fileOffsets[firstRequestedFileIndex];
-        if (firstRequestedFileIndex == 0) {
-            // if the first requested file is the first file in chunk,
-            // then we need to begin from this chunk's offset in that file
-            // (in case this chunk has access only to a portion of the file)
-            offsetInFirstRequestedFile += offsetInFirstUnit;
-        }
-
-        lastRequestedFileIndex = firstRequestedFileIndex;
-        long remaining = length;
-        do {
-            // determine which files overlap with the requested block
-            if (firstRequestedFileIndex == lastRequestedFileIndex) {
-                remaining -= (units.get(lastRequestedFileIndex).capacity() - offsetInFirstRequestedFile);
-            } else {
-                remaining -= units.get(lastRequestedFileIndex).capacity();
-            }
-        } while (remaining > 0 && ++lastRequestedFileIndex < units.size());
-
-        if (lastRequestedFileIndex >= units.size()) {
-            // data in this chunk is insufficient to fulfill the block request
+        if (length > length() - offset) {
+            // data in this range is insufficient to fulfill the request
             throw new IllegalArgumentException("Insufficient data (offset: " + offset + ", requested length: " + length + ")");
         }
-        // if remaining is negative now, then we need to
-        // strip off some data from the last file
-        limitInLastRequestedFile = units.get(lastRequestedFileIndex).capacity() + remaining;
-
-        if (lastRequestedFileIndex == units.size() - 1) {
-            if (limitInLastRequestedFile > limitInLastUnit) {
-                // data in this chunk is insufficient to fulfill the block request
-                throw new IllegalArgumentException("Insufficient data (offset: " + offset + ", requested length: " + length + ")");
-            }
-        }
-
-        List<StorageUnit> _units = new ArrayList<>();
-        int len = lastRequestedFileIndex - firstRequestedFileIndex;
-        _units.addAll(Arrays.asList(Arrays.copyOfRange(units.toArray(
-                new StorageUnit[len]), firstRequestedFileIndex, lastRequestedFileIndex + 1)));
 
-        return new ReadWriteDataRange(
-                _units,
-                offsetInFirstRequestedFile,
-                limitInLastRequestedFile);
+        // boundaries of the subrange are located via binary search in the shared index,
+        // so there's no need to copy the list of units
+        return new ReadWriteDataRange(index, start + offset, start + offset + length);
     }
 
     @Override
@@ -302,9 +211,9 @@ class ReadWriteDataRange implements DataRange {
         long off, lim;
 
         for (int i = firstUnit; i <= lastUnit; i++) {
-            StorageUnit file = units.get(i);
-            off = (i == firstUnit) ? offsetInFirstUnit : 0;
-            lim = (i == lastUnit) ? limitInLastUnit : file.capacity();
+            StorageUnit file = index.getUnit(i);
+            off = (i == firstUnit) ? start - index.getOffset(i) : 0;
+            lim = (i == lastUnit) ? end - index.getOffset(i) : file.capacity();
 
             visitor.visitUnit(file, off, lim);
         }
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.data.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of open file handles, that may be shared by several file system storages.
+ *
+ * <p>Files are opened on demand, when they are accessed, and the least recently used files are closed,
+ * when the number of open files exceeds the configured limit.
+ * Files, that are being read from or written to at the moment, are never closed,
+ * so the limit may be temporarily exceeded, if there are more concurrent I/O operations than the limit allows.
+ *
+ * @since 1.8
+ */
+public class FileHandlePool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileHandlePool.class);
+
+    /**
+     * Default maximum number of open files.
+     *
+     * @since 1.8
+     */
+    public static final int DEFAULT_MAX_OPEN_FILES = 512;
+
+    private final int maxOpenFiles;
+    // access-ordered, eldest entry is the least recently used
+    private final Map<Path, FileHandle> handles;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * Create a pool with the default limit on the number of open files.
+     *
+     * @see #DEFAULT_MAX_OPEN_FILES
+     * @since 1.8
+     */
+    public FileHandlePool() {
+        this(DEFAULT_MAX_OPEN_FILES);
+    }
+
+    /**
+     * @param maxOpenFiles Maximum number of simultaneously open files
+     * @since 1.8
+     */
+    public FileHandlePool(int maxOpenFiles) {
+        if (maxOpenFiles <= 0) {
+            throw new IllegalArgumentException("Invalid max open files: " + maxOpenFiles);
+        }
+        this.maxOpenFiles = maxOpenFiles;
+        this.handles = new LinkedHashMap<>(16, 0.75f, true);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Get an open handle for the file, opening the file, if needed.
+     * The handle is guaranteed to stay open until it is released.
+     *
+     * <p>Files are opened and closed outside of the pool's lock,
+     * so that a slow open or close does not stall I/O on other files.
+     * Concurrent requests for a file, that is being opened, wait for the first request to complete.
+     *
+     * @return Open file handle; must be released via {@link #release(FileHandle)}
+     * @throws IOException if the file could not be opened
+     */
+    FileHandle acquire(Path file) throws IOException {
+        FileHandle handle;
+        boolean opener = false;
+        List<FileHandle> evicted = Collections.emptyList();
+        synchronized (handles) {
+            handle = handles.get(file);
+            if (handle == null) {
+                misses.increment();
+                evicted = evictLeastRecentlyUsed(maxOpenFiles - 1);
+                // placeholder, concurrent requests will wait for the file to be opened
+                handle = new FileHandle(file);
+                handles.put(file, handle);
+                opener = true;
+            } else {
+                hits.increment();
+            }
+            handle.leases++;
+        }
+        closeChannels(evicted);
+
+        try {
+            if (opener) {
+                handle.open();
+            } else {
+                handle.awaitOpen();
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (handles) {
+                handle.leases--;
+                handles.remove(file, handle);
+            }
+            throw e;
+        }
+        return handle;
+    }
+
+    /**
+     * Release a handle, that has been previously acquired via {@link #acquire(Path)}.
+     */
+    void release(FileHandle handle) {
+        boolean close;
+        synchronized (handles) {
+            close = (--handle.leases == 0 && handle.closeOnRelease);
+        }
+        if (close) {
+            closeChannel(handle);
+        }
+    }
+
+    /**
+     * Close the file, if it's open. If the file is in use at the moment,
+     * it will be closed as soon as the last lease has been released.
+     */
+    void close(Path file) {
+        FileHandle handle;
+        synchronized (handles) {
+            handle = handles.remove(file);
+            if (handle == null) {
+                return;
+            } else if (handle.leases > 0) {
+                handle.closeOnRelease = true;
+                return;
+            }
+        }
+        closeChannel(handle);
+    }
+
+    /**
+     * Close all files, that are not in use at the moment.
+     * Files, that are in use, are closed as soon as the last lease has been released.
+     * The pool remains usable, files will be re-opened on demand.
+     *
+     * @since 1.8
+     */
+    public void closeAll() {
+        List<FileHandle> closed = new ArrayList<>();
+        synchronized (handles) {
+            for (FileHandle handle : handles.values()) {
+                if (handle.leases == 0) {
+                    closed.add(handle);
+                } else {
+                    handle.closeOnRelease = true;
+                }
+            }
+            handles.clear();
+        }
+        closeChannels(closed);
+    }
+
+    /**
+     * Remove least recently used handles, that are not in use, from the pool.
+     * Must be called while holding the pool's lock; the caller is responsible for closing the removed handles.
+     *
+     * @return Removed handles
+     */
+    private List<FileHandle> evictLeastRecentlyUsed(int maxRemaining) {
+        List<FileHandle> evicted = Collections.emptyList();
+        Iterator<FileHandle> iter = handles.values().iterator();
+        while (handles.size() > maxRemaining && iter.hasNext()) {
+            FileHandle handle = iter.next();
+            if (handle.leases == 0) {
+                iter.remove();
+                if (evicted.isEmpty()) {
+                    evicted = new ArrayList<>();
+                }
+                evicted.add(handle);
+                evictions.increment();
+            }
+        }
+        return evicted;
+    }
+
+    private static void closeChannels(List<FileHandle> handles) {
+        for (FileHandle handle : handles) {
+            closeChannel(handle);
+        }
+    }
+
+    private static void closeChannel(FileHandle handle) {
+        FileChannel channel = handle.channel;
+        if (channel == null) {
+            // file has not been opened
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close file: " + handle.file, e);
+        }
+    }
+
+    /**
+     * @return Maximum number of simultaneously open files
+     * @since 1.8
+     */
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    /**
+     * @return Number of currently open files
+     * @since 1.8
+     */
+    public int getOpenFileCount() {
+        synchronized (handles) {
+            return handles.size();
+        }
+    }
+
+    /**
+     * @return Number of times, when a file has been accessed, while it was open
+     * @since 1.8
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Number of times, when a file had to be opened to be accessed
+     * @since 1.8
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of times, when an open file has been closed to stay within the limit of open files
+     * @since 1.8
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    static class FileHandle {
+
+        private final Path file;
+        private final CountDownLatch opened;
+        private volatile FileChannel channel;
+        private volatile IOException openFailure;
+
+        // guarded by the pool
+        private int leases;
+        private boolean closeOnRelease;
+
+        private FileHandle(Path file) {
+            this.file = file;
+            this.opened = new CountDownLatch(1);
+        }
+
+        private void open() throws IOException {
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                openFailure = e;
+                throw e;
+            } finally {
+                opened.countDown();
+            }
+        }
+
+        private void awaitOpen() throws IOException {
+            try {
+                opened.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for file to be opened: " + file);
+            }
+            if (channel == null) {
+                throw new IOException("Failed to open file: " + file, openFailure);
+            }
+        }
+
+        FileChannel channel() {
+            return channel;
+        }
+    }
+}
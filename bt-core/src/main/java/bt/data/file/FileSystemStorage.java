@@ -23,6 +23,9 @@ import bt.metainfo.TorrentFile;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Provides file-system based storage for torrent files.
@@ -62,12 +65,22 @@ import java.nio.file.Path;
  * {@code "/"         => "_/_"}<br>
  * {@code "/a/b/c"    => "_/a/b/c"}<br>
  *
+ * <p>Files are opened on demand, and the number of simultaneously open files is limited.
+ * Unless a pool is passed explicitly (see {@link #FileSystemStorage(Path, FileAllocationStrategy, FileHandlePool)}),
+ * the runtime's pool is used, so that all such storages share the limit,
+ * that is set by {@link bt.runtime.Config#setMaxOpenFiles(int)}.
+ *
  * @since 1.0
  */
 public class FileSystemStorage implements Storage {
 
     private final Path rootDirectory;
     private final PathNormalizer pathNormalizer;
+    private final FileAllocationStrategy allocationStrategy;
+    private final Set<Path> createdDirectories;
+    private final FileHandlePool filePool;
+    // false, if the pool is a fallback, that should be replaced with the runtime's pool
+    private final boolean explicitFilePool;
 
     /**
      * Create a file-system based storage inside a given directory.
@@ -82,8 +95,64 @@ public class FileSystemStorage implements Storage {
     }
 
     public FileSystemStorage(Path rootDirectory) {
+        this(rootDirectory, FileAllocationStrategy.NONE);
+    }
+
+    /**
+     * Create a file-system based storage inside a given directory.
+     * Files are opened via the pool of the runtime, that the storage is used in.
+     *
+     * @param rootDirectory Root directory for this storage. All torrent files will be stored inside this directory.
+     * @param allocationStrategy Determines how disk space is allocated for new files
+     * @since 1.8
+     */
+    public FileSystemStorage(Path rootDirectory, FileAllocationStrategy allocationStrategy) {
+        this(rootDirectory, allocationStrategy, ConcurrentHashMap.newKeySet(), new FileHandlePool(), false);
+    }
+
+    /**
+     * Create a file-system based storage inside a given directory.
+     *
+     * @param rootDirectory Root directory for this storage. All torrent files will be stored inside this directory.
+     * @param allocationStrategy Determines how disk space is allocated for new files
+     * @param filePool Pool of open files, that is used instead of the runtime's pool.
+     *                 May be shared with other storages to limit the total number of open files.
+     * @since 1.8
+     */
+    public FileSystemStorage(Path rootDirectory, FileAllocationStrategy allocationStrategy, FileHandlePool filePool) {
+        this(rootDirectory, allocationStrategy, ConcurrentHashMap.newKeySet(), Objects.requireNonNull(filePool), true);
+    }
+
+    private FileSystemStorage(Path rootDirectory,
+                              FileAllocationStrategy allocationStrategy,
+                              Set<Path> createdDirectories,
+                              FileHandlePool filePool,
+                              boolean explicitFilePool) {
         this.rootDirectory = rootDirectory;
         this.pathNormalizer = new PathNormalizer(rootDirectory.getFileSystem());
+        this.allocationStrategy = Objects.requireNonNull(allocationStrategy);
+        this.createdDirectories = createdDirectories;
+        this.filePool = filePool;
+        this.explicitFilePool = explicitFilePool;
+    }
+
+    /**
+     * Get a storage, that opens files via the given pool, unless a pool has been passed to this storage explicitly.
+     * The returned storage shares the root directory and the allocation strategy with this storage.
+     *
+     * <p>Used by the runtime to apply its limit of open files.
+     * Storages, that are used outside of a runtime, open files via their own pool.
+     *
+     * @param defaultFilePool Pool of open files to use, if this storage has been created without an explicit pool
+     * @return This storage, if it has an explicit pool, or a storage, that uses the given pool
+     * @since 1.8
+     */
+    public FileSystemStorage withDefaultFilePool(FileHandlePool defaultFilePool) {
+        if (explicitFilePool || filePool == defaultFilePool) {
+            return this;
+        }
+        return new FileSystemStorage(rootDirectory, allocationStrategy, createdDirectories,
+                Objects.requireNonNull(defaultFilePool), true);
     }
 
     @Override
@@ -97,6 +166,7 @@ public class FileSystemStorage implements Storage {
             torrentDirectory = rootDirectory.resolve(normalizedName);
         }
         String normalizedPath = pathNormalizer.normalize(torrentFile.getPathElements());
-        return new FileSystemStorageUnit(torrentDirectory, normalizedPath, torrentFile.getSize());
+        return new FileSystemStorageUnit(torrentDirectory, normalizedPath, torrentFile.getSize(),
+                allocationStrategy, createdDirectories, filePool);
     }
 }
@@ -18,50 +18,72 @@ package bt.data.file;
 
 import bt.BtException;
 import bt.data.StorageUnit;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 class FileSystemStorageUnit implements StorageUnit {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemStorageUnit.class);
-
     private Path parent, file;
-    private SeekableByteChannel sbc;
     private long capacity;
+    private final FileAllocationStrategy allocationStrategy;
+    private final Set<Path> createdDirectories;
+    private final FileHandlePool filePool;
 
-    private volatile boolean closed;
+    // file is known to exist
+    private volatile boolean initialized;
+    // space for the file has been allocated
+    private volatile boolean allocated;
 
     FileSystemStorageUnit(Path root, String path, long capacity) {
+        this(root, path, capacity, FileAllocationStrategy.NONE, ConcurrentHashMap.newKeySet(), new FileHandlePool());
+    }
+
+    /**
+     * @param createdDirectories Directories, that are known to exist;
+     *                           shared between all units of the same storage
+     *                           to avoid repeatedly checking for the same parent directories
+     * @param filePool Pool of open files; the file is opened on demand and may be closed by the pool at any time,
+     *                 when it's not being accessed
+     */
+    FileSystemStorageUnit(Path root, String path, long capacity, FileAllocationStrategy allocationStrategy,
+                          Set<Path> createdDirectories, FileHandlePool filePool) {
         this.file = root.resolve(path);
         this.parent = file.getParent();
         this.capacity = capacity;
-        this.closed = true;
+        this.allocationStrategy = allocationStrategy;
+        this.createdDirectories = createdDirectories;
+        this.filePool = filePool;
     }
 
     // TODO: this is temporary fix for verification upon app start
     // should be re-done (probably need additional API to know if storage unit is "empty")
     private boolean init(boolean create) {
 
-        if (closed) {
-            if (!Files.exists(file)) {
+        if (create ? allocated : initialized) {
+            return true;
+        }
+
+        synchronized (this) {
+            if (!initialized && !Files.exists(file)) {
                 if (create) {
-                    if (!Files.exists(parent)) {
-                        try {
-                            Files.createDirectories(parent);
-                        } catch (IOException e) {
-                            throw new BtException("Failed to create file storage -- can't create (some of the) directories", e);
-                        }
-                    }
+                    createParentDirectories();
 
                     try {
-                        Files.createFile(file);
+                        try {
+                            Files.createFile(file);
+                        } catch (NoSuchFileException e) {
+                            // parent directory has been removed since it was created
+                            createdDirectories.remove(parent);
+                            createParentDirectories();
+                            Files.createFile(file);
+                        }
                     } catch (IOException e) {
                         throw new BtException("Failed to create file storage -- " +
                                 "can't create new file: " + file.toAbsolutePath(), e);
@@ -71,24 +93,52 @@ class FileSystemStorageUnit implements StorageUnit {
                 }
             }
 
-            try {
-                sbc = Files.newByteChannel(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
-            } catch (IOException e) {
-                throw new BtException("Unexpected I/O error", e);
-            }
+            initialized = true;
 
-            closed = false;
+            if (create && !allocated) {
+                FileHandlePool.FileHandle handle = acquireHandle();
+                try {
+                    allocationStrategy.allocate(handle.channel(), capacity);
+                } catch (IOException e) {
+                    throw new BtException("Failed to allocate space for file: " + file.toAbsolutePath(), e);
+                } finally {
+                    filePool.release(handle);
+                }
+                allocated = true;
+            }
         }
         return true;
     }
 
+    private FileHandlePool.FileHandle acquireHandle() {
+        try {
+            return filePool.acquire(file);
+        } catch (IOException e) {
+            throw new BtException("Unexpected I/O error", e);
+        }
+    }
+
+    private void createParentDirectories() {
+        if (parent == null || createdDirectories.contains(parent)) {
+            return;
+        }
+        try {
+            Files.createDirectories(parent);
+        } catch (IOException e) {
+            throw new BtException("Failed to create file storage -- can't create (some of the) directories", e);
+        }
+        // all ancestors exist as well, so that the siblings won't have to check them
+        Path directory = parent;
+        while (directory != null && createdDirectories.add(directory)) {
+            directory = directory.getParent();
+        }
+    }
+
     @Override
-    public synchronized void readBlock(ByteBuffer buffer, long offset) {
+    public void readBlock(ByteBuffer buffer, long offset) {
 
-        if (closed) {
-            if (!init(false)) {
-                return;
-            }
+        if (!init(false)) {
+            return;
         }
 
         if (offset < 0) {
@@ -98,27 +148,30 @@ class FileSystemStorageUnit implements StorageUnit {
                     ", requested block length: " + buffer.remaining() + ", file size: " + capacity);
         }
 
+        FileHandlePool.FileHandle handle = acquireHandle();
         try {
-            sbc.position(offset);
+            FileChannel channel = handle.channel();
+            long position = offset;
             int read = 1;
             while (buffer.hasRemaining() && read > 0) {
-              read = sbc.read(buffer);
+              read = channel.read(buffer, position);
+              position += read;
             }
 
         } catch (IOException e) {
             throw new BtException("Failed to read bytes (offset: " + offset +
                     ", requested block length: " + buffer.remaining() + ", file size: " + capacity + ")", e);
+        } finally {
+            filePool.release(handle);
         }
     }
 
     @Override
-    public synchronized byte[] readBlock(long offset, int length) {
+    public byte[] readBlock(long offset, int length) {
 
-        if (closed) {
-            if (!init(false)) {
-                // TODO: should we return null here? or init this "stub" in constructor?
-                return new byte[length];
-            }
+        if (!init(false)) {
+            // TODO: should we return null here? or init this "stub" in constructor?
+            return new byte[length];
         }
 
         if (offset < 0 || length < 0) {
@@ -128,27 +181,30 @@ class FileSystemStorageUnit implements StorageUnit {
                     ", requested block length: " + length + ", file size: " + capacity);
         }
 
+        FileHandlePool.FileHandle handle = acquireHandle();
         try {
-            sbc.position(offset);
+            FileChannel channel = handle.channel();
             ByteBuffer buf = ByteBuffer.allocate(length);
+            long position = offset;
             int read = 1;
             while(buf.hasRemaining() && read > 0) {
-              read = sbc.read(buf);
+              read = channel.read(buf, position);
+              position += read;
             }
             return buf.array();
 
         } catch (IOException e) {
             throw new BtException("Failed to read bytes (offset: " + offset +
                     ", requested block length: " + length + ", file size: " + capacity + ")", e);
+        } finally {
+            filePool.release(handle);
         }
     }
 
     @Override
-    public synchronized void writeBlock(ByteBuffer buffer, long offset) {
+    public void writeBlock(ByteBuffer buffer, long offset) {
 
-        if (closed) {
-            init(true);
-        }
+        init(true);
 
         if (offset < 0) {
             throw new BtException("Negative offset: " + offset);
@@ -157,25 +213,28 @@ class FileSystemStorageUnit implements StorageUnit {
                     ", block length: " + buffer.remaining() + ", file size: " + capacity);
         }
 
+        FileHandlePool.FileHandle handle = acquireHandle();
         try {
-            sbc.position(offset);
+            FileChannel channel = handle.channel();
+            long position = offset;
             int written = 1;
             while (buffer.hasRemaining() && written > 0) {
-              written = sbc.write(buffer);
+              written = channel.write(buffer, position);
+              position += written;
             }
 
         } catch (IOException e) {
             throw new BtException("Failed to write bytes (offset: " + offset +
                     ", block length: " + buffer.remaining() + ", file size: " + capacity + ")", e);
+        } finally {
+            filePool.release(handle);
         }
     }
 
     @Override
-    public synchronized void writeBlock(byte[] block, long offset) {
+    public void writeBlock(byte[] block, long offset) {
 
-        if (closed) {
-            init(true);
-        }
+        init(true);
 
         if (offset < 0) {
             throw new BtException("Negative offset: " + offset);
@@ -184,17 +243,22 @@ class FileSystemStorageUnit implements StorageUnit {
                     ", block length: " + block.length + ", file size: " + capacity);
         }
 
+        FileHandlePool.FileHandle handle = acquireHandle();
         try {
-            sbc.position(offset);
+            FileChannel channel = handle.channel();
             ByteBuffer buf = ByteBuffer.wrap(block);
+            long position = offset;
             int written = 1;
             while (buf.hasRemaining() && written > 0) {
-              written = sbc.write(buf);
+              written = channel.write(buf, position);
+              position += written;
             }
 
         } catch (IOException e) {
             throw new BtException("Failed to write bytes (offset: " + offset +
                     ", block length: " + block.length + ", file size: " + capacity + ")", e);
+        } finally {
+            filePool.release(handle);
         }
     }
 
@@ -220,14 +284,8 @@ class FileSystemStorageUnit implements StorageUnit {
 
     @Override
     public void close() throws IOException {
-        if (!closed) {
-            try {
-                sbc.close();
-            } catch (IOException e) {
-                LOGGER.warn("Failed to close file: " + file, e);
-            } finally {
-                closed = true;
-            }
-        }
+        initialized = false;
+        allocated = false;
+        filePool.close(file);
     }
 }
\ No newline at end of file
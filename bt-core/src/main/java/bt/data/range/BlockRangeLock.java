@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.data.range;
+
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Block-granular lock: operations on non-overlapping blocks of the range do not block each other.
+ *
+ * Blocks are mapped to a limited number of lock stripes. An operation acquires the stripes of all blocks,
+ * that it touches, always in ascending order of stripes, so that concurrent operations can't deadlock.
+ *
+ * @since 1.8
+ */
+class BlockRangeLock implements RangeLock {
+
+    private static final int MAX_STRIPES = 64;
+
+    private final long blockSize;
+    private final ReadWriteLock[] stripes;
+
+    /**
+     * @param length Length of the range
+     * @param blockSize Size of a block
+     * @since 1.8
+     */
+    BlockRangeLock(long length, long blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+        }
+        this.blockSize = blockSize;
+
+        long blockCount = Math.max(1, (length + blockSize - 1) / blockSize);
+        this.stripes = new ReadWriteLock[(int) Math.min(blockCount, MAX_STRIPES)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    @Override
+    public void lockRead(long offset, long length) {
+        forEachStripe(offset, length, lock -> lock.readLock().lock(), false);
+    }
+
+    @Override
+    public void unlockRead(long offset, long length) {
+        forEachStripe(offset, length, lock -> lock.readLock().unlock(), true);
+    }
+
+    @Override
+    public void lockWrite(long offset, long length) {
+        forEachStripe(offset, length, lock -> lock.writeLock().lock(), false);
+    }
+
+    @Override
+    public void unlockWrite(long offset, long length) {
+        forEachStripe(offset, length, lock -> lock.writeLock().unlock(), true);
+    }
+
+    private void forEachStripe(long offset, long length, Consumer<ReadWriteLock> action, boolean reverse) {
+        long firstBlock = offset / blockSize;
+        long lastBlock = (offset + Math.max(1, length) - 1) / blockSize;
+        int n = stripes.length;
+
+        if (lastBlock - firstBlock + 1 >= n) {
+            apply(0, n - 1, action, reverse);
+        } else {
+            int first = (int) (firstBlock % n), last = (int) (lastBlock % n);
+            if (first <= last) {
+                apply(first, last, action, reverse);
+            } else if (reverse) {
+                // wrapped around: stripes are [first..n-1] and [0..last]; lock order is ascending
+                apply(first, n - 1, action, true);
+                apply(0, last, action, true);
+            } else {
+                apply(0, last, action, false);
+                apply(first, n - 1, action, false);
+            }
+        }
+    }
+
+    private void apply(int from, int to, Consumer<ReadWriteLock> action, boolean reverse) {
+        if (reverse) {
+            for (int i = to; i >= from; i--) {
+                action.accept(stripes[i]);
+            }
+        } else {
+            for (int i = from; i <= to; i++) {
+                action.accept(stripes[i]);
+            }
+        }
+    }
+}
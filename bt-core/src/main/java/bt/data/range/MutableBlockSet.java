@@ -18,8 +18,13 @@ package bt.data.range;
 
 import bt.data.BlockSet;
 
-import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+/**
+ * Thread-safe block set: availability of blocks is tracked with atomic bit updates,
+ * so that concurrent writes of different blocks don't need any locking.
+ */
 class MutableBlockSet implements BlockSet {
 
     private final long length;
@@ -31,7 +36,8 @@ class MutableBlockSet implements BlockSet {
     /**
      * Block availability bitmask: 1 for present blocks
      */
-    private final BitSet bitmask;
+    private final AtomicLongArray bitmask;
+    private final AtomicInteger presentBlocks;
 
     MutableBlockSet(long length, long blockSize) {
         // intentionally allow length to be greater than block size
@@ -48,7 +54,8 @@ class MutableBlockSet implements BlockSet {
         this.length = length;
         this.blockSize = blockSize;
         this.blockCount = (int) blockCount;
-        this.bitmask = new BitSet((int) blockCount);
+        this.bitmask = new AtomicLongArray((int) ((blockCount + 63) / 64));
+        this.presentBlocks = new AtomicInteger();
 
         // handle the case when the last block is smaller than the others
         long lastBlockSize = length % blockSize;
@@ -86,17 +93,17 @@ class MutableBlockSet implements BlockSet {
         if (blockIndex < 0 || blockIndex >= blockCount) {
             throw new IllegalArgumentException("Invalid block index: " + blockIndex + ". Expected 0.." + (blockCount - 1));
         }
-        return bitmask.get(blockIndex);
+        return (bitmask.get(blockIndex >>> 6) & (1L << blockIndex)) != 0;
     }
 
     @Override
     public boolean isComplete() {
-        return bitmask.cardinality() == blockCount;
+        return presentBlocks.get() == blockCount;
     }
 
     @Override
     public boolean isEmpty() {
-        return bitmask.isEmpty();
+        return presentBlocks.get() == 0;
     }
 
     /*
@@ -119,7 +126,7 @@ class MutableBlockSet implements BlockSet {
         // mark it as complete only when all of the block's data is present
 
         if (offset <= lastBlockOffset && offset + length >= length()) {
-            bitmask.set(blockCount - 1);
+            markPresent(blockCount - 1, blockCount);
         }
         if (length >= blockSize) {
             int numberOfBlocks = (int) Math.floor(((double) length) / blockSize);
@@ -127,9 +134,29 @@ class MutableBlockSet implements BlockSet {
                 int firstBlockIndex = (int) Math.ceil(((double) offset) / blockSize);
                 int lastBlockIndex = (int) Math.floor(((double) (offset + length)) / blockSize) - 1;
                 if (lastBlockIndex >= firstBlockIndex) {
-                    bitmask.set(firstBlockIndex, lastBlockIndex + 1);
+                    markPresent(firstBlockIndex, lastBlockIndex + 1);
                 }
             }
         }
     }
+
+    /**
+     * @param fromIndex First block index; inclusive
+     * @param toIndex Last block index; exclusive
+     */
+    private void markPresent(int fromIndex, int toIndex) {
+        int newlyPresent = 0;
+        for (int i = fromIndex; i < toIndex; ) {
+            int word = i >>> 6;
+            int wordEnd = Math.min(toIndex, (word + 1) << 6);
+            // bits [i, wordEnd) of the current word
+            long mask = (-1L >>> (64 - (wordEnd - i))) << i;
+            long previous = bitmask.getAndAccumulate(word, mask, (current, bits) -> current | bits);
+            newlyPresent += Long.bitCount(mask & ~previous);
+            i = wordEnd;
+        }
+        if (newlyPresent > 0) {
+            presentBlocks.addAndGet(newlyPresent);
+        }
+    }
 }
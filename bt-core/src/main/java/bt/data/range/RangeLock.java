@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.data.range;
+
+/**
+ * Guards access to (parts of) a range's data.
+ *
+ * Offsets are relative to the beginning of the root range, that the lock has been created for.
+ *
+ * @since 1.8
+ */
+interface RangeLock {
+
+    /**
+     * Block current thread until no concurrent writes to the given part of the range are in progress,
+     * and block all concurrent writes to the given part of the range.
+     *
+     * @since 1.8
+     */
+    void lockRead(long offset, long length);
+
+    /**
+     * @since 1.8
+     */
+    void unlockRead(long offset, long length);
+
+    /**
+     * Block current thread until no concurrent reads or writes of the given part of the range are in progress,
+     * and block all concurrent reads and writes of the given part of the range.
+     *
+     * @since 1.8
+     */
+    void lockWrite(long offset, long length);
+
+    /**
+     * @since 1.8
+     */
+    void unlockWrite(long offset, long length);
+}
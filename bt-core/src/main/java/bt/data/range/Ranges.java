@@ -56,10 +56,13 @@ public class Ranges {
     }
 
     /**
+     * Operations on different blocks of the range do not block each other.
+     *
      * @since 1.3
      */
     public static DataRange synchronizedDataRange(BlockRange<DataRange> range) {
-        SynchronizedRange<BlockRange<DataRange>> synchronizedRange = new SynchronizedRange<>(range);
+        RangeLock lock = new BlockRangeLock(range.length(), range.getBlockSet().blockSize());
+        SynchronizedRange<BlockRange<DataRange>> synchronizedRange = new SynchronizedRange<>(range, lock);
         return new SynchronizedDataRange<>(synchronizedRange, BlockRange::getDelegate);
     }
 
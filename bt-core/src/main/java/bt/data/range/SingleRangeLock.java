@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.data.range;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Single lock for the whole range.
+ *
+ * @since 1.8
+ */
+class SingleRangeLock implements RangeLock {
+
+    private final ReadWriteLock lock;
+
+    SingleRangeLock() {
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    @Override
+    public void lockRead(long offset, long length) {
+        lock.readLock().lock();
+    }
+
+    @Override
+    public void unlockRead(long offset, long length) {
+        lock.readLock().unlock();
+    }
+
+    @Override
+    public void lockWrite(long offset, long length) {
+        lock.writeLock().lock();
+    }
+
+    @Override
+    public void unlockWrite(long offset, long length) {
+        lock.writeLock().unlock();
+    }
+}
@@ -38,11 +38,12 @@ class SynchronizedDataRange<T extends Range<T>> implements DataRange, Delegating
 
     @Override
     public void visitUnits(DataRangeVisitor visitor) {
-        delegate.getLock().writeLock().lock();
+        long offset = delegate.getOffset(), length = delegate.length();
+        delegate.getLock().lockWrite(offset, length);
         try {
             converter.apply(delegate.getDelegate()).visitUnits(visitor);
         } finally {
-            delegate.getLock().writeLock().unlock();
+            delegate.getLock().unlockWrite(offset, length);
         }
     }
 
@@ -16,9 +16,6 @@
 
 package bt.data.range;
 
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
 /**
  * Data range synchronized with a shared lock.
  *
@@ -31,7 +28,12 @@ class SynchronizedRange<T extends Range<T>> implements Range<T>, DelegatingRange
     /**
      * Shared lock for this range and all its' child subranges
      */
-    private final ReadWriteLock lock;
+    private final RangeLock lock;
+
+    /**
+     * Offset of this range from the beginning of the root range, that the lock has been created for
+     */
+    private final long offset;
 
     /**
      * Create a data range synchronized with a private lock.
@@ -39,8 +41,16 @@ class SynchronizedRange<T extends Range<T>> implements Range<T>, DelegatingRange
      * @since 1.2
      */
     SynchronizedRange(Range<T> delegate) {
-        this.delegate = delegate;
-        this.lock = new ReentrantReadWriteLock();
+        this(delegate, new SingleRangeLock(), 0);
+    }
+
+    /**
+     * Create a data range synchronized with a given lock.
+     *
+     * @since 1.8
+     */
+    SynchronizedRange(Range<T> delegate, RangeLock lock) {
+        this(delegate, lock, 0);
     }
 
     /**
@@ -48,9 +58,10 @@ class SynchronizedRange<T extends Range<T>> implements Range<T>, DelegatingRange
      *
      * @since 1.2
      */
-    private SynchronizedRange(Range<T> delegate, ReadWriteLock lock) {
+    private SynchronizedRange(Range<T> delegate, RangeLock lock, long offset) {
         this.delegate = delegate;
         this.lock = lock;
+        this.offset = offset;
     }
 
     /**
@@ -72,7 +83,7 @@ class SynchronizedRange<T extends Range<T>> implements Range<T>, DelegatingRange
      */
     @Override
     public SynchronizedRange<T> getSubrange(long offset, long length) {
-        return new SynchronizedRange<>(delegate.getSubrange(offset, length), lock);
+        return new SynchronizedRange<>(delegate.getSubrange(offset, length), lock, this.offset + offset);
     }
 
     /**
@@ -84,7 +95,7 @@ class SynchronizedRange<T extends Range<T>> implements Range<T>, DelegatingRange
      */
     @Override
     public SynchronizedRange<T> getSubrange(long offset) {
-        return new SynchronizedRange<>(delegate.getSubrange(offset), lock);
+        return new SynchronizedRange<>(delegate.getSubrange(offset), lock, this.offset + offset);
     }
 
     /**
@@ -92,16 +103,18 @@ class SynchronizedRange<T extends Range<T>> implements Range<T>, DelegatingRange
      *
      * Blocks current thread if there are concurrent write operations in progress.
      * Blocks all concurrent write operations.
+     * Depending on the lock, only the operations on the same part of the range might be blocked.
      *
      * @since 1.2
      */
     @Override
     public byte[] getBytes() {
-        lock.readLock().lock();
+        long length = length();
+        lock.lockRead(offset, length);
         try {
             return delegate.getBytes();
         } finally {
-            lock.readLock().unlock();
+            lock.unlockRead(offset, length);
         }
     }
 
@@ -110,26 +123,35 @@ class SynchronizedRange<T extends Range<T>> implements Range<T>, DelegatingRange
      *
      * Blocks current thread if there are concurrent read or write operations in progress.
      * Block all concurrent read or write operations.
+     * Depending on the lock, only the operations on the same part of the range might be blocked.
      *
      * @since 1.2
      */
     @Override
     public void putBytes(byte[] block) {
-        lock.writeLock().lock();
+        lock.lockWrite(offset, block.length);
         try {
             delegate.putBytes(block);
         } finally {
-            lock.writeLock().unlock();
+            lock.unlockWrite(offset, block.length);
         }
     }
 
     /**
      * @since 1.3
      */
-    protected ReadWriteLock getLock() {
+    protected RangeLock getLock() {
         return lock;
     }
 
+    /**
+     * @return Offset of this range from the beginning of the root range, that the lock has been created for
+     * @since 1.8
+     */
+    protected long getOffset() {
+        return offset;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public T getDelegate() {
@@ -16,6 +16,7 @@
 
 package bt.magnet;
 
+import bt.bencoding.BEEncoder;
 import bt.bencoding.BEParser;
 import bt.bencoding.model.BEInteger;
 import bt.bencoding.model.BEMap;
@@ -24,9 +25,6 @@ import bt.protocol.DecodingContext;
 import bt.protocol.EncodingContext;
 import bt.protocol.handler.MessageHandler;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -42,21 +40,6 @@ public class UtMetadataMessageHandler implements MessageHandler<UtMetadata> {
 
     @Override
     public boolean encode(EncodingContext context, UtMetadata message, ByteBuffer buffer) {
-        boolean encoded = false;
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-            writeMessage(message, bos);
-            byte[] payload = bos.toByteArray();
-            if (buffer.remaining() >= payload.length) {
-                buffer.put(payload);
-                encoded = true;
-            }
-        } catch (IOException e) {
-            // can't happen
-        }
-        return encoded;
-    }
-
-    private void writeMessage(UtMetadata message, OutputStream out) throws IOException {
         BEMap m = new BEMap(null, new HashMap<String, BEObject<?>>() {{
             put(UtMetadata.messageTypeField(), new BEInteger(null, BigInteger.valueOf(message.getType().id())));
             put(UtMetadata.pieceIndexField(), new BEInteger(null, BigInteger.valueOf(message.getPieceIndex())));
@@ -64,10 +47,15 @@ public class UtMetadataMessageHandler implements MessageHandler<UtMetadata> {
                 put(UtMetadata.totalSizeField(), new BEInteger(null, BigInteger.valueOf(message.getTotalSize().get())));
             }
         }});
-        m.writeTo(out);
-        if (message.getData().isPresent()) {
-            out.write(message.getData().get());
+
+        BEEncoder encoder = BEEncoder.encoder();
+        int dataLength = message.getData().map(data -> data.length).orElse(0);
+        if (buffer.remaining() < encoder.encodedLength(m) + dataLength) {
+            return false;
         }
+        encoder.encode(m, buffer);
+        message.getData().ifPresent(buffer::put);
+        return true;
     }
 
     @Override
@@ -76,7 +64,7 @@ public class UtMetadataMessageHandler implements MessageHandler<UtMetadata> {
         buffer.get(payload);
         try (BEParser parser = new BEParser(payload)) {
             BEMap m = parser.readMap();
-            int length = m.getContent().length;
+            int length = m.getContentLength();
             UtMetadata.Type messageType = getMessageType(m);
             int pieceIndex = getPieceIndex(m);
             switch (messageType) {
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.metainfo;
+
+import java.util.Optional;
+
+/**
+ * Stores torrent metadata (info dictionaries), that has been fetched from peers,
+ * so that it does not need to be fetched again when the same torrent is added later.
+ *
+ * @since 1.8
+ */
+public interface IMetadataCache {
+
+    /**
+     * Get cached metadata for a torrent.
+     *
+     * @return Info dictionary, that has been verified against the torrent ID,
+     *         or empty, if there is no (valid) metadata for this torrent in the cache
+     * @since 1.8
+     */
+    Optional<byte[]> get(TorrentId torrentId);
+
+    /**
+     * Store metadata for a torrent.
+     *
+     * @param metadata Info dictionary; caller is responsible for verifying it against the torrent ID
+     * @since 1.8
+     */
+    void put(TorrentId torrentId, byte[] metadata);
+}
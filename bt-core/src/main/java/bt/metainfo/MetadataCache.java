@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.metainfo;
+
+import bt.runtime.Config;
+import bt.service.CryptoUtil;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Disk-backed metadata cache.
+ *
+ * Each info dictionary is stored in a separate file, that is named after the torrent ID,
+ * in the directory specified by {@link Config#getMetadataCacheDirectory()}.
+ * Contents are verified against the torrent ID upon each read, and corrupted files are removed.
+ * When the total size of the cache exceeds {@link Config#getMaxMetadataCacheSize()},
+ * least recently used entries are removed.
+ *
+ * The cache directory is scanned only once, when the cache is created;
+ * afterwards the entries and their total size are tracked in memory.
+ *
+ * If the cache directory is not set, then this cache is always empty.
+ *
+ *<p><b>Note that this class implements a service.
+ * Hence, is not a part of the public API and is a subject to change.</b></p>
+ *
+ * @since 1.8
+ */
+public class MetadataCache implements IMetadataCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataCache.class);
+
+    private static final String FILE_EXTENSION = ".info";
+
+    private final Path directory;
+    private final long maxSize;
+
+    // access-ordered, eldest entry is the least recently used; file -> size
+    private final Map<Path, Long> entries;
+    private long totalSize;
+
+    @Inject
+    public MetadataCache(Config config) {
+        this.directory = config.getMetadataCacheDirectory();
+        this.maxSize = config.getMaxMetadataCacheSize();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        if (directory != null) {
+            loadEntries();
+        }
+    }
+
+    private void loadEntries() {
+        List<CacheEntry> existing = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_EXTENSION)) {
+            for (Path file : files) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                existing.add(new CacheEntry(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to list metadata cache directory: " + directory, e);
+            return;
+        }
+
+        // last modified time reflects the order, in which the entries have been used in previous sessions
+        existing.sort(Comparator.comparingLong(CacheEntry::getLastUsed));
+        synchronized (entries) {
+            for (CacheEntry entry : existing) {
+                entries.put(entry.getFile(), entry.getSize());
+                totalSize += entry.getSize();
+            }
+        }
+    }
+
+    @Override
+    public Optional<byte[]> get(TorrentId torrentId) {
+        if (directory == null) {
+            return Optional.empty();
+        }
+
+        Path file = getFile(torrentId);
+        byte[] metadata;
+        try {
+            metadata = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read cached metadata from " + file, e);
+            return Optional.empty();
+        }
+
+        if (!Arrays.equals(torrentId.getBytes(), CryptoUtil.getSha1Digest(metadata))) {
+            LOGGER.warn("Cached metadata for torrent {} is corrupted, removing {}", torrentId, file);
+            delete(file);
+            synchronized (entries) {
+                removeEntry(file);
+            }
+            return Optional.empty();
+        }
+
+        synchronized (entries) {
+            // mark as the most recently used
+            entries.get(file);
+        }
+        try {
+            // persist the usage order for subsequent sessions
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // ignore
+        }
+        return Optional.of(metadata);
+    }
+
+    @Override
+    public synchronized void put(TorrentId torrentId, byte[] metadata) {
+        if (directory == null || metadata.length > maxSize) {
+            return;
+        }
+
+        Path file = getFile(torrentId);
+        try {
+            Files.createDirectories(directory);
+            Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tempFile, metadata);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to save metadata to " + file, e);
+            return;
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Saved metadata for torrent {} to {}", torrentId, file);
+        }
+
+        List<Path> evicted;
+        synchronized (entries) {
+            removeEntry(file);
+            entries.put(file, (long) metadata.length);
+            totalSize += metadata.length;
+            evicted = evictLeastRecentlyUsed();
+        }
+        for (Path evictedFile : evicted) {
+            delete(evictedFile);
+        }
+    }
+
+    private Path getFile(TorrentId torrentId) {
+        return directory.resolve(torrentId.toString() + FILE_EXTENSION);
+    }
+
+    // must be called while holding the lock on entries
+    private void removeEntry(Path file) {
+        Long size = entries.remove(file);
+        if (size != null) {
+            totalSize -= size;
+        }
+    }
+
+    /**
+     * Remove least recently used entries from the index, until the total size is within the limit.
+     * Must be called while holding the lock on entries; the caller is responsible for deleting the files.
+     *
+     * @return Files of removed entries
+     */
+    private List<Path> evictLeastRecentlyUsed() {
+        if (totalSize <= maxSize) {
+            return Collections.emptyList();
+        }
+        List<Path> evicted = new ArrayList<>();
+        Iterator<Map.Entry<Path, Long>> iter = entries.entrySet().iterator();
+        while (totalSize > maxSize && iter.hasNext()) {
+            Map.Entry<Path, Long> entry = iter.next();
+            iter.remove();
+            totalSize -= entry.getValue();
+            evicted.add(entry.getKey());
+        }
+        return evicted;
+    }
+
+    /**
+     * @return Number of entries in the cache
+     * @since 1.8
+     */
+    public int getEntryCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return Total size of the cached metadata in bytes
+     * @since 1.8
+     */
+    public long getTotalSize() {
+        synchronized (entries) {
+            return totalSize;
+        }
+    }
+
+    private static boolean delete(Path file) {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to remove cached metadata: " + file, e);
+            return false;
+        }
+    }
+
+    private static class CacheEntry {
+
+        private final Path file;
+        private final long size;
+        private final long lastUsed;
+
+        CacheEntry(Path file, long size, long lastUsed) {
+            this.file = file;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+
+        Path getFile() {
+            return file;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastUsed() {
+            return lastUsed;
+        }
+    }
+}
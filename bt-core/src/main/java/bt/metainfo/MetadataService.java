@@ -113,17 +113,9 @@ public class MetadataService implements IMetadataService {
                     + parser.readType().name().toLowerCase());
         }
 
-        BEMap metadata = parser.readMap();
-
-        ValidationResult validationResult = torrentModel.validate(metadata);;
-        if (!validationResult.isSuccess()) {
-            ValidationResult infodictValidationResult = infodictModel.validate(metadata);
-            if (!infodictValidationResult.isSuccess()) {
-                throw new BtException("Validation failed for torrent metainfo:\n1. Standard torrent model: "
-                    + Arrays.toString(validationResult.getMessages().toArray())
-                        + "\n2. Standalone info dictionary model: " + Arrays.toString(infodictValidationResult.getMessages().toArray()));
-            }
-        }
+        // nested dictionaries and lists (e.g. list of files) are decoded only when accessed,
+        // and only the accessed entries are checked
+        BEMap metadata = parser.lazy().readMap();
 
         BEMap infoDictionary;
         TorrentSource source;
@@ -131,6 +123,9 @@ public class MetadataService implements IMetadataService {
         Map<String, BEObject<?>> root = metadata.getValue();
         if (root.containsKey(INFOMAP_KEY)) {
             // standard BEP-3 format
+            if (!(root.get(INFOMAP_KEY) instanceof BEMap)) {
+                throw invalidMetainfo(metadata, null);
+            }
             infoDictionary = (BEMap) root.get(INFOMAP_KEY);
             source = new TorrentSource() {
                 @Override
@@ -259,9 +254,24 @@ public class MetadataService implements IMetadataService {
             }
 
         } catch (Exception e) {
-            throw new BtException("Invalid metainfo format", e);
+            throw invalidMetainfo(metadata, e);
         }
 
         return torrent;
     }
+
+    private BtException invalidMetainfo(BEMap metadata, Exception cause) {
+        // validating the whole document requires decoding all of it,
+        // so it's only done to provide a meaningful description of the failure
+        ValidationResult validationResult = torrentModel.validate(metadata);
+        if (!validationResult.isSuccess()) {
+            ValidationResult infodictValidationResult = infodictModel.validate(metadata);
+            if (!infodictValidationResult.isSuccess()) {
+                return new BtException("Validation failed for torrent metainfo:\n1. Standard torrent model: "
+                    + Arrays.toString(validationResult.getMessages().toArray())
+                        + "\n2. Standalone info dictionary model: " + Arrays.toString(infodictValidationResult.getMessages().toArray()), cause);
+            }
+        }
+        return new BtException("Invalid metainfo format", cause);
+    }
 }
@@ -22,10 +22,13 @@ import bt.data.DefaultChunkVerifier;
 import bt.data.IDataDescriptorFactory;
 import bt.data.digest.Digester;
 import bt.data.digest.JavaSecurityDigester;
+import bt.data.file.FileHandlePool;
 import bt.event.EventBus;
 import bt.event.EventSink;
 import bt.event.EventSource;
+import bt.metainfo.IMetadataCache;
 import bt.metainfo.IMetadataService;
+import bt.metainfo.MetadataCache;
 import bt.metainfo.MetadataService;
 import bt.net.*;
 import bt.net.buffer.BufferManager;
@@ -42,7 +45,9 @@ import bt.runtime.Config;
 import bt.service.*;
 import bt.service.IRuntimeLifecycleBinder.LifecycleEvent;
 import bt.torrent.AdhocTorrentRegistry;
+import bt.torrent.IUploadSlotPool;
 import bt.torrent.TorrentRegistry;
+import bt.torrent.UploadSlotPool;
 import bt.torrent.data.DataWorkerFactory;
 import bt.torrent.data.IDataWorkerFactory;
 import bt.tracker.ITrackerService;
@@ -139,10 +144,12 @@ public class ServiceModule implements Module {
         binder.bind(IConnectionSource.class).to(ConnectionSource.class).asEagerSingleton();
         binder.bind(IPeerConnectionPool.class).to(PeerConnectionPool.class).asEagerSingleton();
         binder.bind(IPeerRegistry.class).to(PeerRegistry.class).asEagerSingleton();
+        binder.bind(IConnectionAllocator.class).to(ConnectionAllocator.class).asEagerSingleton();
         binder.bind(DataReceiver.class).to(DataReceivingLoop.class).asEagerSingleton();
 
         // other services
         binder.bind(IMetadataService.class).to(MetadataService.class).in(Singleton.class);
+        binder.bind(IMetadataCache.class).to(MetadataCache.class).in(Singleton.class);
         binder.bind(ApplicationService.class).to(ClasspathApplicationService.class).in(Singleton.class);
         binder.bind(IdentityService.class).to(VersionAwareIdentityService.class).in(Singleton.class);
         binder.bind(ITrackerService.class).to(TrackerService.class).in(Singleton.class);
@@ -151,6 +158,8 @@ public class ServiceModule implements Module {
         binder.bind(IRuntimeLifecycleBinder.class).to(RuntimeLifecycleBinder.class).in(Singleton.class);
         binder.bind(ProcessorFactory.class).to(TorrentProcessorFactory.class).in(Singleton.class);
         binder.bind(IPeerCache.class).to(PeerCache.class).in(Singleton.class);
+        binder.bind(IPeerScoreboard.class).to(PeerScoreboard.class).in(Singleton.class);
+        binder.bind(IUploadSlotPool.class).to(UploadSlotPool.class).in(Singleton.class);
         binder.bind(IBufferManager.class).to(BufferManager.class).in(Singleton.class);
         binder.bind(IChannelPipelineFactory.class).to(ChannelPipelineFactory.class).in(Singleton.class);
 
@@ -179,8 +188,16 @@ public class ServiceModule implements Module {
 
     @Provides
     @Singleton
-    public IDataDescriptorFactory provideDataDescriptorFactory(Config config, ChunkVerifier verifier) {
-        return new DataDescriptorFactory(verifier, config.getTransferBlockSize());
+    public IDataDescriptorFactory provideDataDescriptorFactory(Config config, ChunkVerifier verifier, FileHandlePool filePool) {
+        return new DataDescriptorFactory(verifier, config.getTransferBlockSize(), filePool);
+    }
+
+    @Provides
+    @Singleton
+    public FileHandlePool provideFileHandlePool(Config config, IRuntimeLifecycleBinder lifecycleBinder) {
+        FileHandlePool filePool = new FileHandlePool(config.getMaxOpenFiles());
+        lifecycleBinder.onShutdown("Close open files", filePool::closeAll);
+        return filePool;
     }
 
     @Provides
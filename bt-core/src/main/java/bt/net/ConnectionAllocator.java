@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.net;
+
+import bt.CountingThreadFactory;
+import bt.metainfo.TorrentId;
+import bt.runtime.Config;
+import bt.service.IRuntimeLifecycleBinder;
+import bt.torrent.TorrentDescriptor;
+import bt.torrent.TorrentRegistry;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically redistributes the global connections budget among active torrents.
+ *
+ * Each torrent is assigned a weight, based on its' demand:
+ * torrents, that are still downloading, get the highest weight;
+ * seeding torrents get a weight, that is proportional to the share of connected peers, that are interested in our data;
+ * idle seeding torrents get the lowest weight.
+ * The budget is then distributed proportionally to weights, with no torrent being given more than it can use
+ * (see {@link Config#getMaxPeerConnectionsPerTorrent()}); the unused remainder is redistributed among other torrents.
+ * If the budget exceeds the total demand, the spare connections are handed out in the same way,
+ * so that torrents are only restricted when connections are actually scarce.
+ *
+ * When the global limit has been reached, torrents, that have more connections than they have been allocated,
+ * are asked for their least useful connections, which are then closed to make room for other torrents.
+ *
+ *<p><b>Note that this class implements a service.
+ * Hence, is not a part of the public API and is a subject to change.</b></p>
+ *
+ * @since 1.8
+ */
+public class ConnectionAllocator implements IConnectionAllocator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionAllocator.class);
+
+    private static final double LEECHING_WEIGHT = 4;
+    private static final double IDLE_SEEDING_WEIGHT = 0.25;
+    // minimum number of connections for seeding torrents, so that new leechers could connect
+    private static final int MIN_SEEDING_CONNECTIONS = 4;
+
+    private final TorrentRegistry torrentRegistry;
+    private final IPeerConnectionPool connectionPool;
+    private final int maxConnections;
+    private final int maxConnectionsPerTorrent;
+
+    private final ConcurrentMap<TorrentId, ConnectionDemand> demands;
+    private volatile Map<TorrentId, Integer> allocations;
+
+    @Inject
+    public ConnectionAllocator(TorrentRegistry torrentRegistry,
+                               IPeerConnectionPool connectionPool,
+                               IRuntimeLifecycleBinder lifecycleBinder,
+                               Config config) {
+        this.torrentRegistry = torrentRegistry;
+        this.connectionPool = connectionPool;
+        this.maxConnections = config.getMaxPeerConnections();
+        this.maxConnectionsPerTorrent = config.getMaxPeerConnectionsPerTorrent();
+        this.demands = new ConcurrentHashMap<>();
+        this.allocations = Collections.emptyMap();
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                CountingThreadFactory.daemonFactory("bt.net.connection-allocator"));
+        long intervalMillis = config.getConnectionAllocationInterval().toMillis();
+        lifecycleBinder.onStartup("Schedule periodic redistribution of peer connections", () ->
+                executor.scheduleWithFixedDelay(this::reallocate, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS));
+        lifecycleBinder.onShutdown("Shutdown peer connections allocator", executor::shutdownNow);
+    }
+
+    @Override
+    public void register(TorrentId torrentId, ConnectionDemand demand) {
+        demands.put(torrentId, demand);
+    }
+
+    @Override
+    public int getAllocation(TorrentId torrentId) {
+        // torrents, that have not been processed by the allocator yet, are allowed to use the default limit
+        Integer allocation = allocations.get(torrentId);
+        return (allocation == null) ? maxConnectionsPerTorrent : allocation;
+    }
+
+    @Override
+    public Map<TorrentId, Integer> getAllocations() {
+        return Collections.unmodifiableMap(allocations);
+    }
+
+    private void reallocate() {
+        try {
+            Map<TorrentId, ConnectionDemand> activeDemands = collectActiveDemands();
+            Map<TorrentId, Integer> newAllocations = allocate(activeDemands, maxConnections, maxConnectionsPerTorrent);
+            this.allocations = newAllocations;
+
+            if (LOGGER.isDebugEnabled()) {
+                newAllocations.forEach((torrentId, allocation) -> {
+                    ConnectionDemand demand = activeDemands.get(torrentId);
+                    LOGGER.debug("Allocated {} connections for torrent {} (seeding: {}, connected peers: {}, interested peers: {})",
+                            allocation, torrentId, demand.isSeeding(), demand.getConnectedPeers(), demand.getInterestedPeers());
+                });
+            }
+
+            if (connectionPool.size() >= maxConnections) {
+                closeExcessConnections(activeDemands, newAllocations);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Unexpected error during redistribution of peer connections", e);
+        }
+    }
+
+    private Map<TorrentId, ConnectionDemand> collectActiveDemands() {
+        Map<TorrentId, ConnectionDemand> activeDemands = new HashMap<>();
+        Iterator<Map.Entry<TorrentId, ConnectionDemand>> iter = demands.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<TorrentId, ConnectionDemand> entry = iter.next();
+            Optional<TorrentDescriptor> descriptor = torrentRegistry.getDescriptor(entry.getKey());
+            if (!descriptor.isPresent()) {
+                // torrent has been removed from the registry
+                iter.remove();
+            } else if (descriptor.get().isActive()) {
+                activeDemands.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return activeDemands;
+    }
+
+    private void closeExcessConnections(Map<TorrentId, ConnectionDemand> demands, Map<TorrentId, Integer> allocations) {
+        allocations.forEach((torrentId, allocation) -> {
+            ConnectionDemand demand = demands.get(torrentId);
+            int excess = demand.getConnectedPeers() - allocation;
+            if (excess > 0) {
+                List<Peer> peers = demand.getLeastUsefulPeers(excess);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Closing {} least useful connections for torrent {} to make room for other torrents",
+                            peers.size(), torrentId);
+                }
+                peers.forEach(peer -> {
+                    PeerConnection connection = connectionPool.getConnection(peer, torrentId);
+                    if (connection != null) {
+                        connection.closeQuietly();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Distribute the budget proportionally to torrents' weights, so that no torrent gets more than it can use.
+     * If there's anything left after all torrents' demands have been satisfied,
+     * the remainder is distributed in the same way, up to the per-torrent limit.
+     */
+    static Map<TorrentId, Integer> allocate(Map<TorrentId, ConnectionDemand> demands,
+                                            int budget,
+                                            int maxConnectionsPerTorrent) {
+        Map<TorrentId, Double> weights = new HashMap<>();
+        Map<TorrentId, Integer> limits = new HashMap<>();
+        demands.forEach((torrentId, demand) -> {
+            weights.put(torrentId, getWeight(demand));
+            limits.put(torrentId, getLimit(demand, maxConnectionsPerTorrent));
+        });
+
+        Map<TorrentId, Integer> allocations = new HashMap<>();
+        int remaining = distribute(budget, weights, limits, allocations);
+
+        if (remaining > 0) {
+            // connections are not scarce, so there's no reason to restrict torrents beyond the per-torrent limit
+            Map<TorrentId, Integer> spareLimits = new HashMap<>();
+            allocations.forEach((torrentId, allocation) ->
+                    spareLimits.put(torrentId, maxConnectionsPerTorrent - allocation));
+            Map<TorrentId, Integer> spareAllocations = new HashMap<>();
+            distribute(remaining, weights, spareLimits, spareAllocations);
+            spareAllocations.forEach((torrentId, allocation) -> allocations.merge(torrentId, allocation, Integer::sum));
+        }
+
+        return allocations;
+    }
+
+    /**
+     * Never allocates more than the budget in total; torrents may get no connections at all,
+     * if there are more torrents than connections.
+     *
+     * @return Unused remainder of the budget
+     */
+    private static int distribute(int budget,
+                                  Map<TorrentId, Double> weights,
+                                  Map<TorrentId, Integer> limits,
+                                  Map<TorrentId, Integer> allocations) {
+        Map<TorrentId, Double> unsatisfied = new HashMap<>(weights);
+        int remaining = budget;
+        boolean redistribute = true;
+        while (redistribute && !unsatisfied.isEmpty()) {
+            redistribute = false;
+            double totalWeight = sum(unsatisfied);
+
+            // first satisfy all torrents, that need less than their fair share, and redistribute the remainder
+            Iterator<Map.Entry<TorrentId, Double>> iter = unsatisfied.entrySet().iterator();
+            int satisfied = 0;
+            while (iter.hasNext()) {
+                Map.Entry<TorrentId, Double> entry = iter.next();
+                int limit = limits.get(entry.getKey());
+                if (limit <= remaining * entry.getValue() / totalWeight) {
+                    allocations.put(entry.getKey(), limit);
+                    satisfied += limit;
+                    iter.remove();
+                    redistribute = true;
+                }
+            }
+            remaining -= satisfied;
+        }
+
+        if (!unsatisfied.isEmpty()) {
+            double totalWeight = sum(unsatisfied);
+            int available = remaining;
+            List<Map.Entry<TorrentId, Double>> entries = new ArrayList<>(unsatisfied.entrySet());
+            entries.sort(Map.Entry.<TorrentId, Double>comparingByValue().reversed());
+            for (Map.Entry<TorrentId, Double> entry : entries) {
+                int allocation = (int) (available * entry.getValue() / totalWeight);
+                allocations.put(entry.getKey(), allocation);
+                remaining -= allocation;
+            }
+            // each torrent should have at least one connection, as long as the budget permits;
+            // torrents with higher weights go first
+            for (Map.Entry<TorrentId, Double> entry : entries) {
+                if (remaining == 0) {
+                    break;
+                } else if (allocations.get(entry.getKey()) == 0) {
+                    allocations.put(entry.getKey(), 1);
+                    remaining--;
+                }
+            }
+        }
+        return remaining;
+    }
+
+    private static double sum(Map<TorrentId, Double> weights) {
+        return weights.values().stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    private static double getWeight(ConnectionDemand demand) {
+        if (!demand.isSeeding()) {
+            return LEECHING_WEIGHT;
+        } else if (demand.getInterestedPeers() == 0) {
+            return IDLE_SEEDING_WEIGHT;
+        } else {
+            // the more peers are interested in our data, the more upload opportunities there are
+            double interestedShare = demand.getInterestedPeers() / (double) Math.max(1, demand.getConnectedPeers());
+            return 1 + (LEECHING_WEIGHT - 1) * Math.min(1, interestedShare);
+        }
+    }
+
+    private static int getLimit(ConnectionDemand demand, int maxConnectionsPerTorrent) {
+        if (!demand.isSeeding()) {
+            return maxConnectionsPerTorrent;
+        }
+        // seeding torrents can only make use of peers, that are interested in our data,
+        // plus some spare room for new leechers
+        int limit = Math.max(MIN_SEEDING_CONNECTIONS, demand.getInterestedPeers() * 2);
+        return Math.min(limit, maxConnectionsPerTorrent);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.net;
+
+import java.util.List;
+
+/**
+ * Describes the current need of a torrent processing session in peer connections.
+ *
+ * @see IConnectionAllocator
+ * @since 1.8
+ */
+public interface ConnectionDemand {
+
+    /**
+     * @return true, if all pieces of the torrent have been downloaded, and the session is only uploading
+     * @since 1.8
+     */
+    boolean isSeeding();
+
+    /**
+     * @return Number of peers, that are currently connected to this session
+     * @since 1.8
+     */
+    int getConnectedPeers();
+
+    /**
+     * @return Number of connected peers, that are interested in our data
+     * @since 1.8
+     */
+    int getInterestedPeers();
+
+    /**
+     * Get connected peers, that are the least useful for this session,
+     * i.e. the best candidates for being disconnected.
+     *
+     * @param count Maximum number of peers to return
+     * @return List of peers, starting with the least useful one
+     * @since 1.8
+     */
+    List<Peer> getLeastUsefulPeers(int count);
+}
@@ -18,12 +18,14 @@ package bt.net;
 
 import bt.CountingThreadFactory;
 import bt.metainfo.TorrentId;
+import bt.peer.IPeerScoreboard;
 import bt.runtime.Config;
 import bt.service.IRuntimeLifecycleBinder;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -31,15 +33,20 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ConnectionSource implements IConnectionSource {
     private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionSource.class);
 
     private final IPeerConnectionFactory connectionFactory;
     private final IPeerConnectionPool connectionPool;
+    private final IPeerScoreboard scoreboard;
     private final ExecutorService connectionExecutor;
     private final Config config;
+    private final AtomicLong connectionRequestCounter;
 
     private final Map<ConnectionKey, CompletableFuture<ConnectionResult>> pendingConnections;
     // TODO: weak map
@@ -49,15 +56,23 @@ public class ConnectionSource implements IConnectionSource {
     public ConnectionSource(Set<PeerConnectionAcceptor> connectionAcceptors,
                             IPeerConnectionFactory connectionFactory,
                             IPeerConnectionPool connectionPool,
+                            IPeerScoreboard scoreboard,
                             IRuntimeLifecycleBinder lifecycleBinder,
                             Config config) {
 
         this.connectionFactory = connectionFactory;
         this.connectionPool = connectionPool;
+        this.scoreboard = scoreboard;
         this.config = config;
+        this.connectionRequestCounter = new AtomicLong();
 
-        this.connectionExecutor = Executors.newFixedThreadPool(
+        // pending outgoing connection requests are served in the order of peer scores,
+        // so that the most promising peers are connected to first
+        this.connectionExecutor = new ThreadPoolExecutor(
                 config.getMaxPendingConnectionRequests(),
+                config.getMaxPendingConnectionRequests(),
+                0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(11, ConnectionSource::compareConnectionTasks),
                 CountingThreadFactory.daemonFactory("bt.net.pool.connection-worker"));
         lifecycleBinder.onShutdown("Shutdown connection workers", connectionExecutor::shutdownNow);
 
@@ -126,26 +141,20 @@ public class ConnectionSource implements IConnectionSource {
                 return connection;
             }
 
-            connection = CompletableFuture.supplyAsync(() -> {
+            CompletableFuture<ConnectionResult> promise = new CompletableFuture<>();
+            connectionExecutor.execute(new OutgoingConnectionTask(() -> {
                 try {
-                    ConnectionResult connectionResult =
-                            connectionFactory.createOutgoingConnection(peer, torrentId);
-                    if (connectionResult.isSuccess()) {
-                        PeerConnection established = connectionResult.getConnection();
-                        PeerConnection added = connectionPool.addConnectionIfAbsent(established);
-                        if (added != established) {
-                            established.closeQuietly();
-                        }
-                        return ConnectionResult.success(added);
-                    } else {
-                        return connectionResult;
-                    }
+                    promise.complete(connect(peer, torrentId));
+                } catch (Throwable e) {
+                    promise.completeExceptionally(e);
                 } finally {
                     synchronized (pendingConnections) {
                         pendingConnections.remove(key);
                     }
                 }
-            }, connectionExecutor).whenComplete((acquiredConnection, throwable) -> {
+            }, scoreboard.getScore(peer), connectionRequestCounter.getAndIncrement()));
+
+            connection = promise.whenComplete((acquiredConnection, throwable) -> {
                 if (acquiredConnection == null || throwable != null) {
                     if (LOGGER.isDebugEnabled()) {
                         LOGGER.debug("Peer is unreachable: {}. Will prevent further attempts to establish connection.", peer);
@@ -164,6 +173,30 @@ public class ConnectionSource implements IConnectionSource {
         }
     }
 
+    private ConnectionResult connect(Peer peer, TorrentId torrentId) {
+        long started = System.currentTimeMillis();
+        ConnectionResult connectionResult;
+        try {
+            connectionResult = connectionFactory.createOutgoingConnection(peer, torrentId);
+        } catch (RuntimeException e) {
+            scoreboard.onConnectionFailed(peer);
+            throw e;
+        }
+
+        if (connectionResult.isSuccess()) {
+            scoreboard.onConnectionEstablished(peer, Duration.ofMillis(System.currentTimeMillis() - started));
+            PeerConnection established = connectionResult.getConnection();
+            PeerConnection added = connectionPool.addConnectionIfAbsent(established);
+            if (added != established) {
+                established.closeQuietly();
+            }
+            return ConnectionResult.success(added);
+        } else {
+            scoreboard.onConnectionFailed(peer);
+            return connectionResult;
+        }
+    }
+
     private CompletableFuture<ConnectionResult> getExistingOrPendingConnection(ConnectionKey key) {
         PeerConnection existingConnection = connectionPool.getConnection(key);
         if (existingConnection != null) {
@@ -177,4 +210,36 @@ public class ConnectionSource implements IConnectionSource {
 
         return null;
     }
+
+    private static int compareConnectionTasks(Runnable r1, Runnable r2) {
+        // tasks, that are not outgoing connection requests (e.g. processing of incoming connections),
+        // are always executed first
+        boolean outgoing1 = r1 instanceof OutgoingConnectionTask;
+        boolean outgoing2 = r2 instanceof OutgoingConnectionTask;
+        if (!outgoing1 || !outgoing2) {
+            return Boolean.compare(outgoing1, outgoing2);
+        }
+        OutgoingConnectionTask task1 = (OutgoingConnectionTask) r1, task2 = (OutgoingConnectionTask) r2;
+        int result = Double.compare(task2.score, task1.score);
+        // peers with equal scores are connected to in the order of discovery
+        return (result != 0) ? result : Long.compare(task1.sequenceNumber, task2.sequenceNumber);
+    }
+
+    private static class OutgoingConnectionTask implements Runnable {
+
+        private final Runnable delegate;
+        private final double score;
+        private final long sequenceNumber;
+
+        OutgoingConnectionTask(Runnable delegate, double score, long sequenceNumber) {
+            this.delegate = delegate;
+            this.score = score;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+    }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.net;
+
+import bt.metainfo.TorrentId;
+
+import java.util.Map;
+
+/**
+ * Distributes the global budget of peer connections ({@link bt.runtime.Config#getMaxPeerConnections()})
+ * among active torrents, based on their demand.
+ *
+ * @since 1.8
+ */
+public interface IConnectionAllocator {
+
+    /**
+     * Register a torrent processing session.
+     * Previous registration for the same torrent, if any, is replaced.
+     *
+     * @param demand Provides the current demand of the session in peer connections
+     * @since 1.8
+     */
+    void register(TorrentId torrentId, ConnectionDemand demand);
+
+    /**
+     * Get the maximum number of peer connections, that the torrent is currently allowed to have.
+     *
+     * @since 1.8
+     */
+    int getAllocation(TorrentId torrentId);
+
+    /**
+     * @return Snapshot of current allocations for all active torrents
+     * @since 1.8
+     */
+    Map<TorrentId, Integer> getAllocations();
+}
@@ -27,8 +27,13 @@ public interface IPeerCache {
 
     /**
      * Create a new entry or update an existing one for the given peer.
+     * Only the peer's address and options are cached.
      *
-     * @return New or existing entry
+     * <p>Since 1.8, the cache does not keep peer instances, so the given peer is returned as is.
+     * Subsequent lookups via {@link #getPeerForAddress(InetSocketAddress)} return a new peer instance
+     * with the cached options.
+     *
+     * @return The given peer
      * @since 1.6
      */
     Peer store(Peer peer);
@@ -40,4 +45,19 @@ public interface IPeerCache {
      * @since 1.2
      */
     Peer getPeerForAddress(InetSocketAddress address);
+
+    /**
+     * @return Number of peers currently in the cache
+     * @since 1.8
+     */
+    int size();
+
+    /**
+     * Get the total number of peers, that have been evicted from the cache due to its' size limit.
+     * Can be sampled periodically to calculate the eviction rate.
+     *
+     * @return Total number of evicted peers since the cache has been created
+     * @since 1.8
+     */
+    long getEvictedCount();
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.peer;
+
+import bt.net.Peer;
+
+import java.time.Duration;
+
+/**
+ * Keeps track of the quality of peers, known to the current runtime.
+ * Peer scores are used to prioritize outgoing connections to peers, that are likely to be the most useful.
+ *
+ * @since 1.8
+ */
+public interface IPeerScoreboard {
+
+    /**
+     * Called when a peer has been discovered via some peer source.
+     *
+     * @since 1.8
+     */
+    void onPeerDiscovered(Peer peer, PeerSourceType sourceType);
+
+    /**
+     * Called when an outgoing connection to a peer has been established, and handshake has been completed.
+     *
+     * @param latency Time spent on establishing the connection and performing the handshake
+     * @since 1.8
+     */
+    void onConnectionEstablished(Peer peer, Duration latency);
+
+    /**
+     * Called when an attempt to establish an outgoing connection to a peer has failed.
+     *
+     * @since 1.8
+     */
+    void onConnectionFailed(Peer peer);
+
+    /**
+     * Called when a peer has left the torrent processing session.
+     *
+     * @param downloaded Number of bytes received from the peer during the session
+     * @param uploaded Number of bytes sent to the peer during the session
+     * @param duration Session duration
+     * @since 1.8
+     */
+    void onSessionFinished(Peer peer, long downloaded, long uploaded, Duration duration);
+
+    /**
+     * Get peer's score. Peers with higher scores are expected to be more useful.
+     *
+     * @return Non-negative score; peers, that nothing is known about, have a score of zero
+     * @since 1.8
+     */
+    double getScore(Peer peer);
+}
@@ -18,23 +18,45 @@ package bt.peer;
 
 import bt.net.InetPeer;
 import bt.net.Peer;
-import bt.net.PeerId;
+import bt.runtime.Config;
+import com.google.inject.Inject;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Bounded cache of known peers.
+ *
+ * Peers are stored in a number of independently locked stripes, each being an LRU map
+ * from a compact representation of peer's address to peer's options.
+ * When the capacity is exceeded, least recently used peers are evicted.
+ */
 public class PeerCache implements IPeerCache {
-    // all known peers (lookup by inet address)
-    private final ConcurrentMap<InetSocketAddress, UpdatablePeer> knownPeers;
-    private final ReentrantLock peerLock;
 
-    PeerCache() {
-        this.knownPeers = new ConcurrentHashMap<>();
-        this.peerLock = new ReentrantLock();
+    private static final int STRIPES_COUNT = 16;
+
+    private final Stripe[] stripes;
+    private final AtomicLong evictedCount;
+
+    @Inject
+    PeerCache(Config config) {
+        this(config.getMaxPeerCacheSize());
+    }
+
+    PeerCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+        }
+        int stripeCapacity = (maxSize + STRIPES_COUNT - 1) / STRIPES_COUNT;
+        this.evictedCount = new AtomicLong();
+        this.stripes = new Stripe[STRIPES_COUNT];
+        for (int i = 0; i < STRIPES_COUNT; i++) {
+            stripes[i] = new Stripe(stripeCapacity, evictedCount);
+        }
     }
 
     // need to do this atomically:
@@ -42,88 +64,139 @@ public class PeerCache implements IPeerCache {
     //   might coincide with querying peer sources (overwriting options, etc)
     @Override
     public Peer store(Peer peer) {
-        peerLock.lock();
+        AddressKey key = AddressKey.of(peer.getInetSocketAddress());
+        Stripe stripe = getStripe(key);
+        stripe.lock.lock();
         try {
-            UpdatablePeer newPeer = new UpdatablePeer(peer);
-            UpdatablePeer existing = knownPeers.putIfAbsent(peer.getInetSocketAddress(), newPeer);
-            if (existing != null) {
-                existing.setOptions(peer.getOptions());
-            }
-            return (existing == null) ? newPeer : existing;
+            stripe.entries.put(key, peer.getOptions());
         } finally {
-            peerLock.unlock();
+            stripe.lock.unlock();
         }
+        return peer;
     }
 
     @Override
     public Peer getPeerForAddress(InetSocketAddress address) {
-        Peer existing = knownPeers.get(address);
-        if (existing == null) {
-            peerLock.lock();
+        AddressKey key = AddressKey.of(address);
+        Stripe stripe = getStripe(key);
+        PeerOptions options;
+        stripe.lock.lock();
+        try {
+            options = stripe.entries.get(key);
+            if (options == null) {
+                options = PeerOptions.defaultOptions();
+                stripe.entries.put(key, options);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        return new InetPeer(address, options);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
             try {
-                existing = knownPeers.get(address);
-                if (existing == null) {
-                    existing = store(new InetPeer(address));
-                }
+                size += stripe.entries.size();
             } finally {
-                peerLock.unlock();
+                stripe.lock.unlock();
             }
         }
-        return existing;
+        return size;
     }
 
-    private static class UpdatablePeer implements Peer {
-    private final Peer delegate;
-    private volatile PeerOptions options;
+    @Override
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
 
-    UpdatablePeer(Peer delegate) {
-            super();
-            this.delegate = delegate;
-            this.options = delegate.getOptions();
-        }
+    private Stripe getStripe(AddressKey key) {
+        return stripes[(key.hashCode() & 0x7FFFFFFF) % STRIPES_COUNT];
+    }
 
-        @Override
-        public InetSocketAddress getInetSocketAddress() {
-            return delegate.getInetSocketAddress();
+    private static class Stripe {
+
+        private final ReentrantLock lock;
+        private final Map<AddressKey, PeerOptions> entries;
+
+        Stripe(int capacity, AtomicLong evictedCount) {
+            this.lock = new ReentrantLock();
+            // access-ordered map, that evicts the least recently used entry when capacity is exceeded
+            this.entries = new LinkedHashMap<AddressKey, PeerOptions>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<AddressKey, PeerOptions> eldest) {
+                    if (size() > capacity) {
+                        evictedCount.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
         }
+    }
 
-        @Override
-        public InetAddress getInetAddress() {
-            return delegate.getInetAddress();
-        }
+    /**
+     * Compact representation of peer's internet address and port:
+     * up to 128 bits of address in two primitive words, plus port and address family.
+     */
+    private static class AddressKey {
 
-        @Override
-        public int getPort() {
-            return delegate.getPort();
-        }
+        private static final int IPV6_FLAG = 1 << 16;
 
-        @Override
-        public Optional<PeerId> getPeerId() {
-            return delegate.getPeerId();
-        }
+        private final long high;
+        private final long low;
+        private final int portAndFamily;
 
-        @Override
-        public PeerOptions getOptions() {
-            return options;
+        private AddressKey(long high, long low, int portAndFamily) {
+            this.high = high;
+            this.low = low;
+            this.portAndFamily = portAndFamily;
         }
 
-        void setOptions(PeerOptions options) {
-            this.options = options;
+        static AddressKey of(InetSocketAddress socketAddress) {
+            InetAddress inetAddress = socketAddress.getAddress();
+            if (inetAddress == null) {
+                throw new IllegalArgumentException("Unresolved address: " + socketAddress);
+            }
+            byte[] address = inetAddress.getAddress();
+            int port = socketAddress.getPort();
+            if (address.length == 4) {
+                return new AddressKey(0, readInt(address, 0) & 0xFFFFFFFFL, port);
+            } else {
+                long high = ((long) readInt(address, 0) << 32) | (readInt(address, 4) & 0xFFFFFFFFL);
+                long low = ((long) readInt(address, 8) << 32) | (readInt(address, 12) & 0xFFFFFFFFL);
+                return new AddressKey(high, low, port | IPV6_FLAG);
+            }
         }
 
-        @Override
-        public int hashCode() {
-            return delegate.hashCode();
+        private static int readInt(byte[] bytes, int offset) {
+            return ((bytes[offset] & 0xFF) << 24)
+                    | ((bytes[offset + 1] & 0xFF) << 16)
+                    | ((bytes[offset + 2] & 0xFF) << 8)
+                    | (bytes[offset + 3] & 0xFF);
         }
 
         @Override
-        public boolean equals(Object object) {
-            return delegate.equals(object);
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            AddressKey that = (AddressKey) o;
+            return high == that.high && low == that.low && portAndFamily == that.portAndFamily;
         }
 
         @Override
-        public String toString() {
-            return delegate.toString();
+        public int hashCode() {
+            int result = Long.hashCode(high);
+            result = 31 * result + Long.hashCode(low);
+            result = 31 * result + portAndFamily;
+            // spread bits, so that adjacent addresses end up in different stripes
+            return result ^ (result >>> 16);
         }
     }
 }
@@ -58,6 +58,7 @@ public class PeerRegistry implements IPeerRegistry {
 
     private final Peer localPeer;
     private final IPeerCache cache;
+    private final IPeerScoreboard scoreboard;
 
     private TorrentRegistry torrentRegistry;
     private ITrackerService trackerService;
@@ -75,11 +76,13 @@ public class PeerRegistry implements IPeerRegistry {
                         ITrackerService trackerService,
                         EventSink eventSink,
                         IPeerCache cache,
+                        IPeerScoreboard scoreboard,
                         Set<PeerSourceFactory> extraPeerSourceFactories,
                         Config config) {
 
         this.localPeer = new InetPeer(config.getAcceptorAddress(), config.getAcceptorPort(), idService.getLocalPeerId());
         this.cache = cache;
+        this.scoreboard = scoreboard;
 
         this.torrentRegistry = torrentRegistry;
         this.trackerService = trackerService;
@@ -193,7 +196,7 @@ public class PeerRegistry implements IPeerRegistry {
                 while (iter.hasNext()) {
                     Peer peer = iter.next();
                     if (!addedPeers.contains(peer)) {
-                        addPeer(torrentId, peer);
+                        addPeer(torrentId, peer, peerSource.getType());
                         addedPeers.add(peer);
                     }
                     iter.remove();
@@ -206,10 +209,15 @@ public class PeerRegistry implements IPeerRegistry {
 
     @Override
     public void addPeer(TorrentId torrentId, Peer peer) {
+        addPeer(torrentId, peer, PeerSourceType.OTHER);
+    }
+
+    private void addPeer(TorrentId torrentId, Peer peer, PeerSourceType sourceType) {
         if (isLocal(peer)) {
             return;
         }
         cache.store(peer);
+        scoreboard.onPeerDiscovered(peer, sourceType);
         eventSink.firePeerDiscovered(torrentId, peer);
     }
 
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.peer;
+
+import bt.net.Peer;
+import bt.runtime.Config;
+import bt.service.IRuntimeLifecycleBinder;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Default peer scoreboard, that evaluates peers based on their discovery source,
+ * connection success rate, handshake latency and observed throughput.
+ *
+ * If {@link Config#getPeerScoreboardFile()} is set, peer scores are loaded upon runtime startup
+ * and saved upon runtime shutdown.
+ *
+ *<p><b>Note that this class implements a service.
+ * Hence, is not a part of the public API and is a subject to change.</b></p>
+ *
+ * @since 1.8
+ */
+public class PeerScoreboard implements IPeerScoreboard {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeerScoreboard.class);
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_ENTRIES = 100_000;
+    // weight of the most recent observation in moving averages
+    private static final double SMOOTHING_FACTOR = 0.3;
+    // latency, that is assumed for peers that we haven't connected to yet
+    private static final long DEFAULT_LATENCY_MILLIS = 1000;
+    // latency, that halves the peer's score; reachability is considered more important than latency
+    private static final long LATENCY_SCALE_MILLIS = 5000;
+
+    private final ConcurrentMap<InetSocketAddress, PeerScore> scores;
+    private final Path storageFile;
+
+    @Inject
+    public PeerScoreboard(IRuntimeLifecycleBinder lifecycleBinder, Config config) {
+        this.scores = new ConcurrentHashMap<>();
+        this.storageFile = config.getPeerScoreboardFile();
+
+        if (storageFile != null) {
+            lifecycleBinder.onStartup("Load peer scores", this::load);
+            lifecycleBinder.onShutdown("Save peer scores", this::save);
+        }
+    }
+
+    @Override
+    public void onPeerDiscovered(Peer peer, PeerSourceType sourceType) {
+        getOrCreateScore(peer).onDiscovered(sourceType);
+    }
+
+    @Override
+    public void onConnectionEstablished(Peer peer, Duration latency) {
+        getOrCreateScore(peer).onConnectionEstablished(latency.toMillis());
+    }
+
+    @Override
+    public void onConnectionFailed(Peer peer) {
+        getOrCreateScore(peer).onConnectionFailed();
+    }
+
+    @Override
+    public void onSessionFinished(Peer peer, long downloaded, long uploaded, Duration duration) {
+        long seconds = duration.getSeconds();
+        if (seconds > 0) {
+            getOrCreateScore(peer).onSessionFinished(downloaded / seconds, uploaded / seconds);
+        }
+    }
+
+    @Override
+    public double getScore(Peer peer) {
+        PeerScore score = scores.get(peer.getInetSocketAddress());
+        return (score == null) ? 0 : score.getScore();
+    }
+
+    private PeerScore getOrCreateScore(Peer peer) {
+        InetSocketAddress address = peer.getInetSocketAddress();
+        PeerScore score = scores.get(address);
+        if (score == null) {
+            if (scores.size() >= MAX_ENTRIES) {
+                evictStaleEntries();
+            }
+            score = new PeerScore();
+            PeerScore existing = scores.putIfAbsent(address, score);
+            if (existing != null) {
+                score = existing;
+            }
+        }
+        return score;
+    }
+
+    // remove 10% of the least recently updated entries
+    private synchronized void evictStaleEntries() {
+        if (scores.size() < MAX_ENTRIES) {
+            return;
+        }
+        List<Map.Entry<InetSocketAddress, PeerScore>> entries = new ArrayList<>(scores.entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().getLastUpdated()));
+        entries.subList(0, entries.size() / 10).forEach(e -> scores.remove(e.getKey(), e.getValue()));
+    }
+
+    private void load() {
+        if (!Files.exists(storageFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(storageFile)))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                LOGGER.warn("Unsupported version of peer scores file: {}. Will not load peer scores from {}",
+                        version, storageFile);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] address = new byte[in.readUnsignedByte()];
+                in.readFully(address);
+                int port = in.readUnsignedShort();
+                PeerScore score = PeerScore.readFrom(in);
+                scores.putIfAbsent(new InetSocketAddress(InetAddress.getByAddress(address), port), score);
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Loaded {} peer scores from {}", count, storageFile);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to load peer scores from " + storageFile, e);
+        }
+    }
+
+    private void save() {
+        List<Map.Entry<InetSocketAddress, PeerScore>> entries = new ArrayList<>(scores.entrySet());
+        try {
+            Path parent = storageFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tempFile = storageFile.resolveSibling(storageFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<InetSocketAddress, PeerScore> entry : entries) {
+                    byte[] address = entry.getKey().getAddress().getAddress();
+                    out.writeByte(address.length);
+                    out.write(address);
+                    out.writeShort(entry.getKey().getPort());
+                    entry.getValue().writeTo(out);
+                }
+            }
+            Files.move(tempFile, storageFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Saved {} peer scores to {}", entries.size(), storageFile);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to save peer scores to " + storageFile, e);
+        }
+    }
+
+    private static double getSourceWeight(PeerSourceType sourceType) {
+        switch (sourceType) {
+            case LSD: {
+                // peers in the local network are likely to be the fastest ones
+                return 1.0;
+            }
+            case PEX: {
+                // peers, that are known to be connected to other peers in the swarm
+                return 0.8;
+            }
+            case TRACKER: {
+                return 0.7;
+            }
+            case DHT: {
+                return 0.6;
+            }
+            default: {
+                return 0.5;
+            }
+        }
+    }
+
+    private static class PeerScore {
+
+        private PeerSourceType sourceType;
+        private int connectionAttempts;
+        private int connectionSuccesses;
+        private double latencyMillis;
+        private double downloadRate;
+        private double uploadRate;
+        private volatile long lastUpdated;
+
+        // cached value
+        private volatile double score;
+
+        PeerScore() {
+            this.sourceType = PeerSourceType.OTHER;
+            this.latencyMillis = DEFAULT_LATENCY_MILLIS;
+            update();
+        }
+
+        synchronized void onDiscovered(PeerSourceType sourceType) {
+            // prefer the more trustworthy source, if the peer has been discovered via several sources
+            if (getSourceWeight(sourceType) > getSourceWeight(this.sourceType)) {
+                this.sourceType = sourceType;
+                update();
+            }
+        }
+
+        synchronized void onConnectionEstablished(long latencyMillis) {
+            connectionAttempts++;
+            connectionSuccesses++;
+            this.latencyMillis = (connectionSuccesses == 1) ? latencyMillis : smooth(this.latencyMillis, latencyMillis);
+            update();
+        }
+
+        synchronized void onConnectionFailed() {
+            connectionAttempts++;
+            update();
+        }
+
+        synchronized void onSessionFinished(double downloadRate, double uploadRate) {
+            this.downloadRate = smooth(this.downloadRate, downloadRate);
+            this.uploadRate = smooth(this.uploadRate, uploadRate);
+            update();
+        }
+
+        private static double smooth(double average, double value) {
+            return average + SMOOTHING_FACTOR * (value - average);
+        }
+
+        private void update() {
+            // Laplace smoothing: peers we know nothing about have a success rate of 0.5
+            double successRate = (connectionSuccesses + 1d) / (connectionAttempts + 2d);
+            double latencyFactor = 1 / (1 + latencyMillis / LATENCY_SCALE_MILLIS);
+            double throughputFactor = Math.log10(1 + (downloadRate + uploadRate) / 1024);
+            this.score = getSourceWeight(sourceType) * successRate * latencyFactor * (1 + throughputFactor);
+            this.lastUpdated = System.currentTimeMillis();
+        }
+
+        double getScore() {
+            return score;
+        }
+
+        long getLastUpdated() {
+            return lastUpdated;
+        }
+
+        synchronized void writeTo(DataOutputStream out) throws IOException {
+            out.writeByte(sourceType.ordinal());
+            out.writeInt(connectionAttempts);
+            out.writeInt(connectionSuccesses);
+            out.writeDouble(latencyMillis);
+            out.writeDouble(downloadRate);
+            out.writeDouble(uploadRate);
+            out.writeLong(lastUpdated);
+        }
+
+        static PeerScore readFrom(DataInputStream in) throws IOException {
+            PeerScore score = new PeerScore();
+            int sourceType = in.readUnsignedByte();
+            score.sourceType = (sourceType < PeerSourceType.values().length) ?
+                    PeerSourceType.values()[sourceType] : PeerSourceType.OTHER;
+            score.connectionAttempts = in.readInt();
+            score.connectionSuccesses = in.readInt();
+            score.latencyMillis = in.readDouble();
+            score.downloadRate = in.readDouble();
+            score.uploadRate = in.readDouble();
+            score.update();
+            score.lastUpdated = in.readLong();
+            return score;
+        }
+    }
+}
@@ -43,4 +43,15 @@ public interface PeerSource {
      * @since 1.0
      */
     Collection<Peer> getPeers();
+
+    /**
+     * Get the kind of this peer source.
+     * Used for bookkeeping purposes, e.g. when evaluating the quality of discovered peers.
+     *
+     * @return Kind of peer source
+     * @since 1.8
+     */
+    default PeerSourceType getType() {
+        return PeerSourceType.OTHER;
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.peer;
+
+/**
+ * Kind of source, that a peer has been discovered through.
+ *
+ * @since 1.8
+ */
+public enum PeerSourceType {
+
+    /**
+     * @since 1.8
+     */
+    TRACKER,
+
+    /**
+     * Mainline DHT (BEP-5)
+     *
+     * @since 1.8
+     */
+    DHT,
+
+    /**
+     * Peer Exchange (BEP-11)
+     *
+     * @since 1.8
+     */
+    PEX,
+
+    /**
+     * Local Service Discovery (BEP-14)
+     *
+     * @since 1.8
+     */
+    LSD,
+
+    /**
+     * Any other source, including peers that have been added directly via {@link IPeerRegistry#addPeer}
+     *
+     * @since 1.8
+     */
+    OTHER
+}
@@ -68,6 +68,11 @@ class TrackerPeerSource extends ScheduledPeerSource {
         }
     }
 
+    @Override
+    public PeerSourceType getType() {
+        return PeerSourceType.TRACKER;
+    }
+
     @Override
     public String toString() {
         return "TrackerPeerSource {" + tracker + "}";
@@ -22,6 +22,7 @@ import bt.net.InetPeer;
 import bt.net.Peer;
 import bt.peer.PeerSource;
 import bt.peer.PeerSourceFactory;
+import bt.peer.PeerSourceType;
 import bt.service.IRuntimeLifecycleBinder;
 import bt.service.LifecycleBinding;
 import com.google.inject.Inject;
@@ -136,6 +137,11 @@ public class LocalServiceDiscoveryPeerSourceFactory implements PeerSourceFactory
                 updated = false;
                 return peers;
             }
+
+            @Override
+            public PeerSourceType getType() {
+                return PeerSourceType.LSD;
+            }
         };
     }
 }
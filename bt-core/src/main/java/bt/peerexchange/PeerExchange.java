@@ -16,7 +16,7 @@
 
 package bt.peerexchange;
 
-import bt.BtException;
+import bt.bencoding.BEEncoder;
 import bt.bencoding.model.BEMap;
 import bt.bencoding.model.BEObject;
 import bt.bencoding.model.BEString;
@@ -27,9 +27,7 @@ import bt.protocol.extended.ExtendedMessage;
 import bt.tracker.CompactPeerInfo;
 import bt.tracker.CompactPeerInfo.AddressType;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -116,7 +114,10 @@ class PeerExchange extends ExtendedMessage {
         return dropped;
     }
 
-    void writeTo(OutputStream out) throws IOException {
+    /**
+     * @return true, if the message has been written; false, if buffer does not have enough space remaining
+     */
+    boolean writeTo(ByteBuffer buffer) {
 
         if (message == null) {
             message = new BEMap(null, new HashMap<String, BEObject<?>>() {{
@@ -132,7 +133,7 @@ class PeerExchange extends ExtendedMessage {
                 put(DROPPED_IPV6_KEY, encodePeers(filterByAddressType(dropped, AddressType.IPV6)));
             }});
         }
-        message.writeTo(out);
+        return BEEncoder.encoder().encode(message, buffer);
     }
 
     private static Collection<Peer> filterByAddressType(Collection<Peer> peers, AddressType addressType) {
@@ -142,34 +143,28 @@ class PeerExchange extends ExtendedMessage {
     }
 
     private static BEString encodePeers(Collection<Peer> peers) {
-
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(peers.stream()
+                .mapToInt(peer -> peer.getInetAddress().getAddress().length + 2)
+                .sum());
         for (Peer peer : peers) {
-            try {
-                bos.write(peer.getInetAddress().getAddress());
-                bos.write((peer.getPort() & 0xFF00) >> 8);
-                bos.write(peer.getPort() & 0x00FF);
-
-            } catch (IOException e) {
-                // won't happen
-                throw new BtException("Unexpected I/O exception", e);
-            }
+            buffer.put(peer.getInetAddress().getAddress());
+            buffer.putShort((short) peer.getPort());
         }
-        return new BEString(bos.toByteArray());
+        return new BEString(buffer.array());
     }
 
     private static BEString encodePeerOptions(Collection<Peer> peers) {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] options = new byte[peers.size()];
+        int i = 0;
         for (Peer peer : peers) {
-            byte options = 0;
             EncryptionPolicy encryptionPolicy = peer.getOptions().getEncryptionPolicy();
             if (encryptionPolicy == EncryptionPolicy.PREFER_ENCRYPTED
                     || encryptionPolicy == EncryptionPolicy.REQUIRE_ENCRYPTED) {
-                options |= CRYPTO_FLAG;
+                options[i] |= CRYPTO_FLAG;
             }
-            bos.write(options);
+            i++;
         }
-        return new BEString(bos.toByteArray());
+        return new BEString(options);
     }
 
     public static class Builder {
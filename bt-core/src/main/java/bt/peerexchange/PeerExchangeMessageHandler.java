@@ -22,8 +22,6 @@ import bt.protocol.DecodingContext;
 import bt.protocol.EncodingContext;
 import bt.protocol.handler.MessageHandler;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
@@ -55,25 +53,12 @@ class PeerExchangeMessageHandler implements MessageHandler<PeerExchange> {
             BEMap messageContent = parser.readMap();
             PeerExchange message = PeerExchange.parse(messageContent);
             context.setMessage(message);
-            return messageContent.getContent().length;
+            return messageContent.getContentLength();
         }
     }
 
     @Override
     public boolean encode(EncodingContext context, PeerExchange message, ByteBuffer buffer) {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        try {
-            message.writeTo(bos);
-        } catch (IOException e) {
-            // can't happen
-        }
-
-        byte[] payload = bos.toByteArray();
-        if (buffer.remaining() < payload.length) {
-            return false;
-        }
-
-        buffer.put(payload);
-        return true;
+        return message.writeTo(buffer);
     }
 }
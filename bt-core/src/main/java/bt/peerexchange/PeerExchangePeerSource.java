@@ -18,6 +18,7 @@ package bt.peerexchange;
 
 import bt.net.Peer;
 import bt.peer.PeerSource;
+import bt.peer.PeerSourceType;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -76,4 +77,9 @@ class PeerExchangePeerSource implements PeerSource {
     public Collection<Peer> getPeers() {
         return peers;
     }
+
+    @Override
+    public PeerSourceType getType() {
+        return PeerSourceType.PEX;
+    }
 }
@@ -18,12 +18,15 @@ package bt.processor;
 
 import bt.event.EventSink;
 import bt.event.EventSource;
+import bt.metainfo.IMetadataCache;
 import bt.metainfo.IMetadataService;
 import bt.module.ClientExecutor;
 import bt.module.MessagingAgents;
+import bt.net.IConnectionAllocator;
 import bt.net.IConnectionSource;
 import bt.net.IMessageDispatcher;
 import bt.peer.IPeerRegistry;
+import bt.peer.IPeerScoreboard;
 import bt.processor.magnet.FetchMetadataStage;
 import bt.processor.magnet.InitializeMagnetTorrentProcessingStage;
 import bt.processor.magnet.MagnetContext;
@@ -37,6 +40,7 @@ import bt.processor.torrent.SeedStage;
 import bt.processor.torrent.TorrentContext;
 import bt.processor.torrent.TorrentContextFinalizer;
 import bt.runtime.Config;
+import bt.torrent.IUploadSlotPool;
 import bt.torrent.TorrentRegistry;
 import bt.torrent.data.IDataWorkerFactory;
 import bt.tracker.ITrackerService;
@@ -55,9 +59,13 @@ public class TorrentProcessorFactory implements ProcessorFactory {
     private ExecutorService executor;
     private IPeerRegistry peerRegistry;
     private IConnectionSource connectionSource;
+    private IPeerScoreboard scoreboard;
+    private IConnectionAllocator connectionAllocator;
+    private IUploadSlotPool uploadSlotPool;
     private IMessageDispatcher messageDispatcher;
     private Set<Object> messagingAgents;
     private IMetadataService metadataService;
+    private IMetadataCache metadataCache;
     private EventSource eventSource;
     private EventSink eventSink;
     private Config config;
@@ -71,9 +79,13 @@ public class TorrentProcessorFactory implements ProcessorFactory {
                                    @ClientExecutor ExecutorService executor,
                                    IPeerRegistry peerRegistry,
                                    IConnectionSource connectionSource,
+                                   IPeerScoreboard scoreboard,
+                                   IConnectionAllocator connectionAllocator,
+                                   IUploadSlotPool uploadSlotPool,
                                    IMessageDispatcher messageDispatcher,
                                    @MessagingAgents Set<Object> messagingAgents,
                                    IMetadataService metadataService,
+                                   IMetadataCache metadataCache,
                                    EventSource eventSource,
                                    EventSink eventSink,
                                    Config config) {
@@ -83,9 +95,13 @@ public class TorrentProcessorFactory implements ProcessorFactory {
         this.executor = executor;
         this.peerRegistry = peerRegistry;
         this.connectionSource = connectionSource;
+        this.scoreboard = scoreboard;
+        this.connectionAllocator = connectionAllocator;
+        this.uploadSlotPool = uploadSlotPool;
         this.messageDispatcher = messageDispatcher;
         this.messagingAgents = messagingAgents;
         this.metadataService = metadataService;
+        this.metadataCache = metadataCache;
         this.eventSource = eventSource;
         this.eventSink = eventSink;
         this.config = config;
@@ -114,7 +130,7 @@ public class TorrentProcessorFactory implements ProcessorFactory {
                 dataWorkerFactory, eventSink, config);
 
         ProcessingStage<TorrentContext> stage1 = new CreateSessionStage<>(stage2, torrentRegistry, eventSource,
-                connectionSource, messageDispatcher, messagingAgents, config);
+                connectionSource, scoreboard, connectionAllocator, uploadSlotPool, messageDispatcher, messagingAgents, config);
 
         ProcessingStage<TorrentContext> stage0 = new FetchTorrentStage(stage1);
 
@@ -132,11 +148,11 @@ public class TorrentProcessorFactory implements ProcessorFactory {
         ProcessingStage<MagnetContext> stage2 = new InitializeMagnetTorrentProcessingStage(stage3, torrentRegistry,
                 dataWorkerFactory, eventSink, config);
 
-        ProcessingStage<MagnetContext> stage1 = new FetchMetadataStage(stage2, metadataService, torrentRegistry,
+        ProcessingStage<MagnetContext> stage1 = new FetchMetadataStage(stage2, metadataService, metadataCache, torrentRegistry,
                 trackerService, peerRegistry, config);
 
         ProcessingStage<MagnetContext> stage0 = new CreateSessionStage<>(stage1, torrentRegistry, eventSource,
-                connectionSource, messageDispatcher, messagingAgents, config);
+                connectionSource, scoreboard, connectionAllocator, uploadSlotPool, messageDispatcher, messagingAgents, config);
 
         return new ChainProcessor<>(stage0, executor, new TorrentContextFinalizer<>(torrentRegistry));
     }
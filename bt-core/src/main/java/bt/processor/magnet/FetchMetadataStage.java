@@ -16,6 +16,8 @@
 
 package bt.processor.magnet;
 
+import bt.BtException;
+import bt.metainfo.IMetadataCache;
 import bt.metainfo.IMetadataService;
 import bt.metainfo.Torrent;
 import bt.metainfo.TorrentFile;
@@ -33,6 +35,8 @@ import bt.torrent.messaging.BitfieldCollectingConsumer;
 import bt.torrent.messaging.MetadataConsumer;
 import bt.tracker.AnnounceKey;
 import bt.tracker.ITrackerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.util.List;
@@ -40,7 +44,10 @@ import java.util.Optional;
 
 public class FetchMetadataStage extends TerminateOnErrorProcessingStage<MagnetContext> {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(FetchMetadataStage.class);
+
     private IMetadataService metadataService;
+    private IMetadataCache metadataCache;
     private TorrentRegistry torrentRegistry;
     private ITrackerService trackerService;
     private IPeerRegistry peerRegistry;
@@ -48,12 +55,14 @@ public class FetchMetadataStage extends TerminateOnErrorProcessingStage<MagnetCo
 
     public FetchMetadataStage(ProcessingStage<MagnetContext> next,
                               IMetadataService metadataService,
+                              IMetadataCache metadataCache,
                               TorrentRegistry torrentRegistry,
                               ITrackerService trackerService,
                               IPeerRegistry peerRegistry,
                               Config config) {
         super(next);
         this.metadataService = metadataService;
+        this.metadataCache = metadataCache;
         this.torrentRegistry = torrentRegistry;
         this.trackerService = trackerService;
         this.peerRegistry = peerRegistry;
@@ -64,8 +73,13 @@ public class FetchMetadataStage extends TerminateOnErrorProcessingStage<MagnetCo
     protected void doExecute(MagnetContext context) {
         TorrentId torrentId = context.getMagnetUri().getTorrentId();
 
-        MetadataConsumer metadataConsumer = new MetadataConsumer(metadataService, torrentId, config);
-        context.getRouter().registerMessagingAgent(metadataConsumer);
+        Optional<Torrent> cachedTorrent = getCachedTorrent(torrentId);
+
+        MetadataConsumer metadataConsumer = null;
+        if (!cachedTorrent.isPresent()) {
+            metadataConsumer = new MetadataConsumer(metadataService, torrentId, config);
+            context.getRouter().registerMessagingAgent(metadataConsumer);
+        }
 
         // need to also receive Bitfields and Haves (without validation for the number of pieces...)
         BitfieldCollectingConsumer bitfieldConsumer = new BitfieldCollectingConsumer();
@@ -85,7 +99,13 @@ public class FetchMetadataStage extends TerminateOnErrorProcessingStage<MagnetCo
 //        TrackerAnnouncer announcer = new TrackerAnnouncer(trackerService, torrentId, null);
 //        announcer.start();
 
-        Torrent torrent = metadataConsumer.waitForTorrent();
+        Torrent torrent;
+        if (cachedTorrent.isPresent()) {
+            torrent = cachedTorrent.get();
+        } else {
+            torrent = metadataConsumer.waitForTorrent();
+            metadataCache.put(torrentId, torrent.getSource().getExchangedMetadata());
+        }
         torrent = amendTorrent(torrent, context.getMagnetUri().getDisplayName());
 
         context.setTorrent(torrent);
@@ -93,6 +113,21 @@ public class FetchMetadataStage extends TerminateOnErrorProcessingStage<MagnetCo
         context.setBitfieldConsumer(bitfieldConsumer);
     }
 
+    private Optional<Torrent> getCachedTorrent(TorrentId torrentId) {
+        return metadataCache.get(torrentId).flatMap(metadata -> {
+            try {
+                Torrent torrent = metadataService.fromByteArray(metadata);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Using cached metadata for torrent: {}", torrentId);
+                }
+                return Optional.of(torrent);
+            } catch (BtException e) {
+                LOGGER.warn("Failed to build torrent from cached metadata: " + torrentId, e);
+                return Optional.empty();
+            }
+        });
+    }
+
     private TorrentDescriptor getDescriptor(TorrentId torrentId) {
         return torrentRegistry.getDescriptor(torrentId)
                 .orElseThrow(() -> new IllegalStateException("No descriptor present for torrent ID: " + torrentId));
@@ -34,6 +34,7 @@ import bt.torrent.selector.IncompletePiecesValidator;
 import bt.torrent.selector.PieceSelector;
 import bt.torrent.selector.ValidatingSelector;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -75,7 +76,7 @@ public class ChooseFilesStage<C extends TorrentContext> extends TerminateOnError
         }
 
         Bitfield bitfield = descriptor.getDataDescriptor().getBitfield();
-        Set<Integer> validPieces = getValidPieces(descriptor.getDataDescriptor(), selectedFiles);
+        BitSet validPieces = getValidPieces(descriptor.getDataDescriptor(), selectedFiles);
         PieceSelector selector = createSelector(context.getPieceSelector(), bitfield, validPieces);
         BitfieldBasedStatistics pieceStatistics = context.getPieceStatistics();
         Assignments assignments = new Assignments(bitfield, selector, pieceStatistics, config);
@@ -84,20 +85,21 @@ public class ChooseFilesStage<C extends TorrentContext> extends TerminateOnError
         context.setAssignments(assignments);
     }
 
-    private void updateSkippedPieces(Bitfield bitfield, Set<Integer> validPieces) {
+    private void updateSkippedPieces(Bitfield bitfield, BitSet validPieces) {
         IntStream.range(0, bitfield.getPiecesTotal()).forEach(pieceIndex -> {
-            if (!validPieces.contains(pieceIndex)) {
+            if (!validPieces.get(pieceIndex)) {
                 bitfield.skip(pieceIndex);
             }
         });
     }
 
-    private Set<Integer> getValidPieces(DataDescriptor dataDescriptor, Set<TorrentFile> selectedFiles) {
-        Set<Integer> validPieces = new HashSet<>();
-        IntStream.range(0, dataDescriptor.getBitfield().getPiecesTotal()).forEach(pieceIndex -> {
+    private BitSet getValidPieces(DataDescriptor dataDescriptor, Set<TorrentFile> selectedFiles) {
+        int piecesTotal = dataDescriptor.getBitfield().getPiecesTotal();
+        BitSet validPieces = new BitSet(piecesTotal);
+        IntStream.range(0, piecesTotal).forEach(pieceIndex -> {
             for (TorrentFile file : dataDescriptor.getFilesForPiece(pieceIndex)) {
                 if (selectedFiles.contains(file)) {
-                    validPieces.add(pieceIndex);
+                    validPieces.set(pieceIndex);
                     break;
                 }
             }
@@ -107,9 +109,9 @@ public class ChooseFilesStage<C extends TorrentContext> extends TerminateOnError
 
     private PieceSelector createSelector(PieceSelector selector,
                                          Bitfield bitfield,
-                                         Set<Integer> selectedFilesPieces) {
+                                         BitSet selectedFilesPieces) {
         Predicate<Integer> incompletePiecesValidator = new IncompletePiecesValidator(bitfield);
-        Predicate<Integer> selectedFilesValidator = selectedFilesPieces::contains;
+        Predicate<Integer> selectedFilesValidator = selectedFilesPieces::get;
         Predicate<Integer> validator = (pieceIndex) ->
                 selectedFilesValidator.test(pieceIndex) && incompletePiecesValidator.test(pieceIndex);
         return new ValidatingSelector(validator, selector);
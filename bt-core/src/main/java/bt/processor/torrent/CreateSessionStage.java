@@ -19,14 +19,17 @@ package bt.processor.torrent;
 import bt.data.Bitfield;
 import bt.event.EventSource;
 import bt.metainfo.TorrentId;
+import bt.net.IConnectionAllocator;
 import bt.net.IConnectionSource;
 import bt.net.IMessageDispatcher;
+import bt.peer.IPeerScoreboard;
 import bt.processor.TerminateOnErrorProcessingStage;
 import bt.processor.ProcessingStage;
 import bt.processor.listener.ProcessingEvent;
 import bt.runtime.Config;
 import bt.torrent.BitfieldBasedStatistics;
 import bt.torrent.DefaultTorrentSessionState;
+import bt.torrent.IUploadSlotPool;
 import bt.torrent.TorrentDescriptor;
 import bt.torrent.TorrentRegistry;
 import bt.torrent.messaging.Assignments;
@@ -44,6 +47,9 @@ public class CreateSessionStage<C extends TorrentContext> extends TerminateOnErr
     private TorrentRegistry torrentRegistry;
     private EventSource eventSource;
     private IConnectionSource connectionSource;
+    private IPeerScoreboard scoreboard;
+    private IConnectionAllocator connectionAllocator;
+    private IUploadSlotPool uploadSlotPool;
     private IMessageDispatcher messageDispatcher;
     private Set<Object> messagingAgents;
     private Config config;
@@ -52,6 +58,9 @@ public class CreateSessionStage<C extends TorrentContext> extends TerminateOnErr
                               TorrentRegistry torrentRegistry,
                               EventSource eventSource,
                               IConnectionSource connectionSource,
+                              IPeerScoreboard scoreboard,
+                              IConnectionAllocator connectionAllocator,
+                              IUploadSlotPool uploadSlotPool,
                               IMessageDispatcher messageDispatcher,
                               Set<Object> messagingAgents,
                               Config config) {
@@ -59,6 +68,9 @@ public class CreateSessionStage<C extends TorrentContext> extends TerminateOnErr
         this.torrentRegistry = torrentRegistry;
         this.eventSource = eventSource;
         this.connectionSource = connectionSource;
+        this.scoreboard = scoreboard;
+        this.connectionAllocator = connectionAllocator;
+        this.uploadSlotPool = uploadSlotPool;
         this.messageDispatcher = messageDispatcher;
         this.messagingAgents = messagingAgents;
         this.config = config;
@@ -75,7 +87,8 @@ public class CreateSessionStage<C extends TorrentContext> extends TerminateOnErr
         Supplier<Bitfield> bitfieldSupplier = context::getBitfield;
         Supplier<Assignments> assignmentsSupplier = context::getAssignments;
         Supplier<BitfieldBasedStatistics> statisticsSupplier = context::getPieceStatistics;
-        TorrentWorker torrentWorker = new TorrentWorker(torrentId, messageDispatcher, connectionSource, peerWorkerFactory,
+        TorrentWorker torrentWorker = new TorrentWorker(torrentId, messageDispatcher, connectionSource, scoreboard,
+                connectionAllocator, uploadSlotPool, peerWorkerFactory,
                 bitfieldSupplier, assignmentsSupplier, statisticsSupplier, eventSource, config);
 
         context.setState(new DefaultTorrentSessionState(descriptor, torrentWorker));
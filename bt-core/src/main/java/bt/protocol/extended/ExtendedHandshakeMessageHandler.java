@@ -17,6 +17,7 @@
 package bt.protocol.extended;
 
 import bt.BtException;
+import bt.bencoding.BEEncoder;
 import bt.bencoding.BEParser;
 import bt.bencoding.BEType;
 import bt.bencoding.model.BEInteger;
@@ -28,8 +29,6 @@ import bt.protocol.InvalidMessageException;
 import bt.protocol.DecodingContext;
 import bt.protocol.handler.MessageHandler;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
@@ -122,7 +121,7 @@ class ExtendedHandshakeMessageHandler implements MessageHandler<ExtendedHandshak
             Map<String, BEObject<?>> value = message.getValue();
             processTypeMapping(context.getPeer(), value.get(ExtendedHandshake.MESSAGE_TYPE_MAPPING_KEY));
             context.setMessage(new ExtendedHandshake(value));
-            return message.getContent().length;
+            return message.getContentLength();
         } catch (Exception e) {
             // TODO: parser should be configurable to return null instead of throwing an exception;
             // otherwise need to treat exceptions differently depending on their type
@@ -133,20 +132,6 @@ class ExtendedHandshakeMessageHandler implements MessageHandler<ExtendedHandshak
 
     @Override
     public boolean encode(EncodingContext context, ExtendedHandshake message, ByteBuffer buffer) {
-
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            new BEMap(null, message.getData()).writeTo(out);
-        } catch (IOException e) {
-            // can't happen
-        }
-
-        byte[] payload = out.toByteArray();
-        if (buffer.remaining() < payload.length) {
-            return false;
-        }
-
-        buffer.put(payload);
-        return true;
+        return BEEncoder.encoder().encode(new BEMap(null, message.getData()), buffer);
     }
 }
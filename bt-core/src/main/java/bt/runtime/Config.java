@@ -20,6 +20,7 @@ import bt.protocol.crypto.EncryptionPolicy;
 import bt.service.NetworkUtil;
 
 import java.net.InetAddress;
+import java.nio.file.Path;
 import java.time.Duration;
 
 /**
@@ -56,6 +57,14 @@ public class Config {
     private int metadataExchangeMaxSize;
     private int msePrivateKeySize;
     private int numberOfPeersToRequestFromTracker;
+    private Path peerScoreboardFile;
+    private int maxPeerCacheSize;
+    private Duration connectionAllocationInterval;
+    private int uploadSlotsPerTorrent;
+    private int maxUploadSlots;
+    private Path metadataCacheDirectory;
+    private long maxMetadataCacheSize;
+    private int maxOpenFiles;
 
     /**
      * Create a config with default parameters.
@@ -90,6 +99,14 @@ public class Config {
         this.metadataExchangeMaxSize = 2 * 1024 * 1024; // 2 MB
         this.msePrivateKeySize = 20; // 20 bytes
         this.numberOfPeersToRequestFromTracker = 50;
+        this.peerScoreboardFile = null;
+        this.maxPeerCacheSize = 100000;
+        this.connectionAllocationInterval = Duration.ofSeconds(10);
+        this.uploadSlotsPerTorrent = 4;
+        this.maxUploadSlots = 50;
+        this.metadataCacheDirectory = null;
+        this.maxMetadataCacheSize = 100 * 1024 * 1024;
+        this.maxOpenFiles = 512;
     }
 
     /**
@@ -126,6 +143,14 @@ public class Config {
         this.metadataExchangeMaxSize = config.getMetadataExchangeMaxSize();
         this.msePrivateKeySize = config.getMsePrivateKeySize();
         this.numberOfPeersToRequestFromTracker = config.getNumberOfPeersToRequestFromTracker();
+        this.peerScoreboardFile = config.getPeerScoreboardFile();
+        this.maxPeerCacheSize = config.getMaxPeerCacheSize();
+        this.connectionAllocationInterval = config.getConnectionAllocationInterval();
+        this.uploadSlotsPerTorrent = config.getUploadSlotsPerTorrent();
+        this.maxUploadSlots = config.getMaxUploadSlots();
+        this.metadataCacheDirectory = config.getMetadataCacheDirectory();
+        this.maxMetadataCacheSize = config.getMaxMetadataCacheSize();
+        this.maxOpenFiles = config.getMaxOpenFiles();
     }
 
     /**
@@ -566,4 +591,128 @@ public class Config {
     public int getNumberOfPeersToRequestFromTracker() {
         return numberOfPeersToRequestFromTracker;
     }
+
+    /**
+     * @param peerScoreboardFile File to persist peer scores to between sessions. If null (default), peer scores will be kept in memory only
+     * @since 1.8
+     */
+    public void setPeerScoreboardFile(Path peerScoreboardFile) {
+        this.peerScoreboardFile = peerScoreboardFile;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public Path getPeerScoreboardFile() {
+        return peerScoreboardFile;
+    }
+
+    /**
+     * @param maxPeerCacheSize Maximum number of peers to keep in the peer cache; least recently used peers are evicted when the limit is reached
+     * @since 1.8
+     */
+    public void setMaxPeerCacheSize(int maxPeerCacheSize) {
+        this.maxPeerCacheSize = maxPeerCacheSize;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int getMaxPeerCacheSize() {
+        return maxPeerCacheSize;
+    }
+
+    /**
+     * @param connectionAllocationInterval Interval at which the global connections budget is redistributed among active torrents
+     * @since 1.8
+     */
+    public void setConnectionAllocationInterval(Duration connectionAllocationInterval) {
+        this.connectionAllocationInterval = connectionAllocationInterval;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public Duration getConnectionAllocationInterval() {
+        return connectionAllocationInterval;
+    }
+
+    /**
+     * @param uploadSlotsPerTorrent Maximum number of peers, that a torrent may upload to simultaneously
+     *                             (not counting the optimistically unchoked peer)
+     * @since 1.8
+     */
+    public void setUploadSlotsPerTorrent(int uploadSlotsPerTorrent) {
+        this.uploadSlotsPerTorrent = uploadSlotsPerTorrent;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int getUploadSlotsPerTorrent() {
+        return uploadSlotsPerTorrent;
+    }
+
+    /**
+     * @param maxUploadSlots Maximum number of peers, that all torrents may upload to simultaneously
+     *                      (not counting optimistically unchoked peers)
+     * @since 1.8
+     */
+    public void setMaxUploadSlots(int maxUploadSlots) {
+        this.maxUploadSlots = maxUploadSlots;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int getMaxUploadSlots() {
+        return maxUploadSlots;
+    }
+
+    /**
+     * @param metadataCacheDirectory Directory to store torrent metadata (info dictionaries), that has been fetched from peers, for subsequent reuse. If null (default), fetched metadata is not cached
+     * @since 1.8
+     */
+    public void setMetadataCacheDirectory(Path metadataCacheDirectory) {
+        this.metadataCacheDirectory = metadataCacheDirectory;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public Path getMetadataCacheDirectory() {
+        return metadataCacheDirectory;
+    }
+
+    /**
+     * @param maxMetadataCacheSize Maximum total size of cached torrent metadata in bytes; least recently used entries are removed when the limit is exceeded
+     * @since 1.8
+     */
+    public void setMaxMetadataCacheSize(long maxMetadataCacheSize) {
+        this.maxMetadataCacheSize = maxMetadataCacheSize;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public long getMaxMetadataCacheSize() {
+        return maxMetadataCacheSize;
+    }
+
+    /**
+     * @param maxOpenFiles Maximum number of simultaneously open files in all file system storages of this runtime,
+     *                     that have been created without an explicit file pool; least recently used files are closed
+     *                     when the limit is reached
+     * @since 1.8
+     */
+    public void setMaxOpenFiles(int maxOpenFiles) {
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent;
+
+/**
+ * Runtime-wide pool of upload slots, that is shared by all torrents.
+ *
+ * Each peer, that is unchoked by a torrent's choker (with the exception of optimistic unchokes),
+ * occupies one upload slot until it is choked again or disconnects.
+ *
+ * @since 1.8
+ */
+public interface IUploadSlotPool {
+
+    /**
+     * Try to occupy an upload slot.
+     *
+     * @return true if a slot has been acquired, false if all slots are in use
+     * @since 1.8
+     */
+    boolean tryAcquire();
+
+    /**
+     * Release a previously acquired upload slot.
+     *
+     * @since 1.8
+     */
+    void release();
+
+    /**
+     * @return Number of upload slots, that are currently not in use
+     * @since 1.8
+     */
+    int getAvailableSlots();
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent;
+
+import bt.runtime.Config;
+import com.google.inject.Inject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *<p><b>Note that this class implements a service.
+ * Hence, is not a part of the public API and is a subject to change.</b></p>
+ *
+ * @since 1.8
+ */
+public class UploadSlotPool implements IUploadSlotPool {
+
+    private final int maxSlots;
+    private final AtomicInteger usedSlots;
+
+    @Inject
+    public UploadSlotPool(Config config) {
+        this(config.getMaxUploadSlots());
+    }
+
+    /**
+     * @param maxSlots Total number of upload slots
+     * @since 1.8
+     */
+    public UploadSlotPool(int maxSlots) {
+        this.maxSlots = maxSlots;
+        this.usedSlots = new AtomicInteger();
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        int used;
+        do {
+            used = usedSlots.get();
+            if (used >= maxSlots) {
+                return false;
+            }
+        } while (!usedSlots.compareAndSet(used, used + 1));
+        return true;
+    }
+
+    @Override
+    public void release() {
+        int used;
+        do {
+            used = usedSlots.get();
+            if (used == 0) {
+                throw new IllegalStateException("No upload slots are in use");
+            }
+        } while (!usedSlots.compareAndSet(used, used - 1));
+    }
+
+    @Override
+    public int getAvailableSlots() {
+        return maxSlots - usedSlots.get();
+    }
+}
@@ -25,8 +25,11 @@ import java.util.Optional;
 import java.util.function.Consumer;
 
 /**
- * Implements basic choking/unchoking strategy, that avoids "fibrillation"
+ * Applies choking/unchoking proposals to a connection, avoiding "fibrillation"
  * (quick subsequent chokes and unchokes for the same connection).
+ * Peers, that are not interested in our data anymore, are choked immediately.
+ *
+ * Note that peers are never unchoked unless proposed, see {@link TorrentChoker}.
  *
  * @since 1.0
  */
@@ -58,14 +61,8 @@ class Choker {
         boolean choking = connectionState.isChoking();
         boolean peerInterested = connectionState.isPeerInterested();
 
-        if (!shouldChokeOptional.isPresent()) {
-            if (peerInterested && choking) {
-                if (mightUnchoke(connectionState)) {
-                    shouldChokeOptional = Optional.of(Boolean.FALSE); // should unchoke
-                }
-            } else if (!peerInterested && !choking) {
-                shouldChokeOptional = Optional.of(Boolean.TRUE);
-            }
+        if (!peerInterested && !choking) {
+            shouldChokeOptional = Optional.of(Boolean.TRUE);
         }
 
         shouldChokeOptional.ifPresent(shouldChoke -> {
@@ -75,7 +72,7 @@ class Choker {
                     connectionState.setChoking(true);
                     messageConsumer.accept(Choke.instance());
                     connectionState.setLastChoked(System.currentTimeMillis());
-                } else if (mightUnchoke(connectionState)) {
+                } else if (peerInterested && mightUnchoke(connectionState)) {
                     connectionState.setChoking(false);
                     messageConsumer.accept(Unchoke.instance());
                 }
@@ -16,6 +16,7 @@
 
 package bt.torrent.messaging;
 
+import bt.bencoding.model.BEObject;
 import bt.magnet.UtMetadata;
 import bt.metainfo.IMetadataService;
 import bt.metainfo.Torrent;
@@ -24,11 +25,13 @@ import bt.net.Peer;
 import bt.protocol.Message;
 import bt.protocol.extended.ExtendedHandshake;
 import bt.runtime.Config;
+import bt.service.CryptoUtil;
 import bt.torrent.annotation.Consumes;
 import bt.torrent.annotation.Produces;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigInteger;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Objects;
@@ -38,19 +41,29 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
+/**
+ * Fetches BEP-9 metadata from all peers, that support the ut_metadata extension.
+ *
+ * <p>If metadata size is known (either from peer's extended handshake or from the first received block),
+ * blocks are striped among peers and requested concurrently; see {@link MetadataFetch}.
+ */
 public class MetadataConsumer {
     private static final Logger LOGGER = LoggerFactory.getLogger(MetadataConsumer.class);
 
+    private static final String UT_METADATA_SIZE_PROPERTY = "metadata_size";
+
     private static final Duration FIRST_BLOCK_ARRIVAL_TIMEOUT = Duration.ofSeconds(10);
     private static final Duration WAIT_BEFORE_REREQUESTING_AFTER_REJECT = Duration.ofSeconds(10);
+    private static final Duration BLOCK_REQUEST_TIMEOUT = Duration.ofSeconds(5);
+    private static final int MAX_PENDING_REQUESTS_PER_PEER = 8;
 
     private final ConcurrentMap<Peer, Long> peersWithoutMetadata;
 
     private final Set<Peer> supportingPeers;
     private final ConcurrentMap<Peer, Long> requestedFirstPeers;
-    private final Set<Peer> requestedAllPeers;
 
-    private volatile ExchangedMetadata metadata;
+    private volatile MetadataFetch fetch;
+    private final Object fetchLock;
 
     private final IMetadataService metadataService;
 
@@ -70,7 +83,8 @@ public class MetadataConsumer {
 
         this.supportingPeers = ConcurrentHashMap.newKeySet();
         this.requestedFirstPeers = new ConcurrentHashMap<>();
-        this.requestedAllPeers = ConcurrentHashMap.newKeySet();
+
+        this.fetchLock = new Object();
 
         this.metadataService = metadataService;
 
@@ -88,6 +102,15 @@ public class MetadataConsumer {
             // moreover the extended handshake message type map is additive,
             // so we can't learn about the peer turning off extensions solely from the message
             supportingPeers.add(messageContext.getPeer());
+
+            // knowing the size upfront allows to skip the first block round-trip
+            BEObject<?> metadataSize = handshake.getData().get(UT_METADATA_SIZE_PROPERTY);
+            if (metadataSize != null && metadataSize.getValue() instanceof BigInteger) {
+                BigInteger size = (BigInteger) metadataSize.getValue();
+                if (size.signum() > 0 && size.compareTo(BigInteger.valueOf(metadataExchangeMaxSize)) < 0) {
+                    getOrCreateFetch(size.intValue());
+                }
+            }
         }
     }
 
@@ -102,10 +125,16 @@ public class MetadataConsumer {
                     throw new IllegalStateException("Declared metadata size is too large: " + totalSize +
                             "; max allowed is " + metadataExchangeMaxSize);
                 }
-                processMetadataBlock(message.getPieceIndex(), totalSize, message.getData().get());
+                processMetadataBlock(peer, message.getPieceIndex(), totalSize, message.getData().get());
+                break;
             }
             case REJECT: {
                 peersWithoutMetadata.put(peer, System.currentTimeMillis());
+                MetadataFetch fetch = this.fetch;
+                if (fetch != null) {
+                    fetch.onRequestsRejected(peer);
+                }
+                break;
             }
             default: {
                 // ignore
@@ -113,44 +142,79 @@ public class MetadataConsumer {
         }
     }
 
-    private void processMetadataBlock(int pieceIndex, int totalSize, byte[] data) {
-        if (metadata == null) {
-            metadata = new ExchangedMetadata(totalSize, metadataExchangeBlockSize);
+    private MetadataFetch getOrCreateFetch(int totalSize) {
+        MetadataFetch fetch = this.fetch;
+        if (fetch == null) {
+            synchronized (fetchLock) {
+                fetch = this.fetch;
+                if (fetch == null) {
+                    fetch = new MetadataFetch(totalSize, metadataExchangeBlockSize, BLOCK_REQUEST_TIMEOUT.toMillis());
+                    this.fetch = fetch;
+                }
+            }
         }
+        return fetch;
+    }
 
-        if (!metadata.isBlockPresent(pieceIndex)) {
-            metadata.setBlock(pieceIndex, data);
-
-            if (metadata.isComplete()) {
-                byte[] digest = metadata.getSha1Digest();
-                if (Arrays.equals(digest, torrentId.getBytes())) {
-                    Torrent fetchedTorrent = null;
-                    try {
-                        fetchedTorrent = metadataService.fromByteArray(metadata.getBytes());
-                    } catch (Exception e) {
-                        LOGGER.error("Processing of metadata failed: " + torrentId, e);
-                        metadata = null;
-                    }
+    private void processMetadataBlock(Peer peer, int pieceIndex, int totalSize, byte[] data) {
+        if (torrent.get() != null) {
+            return;
+        }
 
-                    if (fetchedTorrent != null) {
-                        synchronized (torrent) {
-                            torrent.set(fetchedTorrent);
-                            requestedFirstPeers.clear();
-                            requestedAllPeers.clear();
-                            torrent.notifyAll();
-                        }
-                    }
+        MetadataFetch fetch = getOrCreateFetch(totalSize);
+        if (fetch.getTotalSize() != totalSize) {
+            synchronized (fetchLock) {
+                if (this.fetch == fetch && !fetch.hasBlocks()) {
+                    // size, that has been advertised in the extended handshake, was not confirmed by actual data
+                    fetch = new MetadataFetch(totalSize, metadataExchangeBlockSize, BLOCK_REQUEST_TIMEOUT.toMillis());
+                    this.fetch = fetch;
                 } else {
-                    LOGGER.warn("Metadata fetched, but hash does not match the torrent ID: {}. Will re-fetch", torrentId);
-                    // restart the process
-                    // TODO: terminate peer connections that the metadata was fetched from?
-                    // or just try again with the others?
-                    metadata = null;
+                    LOGGER.warn("Peer {} declared metadata size {}, that differs from the expected size {}. Ignoring block",
+                            peer, totalSize, fetch.getTotalSize());
+                    return;
+                }
+            }
+        }
+
+        if (fetch.onBlockReceived(peer, pieceIndex, data) && fetch.isComplete()) {
+            // only one thread should verify complete metadata
+            synchronized (fetchLock) {
+                if (torrent.get() == null && fetch.isComplete()) {
+                    verifyMetadata(fetch);
                 }
             }
         }
     }
 
+    private void verifyMetadata(MetadataFetch fetch) {
+        byte[] bytes = fetch.getBytes();
+        if (Arrays.equals(CryptoUtil.getSha1Digest(bytes), torrentId.getBytes())) {
+            Torrent fetchedTorrent = null;
+            try {
+                fetchedTorrent = metadataService.fromByteArray(bytes);
+            } catch (Exception e) {
+                LOGGER.error("Processing of metadata failed: " + torrentId, e);
+                this.fetch = null;
+            }
+
+            if (fetchedTorrent != null) {
+                Peer culprit = fetch.onVerificationSucceeded();
+                if (culprit != null) {
+                    LOGGER.warn("Peer {} has sent invalid metadata blocks for torrent: {}", culprit, torrentId);
+                }
+                synchronized (torrent) {
+                    torrent.set(fetchedTorrent);
+                    requestedFirstPeers.clear();
+                    torrent.notifyAll();
+                }
+            }
+        } else {
+            Peer suspect = fetch.onVerificationFailed();
+            LOGGER.warn("Metadata fetched, but hash does not match the torrent ID: {}. Will re-fetch blocks from: {}",
+                    torrentId, (suspect == null) ? "all peers" : suspect);
+        }
+    }
+
     @Produces
     public void produce(Consumer<Message> messageConsumer, MessageContext context) {
         // stop here if metadata has already been fetched
@@ -167,19 +231,17 @@ public class MetadataConsumer {
             }
 
             if (!peersWithoutMetadata.containsKey(peer)) {
-                if (metadata == null) {
+                MetadataFetch fetch = this.fetch;
+                if (fetch == null) {
                     if (!requestedFirstPeers.containsKey(peer) ||
                             (System.currentTimeMillis() - requestedFirstPeers.get(peer) > FIRST_BLOCK_ARRIVAL_TIMEOUT.toMillis())) {
                         requestedFirstPeers.put(peer, System.currentTimeMillis());
-                        // start with the first piece of metadata
+                        // start with the first piece of metadata to learn the total size
                         messageConsumer.accept(UtMetadata.request(0));
                     }
-                } else if (!requestedAllPeers.contains(peer)) {
-                    requestedAllPeers.add(peer);
-                    // TODO: larger metadata should be handled in more intelligent way
-                    // starting with block #1 because by now we should have already received block #0
-                    for (int i = 1; i < metadata.getBlockCount(); i++) {
-                        messageConsumer.accept(UtMetadata.request(i));
+                } else {
+                    for (Integer blockIndex : fetch.nextRequests(peer, MAX_PENDING_REQUESTS_PER_PEER, System.currentTimeMillis())) {
+                        messageConsumer.accept(UtMetadata.request(blockIndex));
                     }
                 }
             }
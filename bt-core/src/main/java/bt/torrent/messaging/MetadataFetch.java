@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.torrent.messaging;
+
+import bt.net.Peer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of BEP-9 metadata blocks, that are being fetched from several peers concurrently.
+ *
+ * <p>Blocks are striped among peers, each peer having a limited number of outstanding requests.
+ * Requests, that have not been fulfilled in time, are re-assigned to other peers.
+ * The peer, that each block has been received from, is remembered,
+ * so that if the complete metadata does not match the torrent ID,
+ * only the blocks of a single suspected peer have to be discarded and fetched again.
+ *
+ * <p>Thread-safe.
+ *
+ * @since 1.8
+ */
+class MetadataFetch {
+
+    private final int totalSize;
+    private final int blockSize;
+    private final long requestTimeoutMillis;
+
+    private final byte[][] blocks;
+    private final Peer[] sources;
+    private final Peer[] requestedFrom;
+    private final long[] requestedAt;
+    private int presentBlocks;
+
+    // peer, whose blocks have been discarded after the last failed verification
+    private Peer suspect;
+    // peers, that have been suspected, but whose blocks were not the reason of failure
+    private final Set<Peer> cleared;
+    private final Set<Peer> banned;
+
+    /**
+     * @param totalSize Total size of metadata
+     * @param blockSize Size of a single block (the last block may be smaller)
+     * @param requestTimeoutMillis Period of time, after which an unfulfilled block request may be assigned to another peer
+     */
+    MetadataFetch(int totalSize, int blockSize, long requestTimeoutMillis) {
+        if (totalSize <= 0) {
+            throw new IllegalArgumentException("Invalid metadata size: " + totalSize);
+        }
+        this.totalSize = totalSize;
+        this.blockSize = blockSize;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+
+        int blockCount = (totalSize + blockSize - 1) / blockSize;
+        this.blocks = new byte[blockCount][];
+        this.sources = new Peer[blockCount];
+        this.requestedFrom = new Peer[blockCount];
+        this.requestedAt = new long[blockCount];
+
+        this.cleared = new HashSet<>();
+        this.banned = new HashSet<>();
+    }
+
+    int getTotalSize() {
+        return totalSize;
+    }
+
+    int getBlockCount() {
+        return blocks.length;
+    }
+
+    /**
+     * @return true, if blocks should not be requested from this peer
+     */
+    synchronized boolean isExcluded(Peer peer) {
+        return banned.contains(peer) || peer.equals(suspect);
+    }
+
+    /**
+     * Assign missing blocks to a peer.
+     *
+     * @param maxPendingRequests Maximum number of outstanding requests per peer
+     * @return Indices of blocks, that should be requested from the peer
+     */
+    synchronized List<Integer> nextRequests(Peer peer, int maxPendingRequests, long now) {
+        if (isExcluded(peer)) {
+            return Collections.emptyList();
+        }
+
+        int pending = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] == null && peer.equals(requestedFrom[i]) && !isExpired(i, now)) {
+                pending++;
+            }
+        }
+
+        List<Integer> requests = new ArrayList<>();
+        for (int i = 0; i < blocks.length && pending + requests.size() < maxPendingRequests; i++) {
+            if (blocks[i] == null && (requestedFrom[i] == null || isExpired(i, now))) {
+                requestedFrom[i] = peer;
+                requestedAt[i] = now;
+                requests.add(i);
+            }
+        }
+        return requests;
+    }
+
+    private boolean isExpired(int blockIndex, long now) {
+        return now - requestedAt[blockIndex] >= requestTimeoutMillis;
+    }
+
+    /**
+     * @return true, if the block has been accepted
+     */
+    synchronized boolean onBlockReceived(Peer peer, int blockIndex, byte[] block) {
+        if (blockIndex < 0 || blockIndex >= blocks.length || blocks[blockIndex] != null
+                || block.length != getBlockLength(blockIndex) || isExcluded(peer)) {
+            return false;
+        }
+        blocks[blockIndex] = block;
+        sources[blockIndex] = peer;
+        presentBlocks++;
+        return true;
+    }
+
+    private int getBlockLength(int blockIndex) {
+        return (blockIndex == blocks.length - 1) ? (totalSize - blockIndex * blockSize) : blockSize;
+    }
+
+    /**
+     * Release outstanding requests to a peer, so that they can be assigned to other peers immediately.
+     */
+    synchronized void onRequestsRejected(Peer peer) {
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] == null && peer.equals(requestedFrom[i])) {
+                requestedFrom[i] = null;
+            }
+        }
+    }
+
+    synchronized boolean hasBlocks() {
+        return presentBlocks > 0;
+    }
+
+    synchronized boolean isComplete() {
+        return presentBlocks == blocks.length;
+    }
+
+    /**
+     * @throws IllegalStateException if metadata is not complete
+     */
+    synchronized byte[] getBytes() {
+        if (!isComplete()) {
+            throw new IllegalStateException("Metadata is not complete");
+        }
+        byte[] bytes = new byte[totalSize];
+        for (int i = 0; i < blocks.length; i++) {
+            System.arraycopy(blocks[i], 0, bytes, i * blockSize, blocks[i].length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Called when the complete metadata has been verified.
+     *
+     * @return Peer, that has been confirmed to have sent invalid data, if any
+     */
+    synchronized Peer onVerificationSucceeded() {
+        Peer culprit = suspect;
+        if (culprit != null) {
+            banned.add(culprit);
+            suspect = null;
+        }
+        return culprit;
+    }
+
+    /**
+     * Called when the complete metadata does not match the torrent ID.
+     * Discards blocks of a single suspected peer (or all blocks, if the culprit can't be determined),
+     * so that they are re-fetched from other peers.
+     *
+     * @return Peer, that has been suspected or banned, if any
+     */
+    synchronized Peer onVerificationFailed() {
+        if (suspect != null) {
+            // blocks of the previous suspect have been replaced, and verification failed again,
+            // so most likely it was not the one who sent invalid data
+            cleared.add(suspect);
+            suspect = null;
+        }
+
+        Map<Peer, Integer> contributions = new HashMap<>();
+        for (Peer source : sources) {
+            if (source != null) {
+                contributions.merge(source, 1, Integer::sum);
+            }
+        }
+
+        if (contributions.size() == 1) {
+            // a single peer has sent everything
+            Peer culprit = contributions.keySet().iterator().next();
+            banned.add(culprit);
+            cleared.remove(culprit);
+            discardBlocks(culprit);
+            return culprit;
+        }
+
+        // re-fetching fewer blocks is cheaper, so start with the peer, that has contributed the least
+        Peer candidate = null;
+        int candidateBlocks = Integer.MAX_VALUE;
+        for (Map.Entry<Peer, Integer> e : contributions.entrySet()) {
+            if (!cleared.contains(e.getKey()) && e.getValue() < candidateBlocks) {
+                candidate = e.getKey();
+                candidateBlocks = e.getValue();
+            }
+        }
+
+        if (candidate == null) {
+            // every contributor has been suspected already; start over
+            cleared.clear();
+            discardBlocks(null);
+            return null;
+        }
+
+        suspect = candidate;
+        discardBlocks(candidate);
+        return candidate;
+    }
+
+    private void discardBlocks(Peer source) {
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] != null && (source == null || source.equals(sources[i]))) {
+                blocks[i] = null;
+                sources[i] = null;
+                requestedFrom[i] = null;
+                presentBlocks--;
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.messaging;
+
+import bt.net.Peer;
+import bt.torrent.IUploadSlotPool;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Decides, which of the interested peers of a torrent should be unchoked.
+ *
+ * Implements rate-based tit-for-tat: every {@link #RECHOKE_INTERVAL} interested peers are ranked
+ * by the rate at which they upload to us (while the torrent is being downloaded)
+ * or by the rate at which they download from us (while seeding; peers, that have waited the longest, go first
+ * in case of a tie), and the best peers are given the torrent's upload slots.
+ * Additionally, one random choked peer is unchoked every {@link #OPTIMISTIC_UNCHOKE_INTERVAL}
+ * regardless of its' rate, so that new peers get a chance to show what they're capable of.
+ *
+ * Besides the per-torrent limit, regular unchokes are constrained by the runtime-wide pool of upload slots.
+ * Actual choke/unchoke messages are sent by {@link Choker} based on the proposals made by this class.
+ *
+ * @since 1.8
+ */
+class TorrentChoker {
+
+    static final Duration RECHOKE_INTERVAL = Duration.ofSeconds(10);
+    static final Duration OPTIMISTIC_UNCHOKE_INTERVAL = Duration.ofSeconds(30);
+    // free slots are filled in between rechokes, so that new interested peers don't have to wait
+    private static final Duration UPDATE_INTERVAL = Duration.ofSeconds(1);
+
+    private final IUploadSlotPool slotPool;
+    private final int uploadSlots;
+    private final Random random;
+
+    private final Set<Peer> unchoked;
+    private Peer optimisticallyUnchoked;
+
+    private final Map<Peer, PeerRates> rates;
+
+    private volatile long lastUpdated;
+    private long lastRechoked;
+    private long lastOptimisticallyUnchoked;
+
+    /**
+     * @param slotPool Runtime-wide upload slots
+     * @param uploadSlots Number of upload slots for this torrent
+     * @since 1.8
+     */
+    TorrentChoker(IUploadSlotPool slotPool, int uploadSlots) {
+        this.slotPool = slotPool;
+        this.uploadSlots = uploadSlots;
+        this.random = new Random();
+        this.unchoked = new HashSet<>();
+        this.rates = new HashMap<>();
+    }
+
+    /**
+     * Inspect torrent's connections and propose choking/unchoking, if it's time to.
+     *
+     * @param workers Torrent's peer workers
+     * @param seeding true if the torrent has been fully downloaded
+     * @since 1.8
+     */
+    void update(Map<Peer, ? extends PeerWorker> workers, boolean seeding) {
+        long now = System.currentTimeMillis();
+        if (now - lastUpdated >= UPDATE_INTERVAL.toMillis()) {
+            update(workers, seeding, now);
+        }
+    }
+
+    synchronized void update(Map<Peer, ? extends PeerWorker> liveWorkers, boolean seeding, long now) {
+        lastUpdated = now;
+        // peers may be added and removed concurrently, work with a consistent view
+        Map<Peer, PeerWorker> workers = new HashMap<>(liveWorkers);
+        releaseUnusedSlots(workers);
+
+        if (now - lastRechoked >= RECHOKE_INTERVAL.toMillis()) {
+            updateRates(workers, now);
+            rechoke(workers, seeding, now);
+            lastRechoked = now;
+        } else {
+            fillFreeSlots(workers, seeding, now);
+        }
+
+        if (now - lastOptimisticallyUnchoked >= OPTIMISTIC_UNCHOKE_INTERVAL.toMillis()) {
+            rotateOptimisticUnchoke(workers);
+            lastOptimisticallyUnchoked = now;
+        }
+    }
+
+    /**
+     * Release the slot, that is occupied by a peer (if any).
+     *
+     * @since 1.8
+     */
+    synchronized void onPeerRemoved(Peer peer) {
+        if (unchoked.remove(peer)) {
+            slotPool.release();
+        }
+        if (peer.equals(optimisticallyUnchoked)) {
+            optimisticallyUnchoked = null;
+        }
+        rates.remove(peer);
+    }
+
+    /**
+     * @return Peers, that occupy this torrent's upload slots
+     * @since 1.8
+     */
+    synchronized Set<Peer> getUnchokedPeers() {
+        return new HashSet<>(unchoked);
+    }
+
+    /**
+     * @return Optimistically unchoked peer or null, if there is no such peer at the moment
+     * @since 1.8
+     */
+    synchronized Peer getOptimisticallyUnchokedPeer() {
+        return optimisticallyUnchoked;
+    }
+
+    private void releaseUnusedSlots(Map<Peer, PeerWorker> workers) {
+        // peers, that have disconnected or lost interest, don't need upload slots anymore
+        // (uninterested peers are choked by the connection's choker)
+        Iterator<Peer> iter = unchoked.iterator();
+        while (iter.hasNext()) {
+            PeerWorker worker = workers.get(iter.next());
+            if (worker == null) {
+                iter.remove();
+                slotPool.release();
+            } else if (!worker.getConnectionState().isPeerInterested()) {
+                iter.remove();
+                slotPool.release();
+                // revoke the unchoke proposal, if it hasn't been applied yet
+                worker.getConnectionState().setShouldChoke(true);
+            } else if (isChoked(worker.getConnectionState())) {
+                // choked for some other reason (e.g. reads from storage are being rejected);
+                // the peer may be proposed for unchoking again later on
+                iter.remove();
+                slotPool.release();
+            }
+        }
+        if (optimisticallyUnchoked != null) {
+            PeerWorker worker = workers.get(optimisticallyUnchoked);
+            if (worker == null || !worker.getConnectionState().isPeerInterested()
+                    || isChoked(worker.getConnectionState())) {
+                optimisticallyUnchoked = null;
+            }
+        }
+        rates.keySet().retainAll(workers.keySet());
+    }
+
+    private static boolean isChoked(ConnectionState connectionState) {
+        // choke has been proposed by someone else, or has already been applied
+        return connectionState.getShouldChoke().orElse(connectionState.isChoking());
+    }
+
+    private void updateRates(Map<Peer, PeerWorker> workers, long now) {
+        workers.forEach((peer, worker) -> {
+            ConnectionState connectionState = worker.getConnectionState();
+            PeerRates peerRates = rates.get(peer);
+            if (peerRates == null) {
+                peerRates = new PeerRates(connectionState.getDownloaded(), connectionState.getUploaded(), now);
+                rates.put(peer, peerRates);
+            } else {
+                peerRates.update(connectionState.getDownloaded(), connectionState.getUploaded(), now);
+            }
+        });
+    }
+
+    private void rechoke(Map<Peer, PeerWorker> workers, boolean seeding, long now) {
+        List<Peer> candidates = getCandidates(workers, seeding, true);
+        Set<Peer> best = new HashSet<>(candidates.subList(0, Math.min(uploadSlots, candidates.size())));
+
+        Iterator<Peer> iter = unchoked.iterator();
+        while (iter.hasNext()) {
+            Peer peer = iter.next();
+            if (!best.contains(peer)) {
+                iter.remove();
+                slotPool.release();
+                workers.get(peer).getConnectionState().setShouldChoke(true);
+            }
+        }
+
+        for (Peer peer : candidates) {
+            if (unchoked.size() >= uploadSlots) {
+                break;
+            } else if (best.contains(peer) && !unchoked.contains(peer)) {
+                if (!unchoke(peer, workers.get(peer), now)) {
+                    // no more runtime-wide slots
+                    break;
+                }
+            }
+        }
+    }
+
+    private void fillFreeSlots(Map<Peer, PeerWorker> workers, boolean seeding, long now) {
+        if (unchoked.size() >= uploadSlots) {
+            return;
+        }
+        for (Peer peer : getCandidates(workers, seeding, false)) {
+            if (unchoked.size() >= uploadSlots || !unchoke(peer, workers.get(peer), now)) {
+                break;
+            }
+        }
+    }
+
+    private boolean unchoke(Peer peer, PeerWorker worker, long now) {
+        if (!slotPool.tryAcquire()) {
+            return false;
+        }
+        unchoked.add(peer);
+        if (peer.equals(optimisticallyUnchoked)) {
+            // peer has earned a regular slot
+            optimisticallyUnchoked = null;
+        }
+        ConnectionState connectionState = worker.getConnectionState();
+        connectionState.setShouldChoke(false);
+        PeerRates peerRates = rates.get(peer);
+        if (peerRates == null) {
+            peerRates = new PeerRates(connectionState.getDownloaded(), connectionState.getUploaded(), now);
+            rates.put(peer, peerRates);
+        }
+        peerRates.lastUnchoked = now;
+        return true;
+    }
+
+    private void rotateOptimisticUnchoke(Map<Peer, PeerWorker> workers) {
+        Peer previous = optimisticallyUnchoked;
+
+        List<Peer> candidates = new ArrayList<>();
+        workers.forEach((peer, worker) -> {
+            if (worker.getConnectionState().isPeerInterested() && !unchoked.contains(peer) && !peer.equals(previous)) {
+                candidates.add(peer);
+            }
+        });
+
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        if (previous != null) {
+            PeerWorker worker = workers.get(previous);
+            if (worker != null) {
+                worker.getConnectionState().setShouldChoke(true);
+            }
+        }
+
+        Peer next = candidates.get(random.nextInt(candidates.size()));
+        workers.get(next).getConnectionState().setShouldChoke(false);
+        optimisticallyUnchoked = next;
+    }
+
+    /**
+     * @param includeUnchoked Include peers, that already occupy upload slots
+     * @return Interested peers, ordered from the most to the least deserving to be unchoked
+     */
+    private List<Peer> getCandidates(Map<Peer, PeerWorker> workers, boolean seeding, boolean includeUnchoked) {
+        List<Peer> candidates = new ArrayList<>();
+        workers.forEach((peer, worker) -> {
+            if (worker.getConnectionState().isPeerInterested() && (includeUnchoked || !unchoked.contains(peer))) {
+                candidates.add(peer);
+            }
+        });
+        candidates.sort(seeding ? seedingOrder() : leechingOrder());
+        return candidates;
+    }
+
+    private Comparator<Peer> leechingOrder() {
+        // reciprocate to peers, that give us the most
+        return Comparator.comparingDouble((Peer peer) -> getRates(peer).downloadRate).reversed()
+                .thenComparing(Comparator.comparingDouble((Peer peer) -> getRates(peer).uploadRate).reversed());
+    }
+
+    private Comparator<Peer> seedingOrder() {
+        // prefer peers, that are able to take the most; give others a chance in round-robin order
+        return Comparator.comparingDouble((Peer peer) -> getRates(peer).uploadRate).reversed()
+                .thenComparingLong(peer -> getRates(peer).lastUnchoked);
+    }
+
+    private PeerRates getRates(Peer peer) {
+        PeerRates peerRates = rates.get(peer);
+        return (peerRates == null) ? PeerRates.NONE : peerRates;
+    }
+
+    private static class PeerRates {
+
+        static final PeerRates NONE = new PeerRates(0, 0, 0);
+
+        private long downloaded;
+        private long uploaded;
+        private long updatedAt;
+
+        // bytes per second
+        double downloadRate;
+        double uploadRate;
+        long lastUnchoked;
+
+        PeerRates(long downloaded, long uploaded, long updatedAt) {
+            this.downloaded = downloaded;
+            this.uploaded = uploaded;
+            this.updatedAt = updatedAt;
+        }
+
+        void update(long downloaded, long uploaded, long now) {
+            double seconds = Math.max(1, now - updatedAt) / 1000d;
+            this.downloadRate = (downloaded - this.downloaded) / seconds;
+            this.uploadRate = (uploaded - this.uploaded) / seconds;
+            this.downloaded = downloaded;
+            this.uploaded = uploaded;
+            this.updatedAt = now;
+        }
+    }
+}
@@ -19,21 +19,27 @@ package bt.torrent.messaging;
 import bt.data.Bitfield;
 import bt.event.EventSource;
 import bt.metainfo.TorrentId;
+import bt.net.ConnectionDemand;
+import bt.net.IConnectionAllocator;
 import bt.net.IConnectionSource;
 import bt.net.IMessageDispatcher;
 import bt.net.Peer;
+import bt.peer.IPeerScoreboard;
 import bt.protocol.Have;
 import bt.protocol.Interested;
 import bt.protocol.Message;
 import bt.protocol.NotInterested;
 import bt.runtime.Config;
 import bt.torrent.BitfieldBasedStatistics;
+import bt.torrent.IUploadSlotPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
@@ -43,6 +49,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Manages peer workers.
@@ -61,10 +68,12 @@ public class TorrentWorker {
     private Config config;
 
     private final IConnectionSource connectionSource;
+    private final IPeerScoreboard scoreboard;
+    private final IConnectionAllocator connectionAllocator;
+    private final TorrentChoker choker;
     private IPeerWorkerFactory peerWorkerFactory;
     private ConcurrentMap<Peer, PieceAnnouncingPeerWorker> peerMap;
     private final int MAX_CONCURRENT_ACTIVE_CONNECTIONS;
-    private final int MAX_TOTAL_CONNECTIONS;
     private Map<Peer, Long> timeoutedPeers;
     private Queue<Peer> disconnectedPeers;
     private Map<Peer, Message> interestUpdates;
@@ -77,6 +86,9 @@ public class TorrentWorker {
     public TorrentWorker(TorrentId torrentId,
                          IMessageDispatcher dispatcher,
                          IConnectionSource connectionSource,
+                         IPeerScoreboard scoreboard,
+                         IConnectionAllocator connectionAllocator,
+                         IUploadSlotPool uploadSlotPool,
                          IPeerWorkerFactory peerWorkerFactory,
                          Supplier<Bitfield> bitfieldSupplier,
                          Supplier<Assignments> assignmentsSupplier,
@@ -88,10 +100,12 @@ public class TorrentWorker {
         this.config = config;
 
         this.connectionSource = connectionSource;
+        this.scoreboard = scoreboard;
+        this.connectionAllocator = connectionAllocator;
+        this.choker = new TorrentChoker(uploadSlotPool, config.getUploadSlotsPerTorrent());
         this.peerWorkerFactory = peerWorkerFactory;
         this.peerMap = new ConcurrentHashMap<>();
         this.MAX_CONCURRENT_ACTIVE_CONNECTIONS = config.getMaxConcurrentlyActivePeerConnectionsPerTorrent();
-        this.MAX_TOTAL_CONNECTIONS = config.getMaxPeerConnectionsPerTorrent();
         this.timeoutedPeers = new ConcurrentHashMap<>();
         this.disconnectedPeers = new LinkedBlockingQueue<>();
         this.interestUpdates = new ConcurrentHashMap<>();
@@ -100,6 +114,8 @@ public class TorrentWorker {
         this.assignmentsSupplier = assignmentsSupplier;
         this.statisticsSupplier = statisticsSupplier;
 
+        connectionAllocator.register(torrentId, new TorrentConnectionDemand());
+
         eventSource.onPeerDiscovered(e -> {
             if (torrentId.equals(e.getTorrentId())) {
                 onPeerDiscovered(e.getPeer());
@@ -157,6 +173,8 @@ public class TorrentWorker {
 
         Optional<PieceAnnouncingPeerWorker> workerOptional = getWorker(peer);
         if (workerOptional.isPresent()) {
+            choker.update(peerMap, isSeeding());
+
             PieceAnnouncingPeerWorker worker = workerOptional.get();
             Bitfield bitfield = getBitfield();
             Assignments assignments = getAssignments();
@@ -178,6 +196,11 @@ public class TorrentWorker {
         return message;
     }
 
+    private boolean isSeeding() {
+        Bitfield bitfield = getBitfield();
+        return bitfield != null && bitfield.getPiecesRemaining() == 0;
+    }
+
     private Optional<PieceAnnouncingPeerWorker> getWorker(Peer peer) {
         return Optional.ofNullable(peerMap.get(peer));
     }
@@ -337,9 +360,13 @@ public class TorrentWorker {
      * @since 1.0
      */
     public void removePeer(Peer peer) {
-        PeerWorker removed = peerMap.remove(peer);
+        PieceAnnouncingPeerWorker removed = peerMap.remove(peer);
         if (removed != null) {
             disconnectedPeers.add(peer);
+            choker.onPeerRemoved(peer);
+            ConnectionState connectionState = removed.getConnectionState();
+            scoreboard.onSessionFinished(peer, connectionState.getDownloaded(), connectionState.getUploaded(),
+                    Duration.ofMillis(System.currentTimeMillis() - removed.getCreatedAt()));
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Removed connection for peer: " + peer);
             }
@@ -370,10 +397,12 @@ public class TorrentWorker {
 
         private final PeerWorker delegate;
         private final Queue<Have> pieceAnnouncements;
+        private final long createdAt;
 
         PieceAnnouncingPeerWorker(PeerWorker delegate) {
             this.delegate = delegate;
             this.pieceAnnouncements = new ConcurrentLinkedQueue<>();
+            this.createdAt = System.currentTimeMillis();
         }
 
         @Override
@@ -408,6 +437,10 @@ public class TorrentWorker {
         Queue<Have> getPieceAnnouncements() {
             return pieceAnnouncements;
         }
+
+        long getCreatedAt() {
+            return createdAt;
+        }
     }
 
     private synchronized void onPeerDiscovered(Peer peer) {
@@ -425,10 +458,50 @@ public class TorrentWorker {
     }
 
     private boolean mightAddPeer(Peer peer) {
-        return getPeers().size() < MAX_TOTAL_CONNECTIONS && !getPeers().contains(peer);
+        return getPeers().size() < connectionAllocator.getAllocation(torrentId) && !getPeers().contains(peer);
     }
 
     private synchronized void onPeerDisconnected(Peer peer) {
         removePeer(peer);
     }
+
+    private class TorrentConnectionDemand implements ConnectionDemand {
+
+        @Override
+        public boolean isSeeding() {
+            return TorrentWorker.this.isSeeding();
+        }
+
+        @Override
+        public int getConnectedPeers() {
+            return peerMap.size();
+        }
+
+        @Override
+        public int getInterestedPeers() {
+            return (int) peerMap.values().stream()
+                    .filter(worker -> worker.getConnectionState().isPeerInterested())
+                    .count();
+        }
+
+        @Override
+        public List<Peer> getLeastUsefulPeers(int count) {
+            // peers, that there is no mutual interest with, are the least useful;
+            // among others, prefer to keep peers, that we have exchanged more data with
+            Comparator<Map.Entry<Peer, PieceAnnouncingPeerWorker>> usefulness = Comparator
+                    .comparing((Map.Entry<Peer, PieceAnnouncingPeerWorker> e) -> isInterestedEitherWay(e.getValue()))
+                    .thenComparingLong(e -> e.getValue().getConnectionState().getDownloaded()
+                            + e.getValue().getConnectionState().getUploaded());
+            return peerMap.entrySet().stream()
+                    .sorted(usefulness)
+                    .limit(count)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        }
+
+        private boolean isInterestedEitherWay(PeerWorker worker) {
+            ConnectionState connectionState = worker.getConnectionState();
+            return connectionState.isInterested() || connectionState.isPeerInterested();
+        }
+    }
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.metainfo.TorrentId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Periodically announces active torrents.
+ *
+ * Each invocation of {@link #dispatch()} starts at most one announce: the one, that is overdue the most,
+ * unless the maximum number of concurrent announces has been reached.
+ * Announce intervals are randomized by up to 10%, so that announces of torrents,
+ * that have been added at the same time, get spread over time.
+ *
+ * @since 1.8
+ */
+class DHTAnnounceScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DHTAnnounceScheduler.class);
+
+    private static final double INTERVAL_JITTER = 0.1;
+
+    /**
+     * Performs the actual DHT announce.
+     *
+     * @since 1.8
+     */
+    interface Announcer {
+
+        /**
+         * Should not block.
+         *
+         * @return Future, that is completed when the announce has finished,
+         *         or completed exceptionally, if the announce could not be performed
+         * @since 1.8
+         */
+        CompletableFuture<?> announce(TorrentId torrentId);
+    }
+
+    private final Announcer announcer;
+    private final Supplier<Collection<TorrentId>> activeTorrents;
+    private final long announceIntervalNanos;
+    private final long retryIntervalNanos;
+    private final int maxConcurrentAnnounces;
+
+    private final Map<TorrentId, AnnounceState> states;
+    private final AtomicInteger runningAnnounces;
+
+    /**
+     * @param activeTorrents Supplier of torrents, that should be announced
+     * @param announceInterval Interval between two consecutive announces of the same torrent
+     * @param retryInterval Interval before the next attempt, if an announce has failed
+     * @param maxConcurrentAnnounces Maximum number of simultaneously running announces
+     * @since 1.8
+     */
+    DHTAnnounceScheduler(Announcer announcer,
+                         Supplier<Collection<TorrentId>> activeTorrents,
+                         Duration announceInterval,
+                         Duration retryInterval,
+                         int maxConcurrentAnnounces) {
+        this.announcer = announcer;
+        this.activeTorrents = activeTorrents;
+        this.announceIntervalNanos = announceInterval.toNanos();
+        this.retryIntervalNanos = retryInterval.toNanos();
+        this.maxConcurrentAnnounces = maxConcurrentAnnounces;
+
+        this.states = new ConcurrentHashMap<>();
+        this.runningAnnounces = new AtomicInteger();
+    }
+
+    /**
+     * Updates the set of announced torrents and starts the next due announce, if the limit of running announces allows.
+     *
+     * @since 1.8
+     */
+    void dispatch() {
+        long now = System.nanoTime();
+
+        Set<TorrentId> torrentIds = new HashSet<>(activeTorrents.get());
+        states.keySet().retainAll(torrentIds);
+        // newly added torrents are announced as soon as possible
+        torrentIds.forEach(torrentId -> states.computeIfAbsent(torrentId, id -> new AnnounceState(now)));
+
+        if (runningAnnounces.get() >= maxConcurrentAnnounces) {
+            return;
+        }
+
+        TorrentId nextTorrentId = null;
+        AnnounceState next = null;
+        for (Map.Entry<TorrentId, AnnounceState> entry : states.entrySet()) {
+            AnnounceState state = entry.getValue();
+            if (!state.running && now - state.nextAnnounceAt >= 0
+                    && (next == null || state.nextAnnounceAt - next.nextAnnounceAt < 0)) {
+                nextTorrentId = entry.getKey();
+                next = state;
+            }
+        }
+        if (next != null) {
+            announce(nextTorrentId, next);
+        }
+    }
+
+    private void announce(TorrentId torrentId, AnnounceState state) {
+        state.running = true;
+        runningAnnounces.incrementAndGet();
+
+        CompletableFuture<?> future;
+        try {
+            future = announcer.announce(torrentId);
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((result, error) -> {
+            long now = System.nanoTime();
+            if (error == null) {
+                state.nextAnnounceAt = now + randomize(announceIntervalNanos);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Announced torrent ID: " + torrentId);
+                }
+            } else {
+                state.nextAnnounceAt = now + randomize(retryIntervalNanos);
+                LOGGER.warn("Failed to announce torrent ID: " + torrentId, error);
+            }
+            state.running = false;
+            runningAnnounces.decrementAndGet();
+        });
+    }
+
+    private static long randomize(long intervalNanos) {
+        double jitter = ThreadLocalRandom.current().nextDouble(-INTERVAL_JITTER, INTERVAL_JITTER);
+        return (long) (intervalNanos * (1 + jitter));
+    }
+
+    /**
+     * @return Number of announces, that are currently running
+     * @since 1.8
+     */
+    int getRunningAnnounceCount() {
+        return runningAnnounces.get();
+    }
+
+    private static class AnnounceState {
+
+        private volatile long nextAnnounceAt;
+        private volatile boolean running;
+
+        AnnounceState(long nextAnnounceAt) {
+            this.nextAnnounceAt = nextAnnounceAt;
+        }
+    }
+}
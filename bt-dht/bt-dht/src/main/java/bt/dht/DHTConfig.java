@@ -18,6 +18,8 @@ package bt.dht;
 
 import bt.net.InetPeerAddress;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -33,6 +35,15 @@ public class DHTConfig {
     private boolean useRouterBootstrap;
     private boolean useIPv6;
     private Collection<InetPeerAddress> bootstrapNodes;
+    private int maxConcurrentLookups;
+    private Duration lookupInterval;
+    private Duration lookupResultTtl;
+    private boolean shouldAnnounce;
+    private Duration announceInterval;
+    private int maxConcurrentAnnounces;
+    private Path storageDirectory;
+    private Duration metricsReportInterval;
+    private int packetProcessingThreads;
 
     private final Collection<InetPeerAddress> publicBootstrapNodes;
 
@@ -44,6 +55,13 @@ public class DHTConfig {
         this.useRouterBootstrap = false;
         this.useIPv6 = false;
         this.bootstrapNodes = Collections.emptyList();
+        this.maxConcurrentLookups = 8;
+        this.lookupInterval = Duration.ofMillis(200);
+        this.lookupResultTtl = Duration.ofMinutes(5);
+        this.shouldAnnounce = true;
+        this.announceInterval = Duration.ofMinutes(15);
+        this.maxConcurrentAnnounces = 4;
+        this.packetProcessingThreads = Math.max(Runtime.getRuntime().availableProcessors(), 2);
 
         this.publicBootstrapNodes = Arrays.asList(
             new InetPeerAddress("router.bittorrent.com", 6881),
@@ -117,6 +135,158 @@ public class DHTConfig {
         this.bootstrapNodes = bootstrapNodes;
     }
 
+    /**
+     * @see #setMaxConcurrentLookups(int)
+     * @since 1.8
+     */
+    public int getMaxConcurrentLookups() {
+        return maxConcurrentLookups;
+    }
+
+    /**
+     * @param maxConcurrentLookups Maximum number of simultaneously running peer lookups (for all torrents)
+     * @since 1.8
+     */
+    public void setMaxConcurrentLookups(int maxConcurrentLookups) {
+        this.maxConcurrentLookups = maxConcurrentLookups;
+    }
+
+    /**
+     * @see #setLookupInterval(Duration)
+     * @since 1.8
+     */
+    public Duration getLookupInterval() {
+        return lookupInterval;
+    }
+
+    /**
+     * @param lookupInterval Minimum interval between starting two consecutive peer lookups
+     * @since 1.8
+     */
+    public void setLookupInterval(Duration lookupInterval) {
+        this.lookupInterval = lookupInterval;
+    }
+
+    /**
+     * @see #setLookupResultTtl(Duration)
+     * @since 1.8
+     */
+    public Duration getLookupResultTtl() {
+        return lookupResultTtl;
+    }
+
+    /**
+     * @param lookupResultTtl Amount of time to keep the peers found by a lookup;
+     *                        requests for the same torrent during this period will not start a new lookup
+     * @since 1.8
+     */
+    public void setLookupResultTtl(Duration lookupResultTtl) {
+        this.lookupResultTtl = lookupResultTtl;
+    }
+
+    /**
+     * @see #setShouldAnnounce(boolean)
+     * @since 1.8
+     */
+    public boolean shouldAnnounce() {
+        return shouldAnnounce;
+    }
+
+    /**
+     * @param shouldAnnounce Indicates whether active torrents should be periodically announced in DHT,
+     *                       so that other peers can find this client
+     * @since 1.8
+     */
+    public void setShouldAnnounce(boolean shouldAnnounce) {
+        this.shouldAnnounce = shouldAnnounce;
+    }
+
+    /**
+     * @see #setAnnounceInterval(Duration)
+     * @since 1.8
+     */
+    public Duration getAnnounceInterval() {
+        return announceInterval;
+    }
+
+    /**
+     * @param announceInterval Interval between two consecutive announces of the same torrent
+     * @since 1.8
+     */
+    public void setAnnounceInterval(Duration announceInterval) {
+        this.announceInterval = announceInterval;
+    }
+
+    /**
+     * @see #setMaxConcurrentAnnounces(int)
+     * @since 1.8
+     */
+    public int getMaxConcurrentAnnounces() {
+        return maxConcurrentAnnounces;
+    }
+
+    /**
+     * @param maxConcurrentAnnounces Maximum number of simultaneously running announces (for all torrents)
+     * @since 1.8
+     */
+    public void setMaxConcurrentAnnounces(int maxConcurrentAnnounces) {
+        this.maxConcurrentAnnounces = maxConcurrentAnnounces;
+    }
+
+    /**
+     * @see #setStorageDirectory(Path)
+     * @since 1.8
+     */
+    public Path getStorageDirectory() {
+        return storageDirectory;
+    }
+
+    /**
+     * @param storageDirectory Directory to persist the DHT node ID and routing table snapshots to.
+     *                         If set, DHT will resume with the persisted routing table after restart,
+     *                         instead of bootstrapping from scratch. If null (default), DHT state is not persisted
+     * @since 1.8
+     */
+    public void setStorageDirectory(Path storageDirectory) {
+        this.storageDirectory = storageDirectory;
+    }
+
+    /**
+     * @see #setMetricsReportInterval(Duration)
+     * @since 1.8
+     */
+    public Duration getMetricsReportInterval() {
+        return metricsReportInterval;
+    }
+
+    /**
+     * @param metricsReportInterval Interval between two consecutive reports of DHT metrics to the log (at INFO level).
+     *                              Each report includes rates since the previous one.
+     *                              If null (default), metrics are not reported, but are still available
+     *                              via {@link DHTMetricsService}
+     * @since 1.8
+     */
+    public void setMetricsReportInterval(Duration metricsReportInterval) {
+        this.metricsReportInterval = metricsReportInterval;
+    }
+
+    /**
+     * @see #setPacketProcessingThreads(int)
+     * @since 1.8
+     */
+    public int getPacketProcessingThreads() {
+        return packetProcessingThreads;
+    }
+
+    /**
+     * @param packetProcessingThreads Number of threads, that decode and dispatch incoming DHT packets.
+     *                                Default is one thread per available processor, but at least two threads
+     * @since 1.8
+     */
+    public void setPacketProcessingThreads(int packetProcessingThreads) {
+        this.packetProcessingThreads = packetProcessingThreads;
+    }
+
     /***************** NOT PUBLIC ******************/
 
     /**
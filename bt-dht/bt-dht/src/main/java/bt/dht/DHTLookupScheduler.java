@@ -0,0 +1,433 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.dht.stream.Publisher;
+import bt.dht.stream.StreamAdapter;
+import bt.dht.stream.Subscriber;
+import bt.dht.stream.Subscription;
+import bt.metainfo.TorrentId;
+import bt.net.Peer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Shares peer lookups between callers.
+ *
+ * Concurrent requests for the same torrent are served by a single lookup,
+ * and peers found by a finished lookup are cached for a configurable amount of time.
+ * Each invocation of {@link #dispatch()} starts at most one pending lookup,
+ * unless the maximum number of running lookups has been reached;
+ * pending lookups for torrents with fewer connected peers are started first.
+ *
+ * Peers are delivered to subscribers on the threads, that report them (i.e. DHT threads),
+ * so that no thread is blocked while a lookup is running.
+ *
+ * @param <R> Type of lookup result, that is retained along with the found peers (e.g. for subsequent announces)
+ * @since 1.8
+ */
+class DHTLookupScheduler<R> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DHTLookupScheduler.class);
+
+    /**
+     * Starts the actual DHT lookup.
+     *
+     * @since 1.8
+     */
+    interface LookupStarter<R> {
+
+        /**
+         * Should not block.
+         *
+         * @param peerConsumer Receives peers, as they are found
+         * @return Future, that is completed with the lookup's result when the lookup has finished,
+         *         or completed exceptionally, if the lookup could not be performed
+         * @since 1.8
+         */
+        CompletableFuture<R> startLookup(TorrentId torrentId, Consumer<Peer> peerConsumer);
+    }
+
+    private final LookupStarter<R> lookupStarter;
+    private final int maxConcurrentLookups;
+    private final long resultTtlNanos;
+
+    private final Object lock;
+    private final Map<TorrentId, Lookup> lookups;
+    private final PriorityQueue<Lookup> pendingLookups;
+    private int runningLookups;
+    private long lookupCounter;
+    private boolean shutdown;
+
+    /**
+     * @param maxConcurrentLookups Maximum number of simultaneously running lookups
+     * @param resultTtl Amount of time to keep the results of a finished lookup
+     * @since 1.8
+     */
+    DHTLookupScheduler(LookupStarter<R> lookupStarter, int maxConcurrentLookups, Duration resultTtl) {
+        this.lookupStarter = lookupStarter;
+        this.maxConcurrentLookups = maxConcurrentLookups;
+        this.resultTtlNanos = resultTtl.toNanos();
+
+        this.lock = new Object();
+        this.lookups = new HashMap<>();
+        this.pendingLookups = new PriorityQueue<>(
+                Comparator.comparingInt((Lookup lookup) -> lookup.priority).thenComparingLong(lookup -> lookup.sequence));
+    }
+
+    /**
+     * @param connectedPeers Number of peers, that the caller is currently connected to
+     * @return Publisher of peers, that completes when the lookup has finished.
+     *         Each subscription requests the lookup anew.
+     * @since 1.8
+     */
+    Publisher<Peer> lookupPeers(TorrentId torrentId, int connectedPeers) {
+        return subscriber -> getOrScheduleLookup(torrentId, connectedPeers, resultTtlNanos).subscribe(subscriber);
+    }
+
+    /**
+     * @param connectedPeers Number of peers, that the caller is currently connected to
+     * @param maxAge Maximum age of the results of a finished lookup, that may be reused;
+     *               a new lookup is scheduled, if the existing results are older
+     * @return Future, that is completed with the result of the lookup, when it has finished
+     * @since 1.8
+     */
+    CompletableFuture<R> getLookupResult(TorrentId torrentId, int connectedPeers, Duration maxAge) {
+        return getOrScheduleLookup(torrentId, connectedPeers, Math.min(resultTtlNanos, maxAge.toNanos())).result;
+    }
+
+    /**
+     * Blocking counterpart of {@link #lookupPeers(TorrentId, int)}.
+     *
+     * @param connectedPeers Number of peers, that the caller is currently connected to
+     * @return Stream of peers, that ends when the lookup has finished
+     * @since 1.8
+     */
+    Stream<Peer> getPeers(TorrentId torrentId, int connectedPeers) {
+        StreamAdapter<Peer> streamAdapter = new StreamAdapter<>();
+        lookupPeers(torrentId, connectedPeers).subscribe(new Subscriber<Peer>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Peer peer) {
+                streamAdapter.addItem(peer);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                streamAdapter.finishStream();
+            }
+
+            @Override
+            public void onComplete() {
+                streamAdapter.finishStream();
+            }
+        });
+        return streamAdapter.stream();
+    }
+
+    private Lookup getOrScheduleLookup(TorrentId torrentId, int connectedPeers, long maxAgeNanos) {
+        synchronized (lock) {
+            if (shutdown) {
+                Lookup lookup = new Lookup(torrentId, connectedPeers, lookupCounter++);
+                lookup.cancel();
+                return lookup;
+            }
+            Lookup lookup = lookups.get(torrentId);
+            if (lookup == null || lookup.isExpired(System.nanoTime(), maxAgeNanos)) {
+                lookup = new Lookup(torrentId, connectedPeers, lookupCounter++);
+                lookups.put(torrentId, lookup);
+                pendingLookups.add(lookup);
+            } else if (connectedPeers < lookup.priority && pendingLookups.remove(lookup)) {
+                lookup.priority = connectedPeers;
+                pendingLookups.add(lookup);
+            }
+            return lookup;
+        }
+    }
+
+    /**
+     * Removes expired results and starts the next pending lookup, if the limit of running lookups allows.
+     *
+     * @since 1.8
+     */
+    void dispatch() {
+        Lookup lookup;
+        synchronized (lock) {
+            long now = System.nanoTime();
+            lookups.values().removeIf(l -> l.isExpired(now, resultTtlNanos));
+
+            if (shutdown || runningLookups >= maxConcurrentLookups) {
+                return;
+            }
+            lookup = pendingLookups.poll();
+            if (lookup == null) {
+                return;
+            }
+            runningLookups++;
+        }
+
+        CompletableFuture<R> future;
+        try {
+            future = lookupStarter.startLookup(lookup.torrentId, lookup::onPeerFound);
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                LOGGER.warn("Peer lookup failed for torrent ID: " + lookup.torrentId, error);
+                synchronized (lock) {
+                    // do not keep the results of a failed lookup
+                    lookups.remove(lookup.torrentId, lookup);
+                }
+            }
+            onLookupFinished(lookup, result, error);
+        });
+    }
+
+    private void onLookupFinished(Lookup lookup, R result, Throwable error) {
+        if (lookup.finish(System.nanoTime())) {
+            if (error == null) {
+                lookup.result.complete(result);
+            } else {
+                lookup.result.completeExceptionally(error);
+            }
+            synchronized (lock) {
+                runningLookups--;
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Peer lookup finished for torrent ID: " + lookup.torrentId);
+            }
+        }
+    }
+
+    /**
+     * @return Number of lookups, that have been requested, but not yet started
+     * @since 1.8
+     */
+    int getPendingLookupCount() {
+        synchronized (lock) {
+            return pendingLookups.size();
+        }
+    }
+
+    /**
+     * @return Number of lookups, that are currently running
+     * @since 1.8
+     */
+    int getRunningLookupCount() {
+        synchronized (lock) {
+            return runningLookups;
+        }
+    }
+
+    /**
+     * Completes the subscriptions to all pending and running lookups.
+     * Subsequent subscriptions will complete immediately.
+     *
+     * @since 1.8
+     */
+    void shutdown() {
+        List<Lookup> unfinished;
+        synchronized (lock) {
+            shutdown = true;
+            unfinished = new ArrayList<>(lookups.values());
+            lookups.clear();
+            pendingLookups.clear();
+        }
+        unfinished.forEach(Lookup::cancel);
+    }
+
+    private class Lookup {
+
+        private final TorrentId torrentId;
+        private final long sequence;
+        // lower value means higher priority; guarded by the scheduler's lock
+        private int priority;
+
+        // peers are only appended, so that each subscription can keep its own position in the list
+        private final List<Peer> peers;
+        private final Set<Peer> uniquePeers;
+        private final List<PeerSubscription> subscriptions;
+        private boolean finished;
+        private long finishedAt;
+        private final CompletableFuture<R> result;
+
+        Lookup(TorrentId torrentId, int priority, long sequence) {
+            this.torrentId = torrentId;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.peers = new ArrayList<>();
+            this.uniquePeers = new HashSet<>();
+            this.subscriptions = new ArrayList<>();
+            this.result = new CompletableFuture<>();
+        }
+
+        void subscribe(Subscriber<? super Peer> subscriber) {
+            PeerSubscription subscription = new PeerSubscription(this, subscriber);
+            synchronized (this) {
+                if (!finished) {
+                    subscriptions.add(subscription);
+                }
+            }
+            subscriber.onSubscribe(subscription);
+            subscription.drain();
+        }
+
+        synchronized void unsubscribe(PeerSubscription subscription) {
+            subscriptions.remove(subscription);
+        }
+
+        void onPeerFound(Peer peer) {
+            List<PeerSubscription> subscriptions;
+            synchronized (this) {
+                if (finished || !uniquePeers.add(peer)) {
+                    return;
+                }
+                peers.add(peer);
+                subscriptions = new ArrayList<>(this.subscriptions);
+            }
+            subscriptions.forEach(PeerSubscription::drain);
+        }
+
+        /**
+         * @return true, if this lookup has not been finished before
+         */
+        boolean finish(long time) {
+            List<PeerSubscription> subscriptions;
+            synchronized (this) {
+                if (finished) {
+                    return false;
+                }
+                finished = true;
+                finishedAt = time;
+                subscriptions = new ArrayList<>(this.subscriptions);
+                this.subscriptions.clear();
+            }
+            subscriptions.forEach(PeerSubscription::drain);
+            return true;
+        }
+
+        void cancel() {
+            finish(System.nanoTime());
+            result.completeExceptionally(new IllegalStateException("Lookup scheduler has been shut down"));
+        }
+
+        synchronized boolean isExpired(long now, long maxAgeNanos) {
+            return finished && (now - finishedAt >= maxAgeNanos);
+        }
+
+        /**
+         * @return Peer at the given position, or null, if it has not been found yet
+         */
+        synchronized Peer getPeer(int position) {
+            return (position < peers.size()) ? peers.get(position) : null;
+        }
+
+        synchronized boolean isFinished() {
+            return finished;
+        }
+    }
+
+    private class PeerSubscription implements Subscription {
+
+        private final Lookup lookup;
+        private final Subscriber<? super Peer> subscriber;
+
+        private final AtomicLong requested;
+        // number of concurrent drain requests; only the thread, that brings it up from zero, delivers items
+        private final AtomicInteger drainRequests;
+        private volatile boolean cancelled;
+        // accessed only by the draining thread
+        private int position;
+
+        PeerSubscription(Lookup lookup, Subscriber<? super Peer> subscriber) {
+            this.lookup = lookup;
+            this.subscriber = subscriber;
+            this.requested = new AtomicLong();
+            this.drainRequests = new AtomicInteger();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Number of requested items must be positive: " + n));
+                return;
+            }
+            requested.getAndUpdate(r -> (r + n < 0) ? Long.MAX_VALUE : r + n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            lookup.unsubscribe(this);
+        }
+
+        void drain() {
+            if (drainRequests.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                long emitted = 0;
+                long limit = requested.get();
+                while (!cancelled) {
+                    // must be checked before getting the peer, so that peers found before finishing are not lost
+                    boolean finished = lookup.isFinished();
+                    Peer peer = lookup.getPeer(position);
+                    if (peer == null) {
+                        if (finished) {
+                            cancelled = true;
+                            subscriber.onComplete();
+                        }
+                        break;
+                    } else if (emitted == limit) {
+                        break;
+                    }
+                    position++;
+                    emitted++;
+                    subscriber.onNext(peer);
+                }
+                if (emitted > 0 && limit != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = drainRequests.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.dht.stream.Publisher;
+import bt.metainfo.TorrentId;
+import bt.net.Peer;
+
+import java.util.stream.Stream;
+
+/**
+ * DHT service, that shares peer lookups between its callers.
+ *
+ * @since 1.8
+ */
+public interface DHTLookupService extends DHTService {
+
+    /**
+     * Requests peers for a given torrent.
+     *
+     * Concurrent requests for the same torrent are served by a single lookup,
+     * and peers found by a recently finished lookup are returned without starting a new one.
+     * Lookups are rate-limited globally; of the pending lookups,
+     * the ones for torrents with fewer connected peers are started first.
+     *
+     * @param connectedPeers Number of peers, that the caller is currently connected to
+     * @return Stream of peers.
+     *         Retrieval of the next element might block.
+     *         The stream ends when the lookup is exhausted.
+     * @since 1.8
+     */
+    Stream<Peer> getPeers(TorrentId torrentId, int connectedPeers);
+
+    /**
+     * Non-blocking counterpart of {@link #getPeers(TorrentId, int)}.
+     *
+     * Each subscription requests peers for the torrent; the lookup is shared in the same way.
+     * Peers are delivered on DHT threads, as they are found and requested by the subscriber,
+     * and the subscription completes when the lookup is exhausted.
+     * Subscribers should not block and may cancel the subscription at any time.
+     *
+     * @param connectedPeers Number of peers, that the caller is currently connected to
+     * @return Publisher of peers
+     * @since 1.8
+     */
+    Publisher<Peer> lookupPeers(TorrentId torrentId, int connectedPeers);
+}
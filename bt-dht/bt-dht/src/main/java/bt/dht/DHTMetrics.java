@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.dht;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Snapshot of DHT node metrics.
+ *
+ * Counters (messages, bytes, errors, etc.) are cumulative since the start of the DHT;
+ * gauges (queue sizes, active calls and tasks, routing table) reflect the state at the time of the snapshot.
+ *
+ * @since 1.8
+ */
+public interface DHTMetrics {
+
+    /**
+     * @return Time, when this snapshot was taken
+     * @since 1.8
+     */
+    Instant getTimestamp();
+
+    /**
+     * @return Total number of received messages
+     * @since 1.8
+     */
+    long getMessagesReceived();
+
+    /**
+     * @return Total number of sent messages
+     * @since 1.8
+     */
+    long getMessagesSent();
+
+    /**
+     * @return Total number of received bytes
+     * @since 1.8
+     */
+    long getBytesReceived();
+
+    /**
+     * @return Total number of sent bytes
+     * @since 1.8
+     */
+    long getBytesSent();
+
+    /**
+     * @return Total number of incoming packets, that have been dropped without processing
+     *         (e.g. due to throttling or saturation of the packet processor)
+     * @since 1.8
+     */
+    long getPacketsDropped();
+
+    /**
+     * @return Total number of incoming packets, that could not be decoded into valid messages
+     * @since 1.8
+     */
+    long getDecodeErrors();
+
+    /**
+     * @return Number of received packets, that are waiting to be processed
+     * @since 1.8
+     */
+    int getQueuedIncomingPackets();
+
+    /**
+     * @return Number of outgoing messages, that are waiting to be sent
+     * @since 1.8
+     */
+    int getQueuedOutgoingMessages();
+
+    /**
+     * @return Number of requests, that are waiting for response
+     * @since 1.8
+     */
+    int getActiveCalls();
+
+    /**
+     * @return Number of running DHT tasks (lookups, announces, etc.)
+     * @since 1.8
+     */
+    int getActiveTasks();
+
+    /**
+     * @return Number of DHT tasks, that are waiting to be started
+     * @since 1.8
+     */
+    int getQueuedTasks();
+
+    /**
+     * @return Per-method RPC metrics, keyed by lowercase method name (e.g. "ping", "get_peers")
+     * @since 1.8
+     */
+    Map<String, RpcMetrics> getRpcMetrics();
+
+    /**
+     * @return Distribution of the total duration of finished peer lookups
+     * @since 1.8
+     */
+    LatencyDistribution getPeerLookupTime();
+
+    /**
+     * @return Distribution of the time until the first peer has been found, for lookups that found any peers
+     * @since 1.8
+     */
+    LatencyDistribution getPeerLookupFirstResultTime();
+
+    /**
+     * @return Number of buckets in the routing table
+     * @since 1.8
+     */
+    int getRoutingTableBuckets();
+
+    /**
+     * @return Number of nodes in the routing table
+     * @since 1.8
+     */
+    int getRoutingTableEntries();
+
+    /**
+     * @return Number of nodes in the routing table, that have responded to our requests
+     * @since 1.8
+     */
+    int getRoutingTableVerifiedEntries();
+
+    /**
+     * @return Number of replacement candidates in the routing table
+     * @since 1.8
+     */
+    int getRoutingTableReplacements();
+
+    /**
+     * Metrics of a single RPC method.
+     *
+     * @since 1.8
+     */
+    interface RpcMetrics {
+
+        /**
+         * @return Total number of requests, that have been sent
+         * @since 1.8
+         */
+        long getRequestsSent();
+
+        /**
+         * @return Total number of responses to our requests
+         * @since 1.8
+         */
+        long getResponsesReceived();
+
+        /**
+         * @return Total number of error replies to our requests
+         * @since 1.8
+         */
+        long getErrorsReceived();
+
+        /**
+         * @return Total number of our requests, that have timed out
+         * @since 1.8
+         */
+        long getTimeouts();
+
+        /**
+         * @return Total number of requests, that have been received from other nodes
+         * @since 1.8
+         */
+        long getRequestsReceived();
+
+        /**
+         * @return Distribution of response times to our requests
+         * @since 1.8
+         */
+        LatencyDistribution getResponseTime();
+    }
+}
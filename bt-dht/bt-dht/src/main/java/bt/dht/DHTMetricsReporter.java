@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.dht;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Periodically logs DHT metrics along with rates since the previous report.
+ *
+ * @since 1.8
+ */
+class DHTMetricsReporter implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DHTMetricsReporter.class);
+
+    private final DHTMetricsService metricsService;
+    private DHTMetrics previous;
+
+    DHTMetricsReporter(DHTMetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
+    @Override
+    public void run() {
+        if (!LOGGER.isInfoEnabled()) {
+            return;
+        }
+        try {
+            DHTMetrics current = metricsService.getMetrics();
+            LOGGER.info(report(previous, current));
+            previous = current;
+        } catch (Exception e) {
+            // metrics are collected from live DHT structures; never let reporting kill the scheduler
+            LOGGER.warn("Failed to collect DHT metrics", e);
+        }
+    }
+
+    static String report(DHTMetrics previous, DHTMetrics current) {
+        double seconds = (previous == null) ? 0
+                : Duration.between(previous.getTimestamp(), current.getTimestamp()).toMillis() / 1000d;
+
+        StringBuilder buf = new StringBuilder("DHT metrics:");
+        buf.append(String.format("\n  messages: received %d (%.1f/s), sent %d (%.1f/s)",
+                current.getMessagesReceived(), rate(previous, current, DHTMetrics::getMessagesReceived, seconds),
+                current.getMessagesSent(), rate(previous, current, DHTMetrics::getMessagesSent, seconds)));
+        buf.append(String.format("\n  bytes: received %d (%.1f/s), sent %d (%.1f/s)",
+                current.getBytesReceived(), rate(previous, current, DHTMetrics::getBytesReceived, seconds),
+                current.getBytesSent(), rate(previous, current, DHTMetrics::getBytesSent, seconds)));
+        buf.append(String.format("\n  dropped packets: %d (%.1f/s), decode errors: %d (%.1f/s)",
+                current.getPacketsDropped(), rate(previous, current, DHTMetrics::getPacketsDropped, seconds),
+                current.getDecodeErrors(), rate(previous, current, DHTMetrics::getDecodeErrors, seconds)));
+        buf.append(String.format("\n  queues: incoming %d, outgoing %d, active calls: %d, tasks: %d active, %d queued",
+                current.getQueuedIncomingPackets(), current.getQueuedOutgoingMessages(), current.getActiveCalls(),
+                current.getActiveTasks(), current.getQueuedTasks()));
+        buf.append(String.format("\n  routing table: %d buckets, %d entries (%d verified), %d replacements",
+                current.getRoutingTableBuckets(), current.getRoutingTableEntries(),
+                current.getRoutingTableVerifiedEntries(), current.getRoutingTableReplacements()));
+        buf.append("\n  peer lookup time (ms): ").append(current.getPeerLookupTime());
+        buf.append("\n  peer lookup first result time (ms): ").append(current.getPeerLookupFirstResultTime());
+
+        for (Map.Entry<String, DHTMetrics.RpcMetrics> e : current.getRpcMetrics().entrySet()) {
+            DHTMetrics.RpcMetrics rpc = e.getValue();
+            if (rpc.getRequestsSent() == 0 && rpc.getRequestsReceived() == 0) {
+                continue;
+            }
+            buf.append(String.format("\n  %s: sent %d, responses %d, errors %d, timeouts %d, received %d; response time (ms): %s",
+                    e.getKey(), rpc.getRequestsSent(), rpc.getResponsesReceived(), rpc.getErrorsReceived(),
+                    rpc.getTimeouts(), rpc.getRequestsReceived(), rpc.getResponseTime()));
+        }
+        return buf.toString();
+    }
+
+    private interface Counter {
+        long get(DHTMetrics metrics);
+    }
+
+    private static double rate(DHTMetrics previous, DHTMetrics current, Counter counter, double seconds) {
+        if (previous == null || seconds <= 0) {
+            return 0;
+        }
+        return (counter.get(current) - counter.get(previous)) / seconds;
+    }
+}
@@ -14,15 +14,24 @@
  * limitations under the License.
  */
 
-package bt.bencoding;
 
-import bt.bencoding.model.BEObject;
+package bt.dht;
 
-interface BEObjectBuilder<T extends BEObject> {
-
-    boolean accept(int b);
-
-    T build();
+/**
+ * Provides runtime metrics of the DHT node.
+ *
+ * @since 1.8
+ */
+public interface DHTMetricsService {
 
-    BEType getType();
+    /**
+     * Collects a snapshot of DHT metrics.
+     *
+     * Counters are cumulative since the start of the DHT,
+     * so that rates for an arbitrary interval can be calculated by comparing two snapshots.
+     *
+     * @return Current metrics
+     * @since 1.8
+     */
+    DHTMetrics getMetrics();
 }
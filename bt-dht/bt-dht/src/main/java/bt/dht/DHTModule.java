@@ -52,6 +52,9 @@ public class DHTModule implements Module {
         ProtocolModule.extend(binder).addMessageHandler(PortMessageHandler.PORT_ID, PortMessageHandler.class);
 
         // this service contributes startup lifecycle bindings and should be instantiated eagerly
-        binder.bind(DHTService.class).to(MldhtService.class).asEagerSingleton();
+        binder.bind(MldhtService.class).asEagerSingleton();
+        binder.bind(DHTService.class).to(MldhtService.class);
+        binder.bind(DHTLookupService.class).to(MldhtService.class);
+        binder.bind(DHTMetricsService.class).to(MldhtService.class);
     }
 }
@@ -16,45 +16,155 @@
 
 package bt.dht;
 
+import bt.dht.stream.Subscriber;
+import bt.dht.stream.Subscription;
 import bt.metainfo.TorrentId;
+import bt.net.IPeerConnectionPool;
 import bt.net.Peer;
-import bt.peer.ScheduledPeerSource;
+import bt.peer.PeerSource;
+import bt.peer.PeerSourceType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ExecutorService;
-import java.util.function.Consumer;
-import java.util.stream.Stream;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Collects peers from DHT without blocking any threads:
+ * peers are received from a subscription to the torrent's (shared) DHT lookup.
+ *
+ * The subscription is kept until the lookup is exhausted, and the next batch of peers
+ * is requested from it, when the previous one has been consumed;
+ * so all peers, that have been found by the lookup, are eventually delivered.
+ *
  * @since 1.1
  */
-public class DHTPeerSource extends ScheduledPeerSource {
+public class DHTPeerSource implements PeerSource {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DHTPeerSource.class);
 
     private static final int MAX_PEERS_PER_COLLECTION = 50;
 
     private final TorrentId torrentId;
-    private final DHTService dhtService;
+    private final DHTLookupService dhtService;
+    private final IPeerConnectionPool connectionPool;
+
+    private final Queue<Peer> peers;
+    private volatile PeerCollector collector;
 
-    DHTPeerSource(TorrentId torrentId, DHTService dhtService, ExecutorService executor) {
-        super(executor);
+    DHTPeerSource(TorrentId torrentId,
+                  DHTLookupService dhtService,
+                  IPeerConnectionPool connectionPool) {
         this.torrentId = torrentId;
         this.dhtService = dhtService;
+        this.connectionPool = connectionPool;
+        this.peers = new LinkedBlockingQueue<>();
+    }
+
+    @Override
+    public Collection<Peer> getPeers() {
+        return peers;
     }
 
     @Override
-    protected void collectPeers(Consumer<Peer> peerConsumer) {
-        Stream<Peer> peerStream = dhtService.getPeers(torrentId).limit(MAX_PEERS_PER_COLLECTION);
-        peerStream.forEach(peer -> {
-            peerConsumer.accept(peer);
+    public boolean update() {
+        if (peers.isEmpty()) {
+            PeerCollector collector = this.collector;
+            if (collector == null || collector.isFinished()) {
+                startCollection();
+            } else {
+                collector.requestMore();
+            }
+        }
+        return !peers.isEmpty();
+    }
+
+    private synchronized void startCollection() {
+        PeerCollector collector = this.collector;
+        if (collector != null && !collector.isFinished()) {
+            // another thread has just started a new collection
+            return;
+        }
+        collector = new PeerCollector();
+        this.collector = collector;
+        try {
+            dhtService.lookupPeers(torrentId, countConnections()).subscribe(collector);
+        } catch (Exception e) {
+            collector.finishCollection();
+            throw e;
+        }
+    }
+
+    // torrents with fewer connections get their lookups started first
+    private int countConnections() {
+        int[] count = new int[1];
+        connectionPool.visitConnections(torrentId, connection -> count[0]++);
+        return count[0];
+    }
+
+    @Override
+    public PeerSourceType getType() {
+        return PeerSourceType.DHT;
+    }
+
+    private class PeerCollector implements Subscriber<Peer> {
+
+        private volatile Subscription subscription;
+        // number of peers, that have been requested, but not yet received
+        private final AtomicInteger outstanding;
+        private volatile boolean finished;
+
+        PeerCollector() {
+            this.outstanding = new AtomicInteger();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            requestMore();
+        }
+
+        /**
+         * Request the next batch of peers, unless the previous one has not been received yet.
+         */
+        void requestMore() {
+            Subscription subscription = this.subscription;
+            if (subscription != null && !finished && outstanding.compareAndSet(0, MAX_PEERS_PER_COLLECTION)) {
+                subscription.request(MAX_PEERS_PER_COLLECTION);
+            }
+        }
+
+        @Override
+        public void onNext(Peer peer) {
+            peers.add(peer);
+            outstanding.decrementAndGet();
             if (LOGGER.isTraceEnabled()) {
                 LOGGER.trace(String.format("Collected new peer (torrent ID: %s, peer: %s)", torrentId, peer));
             }
-        });
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.info("Peer collection finished for torrent ID: " + torrentId);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            LOGGER.warn("Peer collection failed for torrent ID: " + torrentId, throwable);
+            finishCollection();
+        }
+
+        @Override
+        public void onComplete() {
+            finishCollection();
+        }
+
+        boolean isFinished() {
+            return finished;
+        }
+
+        private void finishCollection() {
+            finished = true;
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("Peer collection finished for torrent ID: " + torrentId);
+            }
         }
     }
 }
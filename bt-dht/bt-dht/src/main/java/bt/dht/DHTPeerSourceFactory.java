@@ -17,15 +17,13 @@
 package bt.dht;
 
 import bt.metainfo.TorrentId;
+import bt.net.IPeerConnectionPool;
 import bt.peer.PeerSource;
 import bt.peer.PeerSourceFactory;
-import bt.service.IRuntimeLifecycleBinder;
 import com.google.inject.Inject;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Factory of DHT peer sources
@@ -34,18 +32,16 @@ import java.util.concurrent.Executors;
  */
 public class DHTPeerSourceFactory implements PeerSourceFactory {
 
-    private DHTService dhtService;
-    private ExecutorService executor;
+    private DHTLookupService dhtService;
+    private IPeerConnectionPool connectionPool;
 
     private Map<TorrentId, DHTPeerSource> peerSources;
 
     @Inject
-    public DHTPeerSourceFactory(IRuntimeLifecycleBinder lifecycleBinder,
-                                DHTService dhtService) {
+    public DHTPeerSourceFactory(DHTLookupService dhtService,
+                                IPeerConnectionPool connectionPool) {
         this.dhtService = dhtService;
-        this.executor = Executors.newCachedThreadPool(r -> new Thread(r, "bt.dht.executor"));
-        lifecycleBinder.onShutdown("Shutdown DHT peer sources", executor::shutdownNow);
-
+        this.connectionPool = connectionPool;
         this.peerSources = new ConcurrentHashMap<>();
     }
 
@@ -53,7 +49,7 @@ public class DHTPeerSourceFactory implements PeerSourceFactory {
     public PeerSource getPeerSource(TorrentId torrentId) {
         DHTPeerSource peerSource = peerSources.get(torrentId);
         if (peerSource == null) {
-            peerSource = new DHTPeerSource(torrentId, dhtService, executor);
+            peerSource = new DHTPeerSource(torrentId, dhtService, connectionPool);
             DHTPeerSource existing = peerSources.putIfAbsent(torrentId, peerSource);
             if (existing != null) {
                 peerSource = existing;
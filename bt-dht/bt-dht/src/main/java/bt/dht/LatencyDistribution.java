@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.dht;
+
+import lbms.plugins.mldht.kad.utils.LatencyHistogram;
+
+/**
+ * Cumulative distribution of latencies in milliseconds.
+ *
+ * Values are recorded into log-linear buckets with ~6% relative resolution,
+ * so percentiles are approximate (rounded up to the bucket's upper bound).
+ *
+ * @since 1.8
+ */
+public final class LatencyDistribution {
+
+    private final LatencyHistogram.Snapshot snapshot;
+
+    LatencyDistribution(LatencyHistogram.Snapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return Number of recorded values
+     * @since 1.8
+     */
+    public long getCount() {
+        return snapshot.getCount();
+    }
+
+    /**
+     * @return Mean of recorded values, or 0 if there are none
+     * @since 1.8
+     */
+    public double getMean() {
+        return snapshot.getMean();
+    }
+
+    /**
+     * @return Maximum of recorded values, or 0 if there are none
+     * @since 1.8
+     */
+    public long getMax() {
+        return snapshot.getMax();
+    }
+
+    /**
+     * @param percentile Percentile in the range 0 - 100
+     * @return Approximate value at the given percentile, or 0 if there are no recorded values
+     * @since 1.8
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Illegal percentile: " + percentile);
+        }
+        return snapshot.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @return Number of buckets
+     * @since 1.8
+     */
+    public int getBucketCount() {
+        return snapshot.getBucketCount();
+    }
+
+    /**
+     * @return Highest value, that is counted in the given bucket
+     * @since 1.8
+     */
+    public long getBucketUpperBound(int bucket) {
+        return snapshot.getBucketUpperBound(bucket);
+    }
+
+    /**
+     * @return Number of recorded values in the given bucket
+     * @since 1.8
+     */
+    public long getCountInBucket(int bucket) {
+        return snapshot.getCountInBucket(bucket);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot.toString();
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.dht;
+
+import lbms.plugins.mldht.kad.DHT;
+import lbms.plugins.mldht.kad.KBucket;
+import lbms.plugins.mldht.kad.KBucketEntry;
+import lbms.plugins.mldht.kad.Node;
+import lbms.plugins.mldht.kad.Node.RoutingTableEntry;
+import lbms.plugins.mldht.kad.RPCServer;
+import lbms.plugins.mldht.kad.RPCServerManager;
+import lbms.plugins.mldht.kad.RPCStats;
+import lbms.plugins.mldht.kad.messages.MessageBase.Method;
+import lbms.plugins.mldht.kad.messages.MessageBase.Type;
+import lbms.plugins.mldht.kad.tasks.TaskManager;
+import lbms.plugins.mldht.kad.utils.LatencyHistogram;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects metrics from the mldht node at construction time.
+ *
+ * @since 1.8
+ */
+class MldhtMetrics implements DHTMetrics {
+
+    private final Instant timestamp;
+
+    private long messagesReceived;
+    private long messagesSent;
+    private final long bytesReceived;
+    private final long bytesSent;
+    private long packetsDropped;
+    private final long decodeErrors;
+
+    private final int queuedIncomingPackets;
+    private int queuedOutgoingMessages;
+    private int activeCalls;
+    private final int activeTasks;
+    private final int queuedTasks;
+
+    private final Map<String, RpcMetrics> rpcMetrics;
+    private final LatencyDistribution peerLookupTime;
+    private final LatencyDistribution peerLookupFirstResultTime;
+
+    private int routingTableBuckets;
+    private int routingTableEntries;
+    private int routingTableVerifiedEntries;
+    private int routingTableReplacements;
+
+    MldhtMetrics(DHT dht) {
+        this.timestamp = Instant.now();
+
+        // RPC stats and other components are created on start; the latter are discarded on stop
+        RPCStats rpcStats = dht.getStats().getRpcStats();
+        Map<String, RpcMetrics> rpcMetrics = new LinkedHashMap<>();
+        if (rpcStats == null) {
+            this.bytesReceived = 0;
+            this.bytesSent = 0;
+            this.decodeErrors = 0;
+            LatencyDistribution noResponses = new LatencyDistribution(new LatencyHistogram().snapshot());
+            for (Method method : Method.values()) {
+                if (method != Method.UNKNOWN) {
+                    rpcMetrics.put(method.name().toLowerCase(), new MldhtRpcMetrics(noResponses));
+                }
+            }
+        } else {
+            this.bytesReceived = rpcStats.getReceivedBytes();
+            this.bytesSent = rpcStats.getSentBytes();
+            this.decodeErrors = rpcStats.getDecodeErrorCount();
+            for (Method method : Method.values()) {
+                for (Type type : Type.values()) {
+                    messagesReceived += rpcStats.getReceivedMessageCount(method, type);
+                    messagesSent += rpcStats.getSentMessageCount(method, type);
+                }
+                if (method != Method.UNKNOWN) {
+                    rpcMetrics.put(method.name().toLowerCase(), new MldhtRpcMetrics(rpcStats, method));
+                }
+            }
+        }
+        this.rpcMetrics = Collections.unmodifiableMap(rpcMetrics);
+
+        this.peerLookupTime = new LatencyDistribution(dht.getStats().getPeerLookupTimes());
+        this.peerLookupFirstResultTime = new LatencyDistribution(dht.getStats().getPeerLookupFirstResultTimes());
+
+        this.queuedIncomingPackets = dht.getNumQueuedPackets();
+
+        RPCServerManager serverManager = dht.getServerManager();
+        if (serverManager != null) {
+            for (RPCServer server : serverManager.getAllServers()) {
+                packetsDropped += server.getNumDropped();
+                queuedOutgoingMessages += server.getNumQueuedSends();
+                activeCalls += server.getNumActiveRPCCalls();
+            }
+        }
+
+        TaskManager taskManager = dht.getTaskManager();
+        this.activeTasks = (taskManager == null) ? 0 : taskManager.getNumTasks();
+        this.queuedTasks = (taskManager == null) ? 0 : taskManager.getNumQueuedTasks();
+
+        Node node = dht.getNode();
+        if (node != null) {
+            node.table().stream().map(RoutingTableEntry::getBucket).forEach(this::addBucket);
+        }
+    }
+
+    private void addBucket(KBucket bucket) {
+        routingTableBuckets++;
+        routingTableEntries += bucket.getNumEntries();
+        routingTableReplacements += bucket.getNumReplacements();
+        routingTableVerifiedEntries += (int) bucket.entriesStream().filter(KBucketEntry::verifiedReachable).count();
+    }
+
+    @Override
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    @Override
+    public long getPacketsDropped() {
+        return packetsDropped;
+    }
+
+    @Override
+    public long getDecodeErrors() {
+        return decodeErrors;
+    }
+
+    @Override
+    public int getQueuedIncomingPackets() {
+        return queuedIncomingPackets;
+    }
+
+    @Override
+    public int getQueuedOutgoingMessages() {
+        return queuedOutgoingMessages;
+    }
+
+    @Override
+    public int getActiveCalls() {
+        return activeCalls;
+    }
+
+    @Override
+    public int getActiveTasks() {
+        return activeTasks;
+    }
+
+    @Override
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    @Override
+    public Map<String, RpcMetrics> getRpcMetrics() {
+        return rpcMetrics;
+    }
+
+    @Override
+    public LatencyDistribution getPeerLookupTime() {
+        return peerLookupTime;
+    }
+
+    @Override
+    public LatencyDistribution getPeerLookupFirstResultTime() {
+        return peerLookupFirstResultTime;
+    }
+
+    @Override
+    public int getRoutingTableBuckets() {
+        return routingTableBuckets;
+    }
+
+    @Override
+    public int getRoutingTableEntries() {
+        return routingTableEntries;
+    }
+
+    @Override
+    public int getRoutingTableVerifiedEntries() {
+        return routingTableVerifiedEntries;
+    }
+
+    @Override
+    public int getRoutingTableReplacements() {
+        return routingTableReplacements;
+    }
+
+    private static class MldhtRpcMetrics implements RpcMetrics {
+
+        private final long requestsSent;
+        private final long responsesReceived;
+        private final long errorsReceived;
+        private final long timeouts;
+        private final long requestsReceived;
+        private final LatencyDistribution responseTime;
+
+        MldhtRpcMetrics(LatencyDistribution responseTime) {
+            this.requestsSent = 0;
+            this.responsesReceived = 0;
+            this.errorsReceived = 0;
+            this.timeouts = 0;
+            this.requestsReceived = 0;
+            this.responseTime = responseTime;
+        }
+
+        MldhtRpcMetrics(RPCStats stats, Method method) {
+            this.requestsSent = stats.getSentMessageCount(method, Type.REQ_MSG);
+            this.responsesReceived = stats.getReceivedMessageCount(method, Type.RSP_MSG);
+            this.errorsReceived = stats.getReceivedMessageCount(method, Type.ERR_MSG);
+            this.timeouts = stats.getTimeoutMessageCount(method);
+            this.requestsReceived = stats.getReceivedMessageCount(method, Type.REQ_MSG);
+            this.responseTime = new LatencyDistribution(stats.getResponseTimes(method));
+        }
+
+        @Override
+        public long getRequestsSent() {
+            return requestsSent;
+        }
+
+        @Override
+        public long getResponsesReceived() {
+            return responsesReceived;
+        }
+
+        @Override
+        public long getErrorsReceived() {
+            return errorsReceived;
+        }
+
+        @Override
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        @Override
+        public long getRequestsReceived() {
+            return requestsReceived;
+        }
+
+        @Override
+        public LatencyDistribution getResponseTime() {
+            return responseTime;
+        }
+    }
+}
@@ -17,7 +17,8 @@
 package bt.dht;
 
 import bt.BtException;
-import bt.dht.stream.StreamAdapter;
+import bt.CountingThreadFactory;
+import bt.dht.stream.Publisher;
 import bt.metainfo.Torrent;
 import bt.metainfo.TorrentId;
 import bt.net.InetPeer;
@@ -27,32 +28,44 @@ import bt.net.portmapping.PortMapper;
 import bt.runtime.Config;
 import bt.service.IRuntimeLifecycleBinder;
 import bt.service.LifecycleBinding;
-import com.google.common.io.Files;
+import bt.torrent.TorrentDescriptor;
+import bt.torrent.TorrentRegistry;
 import com.google.inject.Inject;
 import lbms.plugins.mldht.DHTConfiguration;
 import lbms.plugins.mldht.kad.DHT;
 import lbms.plugins.mldht.kad.DHT.DHTtype;
 import lbms.plugins.mldht.kad.DHT.LogLevel;
+import lbms.plugins.mldht.kad.DHTConstants;
 import lbms.plugins.mldht.kad.DHTLogger;
+import lbms.plugins.mldht.kad.tasks.AnnounceTask;
 import lbms.plugins.mldht.kad.tasks.PeerLookupTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static bt.net.portmapping.PortMapProtocol.UDP;
 
-public class MldhtService implements DHTService {
+public class MldhtService implements DHTLookupService, DHTMetricsService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MldhtService.class);
     private static final DHTLogger DHT_LOGGER = createLogger();
@@ -81,6 +94,9 @@ public class MldhtService implements DHTService {
         };
     }
 
+    private static final Duration TOKEN_MAX_AGE = Duration.ofMillis(DHTConstants.TOKEN_TIMEOUT);
+    private static final Duration ANNOUNCE_RETRY_INTERVAL = Duration.ofMinutes(1);
+
     private final DHTConfiguration config;
     private final DHT dht;
 
@@ -90,8 +106,19 @@ public class MldhtService implements DHTService {
     private final Collection<InetPeerAddress> bootstrapNodes;
     private final Set<PortMapper> portMappers;
 
+    private final TorrentRegistry torrentRegistry;
+    private final int acceptorPort;
+
+    private final DHTLookupScheduler<PeerLookupTask> lookupScheduler;
+    private final DHTAnnounceScheduler announceScheduler;
+    private final ScheduledExecutorService lookupExecutor;
+
     @Inject
-    public MldhtService(IRuntimeLifecycleBinder lifecycleBinder, Config config, DHTConfig dhtConfig, Set<PortMapper> portMappers) {
+    public MldhtService(IRuntimeLifecycleBinder lifecycleBinder,
+                        Config config,
+                        DHTConfig dhtConfig,
+                        Set<PortMapper> portMappers,
+                        TorrentRegistry torrentRegistry) {
         this.dht = new DHT(dhtConfig.shouldUseIPv6() ? DHTtype.IPV6_DHT : DHTtype.IPV4_DHT);
         this.config = toMldhtConfig(dhtConfig);
         this.localAddress = config.getAcceptorAddress();
@@ -99,23 +126,55 @@ public class MldhtService implements DHTService {
         this.publicBootstrapNodes = dhtConfig.getPublicBootstrapNodes();
         this.bootstrapNodes = dhtConfig.getBootstrapNodes();
         this.portMappers = portMappers;
+        this.torrentRegistry = torrentRegistry;
+        this.acceptorPort = config.getAcceptorPort();
 
+        this.lookupScheduler = new DHTLookupScheduler<>(this::startLookup,
+                dhtConfig.getMaxConcurrentLookups(), dhtConfig.getLookupResultTtl());
+        this.announceScheduler = new DHTAnnounceScheduler(this::announce, this::getActiveTorrents,
+                dhtConfig.getAnnounceInterval(), ANNOUNCE_RETRY_INTERVAL, dhtConfig.getMaxConcurrentAnnounces());
+        this.lookupExecutor = Executors.newSingleThreadScheduledExecutor(
+                CountingThreadFactory.daemonFactory("bt.dht.lookup-scheduler"));
+
+        long lookupInterval = dhtConfig.getLookupInterval().toMillis();
         lifecycleBinder.onStartup(LifecycleBinding.bind(this::start).description("Initialize DHT facilities").async().build());
+        lifecycleBinder.onStartup("Schedule DHT peer lookups", () -> lookupExecutor.scheduleWithFixedDelay(
+                lookupScheduler::dispatch, lookupInterval, lookupInterval, TimeUnit.MILLISECONDS));
+        if (dhtConfig.shouldAnnounce()) {
+            lifecycleBinder.onStartup("Schedule DHT announces", () -> lookupExecutor.scheduleWithFixedDelay(
+                    announceScheduler::dispatch, lookupInterval, lookupInterval, TimeUnit.MILLISECONDS));
+        }
+        Duration metricsReportInterval = dhtConfig.getMetricsReportInterval();
+        if (metricsReportInterval != null && !metricsReportInterval.isZero() && !metricsReportInterval.isNegative()) {
+            long reportInterval = metricsReportInterval.toMillis();
+            DHTMetricsReporter reporter = new DHTMetricsReporter(this);
+            lifecycleBinder.onStartup("Schedule DHT metrics reports", () -> lookupExecutor.scheduleWithFixedDelay(
+                    reporter, reportInterval, reportInterval, TimeUnit.MILLISECONDS));
+        }
         lifecycleBinder.onShutdown("Shutdown DHT facilities", this::shutdown);
     }
 
     private DHTConfiguration toMldhtConfig(DHTConfig config) {
+        boolean persistent = (config.getStorageDirectory() != null);
+        Path storagePath;
+        try {
+            storagePath = persistent ? Files.createDirectories(config.getStorageDirectory()) : Files.createTempDirectory("bt.dht");
+        } catch (IOException e) {
+            throw new BtException("Failed to create DHT storage directory", e);
+        }
+
         return new DHTConfiguration() {
             private final ConcurrentMap<InetAddress, Boolean> couldUseCacheMap = new ConcurrentHashMap<>();
 
             @Override
             public boolean isPersistingID() {
-                return false;
+                // routing table snapshot can only be restored into the buckets directly, if node ID is the same
+                return persistent;
             }
 
             @Override
             public Path getStoragePath() {
-                return Files.createTempDir().toPath();
+                return storagePath;
             }
 
             @Override
@@ -149,6 +208,11 @@ public class MldhtService implements DHTService {
                     return couldUse;
                 };
             }
+
+            @Override
+            public int getPacketProcessingThreads() {
+                return config.getPacketProcessingThreads();
+            }
         };
     }
 
@@ -156,7 +220,9 @@ public class MldhtService implements DHTService {
         if (!dht.isRunning()) {
             try {
                 dht.start(config);
-                if (useRouterBootstrap) {
+                // no need to contact public routers, if the persisted routing table has been restored
+                boolean restored = dht.getNode().getNumEntriesInRoutingTable() >= DHTConstants.BOOTSTRAP_IF_LESS_THAN_X_PEERS;
+                if (useRouterBootstrap && !restored) {
                     publicBootstrapNodes.forEach(this::addNode);
                 }
                 bootstrapNodes.forEach(this::addNode);
@@ -180,6 +246,8 @@ public class MldhtService implements DHTService {
     }
 
     private void shutdown() {
+        lookupExecutor.shutdownNow();
+        lookupScheduler.shutdown();
         dht.stop();
     }
 
@@ -190,25 +258,72 @@ public class MldhtService implements DHTService {
 
     @Override
     public Stream<Peer> getPeers(TorrentId torrentId) {
-        try {
-            dht.getServerManager().awaitActiveServer().get();
-            final PeerLookupTask lookup = dht.createPeerLookup(torrentId.getBytes());
-            final StreamAdapter<Peer> streamAdapter = new StreamAdapter<>();
-            lookup.setResultHandler((k, p) -> {
-                Peer peer = new InetPeer(p.getInetAddress(), p.getPort());
-                streamAdapter.addItem(peer);
-            });
-            lookup.addListener(t -> streamAdapter.finishStream());
-            dht.getTaskManager().addTask(lookup);
-            return streamAdapter.stream();
-        } catch (Throwable e) {
-            LOGGER.error(String.format("Unexpected error in peer lookup: %s. See DHT log file for diagnostic information.",
-                    e.getMessage()), e);
-            BtException btex = new BtException(String.format("Unexpected error in peer lookup: %s. Diagnostics:\n%s",
-                    e.getMessage(), getDiagnostics()), e);
-            DHT_LOGGER.log(btex, LogLevel.Error);
-            throw btex;
-        }
+        return getPeers(torrentId, 0);
+    }
+
+    @Override
+    public Stream<Peer> getPeers(TorrentId torrentId, int connectedPeers) {
+        return lookupScheduler.getPeers(torrentId, connectedPeers);
+    }
+
+    @Override
+    public Publisher<Peer> lookupPeers(TorrentId torrentId, int connectedPeers) {
+        return lookupScheduler.lookupPeers(torrentId, connectedPeers);
+    }
+
+    private CompletableFuture<PeerLookupTask> startLookup(TorrentId torrentId, Consumer<Peer> peerConsumer) {
+        // do not block the scheduler thread, if DHT services are not available yet
+        return dht.getServerManager().awaitActiveServer().thenCompose(server -> {
+            CompletableFuture<PeerLookupTask> finished = new CompletableFuture<>();
+            try {
+                final PeerLookupTask lookup = dht.createPeerLookup(torrentId.getBytes());
+                if (lookup == null) {
+                    throw new IllegalStateException("DHT is not running");
+                }
+                lookup.setResultHandler((k, p) -> peerConsumer.accept(new InetPeer(p.getInetAddress(), p.getPort())));
+                lookup.addListener(t -> finished.complete(lookup));
+                dht.getTaskManager().addTask(lookup);
+            } catch (Throwable e) {
+                BtException btex = new BtException(String.format("Unexpected error in peer lookup: %s. Diagnostics:\n%s",
+                        e.getMessage(), getDiagnostics()), e);
+                DHT_LOGGER.log(btex, LogLevel.Error);
+                finished.completeExceptionally(btex);
+            }
+            return finished;
+        });
+    }
+
+    private Collection<TorrentId> getActiveTorrents() {
+        return torrentRegistry.getTorrentIds().stream()
+                .filter(torrentId -> torrentRegistry.getDescriptor(torrentId).map(TorrentDescriptor::isActive).orElse(false))
+                .collect(Collectors.toList());
+    }
+
+    private CompletableFuture<?> announce(TorrentId torrentId) {
+        // reuse a recent lookup (possibly, the one that has been performed to find peers for this torrent),
+        // if write tokens received from the closest nodes are still valid;
+        // announces should not delay the lookups of torrents, that are searching for peers
+        return lookupScheduler.getLookupResult(torrentId, Integer.MAX_VALUE, TOKEN_MAX_AGE).thenCompose(lookup -> {
+            AnnounceTask announce = dht.announce(lookup, isSeed(torrentId), acceptorPort);
+            if (announce == null) {
+                throw new IllegalStateException("DHT is not running");
+            }
+            CompletableFuture<Void> finished = new CompletableFuture<>();
+            announce.addListener(t -> finished.complete(null));
+            return finished;
+        });
+    }
+
+    private boolean isSeed(TorrentId torrentId) {
+        return torrentRegistry.getDescriptor(torrentId)
+                .map(TorrentDescriptor::getDataDescriptor)
+                .map(dataDescriptor -> dataDescriptor.getBitfield().getPiecesRemaining() == 0)
+                .orElse(false);
+    }
+
+    @Override
+    public DHTMetrics getMetrics() {
+        return new MldhtMetrics(dht);
     }
 
     @Override
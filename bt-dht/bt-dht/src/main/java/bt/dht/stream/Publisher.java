@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht.stream;
+
+/**
+ * Producer of items, that are received by {@link Subscriber}s.
+ * Follows the contract of {@code java.util.concurrent.Flow.Publisher}.
+ *
+ * @param <T> Published item type
+ * @since 1.8
+ */
+@FunctionalInterface
+public interface Publisher<T> {
+
+    /**
+     * Adds a subscriber.
+     * The subscriber's {@link Subscriber#onSubscribe(Subscription)} method is invoked first,
+     * and no items are delivered before they are requested via the subscription.
+     *
+     * @since 1.8
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht.stream;
+
+/**
+ * Receiver of items from a {@link Publisher}.
+ * Follows the contract of {@code java.util.concurrent.Flow.Subscriber}:
+ * methods are invoked sequentially, and neither of them should block.
+ *
+ * @param <T> Received item type
+ * @since 1.8
+ */
+public interface Subscriber<T> {
+
+    /**
+     * Invoked before any other method of this subscriber.
+     *
+     * @since 1.8
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Invoked with the next item; the number of invocations does not exceed the number of requested items.
+     *
+     * @since 1.8
+     */
+    void onNext(T item);
+
+    /**
+     * Invoked, when the publisher has failed. No other methods are invoked afterwards.
+     *
+     * @since 1.8
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * Invoked, when there will be no more items. No other methods are invoked afterwards.
+     *
+     * @since 1.8
+     */
+    void onComplete();
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht.stream;
+
+/**
+ * Link between a {@link Publisher} and a {@link Subscriber}.
+ * Follows the contract of {@code java.util.concurrent.Flow.Subscription}.
+ *
+ * @since 1.8
+ */
+public interface Subscription {
+
+    /**
+     * Requests up to {@code n} more items.
+     * May be invoked from {@link Subscriber#onNext(Object)}.
+     *
+     * @param n Number of items; must be positive
+     * @since 1.8
+     */
+    void request(long n);
+
+    /**
+     * Stops delivery of items. Items may still be delivered for a short while after this call.
+     *
+     * @since 1.8
+     */
+    void cancel();
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.metainfo.TorrentId;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+
+public class DHTAnnounceSchedulerTest {
+
+    private static final Duration INTERVAL = Duration.ofMinutes(15);
+
+    @Test
+    public void testAnnounce_OnePerDispatch() {
+        AnnounceRecorder recorder = new AnnounceRecorder();
+        Collection<TorrentId> torrents = Arrays.asList(torrentId(1), torrentId(2), torrentId(3));
+        DHTAnnounceScheduler scheduler = new DHTAnnounceScheduler(recorder, () -> torrents, INTERVAL, INTERVAL, 10);
+
+        scheduler.dispatch();
+        assertEquals(1, recorder.announced.size());
+        scheduler.dispatch();
+        scheduler.dispatch();
+
+        assertEquals(new HashSet<>(torrents), new HashSet<>(recorder.announced));
+        assertEquals(3, scheduler.getRunningAnnounceCount());
+    }
+
+    @Test
+    public void testAnnounce_NotRepeatedBeforeInterval() {
+        AnnounceRecorder recorder = new AnnounceRecorder();
+        DHTAnnounceScheduler scheduler = new DHTAnnounceScheduler(recorder,
+                () -> Collections.singletonList(torrentId(1)), INTERVAL, INTERVAL, 10);
+
+        scheduler.dispatch();
+        // running announce is not repeated
+        scheduler.dispatch();
+        recorder.futures.get(0).complete(null);
+        scheduler.dispatch();
+
+        assertEquals(1, recorder.announced.size());
+        assertEquals(0, scheduler.getRunningAnnounceCount());
+    }
+
+    @Test
+    public void testAnnounce_Repeated() {
+        AnnounceRecorder recorder = new AnnounceRecorder();
+        DHTAnnounceScheduler scheduler = new DHTAnnounceScheduler(recorder,
+                () -> Collections.singletonList(torrentId(1)), Duration.ZERO, INTERVAL, 10);
+
+        scheduler.dispatch();
+        recorder.futures.get(0).complete(null);
+        scheduler.dispatch();
+
+        assertEquals(2, recorder.announced.size());
+    }
+
+    @Test
+    public void testAnnounce_RetriedAfterFailure() {
+        AnnounceRecorder recorder = new AnnounceRecorder();
+        DHTAnnounceScheduler scheduler = new DHTAnnounceScheduler(recorder,
+                () -> Collections.singletonList(torrentId(1)), INTERVAL, Duration.ZERO, 10);
+
+        scheduler.dispatch();
+        recorder.futures.get(0).completeExceptionally(new IllegalStateException());
+        scheduler.dispatch();
+
+        assertEquals(2, recorder.announced.size());
+    }
+
+    @Test
+    public void testAnnounce_ConcurrentAnnouncesLimit() {
+        AnnounceRecorder recorder = new AnnounceRecorder();
+        DHTAnnounceScheduler scheduler = new DHTAnnounceScheduler(recorder,
+                () -> Arrays.asList(torrentId(1), torrentId(2)), INTERVAL, INTERVAL, 1);
+
+        scheduler.dispatch();
+        scheduler.dispatch();
+        assertEquals(1, recorder.announced.size());
+
+        recorder.futures.get(0).complete(null);
+        scheduler.dispatch();
+        assertEquals(2, recorder.announced.size());
+    }
+
+    @Test
+    public void testAnnounce_InactiveTorrentsRemoved() {
+        AnnounceRecorder recorder = new AnnounceRecorder();
+        List<TorrentId> torrents = new ArrayList<>(Arrays.asList(torrentId(1), torrentId(2)));
+        DHTAnnounceScheduler scheduler = new DHTAnnounceScheduler(recorder, () -> torrents, INTERVAL, INTERVAL, 1);
+
+        scheduler.dispatch();
+        TorrentId announced = recorder.announced.get(0);
+        torrents.remove(announced.equals(torrentId(1)) ? torrentId(2) : torrentId(1));
+        recorder.futures.get(0).complete(null);
+        scheduler.dispatch();
+
+        assertEquals(Collections.singletonList(announced), recorder.announced);
+    }
+
+    private static TorrentId torrentId(int i) {
+        byte[] bytes = new byte[20];
+        bytes[0] = (byte) i;
+        return TorrentId.fromBytes(bytes);
+    }
+
+    private static class AnnounceRecorder implements DHTAnnounceScheduler.Announcer {
+
+        private final List<TorrentId> announced = new ArrayList<>();
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<?> announce(TorrentId torrentId) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            announced.add(torrentId);
+            futures.add(future);
+            return future;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.dht.stream.Subscriber;
+import bt.dht.stream.Subscription;
+import bt.metainfo.TorrentId;
+import bt.net.IPeerConnectionPool;
+import bt.net.InetPeer;
+import bt.net.Peer;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DHTLookupSchedulerTest {
+
+    private static final Duration TTL = Duration.ofMinutes(1);
+
+    @Test
+    public void testConcurrentRequests_ShareLookup() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 8, TTL);
+
+        TorrentId torrentId = torrentId(1);
+        Stream<Peer> first = scheduler.getPeers(torrentId, 0);
+        scheduler.dispatch();
+        Stream<Peer> second = scheduler.getPeers(torrentId, 0);
+        scheduler.dispatch();
+
+        assertEquals(1, recorder.started.size());
+        StartedLookup lookup = recorder.started.get(0);
+        lookup.peerConsumer.accept(peer(1));
+        lookup.peerConsumer.accept(peer(2));
+        lookup.peerConsumer.accept(peer(1));
+        lookup.finished.complete(null);
+
+        assertEquals(Arrays.asList(peer(1), peer(2)), first.collect(Collectors.toList()));
+        assertEquals(Arrays.asList(peer(1), peer(2)), second.collect(Collectors.toList()));
+        assertEquals(0, scheduler.getRunningLookupCount());
+    }
+
+    @Test
+    public void testFinishedLookup_ResultsCached() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 8, TTL);
+
+        TorrentId torrentId = torrentId(1);
+        scheduler.getPeers(torrentId, 0);
+        scheduler.dispatch();
+        recorder.started.get(0).peerConsumer.accept(peer(1));
+        recorder.started.get(0).finished.complete(null);
+
+        Stream<Peer> peers = scheduler.getPeers(torrentId, 0);
+        scheduler.dispatch();
+
+        assertEquals(1, recorder.started.size());
+        assertEquals(0, scheduler.getPendingLookupCount());
+        assertEquals(Collections.singletonList(peer(1)), peers.collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testFinishedLookup_ResultsExpired() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 8, Duration.ZERO);
+
+        TorrentId torrentId = torrentId(1);
+        scheduler.getPeers(torrentId, 0);
+        scheduler.dispatch();
+        recorder.started.get(0).finished.complete(null);
+
+        scheduler.getPeers(torrentId, 0);
+        scheduler.dispatch();
+
+        assertEquals(2, recorder.started.size());
+    }
+
+    @Test
+    public void testConcurrentLookupsLimit() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 1, TTL);
+
+        scheduler.getPeers(torrentId(1), 0);
+        scheduler.getPeers(torrentId(2), 0);
+        scheduler.dispatch();
+        scheduler.dispatch();
+
+        assertEquals(1, recorder.started.size());
+        assertEquals(1, scheduler.getPendingLookupCount());
+        assertEquals(1, scheduler.getRunningLookupCount());
+
+        recorder.started.get(0).finished.complete(null);
+        scheduler.dispatch();
+
+        assertEquals(2, recorder.started.size());
+        assertEquals(torrentId(2), recorder.started.get(1).torrentId);
+    }
+
+    @Test
+    public void testPendingLookups_TorrentsWithFewerPeersFirst() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 8, TTL);
+
+        scheduler.getPeers(torrentId(1), 10);
+        scheduler.getPeers(torrentId(2), 5);
+        scheduler.getPeers(torrentId(3), 20);
+        // another request for the same torrent raises the priority of its pending lookup
+        scheduler.getPeers(torrentId(3), 0);
+        scheduler.dispatch();
+        scheduler.dispatch();
+        scheduler.dispatch();
+
+        assertEquals(Arrays.asList(torrentId(3), torrentId(2), torrentId(1)),
+                recorder.started.stream().map(lookup -> lookup.torrentId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testFailedLookup_NotCached() {
+        LookupRecorder recorder = new LookupRecorder();
+        recorder.fail = true;
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 1, TTL);
+
+        TorrentId torrentId = torrentId(1);
+        Stream<Peer> peers = scheduler.getPeers(torrentId, 0);
+        scheduler.dispatch();
+
+        assertEquals(0, peers.count());
+        assertEquals(0, scheduler.getRunningLookupCount());
+
+        recorder.fail = false;
+        scheduler.getPeers(torrentId, 0);
+        scheduler.dispatch();
+        assertEquals(2, recorder.started.size());
+    }
+
+    @Test
+    public void testFailedLookup_Asynchronously() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 1, TTL);
+
+        TorrentId torrentId = torrentId(1);
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        scheduler.lookupPeers(torrentId, 0).subscribe(subscriber);
+        scheduler.dispatch();
+        recorder.started.get(0).finished.completeExceptionally(new IllegalStateException());
+
+        assertTrue(subscriber.completed);
+        assertEquals(0, scheduler.getRunningLookupCount());
+
+        scheduler.lookupPeers(torrentId, 0).subscribe(new RecordingSubscriber(Long.MAX_VALUE));
+        scheduler.dispatch();
+        assertEquals(2, recorder.started.size());
+    }
+
+    @Test
+    public void testPublisher_Backpressure() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 1, TTL);
+
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        scheduler.lookupPeers(torrentId(1), 0).subscribe(subscriber);
+        scheduler.dispatch();
+        StartedLookup lookup = recorder.started.get(0);
+        lookup.peerConsumer.accept(peer(1));
+        lookup.peerConsumer.accept(peer(2));
+        lookup.peerConsumer.accept(peer(3));
+        lookup.finished.complete(null);
+
+        assertEquals(Collections.singletonList(peer(1)), subscriber.received);
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(1);
+        assertEquals(Arrays.asList(peer(1), peer(2)), subscriber.received);
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(5);
+        assertEquals(Arrays.asList(peer(1), peer(2), peer(3)), subscriber.received);
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void testPublisher_RequestFromOnNext() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 1, TTL);
+
+        RecordingSubscriber subscriber = new RecordingSubscriber(1) {
+            @Override
+            public void onNext(Peer item) {
+                super.onNext(item);
+                subscription.request(1);
+            }
+        };
+        scheduler.lookupPeers(torrentId(1), 0).subscribe(subscriber);
+        scheduler.dispatch();
+        StartedLookup lookup = recorder.started.get(0);
+        lookup.peerConsumer.accept(peer(1));
+        lookup.peerConsumer.accept(peer(2));
+        lookup.finished.complete(null);
+
+        assertEquals(Arrays.asList(peer(1), peer(2)), subscriber.received);
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void testPublisher_Cancel() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 1, TTL);
+
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        scheduler.lookupPeers(torrentId(1), 0).subscribe(subscriber);
+        scheduler.dispatch();
+        StartedLookup lookup = recorder.started.get(0);
+        lookup.peerConsumer.accept(peer(1));
+        subscriber.subscription.cancel();
+        lookup.peerConsumer.accept(peer(2));
+        lookup.finished.complete(null);
+
+        assertEquals(Collections.singletonList(peer(1)), subscriber.received);
+        assertFalse(subscriber.completed);
+    }
+
+    @Test
+    public void testLookupResult_Reused() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 1, TTL);
+
+        TorrentId torrentId = torrentId(1);
+        scheduler.getPeers(torrentId, 0);
+        scheduler.dispatch();
+        recorder.started.get(0).finished.complete(null);
+
+        CompletableFuture<Void> result = scheduler.getLookupResult(torrentId, Integer.MAX_VALUE, TTL);
+        scheduler.dispatch();
+
+        assertTrue(result.isDone());
+        assertEquals(1, recorder.started.size());
+    }
+
+    @Test
+    public void testLookupResult_TooOld() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 1, TTL);
+
+        TorrentId torrentId = torrentId(1);
+        scheduler.getPeers(torrentId, 0);
+        scheduler.dispatch();
+        recorder.started.get(0).finished.complete(null);
+
+        CompletableFuture<Void> result = scheduler.getLookupResult(torrentId, Integer.MAX_VALUE, Duration.ZERO);
+        assertFalse(result.isDone());
+
+        scheduler.dispatch();
+        assertEquals(2, recorder.started.size());
+        recorder.started.get(1).finished.complete(null);
+        assertTrue(result.isDone());
+    }
+
+    @Test
+    public void testShutdown_StreamsFinished() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 1, TTL);
+
+        Stream<Peer> running = scheduler.getPeers(torrentId(1), 0);
+        scheduler.dispatch();
+        Stream<Peer> pending = scheduler.getPeers(torrentId(2), 0);
+        scheduler.shutdown();
+
+        assertEquals(0, running.count());
+        assertEquals(0, pending.count());
+        assertEquals(0, scheduler.getPeers(torrentId(3), 0).count());
+        assertTrue(scheduler.getLookupResult(torrentId(1), 0, TTL).isCompletedExceptionally());
+    }
+
+    @Test
+    public void testPeerSource_CollectionsResumeSharedLookup() {
+        LookupRecorder recorder = new LookupRecorder();
+        DHTLookupScheduler<Void> scheduler = new DHTLookupScheduler<>(recorder, 1, TTL);
+        TorrentId torrentId = torrentId(1);
+
+        DHTLookupService dhtService = mock(DHTLookupService.class);
+        when(dhtService.lookupPeers(eq(torrentId), anyInt()))
+                .thenAnswer(invocation -> scheduler.lookupPeers(torrentId, invocation.getArgumentAt(1, Integer.class)));
+        DHTPeerSource peerSource = new DHTPeerSource(torrentId, dhtService, mock(IPeerConnectionPool.class));
+
+        assertFalse(peerSource.update());
+        scheduler.dispatch();
+        StartedLookup lookup = recorder.started.get(0);
+        for (int i = 1; i <= 80; i++) {
+            lookup.peerConsumer.accept(peer(i));
+        }
+
+        // first collection is limited, while the lookup is still running
+        List<Peer> collected = new ArrayList<>(peerSource.getPeers());
+        assertEquals(50, collected.size());
+        peerSource.getPeers().clear();
+
+        // next collection resumes from where the previous one stopped
+        for (int i = 81; i <= 120; i++) {
+            lookup.peerConsumer.accept(peer(i));
+        }
+        assertTrue(peerSource.update());
+        assertEquals(50, peerSource.getPeers().size());
+        collected.addAll(peerSource.getPeers());
+        peerSource.getPeers().clear();
+
+        lookup.finished.complete(null);
+        assertTrue(peerSource.update());
+        collected.addAll(peerSource.getPeers());
+        peerSource.getPeers().clear();
+
+        List<Peer> expected = new ArrayList<>();
+        for (int i = 1; i <= 120; i++) {
+            expected.add(peer(i));
+        }
+        assertEquals(expected, collected);
+        assertEquals(1, recorder.started.size());
+    }
+
+    private static TorrentId torrentId(int i) {
+        byte[] bytes = new byte[20];
+        bytes[0] = (byte) i;
+        return TorrentId.fromBytes(bytes);
+    }
+
+    private static Peer peer(int port) {
+        return new InetPeer(InetAddress.getLoopbackAddress(), port);
+    }
+
+    private static class LookupRecorder implements DHTLookupScheduler.LookupStarter<Void> {
+
+        private final List<StartedLookup> started = new ArrayList<>();
+        private volatile boolean fail;
+
+        @Override
+        public CompletableFuture<Void> startLookup(TorrentId torrentId, Consumer<Peer> peerConsumer) {
+            StartedLookup lookup = new StartedLookup(torrentId, peerConsumer);
+            started.add(lookup);
+            if (fail) {
+                throw new IllegalStateException("DHT is not running");
+            }
+            return lookup.finished;
+        }
+    }
+
+    private static class RecordingSubscriber implements Subscriber<Peer> {
+
+        private final long initialRequest;
+        private final List<Peer> received = new ArrayList<>();
+        protected Subscription subscription;
+        private boolean completed;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(Peer item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            throw new AssertionError("Unexpected error", throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private static class StartedLookup {
+
+        private final TorrentId torrentId;
+        private final Consumer<Peer> peerConsumer;
+        private final CompletableFuture<Void> finished;
+
+        StartedLookup(TorrentId torrentId, Consumer<Peer> peerConsumer) {
+            this.torrentId = torrentId;
+            this.peerConsumer = peerConsumer;
+            this.finished = new CompletableFuture<>();
+        }
+    }
+}
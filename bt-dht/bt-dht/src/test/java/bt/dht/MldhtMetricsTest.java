@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.dht;
+
+import lbms.plugins.mldht.kad.DHT;
+import lbms.plugins.mldht.kad.DHT.DHTtype;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class MldhtMetricsTest {
+
+    @Test
+    public void testMetrics_NotStarted() {
+        DHTMetrics metrics = new MldhtMetrics(new DHT(DHTtype.IPV4_DHT));
+
+        assertNotNull(metrics.getTimestamp());
+        assertEquals(0, metrics.getMessagesReceived());
+        assertEquals(0, metrics.getPacketsDropped());
+        assertEquals(0, metrics.getActiveTasks());
+        assertEquals(0, metrics.getRoutingTableEntries());
+        assertEquals(0, metrics.getPeerLookupTime().getCount());
+
+        assertTrue(metrics.getRpcMetrics().containsKey("get_peers"));
+        assertFalse(metrics.getRpcMetrics().containsKey("unknown"));
+        assertEquals(0, metrics.getRpcMetrics().get("ping").getResponseTime().getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testReport() {
+        DHT dht = new DHT(DHTtype.IPV4_DHT);
+        DHTMetrics first = new MldhtMetrics(dht);
+        DHTMetrics second = new MldhtMetrics(dht);
+
+        String report = DHTMetricsReporter.report(first, second);
+        assertTrue(report.contains("routing table: 0 buckets"));
+        assertTrue(report.contains("peer lookup time (ms): n: 0"));
+        assertEquals(report, DHTMetricsReporter.report(null, second));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLatencyDistribution_IllegalPercentile() {
+        new MldhtMetrics(new DHT(DHTtype.IPV4_DHT)).getPeerLookupTime().getValueAtPercentile(101);
+    }
+}
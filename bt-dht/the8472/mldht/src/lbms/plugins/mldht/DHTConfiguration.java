@@ -38,4 +38,14 @@ public interface DHTConfiguration {
 	public default Predicate<InetAddress> filterBindAddress() {
 		return (unused) -> true;
 	}
+	
+	/**
+	 * Number of threads decoding and dispatching incoming packets. Each DHT instance has its own pool,
+	 * the selector thread only receives datagrams and hands them off.
+	 * 
+	 * The default implementation uses one thread per available processor, but at least two threads.
+	 */
+	public default int getPacketProcessingThreads() {
+		return Math.max(Runtime.getRuntime().availableProcessors(), 2);
+	}
 }
@@ -29,6 +29,11 @@ public class DBItem implements Comparable<DBItem> {
 		this();
 		item = ip_port.clone();
 	}
+	
+	DBItem (final byte[] ip_port, long createdAt) {
+		time_stamp = createdAt;
+		item = ip_port.clone();
+	}
 
 	/// See if the item is expired
 	public boolean expired (final long now) {
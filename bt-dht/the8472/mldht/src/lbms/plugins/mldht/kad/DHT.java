@@ -63,13 +63,16 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -176,6 +179,7 @@ public class DHT implements DHTBase {
 	private List<ScheduledFuture<?>>		scheduledActions = new ArrayList<>();
 	private List<DHT>						siblingGroup = new ArrayList<>();
 	private ScheduledExecutorService		scheduler;
+	ThreadPoolExecutor						packetProcessor;
 	
 
 	public DHT(DHTtype type) {
@@ -197,6 +201,21 @@ public class DHT implements DHTBase {
 	public void setScheduler(ScheduledExecutorService scheduler) {
 		this.scheduler = scheduler;
 	}
+	
+	/**
+	 * @return bounded executor for decoding and handling incoming packets, rejects work when saturated
+	 */
+	public Executor getPacketProcessor() {
+		return packetProcessor;
+	}
+	
+	/**
+	 * @return number of received packets waiting for the packet processor
+	 */
+	public int getNumQueuedPackets() {
+		ThreadPoolExecutor processor = packetProcessor;
+		return processor == null ? 0 : processor.getQueue().size();
+	}
 
 	public void addSiblings(List<DHT> toAdd) {
 		toAdd.forEach(s -> {
@@ -662,7 +681,7 @@ public class DHT implements DHTBase {
 		unreachableCache = new NonReachableCache();
 
 		serverManager.notifyOnServerAdded(serverListener);
-		db = new Database();
+		db = new Database(type);
 		stats.setDbStats(db.getStats());
 		tman = new TaskManager(this);
 		running = true;
@@ -700,6 +719,15 @@ public class DHT implements DHTBase {
 		
 		connectionManager = new NIOConnectionManager("mlDHT "+type.shortName+" NIO Selector");
 		
+		int processingThreads = Math.max(config.getPacketProcessingThreads(), 1);
+		packetProcessor = new ThreadPoolExecutor(processingThreads, processingThreads, 20, TimeUnit.SECONDS, new ArrayBlockingQueue<>(DHTConstants.MAX_QUEUED_INCOMING_PACKETS), (ThreadFactory) r -> {
+			Thread t = new Thread(r, "mlDHT "+type.shortName+" packet processor");
+			t.setUncaughtExceptionHandler((t1, e) -> DHT.log(e, LogLevel.Error));
+			t.setDaemon(true);
+			return t;
+		});
+		packetProcessor.allowCoreThreadTimeOut(true);
+		
 		populate();
 		
 		node.initKey(config);
@@ -813,14 +841,17 @@ public class DHT implements DHTBase {
 			} catch (RuntimeException e1) {
 				log(e1, LogLevel.Fatal);
 			}
-			
+		}, DHTConstants.RANDOM_LOOKUP_INTERVAL, DHTConstants.RANDOM_LOOKUP_INTERVAL, TimeUnit.MILLISECONDS));
+		
+		// binary snapshots are cheap, keep them fresh so that a restart can resume with a warm routing table
+		scheduledActions.add(scheduler.scheduleWithFixedDelay(() -> {
 			try {
 				if(!node.isInSurvivalMode())
 					node.saveTable(table_file);
-			} catch (IOException e2) {
-				e2.printStackTrace();
+			} catch (IOException e) {
+				log(e, LogLevel.Error);
 			}
-		}, DHTConstants.RANDOM_LOOKUP_INTERVAL, DHTConstants.RANDOM_LOOKUP_INTERVAL, TimeUnit.MILLISECONDS));
+		}, DHTConstants.TABLE_SNAPSHOT_INTERVAL, DHTConstants.TABLE_SNAPSHOT_INTERVAL, TimeUnit.MILLISECONDS));
 		
 		scheduledActions.add(scheduler.scheduleWithFixedDelay(mismatchDetector::purge, 2, 3, TimeUnit.MINUTES));
 		scheduledActions.add(scheduler.scheduleWithFixedDelay(unreachableCache::cleanStaleEntries, 2, 3, TimeUnit.MINUTES));
@@ -864,6 +895,7 @@ public class DHT implements DHTBase {
 		logInfo("stopping servers");
 		running = false;
 		serverManager.destroy();
+		packetProcessor.shutdown();
 		try {
 			logInfo("persisting routing table on shutdown");
 			node.saveTable(table_file);
@@ -52,6 +52,12 @@ public class DHTConstants {
 
 	public static final int		SELF_LOOKUP_INTERVAL					= 30 * 60 * 1000;
 	public static final int		RANDOM_LOOKUP_INTERVAL					= 10 * 60 * 1000;
+	public static final int		TABLE_SNAPSHOT_INTERVAL					= 2 * 60 * 1000;
+
+	// incoming packets waiting for a processing thread and outgoing responses waiting for the socket.
+	// excess is dropped, the remote side will treat it as packet loss
+	public static final int		MAX_QUEUED_INCOMING_PACKETS				= 8192;
+	public static final int		MAX_QUEUED_OUTGOING_PACKETS				= 4096;
 
 	public static final int		ANNOUNCE_CACHE_MAX_AGE					= 30 * 60 * 1000;
 	public static final int		ANNOUNCE_CACHE_FAST_LOOKUP_AGE			= 8 * 60 * 1000;
@@ -8,7 +8,9 @@ package lbms.plugins.mldht.kad;
 import java.time.Duration;
 import java.time.Instant;
 
+import lbms.plugins.mldht.kad.tasks.PeerLookupTask;
 import lbms.plugins.mldht.kad.tasks.Task;
+import lbms.plugins.mldht.kad.utils.LatencyHistogram;
 
 /**
  * @author Damokles
@@ -37,6 +39,9 @@ public class DHTStats {
 	
 	private double			avgFirstResultTime = 10000;
 	private double			avgFinishTime = 10000;
+	
+	private final LatencyHistogram	peerLookupTimes = new LatencyHistogram();
+	private final LatencyHistogram	peerLookupFirstResultTimes = new LatencyHistogram();
 
 	/**
 	 * @return the num_peers
@@ -93,6 +98,20 @@ public class DHTStats {
 	public Instant getStartedTimestamp () {
 		return startedTimestamp;
 	}
+	
+	/**
+	 * @return distribution of the time from start to finish of peer lookups, in milliseconds
+	 */
+	public LatencyHistogram.Snapshot getPeerLookupTimes () {
+		return peerLookupTimes.snapshot();
+	}
+	
+	/**
+	 * @return distribution of the time from start to the first result of peer lookups that found any, in milliseconds
+	 */
+	public LatencyHistogram.Snapshot getPeerLookupFirstResultTimes () {
+		return peerLookupFirstResultTimes.snapshot();
+	}
 
 	/**
 	 * @param num_peers the num_peers to set
@@ -113,10 +132,15 @@ public class DHTStats {
 		if(t.getFinishedTime() <= 0)
 			return;
 		avgFinishTime = (t.getFinishedTime() - t.getStartTime()) * EMA_WEIGHT + avgFinishTime * (1.0 - EMA_WEIGHT);
+		boolean peerLookup = t instanceof PeerLookupTask;
+		if(peerLookup)
+			peerLookupTimes.record(t.getFinishedTime() - t.getStartTime());
 		//System.out.println("fin "+(t.getFinishedTime() - t.getStartTime()));
 		if(t.getFirstResultTime() <= 0)
 			return;
 		avgFirstResultTime = (t.getFirstResultTime() - t.getStartTime()) * EMA_WEIGHT + avgFirstResultTime * (1.0 - EMA_WEIGHT);
+		if(peerLookup)
+			peerLookupFirstResultTimes.record(t.getFirstResultTime() - t.getStartTime());
 		//System.out.println("1st "+(t.getFirstResultTime() - t.getStartTime()));
 	}
 
@@ -166,6 +190,8 @@ public class DHTStats {
 		b.append("DB Items: ").append(dbStats.getItemCount()).append('\n');
 		b.append("TX sum: ").append(numSentPackets).append(" RX sum: ").append(numReceivedPackets).append('\n');
 		b.append("avg task time/avg 1st result time (ms): ").append((int)avgFinishTime).append('/').append((int)avgFirstResultTime).append('\n');
+		b.append("peer lookup time (ms): ").append(peerLookupTimes.snapshot()).append('\n');
+		b.append("peer lookup 1st result time (ms): ").append(peerLookupFirstResultTimes.snapshot()).append('\n');
 		b.append("Uptime: ").append(Duration.between(startedTimestamp, Instant.now())).append("s\n");
 		b.append("RPC stats\n");
 		b.append(rpcStats.toString());
@@ -9,16 +9,13 @@ import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import lbms.plugins.mldht.kad.DHT.DHTtype;
@@ -26,51 +23,65 @@ import lbms.plugins.mldht.kad.utils.ByteWrapper;
 import lbms.plugins.mldht.kad.utils.ThreadLocalUtils;
 
 /**
+ * Stores announced peers.
+ * 
+ * Peers are kept in packed form, one primitive array per infohash: each entry consists of the address
+ * (one long for IPv4, two for IPv6) followed by a word holding the port, the seed flag and the
+ * announce time in seconds. Infohashes are kept in an open-addressed (linear probing) index
+ * as 5 ints per slot, split into independently locked segments.
+ * This avoids several objects per announced peer, which dominated the heap of nodes storing millions of announces.
+ * 
  * @author Damokles
  * 
  */
 public class Database {
-	private ConcurrentMap<Key, PeersSeeds>	items;
-	private AtomicLong timestampCurrent = new AtomicLong();
-	private volatile long timestampPrevious;
-	private volatile byte[] samples = new byte[0];
 	
 	public static final int MAX_SAMPLE_COUNT = 20;
 	
+	private static final int SEGMENT_BITS = 5;
+	private static final int KEY_INTS = Key.SHA1_HASH_LENGTH / 4;
+	
+	private static final int PORT_MASK = 0xFFFF;
+	private static final long SEED_FLAG = 1L << 16;
+	private static final int TIMESTAMP_SHIFT = 32;
+	
 	private static byte[] sessionSecret = new byte[20];
 	
 	static {
 		ThreadLocalUtils.getThreadLocalRandom().nextBytes(sessionSecret);
 	}
+	
+	private final Segment[] segments;
+	// randomizes the index layout, so that it can't be degraded by announcing crafted infohashes
+	private final long[] hashKeys;
+	private final int addressWords;
+	private final int addressLength;
+	
+	private AtomicLong timestampCurrent = new AtomicLong();
+	private volatile long timestampPrevious;
+	private volatile byte[] samples = null;
 
-	Database() {
-		items = new ConcurrentHashMap<>(3000);
+	Database(DHTtype type) {
+		addressLength = type.ADDRESS_ENTRY_LENGTH - 2;
+		addressWords = (addressLength + 7) / 8;
+		hashKeys = Segment.randomHashKeys(ThreadLocalUtils.getThreadLocalRandom());
+		segments = new Segment[1 << SEGMENT_BITS];
+		for(int i=0;i<segments.length;i++)
+			segments[i] = new Segment(addressWords + 1, hashKeys);
 	}
 	
-	
+	/**
+	 * Read-only snapshot of the peers stored for a key
+	 */
 	public static class PeersSeeds {
-		ItemSet seeds;
-		ItemSet peers;
+		final ItemSet seeds;
+		final ItemSet peers;
 		
 		PeersSeeds(PeerAddressDBItem[] seeds, PeerAddressDBItem[] peers) {
 			this.seeds = new ItemSet(seeds);
 			this.peers = new ItemSet(peers);
 		}
 		
-		
-		boolean add(PeerAddressDBItem it) {
-			ItemSet removeTarget = it.seed ? peers : seeds;
-			ItemSet insertTarget = it.seed ? seeds : peers;
-			
-			removeTarget.remove(it);
-			return insertTarget.add(it);
-		}
-		
-		void expire() {
-			seeds.expire();
-			peers.expire();
-		}
-		
 		public ItemSet peers() {
 			return peers;
 		}
@@ -86,141 +97,276 @@ public class Database {
 
 	
 	public static class ItemSet {
-		static final PeerAddressDBItem[] NO_ITEMS = new PeerAddressDBItem[0];
+		private final PeerAddressDBItem[] items;
+		
+		ItemSet(PeerAddressDBItem[] items) {
+			this.items = items;
+		}
 		
+		public int size() {
+			return items.length;
+		}
+		
+		public Stream<PeerAddressDBItem> stream() {
+			return Arrays.stream(items);
+		}
+	}
+	
+	/**
+	 * Part of the index with its own lock. All fields are guarded by the segment's monitor.
+	 */
+	static final class Segment {
 		
+		private static final int MIN_CAPACITY = 16;
 		
-		private volatile PeerAddressDBItem[] items = NO_ITEMS;
-		private volatile BloomFilterBEP33 filter = null;
+		final int stride;
+		final long[] hashKeys;
 		
-		ItemSet(PeerAddressDBItem[] initial) {
-			this.items = initial;
+		int[] keys;
+		long[][] entries;
+		int[] sizes;
+		int[] seedCounts;
+		int keyCount;
+		long itemCount;
+		
+		Segment(int stride, long[] hashKeys) {
+			this.stride = stride;
+			this.hashKeys = hashKeys;
+			allocate(MIN_CAPACITY);
 		}
 		
-		private void remove(PeerAddressDBItem it) {
-			synchronized (this) {
-				PeerAddressDBItem[] current = items;
-				
-				if(current.length == 0)
-					return;
-				
-				
-				
-				int idx = Arrays.asList(current).indexOf(it);
-				if(idx < 0) {
-					return;
-				}
-				
-				PeerAddressDBItem[] newItems = Arrays.copyOf(current, current.length - 1);
-				
-				System.arraycopy(current, idx+1, newItems, idx, newItems.length - idx);
-				
-				items = newItems;
-				invalidateFilters();
-			}
+		private void allocate(int capacity) {
+			keys = new int[capacity * KEY_INTS];
+			entries = new long[capacity][];
+			sizes = new int[capacity];
+			seedCounts = new int[capacity];
 		}
 		
-		/**
-		 * @return true when inserting, false when replacing
-		 */
-		private boolean add(PeerAddressDBItem toAdd) {
-			synchronized (this) {
-				PeerAddressDBItem[] current = items;
-				int idx = Arrays.asList(current).indexOf(toAdd);
-				if(idx >= 0) {
-					current[idx] = toAdd;
-					return false;
-				}
-				
-				PeerAddressDBItem[] newItems = Arrays.copyOf(current, current.length + 1);
-				newItems[newItems.length-1] = toAdd;
-				Collections.shuffle(Arrays.asList(newItems));
-
-				items = newItems;
-				
-				// bloom filter supports adding, only deletions need a rebuild.
-				BloomFilterBEP33 currentFilter = filter;
-				if(currentFilter != null)
-					synchronized (currentFilter) {
-						currentFilter.insert(toAdd.getInetAddress());
-					}
-				
-				
-				return true;
+		int find(int[] key, int hash) {
+			int mask = entries.length - 1;
+			for(int slot = hash & mask;;slot = (slot + 1) & mask) {
+				if(entries[slot] == null)
+					return -1;
+				if(keyEquals(slot, key))
+					return slot;
 			}
 		}
 		
-		PeerAddressDBItem[] snapshot() {
-			return items;
+		int findOrInsert(int[] key, int hash) {
+			int slot = find(key, hash);
+			if(slot >= 0)
+				return slot;
+			
+			// keep the load factor below 0.5, so that probe sequences stay short
+			if((keyCount + 1) * 2 > entries.length)
+				rehash(entries.length * 2);
+			
+			int mask = entries.length - 1;
+			slot = hash & mask;
+			while(entries[slot] != null)
+				slot = (slot + 1) & mask;
+			
+			System.arraycopy(key, 0, keys, slot * KEY_INTS, KEY_INTS);
+			entries[slot] = new long[stride * 2];
+			keyCount++;
+			return slot;
 		}
 		
-		boolean isEmpty() {
-			return items.length == 0;
+		private boolean keyEquals(int slot, int[] key) {
+			int offset = slot * KEY_INTS;
+			for(int i=0;i<KEY_INTS;i++)
+				if(keys[offset + i] != key[i])
+					return false;
+			return true;
 		}
 		
-		public int size() {
-			return items.length;
+		/**
+		 * Rebuilds the index, dropping keys without entries
+		 */
+		void rehash(int capacity) {
+			int[] oldKeys = keys;
+			long[][] oldEntries = entries;
+			int[] oldSizes = sizes;
+			int[] oldSeedCounts = seedCounts;
+			
+			allocate(capacity);
+			keyCount = 0;
+			
+			int mask = capacity - 1;
+			int[] key = new int[KEY_INTS];
+			for(int i=0;i<oldEntries.length;i++) {
+				if(oldEntries[i] == null || oldSizes[i] == 0)
+					continue;
+				System.arraycopy(oldKeys, i * KEY_INTS, key, 0, KEY_INTS);
+				int slot = hash(key, hashKeys) & mask;
+				while(entries[slot] != null)
+					slot = (slot + 1) & mask;
+				System.arraycopy(key, 0, keys, slot * KEY_INTS, KEY_INTS);
+				entries[slot] = oldEntries[i];
+				sizes[slot] = oldSizes[i];
+				seedCounts[slot] = oldSeedCounts[i];
+				keyCount++;
+			}
 		}
 		
-		public Stream<PeerAddressDBItem> stream() {
-			return Arrays.stream(items);
+		static long[] randomHashKeys(Random rnd) {
+			long[] hashKeys = new long[KEY_INTS + 1];
+			for(int i=0;i<hashKeys.length;i++)
+				hashKeys[i] = rnd.nextLong();
+			return hashKeys;
 		}
 		
-		private void invalidateFilters() {
-			filter = null;
+		/**
+		 * Multilinear hash with random 64bit coefficients, the upper half of the sum is used.
+		 * For any pair of keys chosen without knowledge of the coefficients the collision probability is ~2^-31,
+		 * unlike an unkeyed mixing function followed by a seed, which leaves the collisions of the mixing function in place.
+		 */
+		static int hash(int[] key, long[] hashKeys) {
+			long h = hashKeys[0];
+			for(int i=0;i<KEY_INTS;i++)
+				h += (key[i] & 0xFFFFFFFFL) * hashKeys[i + 1];
+			return (int) (h >>> 32);
 		}
 		
-		BloomFilterBEP33 getFilter() {
-			BloomFilterBEP33 f = filter;
-			if(f == null) {
-				f = filter = buildFilter();
+		void store(int slot, long[] address, long meta) {
+			long[] data = entries[slot];
+			int size = sizes[slot];
+			int addressWords = stride - 1;
+			
+			// peers are identified by address only, a new announce replaces the port, seed flag and time
+			for(int i=0;i<size;i++) {
+				int offset = i * stride;
+				if(addressEquals(data, offset, address)) {
+					long oldMeta = data[offset + addressWords];
+					seedCounts[slot] += (isSeed(meta) ? 1 : 0) - (isSeed(oldMeta) ? 1 : 0);
+					data[offset + addressWords] = meta;
+					return;
+				}
 			}
 			
-			return f;
-		}
-		
-		private BloomFilterBEP33 buildFilter() {
-			// also return empty filters. strict interpretation of the spec doesn't allow omission of empty sets
-			// can happen if we have seeds but no peeds for example
+			if((size + 1) * stride > data.length)
+				data = entries[slot] = Arrays.copyOf(data, Math.max(stride * 2, data.length + (data.length >> 1) + stride));
 			
-			BloomFilterBEP33 filter = new BloomFilterBEP33();
-
-			for (PeerAddressDBItem item : items) {
-				filter.insert(item.getInetAddress());
-			}
+			// insert at a random position, so that the entries stay shuffled for sampling
+			int target = ThreadLocalRandom.current().nextInt(size + 1);
+			System.arraycopy(data, target * stride, data, size * stride, stride);
+			System.arraycopy(address, 0, data, target * stride, addressWords);
+			data[target * stride + addressWords] = meta;
 			
-			return filter;
+			sizes[slot] = size + 1;
+			if(isSeed(meta))
+				seedCounts[slot]++;
+			itemCount++;
 		}
 		
-		void expire() {
-			synchronized (this) {
-				long now = System.currentTimeMillis();
-				
-				PeerAddressDBItem[] items = this.items;
-				PeerAddressDBItem[] newItems = new PeerAddressDBItem[items.length];
+		private boolean addressEquals(long[] data, int offset, long[] address) {
+			for(int i=0;i<address.length;i++)
+				if(data[offset + i] != address[i])
+					return false;
+			return true;
+		}
+		
+		void expire(long nowSeconds, long maxAgeSeconds) {
+			boolean keysRemoved = false;
+			int addressWords = stride - 1;
+			
+			for(int slot=0;slot<entries.length;slot++) {
+				long[] data = entries[slot];
+				if(data == null)
+					continue;
 				
+				int size = sizes[slot];
 				// don't remove all at once -> smears out new registrations on popular keys over time
 				int toRemove = DHTConstants.MAX_DB_ENTRIES_PER_KEY / 5;
-				
 				int insertPoint = 0;
 				
-				for(int i=0;i<items.length;i++) {
-					PeerAddressDBItem e = items[i];
-					if(toRemove == 0 || !e.expired(now))
-						newItems[insertPoint++] = e;
-					else
+				for(int i=0;i<size;i++) {
+					int offset = i * stride;
+					long meta = data[offset + addressWords];
+					if(toRemove == 0 || nowSeconds - timestamp(meta) < maxAgeSeconds) {
+						if(insertPoint != i)
+							System.arraycopy(data, offset, data, insertPoint * stride, stride);
+						insertPoint++;
+					} else {
 						toRemove--;
+						if(isSeed(meta))
+							seedCounts[slot]--;
+					}
 				}
 				
-				if(insertPoint != newItems.length) {
-					this.items = Arrays.copyOf(newItems, insertPoint);
-					invalidateFilters();
-				}
+				itemCount -= size - insertPoint;
+				sizes[slot] = insertPoint;
 				
+				if(insertPoint == 0)
+					keysRemoved = true;
+				else if(insertPoint * stride * 4 < data.length)
+					entries[slot] = Arrays.copyOf(data, insertPoint * stride * 2);
 			}
 			
+			if(keysRemoved) {
+				int capacity = MIN_CAPACITY;
+				while(capacity < keyCount * 2)
+					capacity <<= 1;
+				rehash(capacity);
+			}
+		}
+		
+		PeerAddressDBItem[] items(int slot, boolean seeds, int addressLength) {
+			long[] data = entries[slot];
+			int size = sizes[slot];
+			int count = seeds ? seedCounts[slot] : size - seedCounts[slot];
+			PeerAddressDBItem[] result = new PeerAddressDBItem[count];
+			int idx = 0;
+			for(int i=0;i<size;i++) {
+				if(isSeed(data[i * stride + stride - 1]) == seeds)
+					result[idx++] = toItem(data, i * stride, stride, addressLength);
+			}
+			return result;
+		}
+		
+		Key key(int slot) {
+			ByteBuffer buf = ByteBuffer.allocate(Key.SHA1_HASH_LENGTH);
+			for(int i=0;i<KEY_INTS;i++)
+				buf.putInt(keys[slot * KEY_INTS + i]);
+			buf.flip();
+			return new Key(buf);
 		}
 	}
+	
+	static boolean isSeed(long meta) {
+		return (meta & SEED_FLAG) != 0;
+	}
+	
+	static long timestamp(long meta) {
+		return meta >>> TIMESTAMP_SHIFT;
+	}
+	
+	static PeerAddressDBItem toItem(long[] data, int offset, int stride, int addressLength) {
+		long meta = data[offset + stride - 1];
+		byte[] raw = new byte[addressLength + 2];
+		for(int i=0;i<addressLength;i++)
+			raw[i] = (byte) (data[offset + i / 8] >>> (56 - (i % 8) * 8));
+		int port = (int) (meta & PORT_MASK);
+		raw[addressLength] = (byte) (port >>> 8);
+		raw[addressLength + 1] = (byte) port;
+		return new PeerAddressDBItem(raw, isSeed(meta), TimeUnit.SECONDS.toMillis(timestamp(meta)));
+	}
+	
+	private int[] keyWords(Key key) {
+		int[] words = new int[KEY_INTS];
+		for(int i=0;i<KEY_INTS;i++)
+			words[i] = key.getInt(i * 4);
+		return words;
+	}
+	
+	private int hash(int[] key) {
+		return Segment.hash(key, hashKeys);
+	}
+	
+	private Segment segment(int hash) {
+		// the high bits select the segment, the low bits the slot within the segment
+		return segments[hash >>> (32 - SEGMENT_BITS)];
+	}
 
 	/**
 	 * Store an entry in the database
@@ -231,18 +377,26 @@ public class Database {
 	 *            The DBItem to store
 	 */
 	public void store(Key key, PeerAddressDBItem dbi) {
+		byte[] raw = dbi.getData();
+		if(raw.length != addressLength + 2)
+			return;
 		
-		
-		PeersSeeds keyEntries = null;
-		
-		items.compute(key, (k, v) -> {
-			if(v != null) {
-				v.add(dbi);
-				return v;
-			}
-			
-			return new PeersSeeds(dbi.seed ? new PeerAddressDBItem[] {dbi} : ItemSet.NO_ITEMS , dbi.seed ? ItemSet.NO_ITEMS : new PeerAddressDBItem[] {dbi});
-		});
+		long[] address = new long[addressWords];
+		for(int i=0;i<addressLength;i++)
+			address[i / 8] |= (raw[i] & 0xFFL) << (56 - (i % 8) * 8);
+		int port = (raw[addressLength] & 0xFF) << 8 | (raw[addressLength + 1] & 0xFF);
+		long meta = TimeUnit.MILLISECONDS.toSeconds(dbi.getCreatedAt()) << TIMESTAMP_SHIFT | (dbi.isSeed() ? SEED_FLAG : 0) | port;
+		
+		int[] words = keyWords(key);
+		int hash = hash(words);
+		Segment segment = segment(hash);
+		synchronized (segment) {
+			int slot = segment.findOrInsert(words, hash);
+			boolean newKey = segment.sizes[slot] == 0;
+			segment.store(slot, address, meta);
+			if(newKey)
+				samples = null;
+		}
 	}
 
 	/**
@@ -259,77 +413,80 @@ public class Database {
 	 *            The maximum number entries
 	 */
 	List<DBItem> sample(Key key, int max_entries, DHTtype forType, boolean preferPeers) {
-		PeersSeeds keyEntry = null;
-		PeerAddressDBItem[] seedSnapshot = null;
-		PeerAddressDBItem[] peerSnapshot = null;
-
-
-		keyEntry = items.get(key);
-		if(keyEntry == null)
-			return null;
-		
-		seedSnapshot = keyEntry.seeds.snapshot();
-		peerSnapshot = keyEntry.peers.snapshot();
-		
-		int lengthSum = peerSnapshot.length + seedSnapshot.length;
-		
-		if(lengthSum == 0)
-			return null;
-		
-		List<DBItem> peerlist = new ArrayList<>(Math.min(max_entries, lengthSum));
-		
-		preferPeers &= lengthSum > max_entries;
-		
-		PeerAddressDBItem[] source;
-		
-		if(preferPeers)
-			source = peerSnapshot;
-		else {
-			// proportional sampling
-			source = ThreadLocalRandom.current().nextInt(lengthSum) < peerSnapshot.length ? peerSnapshot : seedSnapshot;
+		int[] words = keyWords(key);
+		int hash = hash(words);
+		Segment segment = segment(hash);
+		synchronized (segment) {
+			int slot = segment.find(words, hash);
+			if(slot < 0)
+				return null;
+			
+			int lengthSum = segment.sizes[slot];
+			if(lengthSum == 0)
+				return null;
+			
+			int seedCount = segment.seedCounts[slot];
+			int peerCount = lengthSum - seedCount;
+			
+			List<DBItem> peerlist = new ArrayList<>(Math.min(max_entries, lengthSum));
+			
+			preferPeers &= lengthSum > max_entries;
+			
+			boolean seedsFirst;
+			
+			if(preferPeers)
+				seedsFirst = false;
+			else {
+				// proportional sampling
+				seedsFirst = ThreadLocalRandom.current().nextInt(lengthSum) >= peerCount;
+			}
+			
+			fill(peerlist, segment, slot, seedsFirst, seedsFirst ? seedCount : peerCount, max_entries);
+			fill(peerlist, segment, slot, !seedsFirst, seedsFirst ? peerCount : seedCount, max_entries);
+			
+			return peerlist;
 		}
-		
-		fill(peerlist, source, max_entries);
-		
-		source = source == peerSnapshot ? seedSnapshot : peerSnapshot;
-		
-		fill(peerlist, source, max_entries);
-		
-		return peerlist;
 	}
 	
 	
-	static void fill(List<DBItem> target, PeerAddressDBItem[] source, int max) {
-		if(source.length == 0)
+	private void fill(List<DBItem> target, Segment segment, int slot, boolean seeds, int sourceCount, int max) {
+		if(sourceCount == 0)
 			return;
 		
-		if(source.length < max - target.size()) {
-			// copy whole
-			for(int i=0;i<source.length;i++) {
-				target.add(source[i]);
-			}
-		} else {
-			// sample random sublist
-			int offset = ThreadLocalRandom.current().nextInt(source.length);
-			
-			for(int i=0;i<source.length && target.size() < max;i++) {
-				PeerAddressDBItem toInsert = source[(i+offset)%source.length];
-				target.add(toInsert);
-			}
-			
-		}
+		long[] data = segment.entries[slot];
+		int size = segment.sizes[slot];
+		int stride = segment.stride;
 		
+		// sample random sublist if there are more entries than needed, copy whole otherwise
+		int offset = sourceCount < max - target.size() ? 0 : ThreadLocalRandom.current().nextInt(size);
 		
+		for(int i=0;i<size && target.size() < max;i++) {
+			int entry = (i + offset) % size;
+			if(isSeed(data[entry * stride + stride - 1]) == seeds)
+				target.add(toItem(data, entry * stride, stride, addressLength));
+		}
 	}
 	
 	BloomFilterBEP33 createScrapeFilter(Key key, boolean seedFilter)
 	{
-		PeersSeeds dbl = items.get(key);
-		
-		if (dbl == null)
-			return null;
+		int[] words = keyWords(key);
+		int hash = hash(words);
+		Segment segment = segment(hash);
+		PeerAddressDBItem[] items;
+		synchronized (segment) {
+			int slot = segment.find(words, hash);
+			if(slot < 0)
+				return null;
+			items = segment.items(slot, seedFilter, addressLength);
+		}
 		
-		return seedFilter ? dbl.seeds.getFilter() : dbl.peers.getFilter();
+		// also return empty filters. strict interpretation of the spec doesn't allow omission of empty sets
+		// can happen if we have seeds but no peeds for example
+		BloomFilterBEP33 filter = new BloomFilterBEP33();
+		for (PeerAddressDBItem item : items) {
+			filter.insert(item.getInetAddress());
+		}
+		return filter;
 	}
 
 	/**
@@ -340,14 +497,15 @@ public class Database {
 	 *            calculate it once)
 	 */
 	void expire(long now) {
+		long nowSeconds = TimeUnit.MILLISECONDS.toSeconds(now);
+		long maxAgeSeconds = TimeUnit.MILLISECONDS.toSeconds(DHTConstants.MAX_ITEM_AGE);
 		
-		for (PeersSeeds dbl : items.values())
-		{
-			dbl.expire();
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.expire(nowSeconds, maxAgeSeconds);
+			}
 		}
 		
-		items.entrySet().removeIf(e -> e.getValue().size() == 0);
-		
 		samples = null;
 		
 	}
@@ -358,17 +516,32 @@ public class Database {
 		if(currentSamples != null)
 			return ByteBuffer.wrap(currentSamples);
 		
-		List<Key> fullSet = items.keySet().stream().collect(Collectors.toCollection(ArrayList::new));
-		
-		Collections.shuffle(fullSet);
+		// keys are spread uniformly over the index, so consecutive slots from a random starting point form a random sample
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		int firstSegment = rnd.nextInt(segments.length);
+		
+		List<Key> sampled = new ArrayList<>(MAX_SAMPLE_COUNT);
+		
+		for(int i=0;i<segments.length && sampled.size() < MAX_SAMPLE_COUNT;i++) {
+			Segment segment = segments[(firstSegment + i) % segments.length];
+			synchronized (segment) {
+				int capacity = segment.entries.length;
+				int firstSlot = rnd.nextInt(capacity);
+				for(int j=0;j<capacity && sampled.size() < MAX_SAMPLE_COUNT;j++) {
+					int slot = (firstSlot + j) % capacity;
+					if(segment.entries[slot] != null && segment.sizes[slot] > 0)
+						sampled.add(segment.key(slot));
+				}
+			}
+		}
 		
-		int size = Math.min(MAX_SAMPLE_COUNT, fullSet.size());
+		int size = sampled.size();
 		
 		byte[] newSamples = new byte[size * 20];
 		
 		ByteBuffer buf = ByteBuffer.wrap(newSamples);
 		
-		fullSet.stream().limit(size).forEach(k -> {
+		sampled.forEach(k -> {
 			k.toBuffer(buf);
 		});
 		buf.flip();
@@ -382,11 +555,16 @@ public class Database {
 	
 	boolean insertForKeyAllowed(Key target)
 	{
-		PeersSeeds entries = items.get(target);
-		if(entries == null)
-			return true;
-		
-		int size = Math.max(entries.peers.size(), entries.seeds.size());
+		int[] words = keyWords(target);
+		int hash = hash(words);
+		Segment segment = segment(hash);
+		int size;
+		synchronized (segment) {
+			int slot = segment.find(words, hash);
+			if(slot < 0)
+				return true;
+			size = Math.max(segment.seedCounts[slot], segment.sizes[slot] - segment.seedCounts[slot]);
+		}
 
 		if(size < DHTConstants.MAX_DB_ENTRIES_PER_KEY / 5)
 			return true;
@@ -396,8 +574,6 @@ public class Database {
 		if(size >= DHTConstants.MAX_DB_ENTRIES_PER_KEY)
 			return false;
 		
-
-		
 		// implement RED to throttle write attempts
 		return size < ThreadLocalRandom.current().nextInt(DHTConstants.MAX_DB_ENTRIES_PER_KEY);
 	}
@@ -483,8 +659,21 @@ public class Database {
 		return toCheck.equals(new ByteWrapper(rawToken));
 	}
 	
+	/**
+	 * @return snapshot of the stored peers, for diagnostic purposes
+	 */
 	public Map<Key, PeersSeeds> getData() {
-		return new HashMap<>(items);
+		Map<Key, PeersSeeds> result = new HashMap<>();
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				for(int slot=0;slot<segment.entries.length;slot++) {
+					if(segment.entries[slot] == null || segment.sizes[slot] == 0)
+						continue;
+					result.put(segment.key(slot), new PeersSeeds(segment.items(slot, true, addressLength), segment.items(slot, false, addressLength)));
+				}
+			}
+		}
+		return result;
 	}
 
 
@@ -498,13 +687,24 @@ public class Database {
 			
 			@Override
 			public int getKeyCount() {
-				// TODO Auto-generated method stub
-				return items.size();
+				int count = 0;
+				for (Segment segment : segments) {
+					synchronized (segment) {
+						count += segment.keyCount;
+					}
+				}
+				return count;
 			}
 			
 			@Override
 			public int getItemCount() {
-				return items.values().stream().mapToInt(PeersSeeds::size).sum();
+				long count = 0;
+				for (Segment segment : segments) {
+					synchronized (segment) {
+						count += segment.itemCount;
+					}
+				}
+				return (int) count;
 			}
 		};
 	}
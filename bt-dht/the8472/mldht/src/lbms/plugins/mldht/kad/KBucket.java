@@ -7,11 +7,13 @@ package lbms.plugins.mldht.kad;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.RandomAccess;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
@@ -31,13 +33,57 @@ import lbms.plugins.mldht.kad.messages.MessageBase.Type;
  * @author Damokles
  */
 public class KBucket {
+	
+	/**
+	 * Immutable snapshot of the main bucket. Keeps the node IDs unpacked into a contiguous long[] ({@link Key#WORDS} per entry)
+	 * so that distance comparisons can scan the bucket without chasing pointers into each entry's key.
+	 */
+	static final class Entries extends AbstractList<KBucketEntry> implements RandomAccess {
+		
+		static final Entries EMPTY = new Entries(Collections.emptyList());
+		
+		private final KBucketEntry[] entries;
+		final long[] ids;
+		
+		Entries(List<KBucketEntry> source) {
+			entries = source.toArray(new KBucketEntry[source.size()]);
+			ids = new long[entries.length * Key.WORDS];
+			for(int i=0;i<entries.length;i++)
+				entries[i].getID().toWords(ids, i * Key.WORDS);
+		}
+		
+		@Override
+		public KBucketEntry get(int index) {
+			return entries[index];
+		}
+		
+		@Override
+		public int size() {
+			return entries.length;
+		}
+		
+		/**
+		 * unsigned comparison of the xor distances of entries a and b to the target, which must be in {@link Key#toWords(long[], int)} format
+		 */
+		int compareDistance(int a, int b, long[] target) {
+			long[] ids = this.ids;
+			int offA = a * Key.WORDS;
+			int offB = b * Key.WORDS;
+			for(int w=0;w<Key.WORDS;w++) {
+				int c = Long.compareUnsigned(ids[offA+w] ^ target[w], ids[offB+w] ^ target[w]);
+				if(c != 0)
+					return c;
+			}
+			return 0;
+		}
+	}
 
 	
 	/**
 	 * use {@link #insertOrRefresh}, {@link #sortedInsert} or {@link #removeEntry} to handle this<br>
 	 * using copy-on-write semantics for this list, referencing it is safe if you make local copy
 	 */
-	private volatile List<KBucketEntry>	entries;
+	private volatile Entries	entries;
 	
 	private AtomicInteger						currentReplacementPointer;
 	private AtomicReferenceArray<KBucketEntry>	replacementBucket;
@@ -45,7 +91,7 @@ public class KBucket {
 	private long						lastRefresh;
 	
 	public KBucket () {
-		entries = new ArrayList<>(); // using arraylist here since reading/iterating is far more common than writing.
+		entries = Entries.EMPTY; // immutable array snapshots since reading/iterating is far more common than writing.
 		currentReplacementPointer = new AtomicInteger(0);
 		replacementBucket = new AtomicReferenceArray<>(DHTConstants.MAX_ENTRIES_PER_BUCKET);
 		// needed for bitmasking
@@ -162,7 +208,7 @@ public class KBucket {
 			
 			// make changes visible
 			if(added || removed)
-				entries = newEntries;
+				entries = new Entries(newEntries);
 		}
 	}
 
@@ -198,6 +244,13 @@ public class KBucket {
 		return entries.stream();
 	}
 	
+	/**
+	 * @return the current main bucket, never modified after publication
+	 */
+	Entries entrySnapshot() {
+		return entries;
+	}
+	
 	Stream<KBucketEntry> replacementsStream() {
 		return IntStream.range(0, replacementBucket.length()).mapToObj(replacementBucket::get).filter(Objects::nonNull);
 	}
@@ -12,7 +12,9 @@ import lbms.plugins.mldht.kad.utils.AddressUtils;
 import lbms.plugins.mldht.utils.ExponentialWeightendMovingAverage;
 
 import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.Comparator;
@@ -128,6 +130,89 @@ public class KBucketEntry {
 		
 		return map;
 	}
+	
+	private static final int BINARY_VERIFIED = 0x01;
+	private static final int BINARY_IPV6 = 0x02;
+	private static final int BINARY_VERSION = 0x04;
+	
+	/**
+	 * @return number of bytes {@link #writeBinary(ByteBuffer)} will write
+	 */
+	public int binarySize() {
+		// flags, id, address + port, timestamps, failed queries, rtt
+		int size = 1 + Key.SHA1_HASH_LENGTH + addr.getAddress().getAddress().length + 2 + 3 * 8 + 4 + 4;
+		if(version != null)
+			size += 1 + version.length;
+		return size;
+	}
+	
+	/**
+	 * compact alternative to {@link #toBencoded()} for routing table snapshots
+	 */
+	public void writeBinary(ByteBuffer buf) {
+		byte[] ip = addr.getAddress().getAddress();
+		
+		int flags = 0;
+		if(verified)
+			flags |= BINARY_VERIFIED;
+		if(ip.length == 16)
+			flags |= BINARY_IPV6;
+		if(version != null)
+			flags |= BINARY_VERSION;
+		
+		buf.put((byte) flags);
+		nodeID.toBuffer(buf);
+		buf.put(ip);
+		buf.putChar((char) addr.getPort());
+		buf.putLong(timeCreated);
+		buf.putLong(lastSeen);
+		buf.putLong(lastSendTime);
+		buf.putInt(failedQueries);
+		buf.putFloat((float) avgRTT.getAverage());
+		if(version != null) {
+			buf.put((byte) version.length);
+			buf.put(version);
+		}
+	}
+	
+	/**
+	 * @throws java.nio.BufferUnderflowException if the buffer does not contain a complete entry
+	 * @throws IllegalArgumentException if the entry is malformed
+	 */
+	public static KBucketEntry readBinary(ByteBuffer buf) {
+		int flags = buf.get();
+		
+		byte[] id = new byte[Key.SHA1_HASH_LENGTH];
+		buf.get(id);
+		byte[] ip = new byte[(flags & BINARY_IPV6) != 0 ? 16 : 4];
+		buf.get(ip);
+		int port = buf.getChar();
+		
+		InetSocketAddress addr;
+		try {
+			addr = new InetSocketAddress(InetAddress.getByAddress(ip), port);
+		} catch (UnknownHostException e) {
+			throw new IllegalArgumentException(e);
+		}
+		
+		KBucketEntry built = new KBucketEntry(addr, new Key(id));
+		built.timeCreated = buf.getLong();
+		built.lastSeen = buf.getLong();
+		built.lastSendTime = buf.getLong();
+		built.failedQueries = buf.getInt();
+		
+		float rtt = buf.getFloat();
+		if(!Float.isNaN(rtt))
+			built.avgRTT.setValue(rtt);
+		if((flags & BINARY_VERSION) != 0) {
+			byte[] version = new byte[buf.get() & 0xFF];
+			buf.get(version);
+			built.setVersion(version);
+		}
+		built.setVerified((flags & BINARY_VERIFIED) != 0);
+		
+		return built;
+	}
 
 
 	/**
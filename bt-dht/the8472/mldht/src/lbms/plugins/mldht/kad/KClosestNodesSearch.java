@@ -8,7 +8,6 @@ package lbms.plugins.mldht.kad;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -26,8 +25,13 @@ public class KClosestNodesSearch {
 	private List<KBucketEntry>			entries;
 	private int							max_entries;
 	private DHT							owner;
-	private Comparator<KBucketEntry> comp;
 	public Predicate<KBucketEntry> filter = KBucketEntry::eligibleForNodesList;
+	
+	// scratch state so that walking the routing table does not allocate keys or sort buckets
+	private final long[]				targetWords = new long[Key.WORDS];
+	private final long[]				scratchWords = new long[Key.WORDS];
+	private final Key					nextBucketTarget = new Key();
+	private int[]						candidates = new int[DHTConstants.MAX_ENTRIES_PER_BUCKET];
 
 	/**
 	 * Constructor sets the key to compare with
@@ -39,7 +43,7 @@ public class KClosestNodesSearch {
 		this.targetKey = key;
 		this.owner = owner;
 		this.max_entries = max_entries;
-		this.comp = new KBucketEntry.DistanceOrder(key);
+		key.toWords(targetWords, 0);
 		entries = new ArrayList<>(max_entries + DHTConstants.MAX_ENTRIES_PER_BUCKET);
 	}
 
@@ -92,18 +96,76 @@ This requires a non-contiguous search
 	
 	
 	private void insertBucket(KBucket bucket) {
-		bucket.entriesStream().filter(filter).forEach(entries::add);
+		KBucket.Entries snapshot = bucket.entrySnapshot();
+		int n = snapshot.size();
+		if(candidates.length < n)
+			candidates = new int[n];
+		
+		int[] candidates = this.candidates;
+		int eligible = 0;
+		for(int i=0;i<n;i++)
+			if(filter.test(snapshot.get(i)))
+				candidates[eligible++] = i;
+		
+		int needed = max_entries - entries.size();
+		
+		if(eligible > needed) {
+			// only the last bucket can overshoot, partially select the closest ones instead of sorting the whole bucket
+			for(int i=0;i<needed;i++) {
+				int min = i;
+				for(int j=i+1;j<eligible;j++)
+					if(snapshot.compareDistance(candidates[j], candidates[min], targetWords) < 0)
+						min = j;
+				int tmp = candidates[i];
+				candidates[i] = candidates[min];
+				candidates[min] = tmp;
+			}
+			eligible = needed;
+		}
+		
+		for(int i=0;i<eligible;i++)
+			entries.add(snapshot.get(candidates[i]));
 	}
 	
-	private void shave() {
-		int overshoot = entries.size() - max_entries;
+	/**
+	 * computes the lowest key of the bucket with the next-higher xor distance to the target, written to {@link #nextBucketTarget}
+	 * 
+	 * @return false if the xor distance wrapped around, i.e. the whole keyspace has been covered
+	 */
+	private boolean advanceTarget(Prefix bucketPrefix) {
+		int depth = bucketPrefix.depth;
+		if(depth < 0)
+			return false;
 		
-		if(overshoot <= 0)
-			return;
-
-		List<KBucketEntry> tail = entries.subList(Math.max(0, entries.size() - DHTConstants.MAX_ENTRIES_PER_BUCKET), entries.size());
-		tail.sort(comp);
-		entries.subList(entries.size() - overshoot, entries.size()).clear();
+		long[] words = scratchWords;
+		long[] target = targetWords;
+		bucketPrefix.toWords(words, 0);
+		
+		// translate into xor distance, trim trailing bits
+		for(int w=0;w<Key.WORDS;w++) {
+			int maskedBits = Math.max(0, Math.min(64, depth + 1 - w * 64));
+			long mask = maskedBits == 0 ? 0 : -1L << (64 - maskedBits);
+			words[w] = (words[w] ^ target[w]) & mask;
+		}
+		
+		// increment distance by least significant *prefix* bit
+		int w = depth / 64;
+		long carry = 1L << (63 - depth % 64);
+		while(carry != 0 && w >= 0) {
+			long sum = words[w] + carry;
+			carry = Long.compareUnsigned(sum, words[w]) < 0 ? 1 : 0;
+			words[w--] = sum;
+		}
+		
+		if(carry != 0)
+			return false;
+		
+		// translate back to natural distance
+		for(int i=0;i<Key.WORDS;i++)
+			words[i] ^= target[i];
+		
+		nextBucketTarget.fromWords(words, 0);
+		return true;
 	}
 	
 	public void fill(boolean includeOurself) {
@@ -125,15 +187,10 @@ This requires a non-contiguous search
 			if(entries.size() >= max_entries)
 				break;
 			
-			Prefix bucketPrefix = current.prefix;
-			Prefix targetToBucketDistance = new Prefix(targetKey.distance(bucketPrefix), bucketPrefix.depth); // translate into xor distance, trim trailing bits
-			Key incrementedDistance = targetToBucketDistance.add(Key.setBit(targetToBucketDistance.depth)); // increment distance by least significant *prefix* bit
-			Key nextBucketTarget = targetKey.distance(incrementedDistance); // translate back to natural distance
-			
+			if(!advanceTarget(current.prefix))
+				break;
 			
-			//System.out.println("dist    " + targetToBucketDistance.toBinString());
-			//System.out.println("newDist " +  incrementedDistance.toBinString());
-			//System.out.println("target  " +  nextBucketTarget.toBinString());
+			Key nextBucketTarget = this.nextBucketTarget;
 			
 			// guess neighbor bucket that might be next in target order
 			int dir = Integer.signum(nextBucketTarget.compareTo(current.prefix));
@@ -158,8 +215,6 @@ This requires a non-contiguous search
 				break;
 		}
 		
-		shave();
-		
 		RPCServer srv = owner.getServerManager().getRandomActiveServer(true);
 		
 		if(includeOurself && srv != null && srv.getPublicAddress() != null && entries.size() < max_entries)
@@ -54,6 +54,10 @@ public class Key implements Radixable<Key> {
 	public static final int		SHA1_HASH_LENGTH	= 20;
 	public static final int		KEY_BITS			= SHA1_HASH_LENGTH * 8;
 	public static final Pattern STRING_PATTERN		= Pattern.compile("[a-fA-F0-9]{40}");
+	/**
+	 * number of longs needed to hold a key, see {@link #toWords(long[], int)}
+	 */
+	public static final int		WORDS				= 3;
 	final protected byte[]			hash				= new byte[SHA1_HASH_LENGTH];
 
 	/**
@@ -171,6 +175,31 @@ public class Key implements Radixable<Key> {
 		return Byte.toUnsignedInt(hash[offset]) << 24 | Byte.toUnsignedInt(hash[offset+1]) << 16 | Byte.toUnsignedInt(hash[offset+2]) << 8 | Byte.toUnsignedInt(hash[offset+3]);
 	}
 	
+	/**
+	 * Stores the key as {@link #WORDS} big-endian longs, the last 4 bytes occupy the upper half of the last word.<br>
+	 * Unsigned comparison of the words in order yields the same ordering as {@link #compareTo(Key)}, xor of words yields the xor distance.
+	 */
+	public void toWords(long[] dst, int offset) {
+		byte[] hash = this.hash;
+		for(int w=0;w<WORDS;w++) {
+			long word = 0;
+			for(int i=w*8, end=Math.min(i+8, SHA1_HASH_LENGTH);i<end;i++)
+				word = word << 8 | Byte.toUnsignedLong(hash[i]);
+			if(w == WORDS - 1)
+				word <<= 32;
+			dst[offset+w] = word;
+		}
+	}
+	
+	/**
+	 * inverse of {@link #toWords(long[], int)}, overwrites this key in place. only meant for scratch keys that are never shared
+	 */
+	void fromWords(long[] src, int offset) {
+		byte[] hash = this.hash;
+		for(int i=0;i<SHA1_HASH_LENGTH;i++)
+			hash[i] = (byte) (src[offset + i/8] >>> (56 - (i % 8) * 8));
+	}
+	
 	public Key getDerivedKey(int idx) {
 		Key k = new Key(this);
 		idx = Integer.reverse(idx);
@@ -14,8 +14,6 @@ import static lbms.plugins.mldht.kad.Node.InsertOptions.RELAXED_SPLIT;
 import static lbms.plugins.mldht.kad.Node.InsertOptions.REMOVE_IF_FULL;
 import static the8472.utils.Functional.typedGet;
 
-import the8472.bencode.BEncoder;
-import the8472.utils.AnonAllocator;
 import the8472.utils.CowSet;
 import the8472.utils.Pair;
 import the8472.utils.concurrent.SerializedTaskExecutor;
@@ -54,7 +52,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -871,8 +868,14 @@ public class Node {
 		}
 	}
 
+	static final int TABLE_SNAPSHOT_MAGIC = 0x6D6C5254; // "mlRT"
+	static final int TABLE_SNAPSHOT_VERSION = 1;
+	
 	/**
-	 * Saves the routing table to a file
+	 * Saves the routing table to a file.
+	 * 
+	 * Binary layout: magic, version, timestamp, node ID, log2 size estimate, main and replacement entry counts,
+	 * followed by the entries as written by {@link KBucketEntry#writeBinary(ByteBuffer)}
 	 *
 	 * @param file to save to
 	 * @throws IOException
@@ -882,35 +885,38 @@ public class Node {
 		if(!Files.isDirectory(saveTo.getParent()))
 			return;
 		
-		ByteBuffer tableBuffer = AnonAllocator.allocate(50*1024*1024);
-		
-		
-		Map<String,Object> tableMap = new TreeMap<>();
-
 		RoutingTable table = routingTableCOW;
 		
-		Stream<Map<String, Object>> main = table.stream().map(RoutingTableEntry::getBucket).flatMap(b -> b.entriesStream().map(KBucketEntry::toBencoded));
-		Stream<Map<String, Object>> replacements = table.stream().map(RoutingTableEntry::getBucket).flatMap(b -> b.replacementsStream().map(KBucketEntry::toBencoded));
+		List<KBucketEntry> main = table.stream().map(RoutingTableEntry::getBucket).flatMap(KBucket::entriesStream).collect(Collectors.toList());
+		List<KBucketEntry> replacements = table.stream().map(RoutingTableEntry::getBucket).flatMap(KBucket::replacementsStream).collect(Collectors.toList());
 		
-		tableMap.put("mainEntries", main);
-		tableMap.put("replacements", replacements);
+		int size = 4 + 1 + 8 + Key.SHA1_HASH_LENGTH + 8 + 4 + 4;
+		size += Stream.concat(main.stream(), replacements.stream()).mapToInt(KBucketEntry::binarySize).sum();
 		
-		ByteBuffer doubleBuf = ByteBuffer.wrap(new byte[8]);
-		doubleBuf.putDouble(0, dht.getEstimator().getRawDistanceEstimate());
-		tableMap.put("log2estimate", doubleBuf);
+		ByteBuffer tableBuffer = ByteBuffer.allocate(size);
 		
-		tableMap.put("timestamp", System.currentTimeMillis());
-		tableMap.put("oldKey", getRootID().getHash());
+		tableBuffer.putInt(TABLE_SNAPSHOT_MAGIC);
+		tableBuffer.put((byte) TABLE_SNAPSHOT_VERSION);
+		tableBuffer.putLong(System.currentTimeMillis());
+		getRootID().toBuffer(tableBuffer);
+		tableBuffer.putDouble(dht.getEstimator().getRawDistanceEstimate());
+		tableBuffer.putInt(main.size());
+		tableBuffer.putInt(replacements.size());
+		main.forEach(e -> e.writeBinary(tableBuffer));
+		replacements.forEach(e -> e.writeBinary(tableBuffer));
 		
-		new BEncoder().encodeInto(tableMap, tableBuffer);
+		tableBuffer.flip();
 		
 		Path tempFile = Files.createTempFile(saveTo.getParent(), "saveTable", "tmp");
 		
 		try(SeekableByteChannel chan = Files.newByteChannel(tempFile, StandardOpenOption.WRITE)) {
-			chan.write(tableBuffer);
+			while(tableBuffer.hasRemaining())
+				chan.write(tableBuffer);
 			chan.close();
 			Files.move(tempFile, saveTo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
-		};
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
 
 	}
 	
@@ -964,10 +970,12 @@ public class Node {
 	}
 
 	/**
-	 * Loads the routing table from a file
+	 * Loads the routing table from a file. Restored entries keep their verification state, RTT and timestamps
+	 * and are put into their buckets directly, re-validation happens in the background once the DHT is started.
+	 * 
+	 * Tables in the older bencoded format are still accepted.
 	 *
 	 * @param file
-	 * @param runWhenLoaded is executed when all load operations are finished
 	 * @throws IOException
 	 */
 	void loadTable (Path tablePath) {
@@ -980,57 +988,87 @@ public class Node {
 		try(FileChannel chan = FileChannel.open(tablePath, StandardOpenOption.READ)) {
 			
 			// don't use mmap, that would keep the file undeletable on windows, which would interfere with write-atomicmove persistence
-			ByteBuffer buf = ByteBuffer.allocateDirect((int)chan.size());
-			chan.read(buf);
+			ByteBuffer buf = ByteBuffer.allocate((int)chan.size());
+			while(buf.hasRemaining() && chan.read(buf) >= 0)
+				;
 			buf.flip();
 			
-			Map<String, Object> table = ThreadLocalUtils.getDecoder().decode(buf);
-			
-			AtomicInteger counter = new AtomicInteger();
-
-			Key oldKey = typedGet(table, "oldKey", byte[].class).filter(b -> b.length == Key.SHA1_HASH_LENGTH).map(Key::new).orElse(null);
-			
-			boolean reuseKey = getRootID().equals(oldKey);
-			Comparator<KBucketEntry> comp = new KBucketEntry.DistanceOrder(getRootID());
+			if(buf.remaining() >= 4 && buf.getInt(0) == TABLE_SNAPSHOT_MAGIC)
+				loadBinaryTable(buf);
+			else
+				loadBencodedTable(buf);
 			
-			typedGet(table, "mainEntries", List.class).ifPresent(l -> {
-				Stream<KBucketEntry> st = l.stream().filter(Map.class::isInstance).map(m -> KBucketEntry.fromBencoded((Map<String, Object>) m));
-				if(!reuseKey) // sort so we insert in new home bucket first to minimize reshuffling
-					st = st.sorted(comp);
-				st.forEachOrdered(be -> {
-					insertEntry(be, reuseKey ? EnumSet.of(ALWAYS_SPLIT_IF_FULL, FORCE_INTO_MAIN_BUCKET) : EnumSet.noneOf(InsertOptions.class));
-					counter.incrementAndGet();
-				});
-			});
-			
-			typedGet(table, "replacements", List.class).ifPresent(l -> {
-				Stream<KBucketEntry> st = l.stream().filter(Map.class::isInstance).map(m -> KBucketEntry.fromBencoded((Map<String, Object>) m));
-				st.filter(e -> dht.getType().canUseSocketAddress(e.getAddress())).forEach(be -> {
-					routingTableCOW.entryForId(be.getID()).bucket.insertInReplacementBucket(be);
-					counter.incrementAndGet();
-				});
-			});
-			
-			typedGet(table, "log2estimate", byte[].class).filter(b -> b.length == 8).ifPresent(b -> {
-				ByteBuffer doubleBuf = ByteBuffer.wrap(b);
-				dht.getEstimator().setInitialRawDistanceEstimate(doubleBuf.getDouble());
-			});
-			
-
-			long timeStamp = typedGet(table, "timestamp", Long.class).orElse(-1L);
-
-			
-			DHT.logInfo("Loaded " + counter.get() + " entries from cache. Cache was "
-					+ ((System.currentTimeMillis() - timeStamp) / (60 * 1000))
-					+ "min old. Reusing old id = " + reuseKey);
-
-			
-			rebuildAddressCache();
-		} catch (IOException e) {
+		} catch (IOException | RuntimeException e) {
 			DHT.log(e, LogLevel.Error);
 		};
 		
 	}
+	
+	private void loadBinaryTable(ByteBuffer buf) {
+		buf.getInt();
+		int version = buf.get();
+		if(version != TABLE_SNAPSHOT_VERSION) {
+			DHT.logInfo("Ignoring routing table cache with unknown version " + version);
+			return;
+		}
+		
+		long timeStamp = buf.getLong();
+		Key oldKey = new Key(buf);
+		double log2estimate = buf.getDouble();
+		int mainCount = buf.getInt();
+		int replacementCount = buf.getInt();
+		
+		List<KBucketEntry> main = new ArrayList<>(Math.min(mainCount, buf.remaining()));
+		List<KBucketEntry> replacements = new ArrayList<>(Math.min(replacementCount, buf.remaining()));
+		
+		for(int i=0;i<mainCount;i++)
+			main.add(KBucketEntry.readBinary(buf));
+		for(int i=0;i<replacementCount;i++)
+			replacements.add(KBucketEntry.readBinary(buf));
+		
+		restoreTable(main.stream(), replacements.stream(), oldKey, log2estimate, timeStamp);
+	}
+	
+	private void loadBencodedTable(ByteBuffer buf) {
+		Map<String, Object> table = ThreadLocalUtils.getDecoder().decode(buf);
+		
+		Key oldKey = typedGet(table, "oldKey", byte[].class).filter(b -> b.length == Key.SHA1_HASH_LENGTH).map(Key::new).orElse(null);
+		double log2estimate = typedGet(table, "log2estimate", byte[].class).filter(b -> b.length == 8).map(b -> ByteBuffer.wrap(b).getDouble()).orElse(Double.NaN);
+		long timeStamp = typedGet(table, "timestamp", Long.class).orElse(-1L);
+		
+		Stream<KBucketEntry> main = typedGet(table, "mainEntries", List.class).map(l -> ((List<Object>) l).stream()).orElse(Stream.empty()).filter(Map.class::isInstance).map(m -> KBucketEntry.fromBencoded((Map<String, Object>) m));
+		Stream<KBucketEntry> replacements = typedGet(table, "replacements", List.class).map(l -> ((List<Object>) l).stream()).orElse(Stream.empty()).filter(Map.class::isInstance).map(m -> KBucketEntry.fromBencoded((Map<String, Object>) m));
+		
+		restoreTable(main, replacements, oldKey, log2estimate, timeStamp);
+	}
+	
+	private void restoreTable(Stream<KBucketEntry> main, Stream<KBucketEntry> replacements, Key oldKey, double log2estimate, long timeStamp) {
+		AtomicInteger counter = new AtomicInteger();
+		
+		boolean reuseKey = getRootID().equals(oldKey);
+		Comparator<KBucketEntry> comp = new KBucketEntry.DistanceOrder(getRootID());
+		
+		if(!reuseKey) // sort so we insert in new home bucket first to minimize reshuffling
+			main = main.sorted(comp);
+		main.forEachOrdered(be -> {
+			insertEntry(be, reuseKey ? EnumSet.of(ALWAYS_SPLIT_IF_FULL, FORCE_INTO_MAIN_BUCKET) : EnumSet.noneOf(InsertOptions.class));
+			counter.incrementAndGet();
+		});
+		
+		replacements.filter(e -> dht.getType().canUseSocketAddress(e.getAddress())).forEach(be -> {
+			routingTableCOW.entryForId(be.getID()).bucket.insertInReplacementBucket(be);
+			counter.incrementAndGet();
+		});
+		
+		if(!Double.isNaN(log2estimate))
+			dht.getEstimator().setInitialRawDistanceEstimate(log2estimate);
+		
+		DHT.logInfo("Loaded " + counter.get() + " entries from cache. Cache was "
+				+ ((System.currentTimeMillis() - timeStamp) / (60 * 1000))
+				+ "min old. Reusing old id = " + reuseKey);
+		
+		rebuildAddressCache();
+	}
 
 	/**
 	 * Get the number of entries in the routing table
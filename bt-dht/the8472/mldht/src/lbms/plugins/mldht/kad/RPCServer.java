@@ -6,7 +6,6 @@
 package lbms.plugins.mldht.kad;
 
 import static the8472.bencode.Utils.prettyPrint;
-import static the8472.utils.Functional.typedGet;
 
 import the8472.bencode.Tokenizer.BDecodingException;
 import the8472.bencode.Utils;
@@ -38,10 +37,10 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Collection;
@@ -54,10 +53,13 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -84,6 +86,8 @@ public class RPCServer {
 	private Queue<EnqueuedSend>						pipeline;
 	private volatile int							numReceived;
 	private volatile int							numSent;
+	private final AtomicInteger						pipelineSize = new AtomicInteger();
+	private final LongAdder							numDropped = new LongAdder();
 	private int										port;
 	private Instant									startTime;
 	private RPCStats								stats;
@@ -204,6 +208,7 @@ public class RPCServer {
 		dh_table.getNode().removeId(derivedId);
 		manager.serverRemoved(this);
 		pipeline.clear();
+		pipelineSize.set(0);
 	}
 	
 	
@@ -295,6 +300,7 @@ public class RPCServer {
 		
 		public void onStall(RPCCall c) {}
 		public void onResponse(RPCCall c, MessageBase rsp) {
+			stats.addResponseTime(c.getRequest().getMethod(), c.getRTT());
 			if(c.knownReachableAtCreationTime())
 				verifiedEntryLossrate.updateAverage(0.0);
 			else
@@ -334,6 +340,20 @@ public class RPCServer {
 		return numReceived;
 	}
 
+	/**
+	 * @return number of packets dropped because the processing or send queues were full
+	 */
+	public long getNumDropped () {
+		return numDropped.sum();
+	}
+
+	/**
+	 * @return number of encoded messages waiting for the socket
+	 */
+	public int getNumQueuedSends () {
+		return pipelineSize.get();
+	}
+
 	/**
 	 * @return the numSent
 	 */
@@ -377,45 +397,32 @@ public class RPCServer {
 
 
 		
-		Map<String, Object> bedata = null;
+		MessageDecoder dec = decoder.get();
 		MessageBase msg = null;
 		
 		try {
-			bedata = ThreadLocalUtils.getDecoder().decode(p);
+			msg = dec.decode(p, transactionIdMapper, dh_table.getType());
 			
 			try {
 				if (DHT.isLogLevelEnabled(LogLevel.Verbose)) {
-					DHT.logVerbose("received: " + Utils.prettyPrint(bedata) + " from: " + source + " length: "+rawLength );
+					DHT.logVerbose("received: " + Utils.prettyPrint(ThreadLocalUtils.getDecoder().decode(p.duplicate())) + " from: " + source + " length: "+rawLength );
 				}
 			} catch (Exception e) {
 				DHT.log(e, LogLevel.Error);
 			}
 		} catch(BDecodingException e) {
+			stats.addDecodeError();
 			p.rewind();
 			DHT.logInfo("failed to decode message  " + Utils.stripToAscii(p) + " (length:"+p.remaining()+") from: " + source + " reason:" + e.getMessage());
 			MessageBase err = new ErrorMessage(new byte[] {0,0,0,0}, ErrorCode.ProtocolError.code,"invalid bencoding: "+e.getMessage());
 			err.setDestination(source);
 			sendMessage(err);
 			return;
-		} catch(Exception e) {
-			DHT.log(e, LogLevel.Error);
-			p.rewind();
-			DHT.logError("unexpected error while bdecoding message  " + Utils.stripToAscii(p) + " (length:"+p.remaining()+") from: " + source + " reason:" + e.getMessage());
-			return;
-		}
-		
-		try {
-			MessageDecoder dec = new MessageDecoder((byte[] mtid) -> {
-				return Optional.ofNullable(findCall(mtid)).map(RPCCall::getMessageMethod);
-			}, dh_table.getType());
-			
-			p.rewind();
-			dec.toDecode(p, bedata);
-			msg = dec.parseMessage();
 		} catch(MessageException e)
 		{
-			byte[] mtid = typedGet(bedata, MessageBase.TRANSACTION_KEY, byte[].class).orElse(new byte[MTID_LENGTH]);
-			Method m = typedGet(bedata, MessageBase.Type.TYPE_KEY, byte[].class).map(b -> new String(b, StandardCharsets.ISO_8859_1)).map(MessageBase.messageMethod::get).orElse(Method.UNKNOWN);
+			stats.addDecodeError();
+			byte[] mtid = dec.getTransactionId().orElse(new byte[MTID_LENGTH]);
+			Method m = dec.getRequestMethod();
 			DHT.log(e.getMessage(), LogLevel.Debug);
 			ErrorMessage err = new ErrorMessage(mtid, e.errorCode.code,e.getMessage());
 			err.setDestination(source);
@@ -424,6 +431,12 @@ public class RPCServer {
 			return;
 		} catch(IOException e) {
 			DHT.log(e, LogLevel.Error);
+		} catch(Exception e) {
+			stats.addDecodeError();
+			DHT.log(e, LogLevel.Error);
+			p.rewind();
+			DHT.logError("unexpected error while bdecoding message  " + Utils.stripToAscii(p) + " (length:"+p.remaining()+") from: " + source + " reason:" + e.getMessage());
+			return;
 		}
 		
 		if(msg == null)
@@ -558,6 +571,23 @@ public class RPCServer {
 	}
 
 	private void fillPipe(EnqueuedSend es) {
+		// requests are already limited by MAX_ACTIVE_CALLS, shed responses when the socket can't keep up
+		if(es.associatedCall == null && pipelineSize.get() >= DHTConstants.MAX_QUEUED_OUTGOING_PACKETS) {
+			numDropped.increment();
+			return;
+		}
+		
+		// encode on the calling thread, the socket writer only has to send finished packets
+		try {
+			es.encode();
+		} catch (IOException e) {
+			DHT.log(e, LogLevel.Error);
+			if(es.associatedCall != null)
+				es.associatedCall.sendFailed();
+			return;
+		}
+		
+		pipelineSize.incrementAndGet();
 		pipeline.add(es);
 		sel.writeEvent();
 	}
@@ -620,8 +650,8 @@ public class RPCServer {
 		Formatter f = new Formatter();
 		
 		f.format("%s\tbind: %s consensus: %s%n", getDerivedID(), getBindAddress(), consensusExternalAddress);
-		f.format("rx: %d tx: %d active: %d baseRTT: %d loss: %f  loss (verified): %f uptime: %s%n",
-				numReceived, numSent, getNumActiveRPCCalls(), timeoutFilter.getStallTimeout(), unverifiedLossrate.getAverage(), verifiedEntryLossrate.getAverage() , age());
+		f.format("rx: %d tx: %d dropped: %d queued: %d active: %d baseRTT: %d loss: %f  loss (verified): %f uptime: %s%n",
+				numReceived, numSent, numDropped.sum(), pipelineSize.get(), getNumActiveRPCCalls(), timeoutFilter.getStallTimeout(), unverifiedLossrate.getAverage(), verifiedEntryLossrate.getAverage() , age());
 		f.format("RTT stats (%dsamples) %s", timeoutFilter.getSampleCount(), timeoutFilter.getCurrentStats());
 
 		return f.toString();
@@ -634,6 +664,12 @@ public class RPCServer {
 		return Duration.between(start, Instant.now());
 	}
 	
+	// decoders keep reusable state, packets are handled concurrently by the packet processor threads.
+	// static and server-agnostic, so that the threads do not keep removed servers reachable
+	static final ThreadLocal<MessageDecoder> decoder = ThreadLocal.withInitial(MessageDecoder::new);
+	
+	private final Function<byte[], Optional<Method>> transactionIdMapper = mtid -> Optional.ofNullable(findCall(mtid)).map(RPCCall::getMessageMethod);
+	
 	static final ThreadLocal<ByteBuffer> writeBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1500));
 	static final ThreadLocal<ByteBuffer> readBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DHTConstants.RECEIVE_BUFFER_SIZE));
 	
@@ -707,10 +743,19 @@ public class RPCServer {
 			while(true)
 			{
 				readBuffer.clear();
-				InetSocketAddress soa =  (InetSocketAddress) channel.receive(readBuffer);
+				InetSocketAddress soa;
+				try {
+					soa = (InetSocketAddress) channel.receive(readBuffer);
+				} catch (ClosedChannelException e) {
+					// async close by stop() while the selector was still dispatching to us
+					return;
+				}
 				if(soa == null)
 					break;
 				
+				// count before filtering and handing off, even packets we discard show that we're reachable
+				numReceived++;
+				
 				// * no conceivable DHT message is smaller than 10 bytes
 				// * all DHT messages start with a 'd' for dictionary
 				// * port 0 is reserved
@@ -720,14 +765,19 @@ public class RPCServer {
 				if(throttle.addAndTest(soa.getAddress()))
 					continue;
 				
+				stats.addReceivedBytes(readBuffer.position() + dh_table.getType().HEADER_LENGTH);
+				
 				// copy from the read buffer since we hand off to another thread
 				readBuffer.flip();
 				ByteBuffer buf = ByteBuffer.allocate(readBuffer.limit()).put(readBuffer);
 				buf.flip();
 				
-				dh_table.getScheduler().execute(() -> {handlePacket(buf, soa);});
-				numReceived++;
-				stats.addReceivedBytes(buf.limit() + dh_table.getType().HEADER_LENGTH);
+				try {
+					dh_table.getPacketProcessor().execute(() -> {handlePacket(buf, soa);});
+				} catch (RejectedExecutionException e) {
+					// processing threads are saturated or shutting down
+					numDropped.increment();
+				}
 			}
 		}
 		
@@ -746,18 +796,14 @@ public class RPCServer {
 					EnqueuedSend es = pipeline.poll();
 					if(es == null)
 						break;
+					pipelineSize.decrementAndGet();
 					try
 					{
-						
-						
-						ByteBuffer buf = writeBuffer.get();
-								
-						es.encodeTo(buf);
-						
-						int bytesSent = channel.send(buf, es.toSend.getDestination());
+						int bytesSent = channel.send(es.encoded.duplicate(), es.toSend.getDestination());
 						
 						if(bytesSent == 0)
 						{
+							pipelineSize.incrementAndGet();
 							pipeline.add(es);
 
 							writeState.set(WRITE_STATE_AWAITING_NIO_NOTIFICATION);
@@ -790,6 +836,7 @@ public class RPCServer {
 						
 						// BSD variants may throw an exception (ENOBUFS) instead of just signaling 0 bytes sent when network queues are full -> back off just like we would in the 0 bytes case.
 						if(e.getMessage().equals("No buffer space available")) {
+							pipelineSize.incrementAndGet();
 							pipeline.add(es);
 							writeState.set(WRITE_STATE_AWAITING_NIO_NOTIFICATION);
 							connectionManager.interestOpsChanged(this);
@@ -860,6 +907,7 @@ public class RPCServer {
 	private class EnqueuedSend {
 		MessageBase toSend;
 		RPCCall associatedCall;
+		ByteBuffer encoded;
 		
 		public EnqueuedSend(MessageBase msg, RPCCall call) {
 			toSend = msg;
@@ -913,11 +961,14 @@ public class RPCServer {
 				
 		}
 		
-		void encodeTo(ByteBuffer buf) throws IOException {
+		void encode() throws IOException {
 			try {
+				ByteBuffer buf = writeBuffer.get();
 				buf.rewind();
 				buf.limit(dh_table.getType().MAX_PACKET_SIZE);
 				toSend.encode(buf);
+				encoded = ByteBuffer.allocate(buf.remaining()).put(buf);
+				encoded.flip();
 			} catch (Exception e) {
 				ByteBuffer t = ByteBuffer.allocate(4096);
 				try {
@@ -6,10 +6,12 @@
 package lbms.plugins.mldht.kad;
 
 import java.util.Formatter;
+import java.util.concurrent.atomic.LongAdder;
 
 import lbms.plugins.mldht.kad.messages.MessageBase;
 import lbms.plugins.mldht.kad.messages.MessageBase.Method;
 import lbms.plugins.mldht.kad.messages.MessageBase.Type;
+import lbms.plugins.mldht.kad.utils.LatencyHistogram;
 
 /**
  * @author Damokles
@@ -30,11 +32,16 @@ public class RPCStats {
 	private long[][]	sentMessages;
 	private long[][]	receivedMessages;
 	private long[]	timeoutMessages;
+	private LatencyHistogram[]	responseTimes;
+	private final LongAdder	decodeErrors = new LongAdder();
 
 	protected RPCStats () {
 		sentMessages = new long[Method.values().length][Type.values().length];
 		receivedMessages = new long[Method.values().length][Type.values().length];
 		timeoutMessages = new long[Method.values().length];
+		responseTimes = new LatencyHistogram[Method.values().length];
+		for(int i=0;i<responseTimes.length;i++)
+			responseTimes[i] = new LatencyHistogram();
 	}
 	
 	@Override
@@ -54,6 +61,14 @@ public class RPCStats {
 			long timeouts = timeoutMessages[m.ordinal()];
 			f.format("%18s %19d | %19d %19d %19d %n", m, sent, received, error, timeouts);
 		}
+		f.format("%n### local RPC response times (ms)%n");
+		for(Method m : Method.values())
+		{
+			LatencyHistogram.Snapshot rtt = responseTimes[m.ordinal()].snapshot();
+			if(rtt.getCount() > 0)
+				f.format("%18s %s%n", m, rtt);
+		}
+		f.format("%ndecode errors: %d%n", decodeErrors.sum());
 		f.format("%n### remote RPCs%n");
 		f.format("%18s %19s | %19s %19s %n%n", "Method","REQ", "RSP", "Errors");
 		for(Method m : Method.values())
@@ -141,6 +156,23 @@ public class RPCStats {
 		return timeoutMessages[m.ordinal()];
 	}
 
+	/**
+	 * Returns the distribution of response times to our requests
+	 *
+	 * @param m The method of the requests
+	 * @return snapshot of the cumulative histogram, in milliseconds
+	 */
+	public LatencyHistogram.Snapshot getResponseTimes (Method m) {
+		return responseTimes[m.ordinal()].snapshot();
+	}
+
+	/**
+	 * @return number of incoming packets that could not be decoded into valid messages
+	 */
+	public long getDecodeErrorCount () {
+		return decodeErrors.sum();
+	}
+
 	/**
 	 * @param receivedBytes the receivedBytes to add
 	 */
@@ -176,4 +208,14 @@ public class RPCStats {
 	protected void addTimeoutMessageToCount (MessageBase msg) {
 		timeoutMessages[msg.getMethod().ordinal()]++;
 	}
+
+	protected void addResponseTime (Method m, long rtt) {
+		// -1 if the call never went out
+		if(rtt >= 0)
+			responseTimes[m.ordinal()].record(rtt);
+	}
+
+	protected void addDecodeError () {
+		decodeErrors.increment();
+	}
 }
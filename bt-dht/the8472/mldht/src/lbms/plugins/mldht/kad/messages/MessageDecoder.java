@@ -5,15 +5,15 @@
  ******************************************************************************/
 package lbms.plugins.mldht.kad.messages;
 
-import static the8472.bencode.Utils.prettyPrint;
 import static the8472.utils.Functional.castOrThrow;
 import static the8472.utils.Functional.tap;
 import static the8472.utils.Functional.tapThrow;
-import static the8472.utils.Functional.typedGet;
 
-import the8472.bencode.PathMatcher;
 import the8472.bencode.Tokenizer;
-import the8472.utils.Functional;
+import the8472.bencode.Tokenizer.BDecodingException;
+import the8472.bencode.Tokenizer.Token;
+import the8472.bencode.Tokenizer.TokenConsumer;
+import the8472.bencode.Tokenizer.TokenType;
 
 import lbms.plugins.mldht.kad.BloomFilterBEP33;
 import lbms.plugins.mldht.kad.DBItem;
@@ -34,52 +34,101 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
+ * Decodes KRPC messages in a single pass over the raw packet.
+ *
+ * Only the fields that are part of the message schema are extracted from the bencoded data,
+ * everything else is validated by the tokenizer and skipped without being materialized.
+ *
+ * Instances keep reusable state and are not thread-safe.
+ * They hold no references to the server, that a message is decoded for,
+ * so they can be cached per thread and shared between servers.
+ *
  * @author Damokles
- * 
+ *
  */
 public class MessageDecoder {
-	
-	public MessageDecoder(Function<byte[], Optional<Method>> transactionIdMapper, DHTtype type) {
-		this.transactionIdMapper = transactionIdMapper;
-		this.type = type;
+
+	public MessageDecoder() {
+		this.tokenizer = new Tokenizer();
+		this.consumer = new SchemaConsumer();
+		this.tokenizer.consumer(consumer);
 	}
-	
-	Map<String, Object> rootMap;
+
+	final Tokenizer tokenizer;
+	final SchemaConsumer consumer;
 	ByteBuffer raw;
-	final Function<byte[], Optional<Method>> transactionIdMapper;
-	final DHTtype type;
-	
-	public void toDecode(ByteBuffer rawMessage, Map<String, Object> map) {
-		this.raw = rawMessage;
-		this.rootMap = map;
+
+	final Fields<RootKey> root = new Fields<>(RootKey.values());
+	final Fields<ArgKey> requestArgs = new Fields<>(ArgKey.values());
+	final Fields<ArgKey> responseArgs = new Fields<>(ArgKey.values());
+
+	/**
+	 * @param rawMessage packet payload, its position is not modified
+	 * @param transactionIdMapper resolves the method of an outstanding request, used to decode responses and errors
+	 * @param type type of the DHT, that received the message
+	 * @throws BDecodingException if the message is not a valid bencoded dictionary
+	 */
+	public MessageBase decode(ByteBuffer rawMessage, Function<byte[], Optional<Method>> transactionIdMapper, DHTtype type) throws MessageException, IOException {
+		root.clear();
+		requestArgs.clear();
+		responseArgs.clear();
+
+		raw = rawMessage.duplicate();
+		try {
+			tokenizer.inputBuffer(raw);
+			tokenizer.tokenize();
+		} finally {
+			// clean up any possibly illegal states to allow safe reuse
+			tokenizer.reset();
+			consumer.reset();
+		}
+
+		if(!root.present)
+			throw new BDecodingException("expected dictionary as root object");
+
+		return parseMessage(transactionIdMapper, type);
 	}
 
-	public MessageBase parseMessage() throws MessageException, IOException {
+	/**
+	 * @return transaction ID of the last decoded message, if it could be extracted
+	 */
+	public Optional<byte[]> getTransactionId() {
+		return root.typed(RootKey.TRANSACTION_ID, byte[].class);
+	}
+
+	/**
+	 * @return method of the last decoded request, if it could be extracted
+	 */
+	public Method getRequestMethod() {
+		return root.typed(RootKey.REQUEST_METHOD, byte[].class).map(b -> new String(b, StandardCharsets.ISO_8859_1)).map(MessageBase.messageMethod::get).orElse(Method.UNKNOWN);
+	}
+
+	MessageBase parseMessage(Function<byte[], Optional<Method>> transactionIdMapper, DHTtype type) throws MessageException, IOException {
 
 		try {
-			String msgType = getStringFromBytes((byte[]) rootMap.get(Type.TYPE_KEY), true);
+			String msgType = getStringFromBytes((byte[]) root.get(RootKey.TYPE), true);
 			if (msgType == null) {
 				throw new MessageException("message type (y) missing", ErrorCode.ProtocolError);
 			}
-			
-			
-			Optional<byte[]> version = typedGet(rootMap, MessageBase.VERSION_KEY, byte[].class);
+
+
+			Optional<byte[]> version = root.typed(RootKey.VERSION, byte[].class);
 
 			MessageBase mb = null;
 			if (msgType.equals(Type.REQ_MSG.getRPCTypeName())) {
-				mb = parseRequest(rootMap, transactionIdMapper, type);
+				mb = parseRequest(transactionIdMapper, type);
 			} else if (msgType.equals(Type.RSP_MSG.getRPCTypeName())) {
-				mb = parseResponse(rootMap, transactionIdMapper);
+				mb = parseResponse(transactionIdMapper);
 			} else if (msgType.equals(Type.ERR_MSG.getRPCTypeName())) {
-				mb = parseError(rootMap, transactionIdMapper);
+				mb = parseError(transactionIdMapper);
 			} else
 				throw new MessageException("unknown RPC type (y="+msgType+")");
 
@@ -95,16 +144,12 @@ public class MessageDecoder {
 		}
 	}
 
-	/**
-	 * @param map
-	 * @return
-	 */
-	private MessageBase parseError (Map<String, Object> map, Function<byte[], Optional<Method>> transactionIdMapper) {
-		Object error = map.get(Type.ERR_MSG.innerKey());
-		
+	private MessageBase parseError (Function<byte[], Optional<Method>> transactionIdMapper) {
+		Object error = root.get(RootKey.ERROR);
+
 		int errorCode = 0;
 		String errorMsg = null;
-		
+
 		if(error instanceof byte[])
 			errorMsg = getStringFromBytes((byte[])error);
 		else if (error instanceof List<?>)
@@ -119,63 +164,52 @@ public class MessageDecoder {
 				// do nothing
 			}
 		}
-		
-		Object rawMtid = map.get(MessageBase.TRANSACTION_KEY);
-		
+
+		Object rawMtid = root.get(RootKey.TRANSACTION_ID);
+
 		if (errorMsg == null && (rawMtid == null || !(rawMtid instanceof byte[])))
 			return null;
 
 		byte[] mtid = (byte[]) rawMtid;
-		
+
 		ErrorMessage msg = new ErrorMessage(mtid, errorCode,errorMsg);
-		
-		typedGet(map, "id", byte[].class).filter(b -> b.length == Key.SHA1_HASH_LENGTH).ifPresent(h -> msg.setID(new Key(h)));
-		
+
+		root.typed(RootKey.ID, byte[].class).filter(b -> b.length == Key.SHA1_HASH_LENGTH).ifPresent(h -> msg.setID(new Key(h)));
+
 		transactionIdMapper.apply(mtid).ifPresent(m -> msg.method = m);
 
 		return msg;
 	}
 
-	/**
-	 * @param map
-	 * @param srv
-	 * @return
-	 */
-	private MessageBase parseResponse (Map<String, Object> map,  Function<byte[], Optional<Method>> transactionIdMapper) throws MessageException {
+	private MessageBase parseResponse (Function<byte[], Optional<Method>> transactionIdMapper) throws MessageException {
 
-		byte[] mtid = (byte[]) map.get(MessageBase.TRANSACTION_KEY);
+		byte[] mtid = (byte[]) root.get(RootKey.TRANSACTION_ID);
 		if (mtid == null || mtid.length < 1)
 			throw new MessageException("missing transaction ID",ErrorCode.ProtocolError);
-		
+
 		// responses don't have explicit methods, need to match them to a request to figure that one out
 		Method m = transactionIdMapper.apply(mtid).orElse(Method.UNKNOWN);
 
-		return parseResponse(map, m, mtid);
+		return parseResponse(m, mtid);
 	}
 
-	/**
-	 * @param map
-	 * @param msgMethod
-	 * @param mtid
-	 * @return
-	 */
-	private MessageBase parseResponse (Map<String, Object> map,	Method msgMethod, byte[] mtid) throws MessageException {
-		Map<String, Object> args = (Map<String, Object>) map.get(Type.RSP_MSG.innerKey());
-		if (args == null) {
+	private MessageBase parseResponse (Method msgMethod, byte[] mtid) throws MessageException {
+		if (root.get(RootKey.RESPONSE) != responseArgs) {
 			throw new MessageException("response did not contain a body",ErrorCode.ProtocolError);
 		}
+		Fields<ArgKey> args = responseArgs;
 
-		byte[] hash = Optional.ofNullable(args.get("id"))
-				.map(castOrThrow(byte[].class, (o) -> new MessageException("expected parameter 'id' to be a byte-string, got "+o.getClass().getSimpleName(), ErrorCode.ProtocolError)))
+		byte[] hash = Optional.ofNullable(args.get(ArgKey.ID))
+				.map(castOrThrow(byte[].class, (o) -> new MessageException("expected parameter 'id' to be a byte-string, got "+typeName(o), ErrorCode.ProtocolError)))
 				.orElseThrow(() -> new MessageException("mandatory parameter 'id' missing", ErrorCode.ProtocolError));
-		byte[] ip = (byte[]) map.get(MessageBase.EXTERNAL_IP_KEY);
+		byte[] ip = (byte[]) root.get(RootKey.EXTERNAL_IP);
 
 		if (hash.length != Key.SHA1_HASH_LENGTH) {
 			throw new MessageException("invalid or missing origin ID",ErrorCode.ProtocolError);
 		}
 
 		Key id = new Key(hash);
-		
+
 		MessageBase msg = null;
 
 		switch (msgMethod) {
@@ -189,72 +223,67 @@ public class MessageDecoder {
 			msg = new AnnounceResponse(mtid);
 			break;
 		case FIND_NODE:
-			if (!args.containsKey("nodes") && !args.containsKey("nodes6"))
+			if (!args.contains(ArgKey.NODES) && !args.contains(ArgKey.NODES6))
 				throw new MessageException("received response to find_node request with neither 'nodes' nor 'nodes6' entry", ErrorCode.ProtocolError);
 				//return null;
-			
+
 			msg = tapThrow(new FindNodeResponse(mtid), (m) -> {
-				extractNodes(args, "nodes", DHTtype.IPV4_DHT).ifPresent(n -> m.setNodes(n));
-				extractNodes(args, "nodes6", DHTtype.IPV6_DHT).ifPresent(n -> m.setNodes(n));
+				extractNodes(args, ArgKey.NODES, DHTtype.IPV4_DHT).ifPresent(n -> m.setNodes(n));
+				extractNodes(args, ArgKey.NODES6, DHTtype.IPV6_DHT).ifPresent(n -> m.setNodes(n));
 			});
 			break;
 		case SAMPLE_INFOHASHES:
-			if(!args.containsKey("nodes") && !args.containsKey("nodes6") && !args.containsKey("samples"))
+			if(!args.contains(ArgKey.NODES) && !args.contains(ArgKey.NODES6) && !args.contains(ArgKey.SAMPLES))
 				throw new MessageException("Expected at least one of the following keys to be present: nodes, nodes6, samples", ErrorCode.ProtocolError);
-			
-			byte[] samples = typedGet(args, "samples", byte[].class).orElse(null);
-			
+
+			byte[] samples = args.typed(ArgKey.SAMPLES, byte[].class).orElse(null);
+
 			if(samples != null && samples.length % 20 != 0)
 				throw new MessageException("samples length must be a multiple of 20", ErrorCode.ProtocolError);
-			
+
 			SampleResponse smp = new SampleResponse(mtid);
-			
+
 			if(samples != null)
 				smp.samples = ByteBuffer.wrap(samples);
-			
-			typedGet(args, "num", Long.class).ifPresent(l -> smp.setNum(l.intValue()));
-			typedGet(args, "interval", Long.class).ifPresent(l -> smp.setInterval(l.intValue()));
 
-			extractNodes(args, "nodes", DHTtype.IPV4_DHT).ifPresent(smp::setNodes);
-			extractNodes(args, "nodes6", DHTtype.IPV6_DHT).ifPresent(smp::setNodes);
-			
+			args.typed(ArgKey.NUM, Long.class).ifPresent(l -> smp.setNum(l.intValue()));
+			args.typed(ArgKey.INTERVAL, Long.class).ifPresent(l -> smp.setInterval(l.intValue()));
+
+			extractNodes(args, ArgKey.NODES, DHTtype.IPV4_DHT).ifPresent(smp::setNodes);
+			extractNodes(args, ArgKey.NODES6, DHTtype.IPV6_DHT).ifPresent(smp::setNodes);
+
 			msg = smp;
-			
+
 			break;
 		case GET:
-			
+
 			GetResponse get = new GetResponse(mtid);
-			
-			extractNodes(args, "nodes", DHTtype.IPV4_DHT).ifPresent(get::setNodes);
-			extractNodes(args, "nodes6", DHTtype.IPV6_DHT).ifPresent(get::setNodes);
-			
-			PathMatcher m = new PathMatcher(Type.RSP_MSG.innerKey(),"v");
-			Tokenizer t = new Tokenizer();
-			m.tokenizer(t);
-			ByteBuffer rawVal = m.match(raw);
-			
-			get.setRawValue(rawVal);
-			
-			typedGet(args, "token", byte[].class).ifPresent(get::setToken);;
-			typedGet(args, "k", byte[].class).ifPresent(get::setKey);
-			typedGet(args, "sig", byte[].class).ifPresent(get::setSignature);
-			typedGet(args, "seq", Long.class).ifPresent(get::setSequenceNumber);
-			
-			
+
+			extractNodes(args, ArgKey.NODES, DHTtype.IPV4_DHT).ifPresent(get::setNodes);
+			extractNodes(args, ArgKey.NODES6, DHTtype.IPV6_DHT).ifPresent(get::setNodes);
+
+			get.setRawValue(args.typed(ArgKey.VALUE, ByteBuffer.class).orElse(null));
+
+			args.typed(ArgKey.TOKEN, byte[].class).ifPresent(get::setToken);;
+			args.typed(ArgKey.KEY, byte[].class).ifPresent(get::setKey);
+			args.typed(ArgKey.SIGNATURE, byte[].class).ifPresent(get::setSignature);
+			args.typed(ArgKey.SEQ, Long.class).ifPresent(get::setSequenceNumber);
+
+
 			msg = get;
-			
+
 			break;
 		case GET_PEERS:
-			byte[] token = Functional.typedGet(args, "token", byte[].class).orElse(null);
-			Optional<NodeList> nodes = extractNodes(args, "nodes", DHTtype.IPV4_DHT);
-			Optional<NodeList> nodes6 = extractNodes(args, "nodes6", DHTtype.IPV6_DHT);
+			byte[] token = args.typed(ArgKey.TOKEN, byte[].class).orElse(null);
+			Optional<NodeList> nodes = extractNodes(args, ArgKey.NODES, DHTtype.IPV4_DHT);
+			Optional<NodeList> nodes6 = extractNodes(args, ArgKey.NODES6, DHTtype.IPV6_DHT);
+
 
-			
 			List<DBItem> dbl = null;
-			
+
 			@SuppressWarnings("unchecked")
-			List<byte[]> vals = Optional.ofNullable(args.get("values"))
-				.map(castOrThrow(List.class, val -> new MessageException("expected 'values' field in get_peers to be list of strings, got "+val.getClass(), ErrorCode.ProtocolError)))
+			List<byte[]> vals = Optional.ofNullable(args.get(ArgKey.VALUES))
+				.map(castOrThrow(List.class, val -> new MessageException("expected 'values' field in get_peers to be list of strings, got "+typeName(val), ErrorCode.ProtocolError)))
 				.orElse(Collections.EMPTY_LIST);
 
 			if(vals.size() > 0)
@@ -268,13 +297,13 @@ public class MessageDecoder {
 					dbl.add(new PeerAddressDBItem(vals.get(i), false));
 				}
 			}
-			
-			byte[] peerFilter = (byte[]) args.get("BFpe");
-			byte[] seedFilter = (byte[]) args.get("BFse");
-			
+
+			byte[] peerFilter = (byte[]) args.get(ArgKey.PEER_FILTER);
+			byte[] seedFilter = (byte[]) args.get(ArgKey.SEED_FILTER);
+
 			if((peerFilter != null && peerFilter.length != BloomFilterBEP33.m/8) || (seedFilter != null && seedFilter.length != BloomFilterBEP33.m/8))
 				throw new MessageException("invalid BEP33 filter length", ErrorCode.ProtocolError);
-			
+
 			if (dbl != null || nodes.isPresent() || nodes6.isPresent())
 			{
 				GetPeersResponse resp = new GetPeersResponse(mtid);
@@ -287,7 +316,7 @@ public class MessageDecoder {
 				msg = resp;
 				break;
 			}
-			
+
 			throw new MessageException("Neither nodes nor values in get_peers response",ErrorCode.ProtocolError);
 		case UNKNOWN:
 			msg = new UnknownTypeResponse(mtid);
@@ -295,52 +324,49 @@ public class MessageDecoder {
  		default:
 			throw new RuntimeException("should not happen!!!");
 		}
-		
+
 		if(ip != null) {
 			InetSocketAddress addr = AddressUtils.unpackAddress(ip);
 			msg.setPublicIP(addr);
 			if(addr == null)
-				DHT.logError("could not decode IP: " + prettyPrint(map));
+				DHT.logError("could not decode IP: " + the8472.bencode.Utils.prettyPrint(ip));
 		}
-		
+
 		msg.setID(id);
-		
+
 		return msg;
 	}
-	
-	private Optional<NodeList> extractNodes(Map<String, Object> args, String key, DHTtype nodesType) throws MessageException {
-		byte[] raw = typedGet(args, key, byte[].class).orElse(null);
+
+	private Optional<NodeList> extractNodes(Fields<ArgKey> args, ArgKey key, DHTtype nodesType) throws MessageException {
+		byte[] raw = args.typed(key, byte[].class).orElse(null);
 		if(raw == null)
 			return Optional.empty();
 		if(raw.length % nodesType.NODES_ENTRY_LENGTH != 0)
-			throw new MessageException("expected "+key+" length to be a multiple of "+nodesType.NODES_ENTRY_LENGTH+", received "+raw.length, ErrorCode.ProtocolError);
+			throw new MessageException("expected "+key.name+" length to be a multiple of "+nodesType.NODES_ENTRY_LENGTH+", received "+raw.length, ErrorCode.ProtocolError);
 		return Optional.of(NodeList.fromBuffer(ByteBuffer.wrap(raw), nodesType == DHTtype.IPV4_DHT ? AddressType.V4 : AddressType.V6));
 	}
-	
-	
-	/**
-	 * @param map
-	 * @return
-	 */
-	private MessageBase parseRequest (Map<String, Object> map,  Function<byte[], Optional<Method>> transactionIdMapper, DHTtype type) throws MessageException {
-		Object rawRequestMethod = map.get(Type.REQ_MSG.getRPCTypeName());
-		Map<String, Object> args = typedGet(map, Type.REQ_MSG.innerKey(), Map.class).orElseThrow(() -> new MessageException("expected a bencoded dictionary under key " + Type.REQ_MSG.innerKey(), ErrorCode.ProtocolError));
-		
-		if (rawRequestMethod == null || args == null)
+
+	private MessageBase parseRequest (Function<byte[], Optional<Method>> transactionIdMapper, DHTtype type) throws MessageException {
+		Object rawRequestMethod = root.get(RootKey.REQUEST_METHOD);
+		if (root.get(RootKey.ARGUMENTS) != requestArgs)
+			throw new MessageException("expected a bencoded dictionary under key " + Type.REQ_MSG.innerKey(), ErrorCode.ProtocolError);
+		Fields<ArgKey> args = requestArgs;
+
+		if (rawRequestMethod == null)
 			return null;
 
-		byte[] mtid = Functional.typedGet(map, MessageBase.TRANSACTION_KEY, byte[].class).filter(tid -> tid.length > 0).orElseThrow(() -> new MessageException("missing or zero-length transaction ID in request", ErrorCode.ProtocolError));
-		byte[] hash = Functional.typedGet(args,"id", byte[].class).filter(id -> id.length == Key.SHA1_HASH_LENGTH).orElseThrow(() -> new MessageException("missing or invalid node ID", ErrorCode.ProtocolError));
-		
+		byte[] mtid = root.typed(RootKey.TRANSACTION_ID, byte[].class).filter(tid -> tid.length > 0).orElseThrow(() -> new MessageException("missing or zero-length transaction ID in request", ErrorCode.ProtocolError));
+		byte[] hash = args.typed(ArgKey.ID, byte[].class).filter(id -> id.length == Key.SHA1_HASH_LENGTH).orElseThrow(() -> new MessageException("missing or invalid node ID", ErrorCode.ProtocolError));
+
 		Key id = new Key(hash);
 
 		MessageBase msg = null;
 
 		String requestMethod = getStringFromBytes((byte[]) rawRequestMethod, true);
-		
-		
+
+
 		Method method = Optional.ofNullable(MessageBase.messageMethod.get(requestMethod)).orElse(Method.UNKNOWN);
-		
+
 		switch(method) {
 			case PING:
 				msg = new PingRequest();
@@ -350,21 +376,21 @@ public class MessageDecoder {
 			case GET:
 			case SAMPLE_INFOHASHES:
 			case UNKNOWN:
-				
-				hash = Stream.of(args.get("target"), args.get("info_hash")).filter(byte[].class::isInstance).findFirst().map(byte[].class::cast).orElseThrow(() -> {
+
+				hash = Stream.of(args.get(ArgKey.TARGET), args.get(ArgKey.INFO_HASH)).filter(byte[].class::isInstance).findFirst().map(byte[].class::cast).orElseThrow(() -> {
 					if(method == Method.UNKNOWN)
 						return new MessageException("Received unknown Message Type: " + requestMethod,ErrorCode.MethodUnknown);
 					return new MessageException("missing/invalid target key in request",ErrorCode.ProtocolError);
 				});
-				
+
 				if (hash.length != Key.SHA1_HASH_LENGTH) {
 					throw new MessageException("invalid target key in request",ErrorCode.ProtocolError);
 				}
-					
+
 				Key target = new Key(hash);
-				
+
 				AbstractLookupRequest req;
-				
+
 				switch(method) {
 					case FIND_NODE:
 						req = new FindNodeRequest(target);
@@ -381,61 +407,58 @@ public class MessageDecoder {
 					default:
 						req = new UnknownTypeRequest(target);
 				}
-				
+
 				@SuppressWarnings("unchecked")
-				List<byte[]> explicitWants = Optional.ofNullable(args.get("want")).map(castOrThrow(List.class, w -> new MessageException("invalid 'want' parameter, expected a list of byte-strings"))).orElse(null);
-						
+				List<byte[]> explicitWants = Optional.ofNullable(args.get(ArgKey.WANT)).map(castOrThrow(List.class, w -> new MessageException("invalid 'want' parameter, expected a list of byte-strings"))).orElse(null);
+
 				if(explicitWants != null)
 					req.decodeWant(explicitWants);
 				else {
 					req.setWant4(type == DHTtype.IPV4_DHT);
 					req.setWant6(type == DHTtype.IPV6_DHT);
 				}
-				
-				
+
+
 				if (req instanceof GetPeersRequest)
 				{
 					GetPeersRequest peerReq = (GetPeersRequest) req;
-					peerReq.setNoSeeds(Long.valueOf(1).equals(args.get("noseed")));
-					peerReq.setScrape(Long.valueOf(1).equals(args.get("scrape")));
+					peerReq.setNoSeeds(Long.valueOf(1).equals(args.get(ArgKey.NO_SEED)));
+					peerReq.setScrape(Long.valueOf(1).equals(args.get(ArgKey.SCRAPE)));
 				}
-				
+
 				if(req instanceof GetRequest) {
 					GetRequest getReq = (GetRequest) req;
-					typedGet(args, "seq", Long.class).ifPresent(seq -> {
+					args.typed(ArgKey.SEQ, Long.class).ifPresent(seq -> {
 						getReq.setSeq(seq);
 					});
 				}
-				
+
 				msg = req;
-				
+
 				break;
 			case PUT:
-				
-				PathMatcher m = new PathMatcher(Type.REQ_MSG.innerKey(),"v");
-				Tokenizer t = new Tokenizer();
-				m.tokenizer(t);
-				ByteBuffer rawVal = m.match(raw);
-				
+
+				ByteBuffer rawVal = args.typed(ArgKey.VALUE, ByteBuffer.class).orElse(null);
+
 				msg = tapThrow(new PutRequest(), put -> {
 					if(rawVal != null)
 						put.setValue(rawVal);
-					put.pubkey = Functional.typedGet(args, "k", byte[].class).orElse(null);
-					put.sequenceNumber = Functional.typedGet(args, "seq", Long.class).orElse(-1L);
-					put.expectedSequenceNumber = Functional.typedGet(args, "cas", Long.class).orElse(-1L);
-					put.salt = Functional.typedGet(args, "salt", byte[].class).filter(b -> b.length > 0).orElse(null);
-					put.signature = Functional.typedGet(args, "sig", byte[].class).orElse(null);
-					put.token = Functional.typedGet(args, "token", byte[].class).filter(b -> b.length > 0).orElseThrow(() -> new MessageException("missing or invalid token in PUT request"));
+					put.pubkey = args.typed(ArgKey.KEY, byte[].class).orElse(null);
+					put.sequenceNumber = args.typed(ArgKey.SEQ, Long.class).orElse(-1L);
+					put.expectedSequenceNumber = args.typed(ArgKey.CAS, Long.class).orElse(-1L);
+					put.salt = args.typed(ArgKey.SALT, byte[].class).filter(b -> b.length > 0).orElse(null);
+					put.signature = args.typed(ArgKey.SIGNATURE, byte[].class).orElse(null);
+					put.token = args.typed(ArgKey.TOKEN, byte[].class).filter(b -> b.length > 0).orElseThrow(() -> new MessageException("missing or invalid token in PUT request"));
 					put.validate();
 				});
 				break;
 			case ANNOUNCE_PEER:
-				
-				hash = Functional.typedGet(args, "info_hash", byte[].class).filter(b -> b.length == Key.SHA1_HASH_LENGTH).orElse(null);
-				int port = Functional.typedGet(args, "port", Long.class).filter(p -> p > 0 && p <= 65535).orElse(0L).intValue();
-				byte[] token = Functional.typedGet(args, "token", byte[].class).orElse(null);
-				boolean isSeed = Long.valueOf(1).equals(args.get("seed"));
-				
+
+				hash = args.typed(ArgKey.INFO_HASH, byte[].class).filter(b -> b.length == Key.SHA1_HASH_LENGTH).orElse(null);
+				int port = args.typed(ArgKey.PORT, Long.class).filter(p -> p > 0 && p <= 65535).orElse(0L).intValue();
+				byte[] token = args.typed(ArgKey.TOKEN, byte[].class).orElse(null);
+				boolean isSeed = Long.valueOf(1).equals(args.get(ArgKey.SEED));
+
 				if(hash == null || token == null || port == 0)
 					throw new MessageException("missing or invalid mandatory arguments (info_hash, port, token) for announce", ErrorCode.ProtocolError);
 				if(token.length == 0)
@@ -445,13 +468,13 @@ public class MessageDecoder {
 
 				msg = tap(new AnnounceRequest(infoHash, port, token), ar -> {
 					ar.setSeed(isSeed);
-					typedGet(args, "name", byte[].class).ifPresent(b -> ar.setName(ByteBuffer.wrap(b)));
+					args.typed(ArgKey.NAME, byte[].class).ifPresent(b -> ar.setName(ByteBuffer.wrap(b)));
 				});
 
 				break;
 		}
-		
-		
+
+
 		if (msg != null) {
 			msg.setMTID(mtid);
 			msg.setID(id);
@@ -459,7 +482,11 @@ public class MessageDecoder {
 
 		return msg;
 	}
-	
+
+	private static String typeName(Object o) {
+		return o == NESTED ? "dictionary or list" : o.getClass().getSimpleName();
+	}
+
 	private static String getStringFromBytes (byte[] bytes, boolean preserveBytes) {
 		if (bytes == null) {
 			return null;
@@ -475,4 +502,328 @@ public class MessageDecoder {
 	private static String getStringFromBytes (byte[] bytes) {
 		return getStringFromBytes(bytes, false);
 	}
+
+
+	interface SchemaKey {
+		byte[] rawName();
+	}
+
+	enum RootKey implements SchemaKey {
+		TRANSACTION_ID(MessageBase.TRANSACTION_KEY),
+		TYPE(Type.TYPE_KEY),
+		VERSION(MessageBase.VERSION_KEY),
+		EXTERNAL_IP(MessageBase.EXTERNAL_IP_KEY),
+		REQUEST_METHOD(Type.REQ_MSG.getRPCTypeName()),
+		ARGUMENTS(Type.REQ_MSG.innerKey()),
+		RESPONSE(Type.RSP_MSG.innerKey()),
+		ERROR(Type.ERR_MSG.innerKey()),
+		ID("id");
+
+		final byte[] name;
+
+		RootKey(String name) {
+			this.name = name.getBytes(StandardCharsets.ISO_8859_1);
+		}
+
+		@Override
+		public byte[] rawName() {
+			return name;
+		}
+	}
+
+	enum ArgKey implements SchemaKey {
+		ID("id"),
+		TARGET("target"),
+		INFO_HASH("info_hash"),
+		NODES("nodes"),
+		NODES6("nodes6"),
+		VALUES("values"),
+		WANT("want"),
+		TOKEN("token"),
+		PORT("port"),
+		SEED("seed"),
+		NO_SEED("noseed"),
+		SCRAPE("scrape"),
+		NAME("name"),
+		PEER_FILTER("BFpe"),
+		SEED_FILTER("BFse"),
+		SAMPLES("samples"),
+		NUM("num"),
+		INTERVAL("interval"),
+		KEY("k"),
+		SIGNATURE("sig"),
+		SEQ("seq"),
+		CAS("cas"),
+		SALT("salt"),
+		// raw bencoded value, BEP44
+		VALUE("v");
+
+		final String name;
+		final byte[] rawName;
+
+		ArgKey(String name) {
+			this.name = name;
+			this.rawName = name.getBytes(StandardCharsets.ISO_8859_1);
+		}
+
+		@Override
+		public byte[] rawName() {
+			return rawName;
+		}
+	}
+
+	// placeholder for nested dictionaries and lists that are not part of the schema
+	static final Object NESTED = new Object() {
+		@Override
+		public String toString() {
+			return "<nested>";
+		}
+	};
+
+	/**
+	 * Fixed set of dictionary entries, indexed by schema key
+	 */
+	static final class Fields<K extends Enum<K> & SchemaKey> {
+		final K[] keys;
+		final Object[] values;
+		boolean present;
+
+		Fields(K[] keys) {
+			this.keys = keys;
+			this.values = new Object[keys.length];
+		}
+
+		K lookup(ByteBuffer buf, int start, int end) {
+			int length = end - start;
+			outer: for(K key : keys) {
+				byte[] candidate = key.rawName();
+				if(candidate.length != length)
+					continue;
+				for(int i=0;i<length;i++) {
+					if(candidate[i] != buf.get(start + i))
+						continue outer;
+				}
+				return key;
+			}
+			return null;
+		}
+
+		void put(K key, Object value) {
+			if(values[key.ordinal()] != null)
+				throw new BDecodingException("duplicate key found in dictionary");
+			values[key.ordinal()] = value;
+		}
+
+		Object get(K key) {
+			return values[key.ordinal()];
+		}
+
+		<T> Optional<T> typed(K key, Class<T> type) {
+			Object value = values[key.ordinal()];
+			return type.isInstance(value) ? Optional.of(type.cast(value)) : Optional.empty();
+		}
+
+		boolean contains(K key) {
+			return values[key.ordinal()] != null;
+		}
+
+		void clear() {
+			Arrays.fill(values, null);
+			present = false;
+		}
+	}
+
+	enum Context {
+		ROOT, ARGUMENTS, LIST, SKIP
+	}
+
+	/**
+	 * Receives tokens from the tokenizer and puts the values of known keys directly into the fields
+	 */
+	private class SchemaConsumer implements TokenConsumer {
+
+		// one frame per open dictionary or list
+		final boolean[] dicts = new boolean[256];
+		final Context[] contexts = new Context[256];
+		final Fields<?>[] fields = new Fields<?>[256];
+		final List<Object>[] lists = new List[256];
+		final Enum<?>[] pendingKeys = new Enum<?>[256];
+		final boolean[] expectKey = new boolean[256];
+		int depth = 0;
+		int maxDepth = 0;
+
+		int rawValueStart = -1;
+
+		@Override
+		public void push(Token st) {
+			TokenType tokenType = st.type();
+			if(tokenType == TokenType.STRING)
+				return;
+
+			if(depth > 0 && !expectKey[depth - 1] && pendingKeys[depth - 1] == ArgKey.VALUE && contexts[depth - 1] == Context.ARGUMENTS)
+				rawValueStart = st.start();
+
+			if(tokenType == TokenType.DICT || tokenType == TokenType.LIST)
+				pushFrame(tokenType == TokenType.DICT);
+		}
+
+		private void pushFrame(boolean dict) {
+			Context context = Context.SKIP;
+			Fields<?> frameFields = null;
+			List<Object> list = null;
+
+			if(depth == 0) {
+				if(!dict)
+					throw new BDecodingException("expected dictionary as root object");
+				context = Context.ROOT;
+				frameFields = root;
+				root.present = true;
+			} else {
+				int parent = depth - 1;
+				Enum<?> key = pendingKeys[parent];
+				switch(contexts[parent]) {
+					case ROOT:
+						if(dict && key == RootKey.ARGUMENTS) {
+							context = Context.ARGUMENTS;
+							frameFields = requestArgs;
+						} else if(dict && key == RootKey.RESPONSE) {
+							context = Context.ARGUMENTS;
+							frameFields = responseArgs;
+						} else if(!dict && key == RootKey.ERROR) {
+							context = Context.LIST;
+						}
+						break;
+					case ARGUMENTS:
+						if(!dict && (key == ArgKey.VALUES || key == ArgKey.WANT))
+							context = Context.LIST;
+						break;
+					default:
+						break;
+				}
+
+				if(context == Context.LIST)
+					list = new ArrayList<>();
+
+				if(key != ArgKey.VALUE)
+					store(frameFields != null ? frameFields : list != null ? list : NESTED);
+			}
+
+			dicts[depth] = dict;
+			contexts[depth] = context;
+			fields[depth] = frameFields;
+			lists[depth] = list;
+			pendingKeys[depth] = null;
+			expectKey[depth] = dict;
+			depth++;
+			maxDepth = Math.max(maxDepth, depth);
+		}
+
+		@Override
+		public void pop(Token st) {
+			switch(st.type()) {
+				case STRING:
+					if(depth == 0)
+						return;
+					int current = depth - 1;
+					Context context = contexts[current];
+					if(context == Context.SKIP)
+						return;
+					if(expectKey[current]) {
+						pendingKeys[current] = fields[current].lookup(raw, st.start(), st.end());
+					} else {
+						store(copy(st.start(), st.end()));
+					}
+					return;
+				case LONG:
+					store(tokenizer.lastDecodedNum());
+					endValue(st);
+					return;
+				case PREFIXED_STRING:
+					endValue(st);
+					return;
+				case DICT:
+				case LIST:
+					depth--;
+					fields[depth] = null;
+					lists[depth] = null;
+					pendingKeys[depth] = null;
+					if(depth > 0)
+						endValue(st);
+					return;
+				default:
+					throw new IllegalStateException("this shouldn't be happening");
+			}
+		}
+
+		private void store(Object value) {
+			int current = depth - 1;
+			switch(contexts[current]) {
+				case ROOT:
+				case ARGUMENTS:
+					Enum<?> key = pendingKeys[current];
+					if(key != null && key != ArgKey.VALUE)
+						putField(fields[current], key, value);
+					break;
+				case LIST:
+					lists[current].add(value);
+					break;
+				default:
+					break;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private <K extends Enum<K> & SchemaKey> void putField(Fields<K> fields, Enum<?> key, Object value) {
+			fields.put((K) key, value);
+		}
+
+		private void endValue(Token st) {
+			int current = depth - 1;
+			if(!dicts[current])
+				return;
+
+			if(expectKey[current]) {
+				// dictionary key has been read, value follows
+				expectKey[current] = false;
+				return;
+			}
+
+			if(rawValueStart >= 0 && pendingKeys[current] == ArgKey.VALUE && contexts[current] == Context.ARGUMENTS) {
+				putField(fields[current], ArgKey.VALUE, slice(rawValueStart, st.end()));
+				rawValueStart = -1;
+			}
+
+			expectKey[current] = true;
+			pendingKeys[current] = null;
+		}
+
+		void reset() {
+			// frames are cleared when containers are closed, only need to clean up after a failure
+			Arrays.fill(fields, 0, maxDepth, null);
+			Arrays.fill(lists, 0, maxDepth, null);
+			Arrays.fill(pendingKeys, 0, maxDepth, null);
+			depth = 0;
+			maxDepth = 0;
+			rawValueStart = -1;
+		}
+
+		private byte[] copy(int start, int end) {
+			byte[] value = new byte[end - start];
+			if(raw.hasArray()) {
+				System.arraycopy(raw.array(), raw.arrayOffset() + start, value, 0, value.length);
+			} else {
+				ByteBuffer slice = raw.duplicate();
+				slice.position(start);
+				slice.get(value);
+			}
+			return value;
+		}
+
+		private ByteBuffer slice(int start, int end) {
+			ByteBuffer slice = raw.duplicate();
+			slice.limit(end);
+			slice.position(start);
+			return slice.slice();
+		}
+	}
 }
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package lbms.plugins.mldht.kad.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in milliseconds for monitoring purposes.
+ *
+ * Buckets are log-linear: values below {@link #SUB_BUCKETS} are recorded exactly, each power of two above is split
+ * into {@link #SUB_BUCKETS} buckets, which resolves values within ~6%. Values are clamped to [0, {@link #MAX_VALUE}].
+ *
+ * Counts are cumulative since creation, rates or distributions over an interval can be obtained by diffing snapshots.
+ * Unlike {@link ResponseTimeoutFilter} this does not decay and is not used for any timeout decisions.
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BUCKET_BITS = 4;
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	static final int MAX_EXPONENT = 20;
+	// ~17 minutes
+	public static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+	public static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public void record(long value) {
+		value = Math.max(0, Math.min(value, MAX_VALUE));
+		counts.incrementAndGet(bucketFor(value));
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	static int bucketFor(long value) {
+		if(value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long lowerBound(int bucket) {
+		if(bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int sub = bucket % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * @return highest value that is recorded in the bucket
+	 */
+	static long upperBound(int bucket) {
+		if(bucket == NUM_BUCKETS - 1)
+			return MAX_VALUE;
+		return lowerBound(bucket + 1) - 1;
+	}
+
+	/**
+	 * the copy is not atomic with respect to concurrent updates, but every individual counter is consistent
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[NUM_BUCKETS];
+		for(int i=0;i<NUM_BUCKETS;i++)
+			copy[i] = counts.get(i);
+		return new Snapshot(copy, sum.sum(), max.get());
+	}
+
+	public static final class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] counts, long sum, long max) {
+			this.counts = counts;
+			this.sum = sum;
+			this.max = max;
+			long c = 0;
+			for(long l : counts)
+				c += l;
+			this.count = c;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0 : sum * 1.0 / count;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @param percentile 0 - 100
+		 * @return upper bound of the bucket containing the value at the given percentile, 0 if empty
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if(count == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+			long seen = 0;
+			for(int i=0;i<counts.length;i++) {
+				seen += counts[i];
+				if(seen >= rank)
+					return Math.min(upperBound(i), max);
+			}
+			return max;
+		}
+
+		public int getBucketCount() {
+			return counts.length;
+		}
+
+		public long getBucketUpperBound(int bucket) {
+			return upperBound(bucket);
+		}
+
+		public long getCountInBucket(int bucket) {
+			return counts[bucket];
+		}
+
+		@Override
+		public String toString() {
+			return String.format("n: %d mean: %.1f p50: %d p90: %d p99: %d max: %d", count, getMean(), getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99), max);
+		}
+	}
+
+}
@@ -59,8 +59,9 @@ public class Tokenizer {
 		});
 	}
 	
-	void reset() {
-		for(int i=0;i<stack.length;i++)
+	public void reset() {
+		// tokens above the current index have already been reset when they were popped
+		for(int i=Math.min(stackIdx, stack.length - 1);i>=0;i--)
 			stack[i].reset();
 		stackIdx = 0;
 		lastString = null;
@@ -95,6 +96,14 @@ public class Tokenizer {
 			return tokenEnums[state];
 		}
 		
+		public int start() {
+			return start;
+		}
+		
+		public int end() {
+			return end;
+		}
+		
 		void type(TokenType t) {
 			state = (byte) t.ordinal();
 		}
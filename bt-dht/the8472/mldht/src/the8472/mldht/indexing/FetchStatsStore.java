@@ -0,0 +1,509 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package the8472.mldht.indexing;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import the8472.bencode.BEncoder;
+import the8472.mldht.indexing.TorrentDumper.FetchStats;
+import the8472.mldht.indexing.TorrentDumper.FetchStats.State;
+
+import lbms.plugins.mldht.kad.DHT;
+import lbms.plugins.mldht.kad.DHT.LogLevel;
+import lbms.plugins.mldht.kad.Key;
+import lbms.plugins.mldht.kad.utils.ThreadLocalUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Log-structured store for {@link FetchStats} and the keys of already dumped torrents.
+ *
+ * Every update is appended as a record to the newest of a series of numbered segment files, an in-memory index points
+ * to the latest record of each key. Superseded records and removal markers are reclaimed by copying the live records of
+ * the oldest segment to the head of the log and then deleting that segment.
+ *
+ * <pre>
+ * record: length (4) | crc32 of body (4) | body
+ * body:   type (1) | key (20) | bencoded stats (stats types only)
+ * </pre>
+ *
+ * Torn or corrupt records at the end of a segment (e.g. after a crash) are truncated on startup.
+ */
+class FetchStatsStore implements AutoCloseable {
+
+	static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+	// compact once less than this fraction of the log is live
+	static final double COMPACTION_THRESHOLD = 0.5;
+	// consecutive keys taken from each random starting point when sampling
+	static final int SAMPLE_RUN = 8;
+
+	private static final int HEADER = 8;
+	private static final int MIN_BODY = 1 + Key.SHA1_HASH_LENGTH;
+	private static final int MAX_BODY = MIN_BODY + TorrentDumper.MAX_STAT_FILE_SIZE;
+
+	// record types, values below DUMPED are State ordinals
+	private static final byte DUMPED = 0x10;
+	private static final byte REMOVED = 0x20;
+
+	// locations are packed into a long: segment id | offset | record length
+	private static final int LENGTH_BITS = 16;
+	private static final int OFFSET_BITS = 26;
+	private static final int SEGMENT_BITS = 64 - OFFSET_BITS - LENGTH_BITS;
+
+	private static final Pattern SEGMENT_NAME = Pattern.compile("[0-9a-f]{8}\\.seg");
+	private static final State[] STATES = State.values();
+
+	static {
+		assert(HEADER + MAX_BODY < 1 << LENGTH_BITS);
+	}
+
+	static final class Segment {
+		final int id;
+		final Path path;
+		final FileChannel channel;
+		// guarded by the store
+		long size;
+		long liveBytes;
+
+		Segment(int id, Path path, FileChannel channel) {
+			this.id = id;
+			this.path = path;
+			this.channel = channel;
+		}
+	}
+
+	final Path dir;
+	final int segmentSize;
+	final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+	final Map<State, ConcurrentSkipListMap<Key, Long>> stats = new EnumMap<>(State.class);
+	final ConcurrentHashMap<Key, Long> dumped = new ConcurrentHashMap<>();
+
+	private Segment head;
+	private final ByteBuffer writeBuffer = ByteBuffer.allocate(HEADER + MAX_BODY);
+	private final CRC32 crc = new CRC32();
+
+	FetchStatsStore(Path dir) throws IOException {
+		this(dir, SEGMENT_SIZE);
+	}
+
+	FetchStatsStore(Path dir, int segmentSize) throws IOException {
+		if(segmentSize > 1 << OFFSET_BITS)
+			throw new IllegalArgumentException("segment size exceeds addressable offsets: " + segmentSize);
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		for(State st : STATES)
+			stats.put(st, new ConcurrentSkipListMap<>());
+
+		Files.createDirectories(dir);
+
+		List<Path> files;
+		try(Stream<Path> st = Files.list(dir)) {
+			files = st.filter(p -> SEGMENT_NAME.matcher(p.getFileName().toString()).matches()).sorted().collect(Collectors.toList());
+		}
+
+		for(Path p : files)
+			load(p);
+
+		if(segments.isEmpty())
+			roll();
+		else
+			head = segments.lastEntry().getValue();
+	}
+
+	private void load(Path p) throws IOException {
+		int id = Integer.parseInt(p.getFileName().toString().substring(0, 8), 16);
+		Segment s = new Segment(id, p, FileChannel.open(p, READ, WRITE));
+		segments.put(id, s);
+
+		FileChannel ch = s.channel;
+		ByteBuffer buf = ByteBuffer.allocate(HEADER + MAX_BODY);
+		long size = ch.size();
+		long pos = 0;
+
+		while(pos + HEADER <= size) {
+			buf.clear().limit(HEADER);
+			readFully(ch, buf, pos);
+			int length = buf.getInt(0);
+			int checksum = buf.getInt(4);
+
+			if(length < MIN_BODY || length > MAX_BODY || pos + HEADER + length > size)
+				break;
+
+			buf.limit(HEADER + length);
+			readFully(ch, buf, pos + HEADER);
+			crc.reset();
+			crc.update(buf.array(), HEADER, length);
+			if((int) crc.getValue() != checksum)
+				break;
+
+			byte type = buf.get(HEADER);
+			buf.position(HEADER + 1);
+			index(type, new Key(buf), location(id, pos, HEADER + length));
+
+			pos += HEADER + length;
+		}
+
+		if(pos < size) {
+			DHT.log("truncating " + p + " at offset " + pos + " of " + size + ", incomplete or corrupt record", LogLevel.Error);
+			ch.truncate(pos);
+		}
+
+		s.size = pos;
+	}
+
+	private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+		while(buf.hasRemaining()) {
+			int read = ch.read(buf, position);
+			if(read < 0)
+				throw new EOFException();
+			position += read;
+		}
+	}
+
+	static long location(int segment, long offset, int length) {
+		return (long) segment << (OFFSET_BITS + LENGTH_BITS) | offset << LENGTH_BITS | length;
+	}
+
+	static int segment(long location) {
+		return (int) (location >>> (OFFSET_BITS + LENGTH_BITS));
+	}
+
+	static long offset(long location) {
+		return (location >>> LENGTH_BITS) & ((1L << OFFSET_BITS) - 1);
+	}
+
+	static int length(long location) {
+		return (int) (location & ((1 << LENGTH_BITS) - 1));
+	}
+
+	private Map<Key, Long> indexFor(byte type) {
+		if(type == DUMPED)
+			return dumped;
+		if(type >= 0 && type < STATES.length)
+			return stats.get(STATES[type]);
+		return null;
+	}
+
+	/**
+	 * points the key to its newest record, or drops it from the index if the record does not carry any data
+	 */
+	private void index(byte type, Key k, long location) {
+		Map<Key, Long> target = indexFor(type);
+
+		Long old = null;
+
+		if(target != null) {
+			old = target.put(k, location);
+			segments.get(segment(location)).liveBytes += length(location);
+		}
+
+		for(Map<Key, Long> m : stats.values()) {
+			if(m == target)
+				continue;
+			Long removed = m.remove(k);
+			if(removed != null)
+				old = removed;
+		}
+
+		if(target != dumped) {
+			Long removed = dumped.remove(k);
+			if(removed != null)
+				old = removed;
+		}
+
+		if(old != null) {
+			Segment s = segments.get(segment(old));
+			if(s != null)
+				s.liveBytes -= length(old);
+		}
+	}
+
+	private void roll() throws IOException {
+		int id = head == null ? 0 : head.id + 1;
+		if(id >= 1 << SEGMENT_BITS)
+			throw new IOException("segment ids exhausted in " + dir);
+		Path p = dir.resolve(String.format("%08x.seg", id));
+		Segment s = new Segment(id, p, FileChannel.open(p, CREATE, TRUNCATE_EXISTING, READ, WRITE));
+		segments.put(id, s);
+		head = s;
+	}
+
+	/**
+	 * writes the remaining bytes of the buffer to the head segment
+	 *
+	 * @return location of the written record
+	 */
+	private long write(ByteBuffer record) throws IOException {
+		int length = record.remaining();
+		if(head.size + length > segmentSize)
+			roll();
+
+		Segment s = head;
+		long offset = s.size;
+		long pos = offset;
+		while(record.hasRemaining())
+			pos += s.channel.write(record, pos);
+		s.size = pos;
+
+		return location(s.id, offset, length);
+	}
+
+	private synchronized void append(byte type, Key k, Map<String, Object> payload) throws IOException {
+		ByteBuffer buf = writeBuffer;
+		buf.clear();
+		buf.position(HEADER);
+		buf.put(type);
+		k.toBuffer(buf);
+		// encodeInto flips the buffer
+		if(payload != null)
+			new BEncoder().encodeInto(payload, buf);
+		else
+			buf.flip();
+
+		int length = buf.limit() - HEADER;
+		crc.reset();
+		crc.update(buf.array(), HEADER, length);
+		buf.putInt(0, length);
+		buf.putInt(4, (int) crc.getValue());
+
+		index(type, k, write(buf));
+	}
+
+	/**
+	 * @return null if the segment has been compacted away in the meantime
+	 */
+	private FetchStats read(long location) throws IOException {
+		Segment s = segments.get(segment(location));
+		if(s == null)
+			return null;
+
+		ByteBuffer buf = ByteBuffer.allocate(length(location));
+		try {
+			readFully(s.channel, buf, offset(location));
+		} catch (ClosedChannelException e) {
+			return null;
+		}
+
+		buf.position(HEADER + MIN_BODY);
+		return FetchStats.fromBencoded(ThreadLocalUtils.getDecoder().decode(buf));
+	}
+
+	boolean isDumped(Key k) {
+		return dumped.containsKey(k);
+	}
+
+	int count(State st) {
+		return stats.get(st).size();
+	}
+
+	boolean isEmpty() {
+		return dumped.isEmpty() && stats.values().stream().allMatch(Map::isEmpty);
+	}
+
+	/**
+	 * @return the stats for the key regardless of their state, null if there are none
+	 */
+	FetchStats get(Key k) throws IOException {
+		// a concurrent compaction may move the record between index lookup and read, retry with the new location
+		for(int attempt = 0; attempt < 3; attempt++) {
+			Long location = null;
+			for(Map<Key, Long> m : stats.values())
+				if((location = m.get(k)) != null)
+					break;
+
+			if(location == null)
+				return null;
+
+			FetchStats st = read(location);
+			if(st != null)
+				return st;
+		}
+
+		return null;
+	}
+
+	/**
+	 * stores the stats under their current state, superseding stats in any other state
+	 */
+	void put(FetchStats st) throws IOException {
+		append((byte) st.state.ordinal(), st.getK(), st.forBencoding());
+	}
+
+	/**
+	 * records the torrent as dumped and drops its stats
+	 */
+	void markDumped(Key k) throws IOException {
+		append(DUMPED, k, null);
+	}
+
+	void remove(Key k) throws IOException {
+		synchronized (this) {
+			if(stats.values().stream().anyMatch(m -> m.containsKey(k)) || dumped.containsKey(k))
+				append(REMOVED, k, null);
+		}
+	}
+
+	/**
+	 * removes stats in the given state matching the filter, unless they are updated concurrently
+	 */
+	void removeIf(State st, Predicate<FetchStats> filter) throws IOException {
+		ConcurrentSkipListMap<Key, Long> index = stats.get(st);
+
+		for(Map.Entry<Key, Long> e : index.entrySet()) {
+			FetchStats fs = read(e.getValue());
+			if(fs == null || !filter.test(fs))
+				continue;
+			synchronized (this) {
+				if(e.getValue().equals(index.get(e.getKey())))
+					append(REMOVED, e.getKey(), null);
+			}
+		}
+	}
+
+	/**
+	 * Picks stats in the given state. Starts at random points in the keyspace and takes a few consecutive keys from each,
+	 * which spreads the picks over the keyspace without a full pass over the index.
+	 */
+	List<FetchStats> sample(State st, int limit, Predicate<Key> skip) throws IOException {
+		ConcurrentSkipListMap<Key, Long> index = stats.get(st);
+		List<FetchStats> result = new ArrayList<>();
+		Set<Key> picked = new HashSet<>();
+
+		int runs = (limit + SAMPLE_RUN - 1) / SAMPLE_RUN;
+
+		for(int i = 0; i < runs && result.size() < limit && !index.isEmpty(); i++) {
+			Key start = Key.createRandomKey();
+			int taken = 0;
+
+			// wrap around at the end of the keyspace
+			Iterable<Map.Entry<Key, Long>> candidates = Stream.concat(index.tailMap(start).entrySet().stream(), index.headMap(start).entrySet().stream())::iterator;
+
+			for(Map.Entry<Key, Long> e : candidates) {
+				if(taken >= SAMPLE_RUN || result.size() >= limit)
+					break;
+				Key k = e.getKey();
+				if(skip.test(k) || !picked.add(k))
+					continue;
+				FetchStats fs = read(e.getValue());
+				if(fs == null)
+					continue;
+				result.add(fs);
+				taken++;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reclaims space by moving the live records of the oldest segments to the head of the log until enough of it is live.
+	 * Removal markers in the oldest segment can be dropped since there are no older records left for them to shadow.
+	 */
+	void compact() throws IOException {
+		int maxPasses = segments.size();
+
+		for(int i = 0; i < maxPasses; i++) {
+			synchronized (this) {
+				if(!needsCompaction())
+					return;
+				compact(segments.firstEntry().getValue());
+			}
+		}
+	}
+
+	private boolean needsCompaction() {
+		if(segments.size() < 2)
+			return false;
+
+		long live = 0;
+		long size = 0;
+		for(Segment s : segments.values()) {
+			live += s.liveBytes;
+			size += s.size;
+		}
+
+		return live < size * COMPACTION_THRESHOLD;
+	}
+
+	private void compact(Segment s) throws IOException {
+		assert(s != head);
+
+		ByteBuffer buf = ByteBuffer.allocate(HEADER + MAX_BODY);
+		long pos = 0;
+
+		while(pos < s.size) {
+			buf.clear().limit(HEADER);
+			readFully(s.channel, buf, pos);
+			int length = buf.getInt(0);
+			buf.limit(HEADER + length);
+			readFully(s.channel, buf, pos + HEADER);
+
+			long location = location(s.id, pos, HEADER + length);
+			byte type = buf.get(HEADER);
+			buf.position(HEADER + 1);
+			Key k = new Key(buf);
+
+			Map<Key, Long> index = indexFor(type);
+			if(index != null && Long.valueOf(location).equals(index.get(k))) {
+				buf.position(0);
+				index(type, k, write(buf));
+			}
+
+			pos += HEADER + length;
+		}
+
+		segments.remove(s.id);
+		s.channel.close();
+		Files.delete(s.path);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		for(Segment s : segments.values())
+			s.channel.close();
+	}
+
+	@Override
+	public synchronized String toString() {
+		long live = 0;
+		long size = 0;
+		for(Segment s : segments.values()) {
+			live += s.liveBytes;
+			size += s.size;
+		}
+
+		StringBuilder b = new StringBuilder();
+		b.append("segments: ").append(segments.size());
+		b.append(" size: ").append(size / 1024).append("KiB");
+		b.append(" live: ").append(live / 1024).append("KiB");
+		for(State st : STATES)
+			b.append(' ').append(st.name().toLowerCase()).append(": ").append(count(st));
+		b.append(" dumped: ").append(dumped.size());
+		return b.toString();
+	}
+}
@@ -7,13 +7,8 @@ package the8472.mldht.indexing;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
-import static the8472.utils.Functional.autoclose;
-import static the8472.utils.Functional.shortCircuitingflatMap;
 import static the8472.utils.Functional.typedGet;
-import static the8472.utils.Functional.unchecked;
 
-import the8472.bencode.BDecoder;
-import the8472.bencode.BEncoder;
 import the8472.bt.TorrentUtils;
 import the8472.bt.UselessPeerFilter;
 import the8472.mldht.Component;
@@ -45,15 +40,12 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -71,10 +63,8 @@ import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
-import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -85,8 +75,9 @@ public class TorrentDumper implements Component {
 	Path storageDir = Paths.get(".", "dump-storage");
 	Path statsDir = storageDir.resolve("stats");
 	Path torrentDir = storageDir.resolve("torrents");
+	Path statsLogDir = storageDir.resolve("stats-log");
 	
-	private static final int MAX_STAT_FILE_SIZE = 8*1024;
+	static final int MAX_STAT_FILE_SIZE = 8*1024;
 	private static final int QUOTA = 100_000;
 	
 	ScheduledThreadPoolExecutor scheduler;
@@ -98,6 +89,7 @@ public class TorrentDumper implements Component {
 	
 	TorrentFetcher fetcher;
 	UselessPeerFilter pf;
+	FetchStatsStore store;
 	
 	static class FetchStats {
 		final Key k;
@@ -199,14 +191,6 @@ public class TorrentDumper implements Component {
 			return dir.resolve(hex.substring(0, 2)).resolve(hex.substring(2, 4)).resolve(hex+suffix);
 		}
 		
-		public Path statsName(Path statsDir, State st) {
-			if(st == null)
-				st = state;
-			return name(st.stateDir(statsDir), ".stats");
-			
-		}
-		
-		
 	}
 
 	@Override
@@ -223,11 +207,11 @@ public class TorrentDumper implements Component {
 
 		dhts.forEach(d -> d.addIncomingMessageListener(this::incomingMessage));
 		pf = new UselessPeerFilter();
+		boolean newStore;
 		try {
 			Files.createDirectories(torrentDir);
-			for(State st : FetchStats.State.values()) {
-				Files.createDirectories(st.stateDir(statsDir));
-			}
+			store = new FetchStatsStore(statsLogDir);
+			newStore = store.isEmpty();
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -242,6 +226,7 @@ public class TorrentDumper implements Component {
 		scheduler.scheduleWithFixedDelay(this::scrubActive, 10, 20, TimeUnit.SECONDS);
 		scheduler.scheduleWithFixedDelay(pf::clean, 10, 10, TimeUnit.MINUTES);
 		scheduler.schedule(this::sampling, 2, TimeUnit.MINUTES);
+		scheduler.execute(() -> importLegacyFiles(newStore));
 		
 		scheduler.scheduleWithFixedDelay(() -> {
 			// long-running things working on the filesystem go here to avoid blocking all threads in the pool
@@ -337,15 +322,12 @@ public class TorrentDumper implements Component {
 	void dumpStats() {
 		long now = System.currentTimeMillis();
 		
-		ByteBuffer buf = ByteBuffer.allocateDirect(MAX_STAT_FILE_SIZE);
-		
 		List<Entry<Key, FetchStats>> workSet = new ArrayList<>();
 		
 		for(Iterator<Entry<Key, FetchStats>> it = fromMessages.entrySet().iterator(); it.hasNext();){
 			Entry<Key, FetchStats> e = it.next();
 			
-			FetchStats toStore = e.getValue();
-			if(Files.exists(toStore.name(torrentDir, ".torrent"))) {
+			if(store.isDumped(e.getKey())) {
 				it.remove();
 				continue;
 			}
@@ -363,64 +345,31 @@ public class TorrentDumper implements Component {
 			
 			try {
 				
-				Optional<Path> existing = Stream.of(toStore.statsName(statsDir, FetchStats.State.INITIAL), toStore.statsName(statsDir, FetchStats.State.FAILED), toStore.statsName(statsDir, FetchStats.State.PRIORITY)).filter(Files::isRegularFile).findFirst();
+				FetchStats old = store.get(k);
 
-				if(!existing.isPresent()) {
+				if(old == null) {
 					// only throttle IPs for new hashes we don't already know about and wouldn't try anyway
 					if(activeCount.get() > 50 && blocklist.putIfAbsent(toStore.recentSources.get(0).getAddress().getAddress(), now) != null)
 						return;
+				} else {
+					Collection<InetAddress> oldAddrs = old.recentSources.stream().map(e -> e.getAddress().getAddress()).collect(Collectors.toList());
+					Collection<InetAddress> newAddrs = toStore.recentSources.stream().map(e -> e.getAddress().getAddress()).collect(Collectors.toList());
+					
+					// avoid double-taps promoting things to the priority list
+					if(oldAddrs.containsAll(newAddrs) && old.state == FetchStats.State.INITIAL)
+						return;
+					
+					toStore.merge(old);
+					
+					if(old.state != FetchStats.State.INITIAL)
+						toStore.state = old.state;
 				}
 				
-				if(existing.isPresent()) {
-					Path p = existing.get();
-					try(FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
-						buf.clear();
-						while(ch.read(buf) != -1);
-						buf.flip();
-						FetchStats old = FetchStats.fromBencoded(new BDecoder().decode(buf));
-						
-						
-						Collection<InetAddress> oldAddrs = old.recentSources.stream().map(e -> e.getAddress().getAddress()).collect(Collectors.toList());
-						Collection<InetAddress> newAddrs = toStore.recentSources.stream().map(e -> e.getAddress().getAddress()).collect(Collectors.toList());
-						
-						// avoid double-taps promoting things to the priority list
-						if(oldAddrs.containsAll(newAddrs) && old.state == FetchStats.State.INITIAL)
-							return;
-						
-						toStore.merge(old);
-						
-						if(old.state != FetchStats.State.INITIAL)
-							toStore.state = old.state;
-						
-					} catch (IOException e) {
-						log(e);
-					}
-				}
-				
-				if(toStore.state == State.INITIAL && toStore.insertCount > 1) {
+				if(toStore.state == State.INITIAL && toStore.insertCount > 1)
 					toStore.state = State.PRIORITY;
-					if(existing.isPresent())
-						Files.deleteIfExists(existing.get());
-				}
-					
 				
-				Path statsFile = toStore.statsName(statsDir, null);
-				
-				Path tempFile = Files.createTempFile(statsDir, statsFile.getFileName().toString(), ".stats");
-				
-				try(FileChannel ch = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
-					buf.clear();
-					new BEncoder().encodeInto(toStore.forBencoding(), buf);
-					while(buf.hasRemaining())
-						ch.write(buf);
-					ch.close();
-					Files.createDirectories(statsFile.getParent());
-					Files.move(tempFile, statsFile, StandardCopyOption.ATOMIC_MOVE);
-				} catch(Exception ex) {
-					Files.deleteIfExists(tempFile);
-					throw ex;
-				}
-
+				// supersedes the stats in any other state
+				store.put(toStore);
 				
 			} catch (Exception e) {
 				log(e);
@@ -434,14 +383,9 @@ public class TorrentDumper implements Component {
 	}
 	
 	void purgeStats() {
-		Path failedDir = FetchStats.State.FAILED.stateDir(statsDir);
-		Path initialDir = FetchStats.State.INITIAL.stateDir(statsDir);
-		
 		long now = System.currentTimeMillis();
 		
 		try {
-			Supplier<Stream<Path>> supplyInitial = () -> unchecked(() -> fetchStatsStream(Stream.of(initialDir)));
-			Supplier<Stream<Path>> supplyFailed = () -> unchecked(() -> fetchStatsStream(Stream.of(failedDir)));
 			Predicate<FetchStats> deleteInitial = stat -> now - stat.creationTime > TimeUnit.DAYS.toMillis(4);
 			Predicate<FetchStats> deleteFailed = stat -> {
 				long timeSinceFetch = now - stat.lastFetchTime;
@@ -457,135 +401,72 @@ public class TorrentDumper implements Component {
 				return timeSinceFetch > timeToFetch * 4 ;
 			};
 			
-			BiConsumer<Supplier<Stream<Path>>, Predicate<FetchStats>> doDeletes = (a, b) -> {
-				unchecked(() -> {
-					// probe first 100, only do a full pass if > N% are eligible for deletion
-					boolean doFullIteration = autoclose(a, (p) -> {
-						long cnt = filesToFetchers(p)
-							.filter(Objects::nonNull)
-							.limit(100)
-							.filter(b)
-							.count();
-						return cnt > 33;
-					});
-					
-					if(doFullIteration) {
-						autoclose(a, p -> {
-							filesToFetchers(p).filter(Objects::nonNull)
-								.filter(b)
-								.map(stat -> stat.statsName(statsDir, null))
-								.forEach(path -> unchecked(() -> Files.deleteIfExists(path)));
-							return null;
-						});
-					}
-					
-					return null;
-				});
-				
-			};
-			
-			doDeletes.accept(supplyInitial, deleteInitial);
-			doDeletes.accept(supplyFailed, deleteFailed);
-			
-
+			store.removeIf(FetchStats.State.INITIAL, deleteInitial);
+			store.removeIf(FetchStats.State.FAILED, deleteFailed);
+			store.compact();
 		} catch (Exception e) {
 			log(e);
 		}
-
-		/*
-		// 0 -> stats, 1 -> {failed|initial|prio}, 2 -> 00, 3 -> 00/00
-		try (Stream<Path> st = Files.find(statsDir, 3, (p, attr) -> attr.isDirectory())) {
-			st.filter(d -> {
-				try (DirectoryStream<Path> dst = Files.newDirectoryStream(d)) {
-					return !dst.iterator().hasNext();
-				} catch (IOException e) {
-					throw new UncheckedIOException(e);
-				}
-			}).forEach(d -> {
-				try {
-					Files.deleteIfExists(d);
-				} catch(DirectoryNotEmptyException e) {
-					// someone on another thread wrote to it. do nothing
-				} catch (IOException e) {
-					throw new UncheckedIOException(e);
-				}
-			});
-		} catch (UncheckedIOException | IOException e) {
-			log(e);
-		}*/
-
-			
-		
-		
-	}
-	
-	
-	Stream<Path> dirShuffler(Path p) {
-		if(!Files.isDirectory(p))
-			return null;
-		List<Path> sub;
-		try(Stream<Path> st = Files.list(p)) {
-			sub = st.collect(Collectors.toList());
-		} catch (IOException e) {
-			throw new UncheckedIOException(e);
-		}
-		if(sub.isEmpty())
-			try {
-				Files.delete(p);
-			} catch (IOException e) {
-				// ignore, it's an opportunistic delete
-			}
-		Collections.shuffle(sub);
-		return sub.stream();
 	}
 	
-	
-	Stream<Path> fetchStatsStream(Stream<Path> rootDirs) throws IOException {
-		
-		
+	/**
+	 * stats used to be kept as one file per infohash under stats/&lt;state&gt;/xx/yy/. moves them into the store, deleting the files as it goes.
+	 * when starting with an empty store also records the infohashes of the torrent files that have already been dumped
+	 */
+	void importLegacyFiles(boolean includeTorrents) {
+		ByteBuffer buf = ByteBuffer.allocate(MAX_STAT_FILE_SIZE);
 		
-
-
-		// this does not use a true shuffle, the stream will emit some clusters at the 8bit keyspace granularity
-		// it's closer to linear scan from a random starting point
-		// but polling in small batches should lead to reasonable task randomization without expensive full directory traversal
-		Stream<Path> leafs = shortCircuitingflatMap(rootDirs, (d -> {
-			Stream<Path> sublevel = Stream.of(d);
-			sublevel = shortCircuitingflatMap(sublevel, this::dirShuffler);
-			sublevel = shortCircuitingflatMap(sublevel, this::dirShuffler);
-			sublevel = shortCircuitingflatMap(sublevel, this::dirShuffler);
-			return sublevel;
-		}));
-
-		
-		return leafs;
-	}
-	
-	Stream<FetchStats> filesToFetchers(Stream<Path> st) {
-		Set<Key> skip = skipSet();
-		
-		ThreadLocal<ByteBuffer> bufProvider = new ThreadLocal<>();
-		bufProvider.set(ByteBuffer.allocateDirect(MAX_STAT_FILE_SIZE));
-		
-		return st.filter(p -> {
-			Key k = new Key(p.getFileName().toString().substring(0, 40));
-			return !skip.contains(k);
-		}).map(p -> {
-			try(FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
-				ByteBuffer buf = bufProvider.get();
-				buf.clear();
-				while(-1 != ch.read(buf))
-				buf.flip();
-				return FetchStats.fromBencoded(ThreadLocalUtils.getDecoder().decode(buf));
-			} catch(NoSuchFileException ex) {
-				// expect async deletes
-				return null;
-			} catch(IOException ex) {
-				log(ex);
-				return null;
+		try {
+			for(State st : FetchStats.State.values()) {
+				Path dir = st.stateDir(statsDir);
+				if(!Files.isDirectory(dir))
+					continue;
+				
+				try(Stream<Path> files = Files.find(dir, 3, (p, attr) -> attr.isRegularFile() && p.getFileName().toString().endsWith(".stats"))) {
+					files.forEach(p -> {
+						try {
+							try(FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+								buf.clear();
+								while(ch.read(buf) > 0);
+								buf.flip();
+								FetchStats stats = FetchStats.fromBencoded(ThreadLocalUtils.getDecoder().decode(buf));
+								// anything that arrived in the meantime is newer
+								if(store.get(stats.getK()) == null && !store.isDumped(stats.getK()))
+									store.put(stats);
+							}
+							Files.delete(p);
+						} catch(IOException | RuntimeException e) {
+							log(e);
+						}
+					});
+				}
+				
+				// deepest first
+				try(Stream<Path> dirs = Files.walk(dir).sorted(Comparator.reverseOrder())) {
+					dirs.forEach(d -> {
+						try {
+							Files.deleteIfExists(d);
+						} catch (IOException e) {
+							// not empty, leave it
+						}
+					});
+				}
 			}
-		}).filter(Objects::nonNull);
-		
+			
+			if(includeTorrents) {
+				try(Stream<Path> files = Files.find(torrentDir, 3, (p, attr) -> attr.isRegularFile() && p.getFileName().toString().endsWith(".torrent"))) {
+					files.map(p -> p.getFileName().toString()).filter(name -> name.length() == 48).forEach(name -> {
+						try {
+							store.markDumped(new Key(name.substring(0, 40)));
+						} catch (IOException | IllegalArgumentException e) {
+							log(e);
+						}
+					});
+				}
+			}
+		} catch (IOException | UncheckedIOException e) {
+			log(e);
+		}
 	}
 	
 	// avoids that adjacent tasks are started at the same time. interleaving them with other tasks allows for better cache-priming
@@ -616,31 +497,23 @@ public class TorrentDumper implements Component {
 		
 		
 		try {
-			Path prio = FetchStats.State.PRIORITY.stateDir(statsDir);
-			Path normal = FetchStats.State.INITIAL.stateDir(statsDir);
-			
-
 			// strides of 8 * maxtasks/4. should be >= low watermark
-			int strides = maxFetches() / 4;
-			int[] added = new int[1];
-			for(int i = 0;i< strides ;i++) {
-				Stream<FetchStats> pst = filesToFetchers(fetchStatsStream(Stream.of(prio))).limit(200);
-				Stream<FetchStats> nst = filesToFetchers(fetchStatsStream(Stream.of(normal))).limit(200);
-				
-				try(Stream<FetchStats> st = Stream.concat(pst, nst)) {
-					st.filter(stats -> !dedup.contains(stats.k)).limit(8).forEach(e -> {
-						dedup.add(e.getK());
-						synchronized (toFetchNext) {
-							toFetchNext.add(e);
-						}
-						added[0] += 1;
-					});
-					
-				};
-			}
-			int remaining = strides * 8 - added[0];
+			int wanted = maxFetches() / 4 * FetchStatsStore.SAMPLE_RUN;
+			
+			List<FetchStats> found = store.sample(FetchStats.State.PRIORITY, wanted, dedup::contains);
+			if(found.size() < wanted)
+				found.addAll(store.sample(FetchStats.State.INITIAL, wanted - found.size(), dedup::contains));
+			
+			found.forEach(e -> {
+				dedup.add(e.getK());
+				synchronized (toFetchNext) {
+					toFetchNext.add(e);
+				}
+			});
 			
-			// if we have not found enough stats on the filesystem steal directly from the unprocessed incoming messages
+			int remaining = wanted - found.size();
+			
+			// if we have not found enough stored stats steal directly from the unprocessed incoming messages
 			for(Iterator<Entry<Key, FetchStats>> it = fromMessages.subMap(Key.createRandomKey(), true, Key.MAX_KEY, true).entrySet().iterator();it.hasNext(); ) {
 				if(remaining <= 0)
 					break;
@@ -736,11 +609,9 @@ public class TorrentDumper implements Component {
 			blocklist.remove(kbe.getAddress().getAddress());
 		});
 		activeTasks.remove(t.infohash());
+		// refill the freed slot right away, the next candidates are already queued in memory
+		scheduler.execute(singleThreadedFetches);
 		try {
-			for(FetchStats.State st : FetchStats.State.values()) {
-				Files.deleteIfExists(stats.statsName(statsDir, st));
-			}
-			
 			Optional<ByteBuffer> result = t.getResult();
 			
 			if(!result.isPresent()) {
@@ -748,12 +619,7 @@ public class TorrentDumper implements Component {
 				stats.fetchCount++;
 				stats.lastFetchTime = System.currentTimeMillis();
 				
-				Path failedStatsFile = stats.statsName(statsDir, null);
-				Files.createDirectories(failedStatsFile.getParent());
-				
-				try(FileChannel statsChan = FileChannel.open(failedStatsFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
-					statsChan.write(new BEncoder().encode(stats.forBencoding(), 4*1024));
-				}
+				store.put(stats);
 				return;
 			}
 			ByteBuffer infoDict = result.get();
@@ -766,10 +632,11 @@ public class TorrentDumper implements Component {
 				while(torrent.hasRemaining())
 					chan.write(torrent);
 			}
+			
+			store.markDumped(stats.getK());
 		} catch (Exception e) {
 			log(e);
 		}
-		scheduler.execute(singleThreadedFetches);
 	}
 	
 	void diagnostics() {
@@ -777,6 +644,7 @@ public class TorrentDumper implements Component {
 			FileIO.writeAndAtomicMove(storageDir.resolve("dumper.log"), (p) -> {
 				p.format("Fetcher:%n established: %d%n sockets: %d%n%n adaptive timeout:%n%s %n%n", fetcher.openConnections(), fetcher.socketcount(), fetcher.adaptiveConnectTimeoutHistogram());
 				
+				p.format("Stats store:%n %s%n%n", store);
 				p.format("FetchTasks: %d %n", activeCount.get());
 				activeTasks.values().forEach(ft -> {
 					p.println(ft.toString());
@@ -792,6 +660,14 @@ public class TorrentDumper implements Component {
 	public void stop() {
 		scheduler.shutdown();
 		activeTasks.values().forEach(FetchTask::stop);
+		try {
+			scheduler.awaitTermination(10, TimeUnit.SECONDS);
+			store.close();
+		} catch (IOException e) {
+			log(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
 }
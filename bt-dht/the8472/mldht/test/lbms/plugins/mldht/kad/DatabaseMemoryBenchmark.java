@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package lbms.plugins.mldht.kad;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lbms.plugins.mldht.kad.DHT.DHTtype;
+
+/**
+ * Measures the heap used per announced peer.
+ * 
+ * The baseline holds the same announces as {@link PeerAddressDBItem} objects in per-key arrays,
+ * which is what the database stored before switching to packed entries (not counting bloom filters).
+ * 
+ * Run with a fixed heap, e.g. -Xms2g -Xmx2g
+ */
+public class DatabaseMemoryBenchmark {
+	
+	static final int KEYS = 20_000;
+	static final int PEERS_PER_KEY = 50;
+	
+	public static void main(String[] args) throws Exception {
+		Key[] keys = new Key[KEYS];
+		for(int i=0;i<KEYS;i++)
+			keys[i] = Key.createRandomKey();
+		
+		long before = usedMemory();
+		Database db = new Database(DHTtype.IPV4_DHT);
+		for(Key key : keys)
+			for(int j=0;j<PEERS_PER_KEY;j++)
+				db.store(key, peer(j));
+		long packed = usedMemory() - before;
+		report("packed", packed);
+		
+		before = usedMemory();
+		Map<Key, List<PeerAddressDBItem>> baseline = new ConcurrentHashMap<>();
+		for(Key key : keys) {
+			List<PeerAddressDBItem> items = new ArrayList<>();
+			for(int j=0;j<PEERS_PER_KEY;j++)
+				items.add(peer(j));
+			baseline.put(new Key(key), items);
+		}
+		long objects = usedMemory() - before;
+		report("objects", objects);
+		
+		// keep both reachable until measured
+		System.out.println(db.getStats().getItemCount() + baseline.size() > 0 ? "" : "-");
+	}
+	
+	static PeerAddressDBItem peer(int i) throws Exception {
+		return PeerAddressDBItem.createFromAddress(InetAddress.getByAddress(new byte[] {10, (byte) (i >> 16), (byte) (i >> 8), (byte) i}), 6881, (i & 1) == 0);
+	}
+	
+	static void report(String name, long bytes) {
+		System.out.format("%-8s %8d KiB %6.1f bytes/entry%n", name, bytes / 1024, bytes / (double) (KEYS * PEERS_PER_KEY));
+	}
+	
+	static long usedMemory() throws InterruptedException {
+		Runtime rt = Runtime.getRuntime();
+		for(int i=0;i<3;i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+	
+}
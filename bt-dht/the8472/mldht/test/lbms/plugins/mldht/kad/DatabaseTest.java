@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package lbms.plugins.mldht.kad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import lbms.plugins.mldht.kad.DHT.DHTtype;
+
+public class DatabaseTest {
+	
+	static PeerAddressDBItem item(String address, int port, boolean seed) throws Exception {
+		return PeerAddressDBItem.createFromAddress(InetAddress.getByName(address), port, seed);
+	}
+	
+	@Test
+	public void testStoreAndSample() throws Exception {
+		Database db = new Database(DHTtype.IPV4_DHT);
+		Key key = Key.createRandomKey();
+		
+		PeerAddressDBItem stored = item("1.2.3.4", 6881, true);
+		db.store(key, stored);
+		
+		List<DBItem> items = db.sample(key, 50, DHTtype.IPV4_DHT, false);
+		assertEquals(1, items.size());
+		PeerAddressDBItem sampled = (PeerAddressDBItem) items.get(0);
+		assertEquals(InetAddress.getByName("1.2.3.4"), sampled.getInetAddress());
+		assertEquals(6881, sampled.getPort());
+		assertTrue(sampled.isSeed());
+		assertTrue(Math.abs(stored.getCreatedAt() - sampled.getCreatedAt()) < 1000);
+		
+		assertNull(db.sample(Key.createRandomKey(), 50, DHTtype.IPV4_DHT, false));
+	}
+	
+	@Test
+	public void testStoreIPv6() throws Exception {
+		Database db = new Database(DHTtype.IPV6_DHT);
+		Key key = Key.createRandomKey();
+		
+		db.store(key, item("2001:db8::ff00:42:8329", 51413, false));
+		
+		PeerAddressDBItem sampled = (PeerAddressDBItem) db.sample(key, 50, DHTtype.IPV6_DHT, false).get(0);
+		assertEquals(InetAddress.getByName("2001:db8::ff00:42:8329"), sampled.getInetAddress());
+		assertEquals(51413, sampled.getPort());
+		assertFalse(sampled.isSeed());
+	}
+	
+	@Test
+	public void testReannounceReplacesEntry() throws Exception {
+		Database db = new Database(DHTtype.IPV4_DHT);
+		Key key = Key.createRandomKey();
+		
+		db.store(key, item("1.2.3.4", 1000, false));
+		db.store(key, item("1.2.3.4", 2000, true));
+		
+		Database.PeersSeeds data = db.getData().get(key);
+		assertEquals(0, data.peers().size());
+		assertEquals(1, data.seeds().size());
+		assertEquals(2000, data.seeds().stream().findFirst().get().getPort());
+		assertEquals(1, db.getStats().getItemCount());
+	}
+	
+	@Test
+	public void testSamplePreferPeers() throws Exception {
+		Database db = new Database(DHTtype.IPV4_DHT);
+		Key key = Key.createRandomKey();
+		
+		for(int i=0;i<10;i++) {
+			db.store(key, item("10.0.0." + i, 1000, false));
+			db.store(key, item("10.0.1." + i, 1000, true));
+		}
+		
+		List<DBItem> items = db.sample(key, 5, DHTtype.IPV4_DHT, true);
+		assertEquals(5, items.size());
+		assertTrue(items.stream().noneMatch(i -> ((PeerAddressDBItem) i).isSeed()));
+		assertEquals(5, new HashSet<>(items).size());
+		
+		items = db.sample(key, 50, DHTtype.IPV4_DHT, false);
+		assertEquals(20, items.size());
+		assertEquals(20, new HashSet<>(items).size());
+	}
+	
+	@Test
+	public void testExpire() throws Exception {
+		Database db = new Database(DHTtype.IPV4_DHT);
+		Key expiredKey = Key.createRandomKey();
+		Key liveKey = Key.createRandomKey();
+		
+		long now = System.currentTimeMillis();
+		byte[] raw = item("1.2.3.4", 1000, false).getData();
+		db.store(expiredKey, new PeerAddressDBItem(raw, false, now - DHTConstants.MAX_ITEM_AGE - 1000));
+		db.store(liveKey, new PeerAddressDBItem(raw, false, now - DHTConstants.MAX_ITEM_AGE - 1000));
+		db.store(liveKey, item("1.2.3.5", 1000, false));
+		
+		db.expire(now);
+		
+		assertNull(db.sample(expiredKey, 50, DHTtype.IPV4_DHT, false));
+		assertEquals(1, db.sample(liveKey, 50, DHTtype.IPV4_DHT, false).size());
+		assertEquals(1, db.getStats().getKeyCount());
+		assertEquals(1, db.getStats().getItemCount());
+	}
+	
+	@Test
+	public void testManyKeys() throws Exception {
+		Database db = new Database(DHTtype.IPV4_DHT);
+		List<Key> keys = new ArrayList<>();
+		
+		for(int i=0;i<10000;i++) {
+			Key key = Key.createRandomKey();
+			keys.add(key);
+			db.store(key, item("10.0." + (i >> 8) + "." + (i & 0xFF), 1000, false));
+		}
+		
+		assertEquals(10000, db.getStats().getKeyCount());
+		for(Key key : keys)
+			assertEquals(1, db.sample(key, 50, DHTtype.IPV4_DHT, false).size());
+		
+		assertEquals(keys.stream().collect(Collectors.toSet()), db.getData().keySet());
+	}
+	
+	@Test
+	public void testScrapeFilter() throws Exception {
+		Database db = new Database(DHTtype.IPV4_DHT);
+		Key key = Key.createRandomKey();
+		db.store(key, item("1.2.3.4", 1000, true));
+		
+		assertNull(db.createScrapeFilter(Key.createRandomKey(), true));
+		assertNotNull(db.createScrapeFilter(key, false));
+		
+		BloomFilterBEP33 expected = new BloomFilterBEP33();
+		expected.insert(InetAddress.getByName("1.2.3.4"));
+		assertEquals(0, expected.compareTo(db.createScrapeFilter(key, true)));
+	}
+	
+	@Test
+	public void testSamples() throws Exception {
+		Database db = new Database(DHTtype.IPV4_DHT);
+		Set<Key> keys = new HashSet<>();
+		for(int i=0;i<100;i++) {
+			Key key = Key.createRandomKey();
+			keys.add(key);
+			db.store(key, item("1.2.3.4", 1000, false));
+		}
+		
+		ByteBuffer samples = db.samples();
+		assertEquals(Database.MAX_SAMPLE_COUNT * 20, samples.remaining());
+		while(samples.hasRemaining())
+			assertTrue(keys.contains(new Key(samples)));
+	}
+	
+	// the unkeyed mixing function that the index used to rely on
+	static int unkeyedHash(int[] key) {
+		int h = 0;
+		for(int i=0;i<key.length;i++)
+			h = (h ^ key[i]) * 0x9E3779B1;
+		return h ^ (h >>> 16);
+	}
+	
+	@Test
+	public void testCraftedCollisionsAreSpread() {
+		int inverse = 0x9E3779B1;
+		for(int i=0;i<5;i++)
+			inverse *= 2 - 0x9E3779B1 * inverse;
+		
+		int[] prefix = {1, 2, 3, 4};
+		int state = 0;
+		for(int i=0;i<prefix.length;i++)
+			state = (state ^ prefix[i]) * 0x9E3779B1;
+		
+		// the last word fully controls the state before the final mixing step,
+		// choose it so that the low 16 bits of the result are always the same
+		List<int[]> keys = new ArrayList<>();
+		for(int i=1;i<=1000;i++) {
+			int h = i << 16 | (i & 0xFFFF) ^ 0x1234;
+			int[] key = {1, 2, 3, 4, (h * inverse) ^ state};
+			assertEquals(0x1234, unkeyedHash(key) & 0xFFFF);
+			keys.add(key);
+		}
+		
+		long[] hashKeys = Database.Segment.randomHashKeys(new Random());
+		assertTrue(keys.stream().mapToInt(k -> Database.Segment.hash(k, hashKeys) & 1023).distinct().count() > 500);
+		
+		Database.Segment segment = new Database.Segment(2, hashKeys);
+		for(int[] key : keys) {
+			// keys without peers are dropped when the segment grows
+			int slot = segment.findOrInsert(key, Database.Segment.hash(key, hashKeys));
+			segment.store(slot, new long[] {key[4]}, 1000);
+		}
+		
+		int mask = segment.entries.length - 1;
+		int maxProbeLength = 0;
+		for(int[] key : keys) {
+			int hash = Database.Segment.hash(key, hashKeys);
+			int slot = segment.find(key, hash);
+			assertTrue(slot >= 0);
+			maxProbeLength = Math.max(maxProbeLength, (slot - hash) & mask);
+		}
+		assertTrue("probe length " + maxProbeLength, maxProbeLength < 64);
+	}
+	
+}
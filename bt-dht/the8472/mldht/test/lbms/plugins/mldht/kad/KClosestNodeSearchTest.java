@@ -6,9 +6,11 @@
 package lbms.plugins.mldht.kad;
 
 import static lbms.plugins.mldht.kad.NodeFactory.fillTable;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Executors;
@@ -101,5 +103,57 @@ public class KClosestNodeSearchTest {
 		
 		
 	}
+	
+	@Test
+	public void testPartialBucketSelection() {
+		fillTable(node);
+		node.table().stream().forEach(b -> {
+			b.getBucket().entriesStream().forEach(e -> {
+				e.signalResponse(1);
+			});
+		});
+		
+		for(int targetSize : new int[] {1, 3, 8, 20}) {
+			for(int i=0;i<200;i++) {
+				Key k = Key.createRandomKey();
+				Comparator<KBucketEntry> comp = new KBucketEntry.DistanceOrder(k);
+				
+				KClosestNodesSearch search = new KClosestNodesSearch(k, targetSize, node.getDHT());
+				search.fill();
+				
+				List<KBucketEntry> reference = node.table().stream().flatMap(b -> b.getBucket().entriesStream()).filter(KBucketEntry::eligibleForNodesList).sorted(comp).limit(targetSize).collect(Collectors.toList());
+				List<KBucketEntry> sortedResult = new ArrayList<>(search.getEntries());
+				sortedResult.sort(comp);
+				
+				assertEquals(reference, sortedResult);
+			}
+		}
+	}
+	
+	@Test
+	public void testKeyWords() {
+		long[] words = new long[Key.WORDS * 2];
+		for(int i=0;i<1000;i++) {
+			Key a = Key.createRandomKey();
+			Key b = Key.createRandomKey();
+			a.toWords(words, 0);
+			b.toWords(words, Key.WORDS);
+			
+			Key roundTrip = new Key();
+			roundTrip.fromWords(words, Key.WORDS);
+			assertEquals(b, roundTrip);
+			
+			int cmp = 0;
+			for(int w=0;w<Key.WORDS && cmp == 0;w++)
+				cmp = Long.compareUnsigned(words[w], words[Key.WORDS + w]);
+			assertEquals(Integer.signum(a.compareTo(b)), Integer.signum(cmp));
+			
+			long[] distance = new long[Key.WORDS];
+			a.distance(b).toWords(distance, 0);
+			for(int w=0;w<Key.WORDS;w++)
+				words[w] ^= words[Key.WORDS + w];
+			assertArrayEquals(distance, Arrays.copyOf(words, Key.WORDS));
+		}
+	}
 
 }
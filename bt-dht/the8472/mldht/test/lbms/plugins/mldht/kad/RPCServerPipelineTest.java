@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package lbms.plugins.mldht.kad;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import lbms.plugins.mldht.kad.DHT.DHTtype;
+import lbms.plugins.mldht.kad.messages.PingRequest;
+import lbms.plugins.mldht.kad.messages.PingResponse;
+import lbms.plugins.mldht.utils.NIOConnectionManager;
+
+public class RPCServerPipelineTest {
+
+	static final InetSocketAddress REMOTE = new InetSocketAddress(InetAddress.getLoopbackAddress(), 1234);
+
+	DHT dht;
+	ScheduledExecutorService scheduler;
+	RPCServer srv;
+	FakeChannel channel;
+
+	@Before
+	public void setup() throws IOException {
+		dht = NodeFactory.buildDHT(DHTtype.IPV4_DHT);
+		dht.getNode().initKey(null);
+		scheduler = new ScheduledThreadPoolExecutor(1);
+		dht.setScheduler(scheduler);
+
+		// not started, the socket handler only becomes writable when notified via selectionEvent
+		srv = new RPCServer(dht.getServerManager(), InetAddress.getLoopbackAddress(), 0, dht.getStats().getRpcStats());
+		srv.setOutgoingThrottle(new SpamThrottle());
+		channel = new FakeChannel();
+		srv.sel.channel = channel;
+		srv.sel.connectionManager = new NIOConnectionManager("test");
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		channel.close();
+		scheduler.shutdownNow();
+		if(dht.packetProcessor != null)
+			dht.packetProcessor.shutdownNow();
+	}
+
+	static PingResponse response() {
+		PingResponse rsp = new PingResponse(new byte[] {1, 2, 3, 4});
+		rsp.setDestination(REMOTE);
+		return rsp;
+	}
+
+	@Test
+	public void testIncomingPacketsDroppedWhenProcessorSaturated() throws Exception {
+		CountDownLatch blocker = new CountDownLatch(1);
+		ThreadPoolExecutor processor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1));
+		processor.execute(() -> {
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		dht.packetProcessor = processor;
+
+		// distinct sources, so that none of them is throttled
+		for(int i=1;i<=4;i++) {
+			ByteBuffer packet = ByteBuffer.allocate(20);
+			packet.put(0, (byte) 'd');
+			channel.incoming.add(new Received(packet, new InetSocketAddress(InetAddress.getByAddress(new byte[] {10, 0, 0, (byte) i}), 1234)));
+		}
+
+		srv.sel.readEvent();
+
+		assertEquals(4, srv.getNumReceived());
+		// one packet fits into the queue, the rest is rejected
+		assertEquals(1, processor.getQueue().size());
+		assertEquals(3, srv.getNumDropped());
+		assertEquals(1, dht.getNumQueuedPackets());
+	}
+
+	@Test
+	public void testResponsesAreShedButRequestsAreNot() {
+		int excess = 10;
+		for(int i=0;i<DHTConstants.MAX_QUEUED_OUTGOING_PACKETS + excess;i++)
+			srv.sendMessage(response());
+
+		assertEquals(DHTConstants.MAX_QUEUED_OUTGOING_PACKETS, srv.getNumQueuedSends());
+		assertEquals(excess, srv.getNumDropped());
+
+		PingRequest req = new PingRequest();
+		req.setDestination(REMOTE);
+		srv.doCall(new RPCCall(req));
+
+		assertEquals(DHTConstants.MAX_QUEUED_OUTGOING_PACKETS + 1, srv.getNumQueuedSends());
+		assertEquals(excess, srv.getNumDropped());
+		assertEquals(1, srv.getNumActiveRPCCalls());
+	}
+
+	@Test
+	public void testQueueSizeAfterRequeue() throws Exception {
+		for(int i=0;i<3;i++)
+			srv.sendMessage(response());
+		assertEquals(3, srv.getNumQueuedSends());
+
+		// socket buffers are full
+		channel.mode = SendMode.ZERO_BYTES;
+		notifyWritable();
+		assertEquals(3, srv.getNumQueuedSends());
+		assertEquals(0, channel.sent.size());
+
+		// BSD variant of the same
+		channel.mode = SendMode.ENOBUFS;
+		notifyWritable();
+		assertEquals(3, srv.getNumQueuedSends());
+		assertEquals(0, channel.sent.size());
+
+		channel.mode = SendMode.SEND;
+		notifyWritable();
+		assertEquals(0, srv.getNumQueuedSends());
+		assertEquals(3, channel.sent.size());
+		assertEquals(3, srv.getNumSent());
+	}
+
+	void notifyWritable() throws Exception {
+		srv.sel.selectionEvent(new WritableKey(channel));
+		// the write is performed on the scheduler, wait for it
+		scheduler.submit(() -> {}).get();
+	}
+
+	enum SendMode {
+		SEND, ZERO_BYTES, ENOBUFS
+	}
+
+	static class Received {
+		final ByteBuffer data;
+		final SocketAddress source;
+
+		Received(ByteBuffer data, SocketAddress source) {
+			this.data = data;
+			this.source = source;
+		}
+	}
+
+	static class FakeChannel extends DatagramChannel {
+
+		final Queue<Received> incoming = new ArrayDeque<>();
+		final List<ByteBuffer> sent = new ArrayList<>();
+		volatile SendMode mode = SendMode.SEND;
+
+		FakeChannel() {
+			super(null);
+		}
+
+		@Override
+		public SocketAddress receive(ByteBuffer dst) {
+			Received r = incoming.poll();
+			if(r == null)
+				return null;
+			dst.put(r.data.duplicate());
+			return r.source;
+		}
+
+		@Override
+		public int send(ByteBuffer src, SocketAddress target) throws IOException {
+			switch(mode) {
+				case ZERO_BYTES:
+					return 0;
+				case ENOBUFS:
+					throw new IOException("No buffer space available");
+				default:
+					sent.add(src);
+					return src.remaining();
+			}
+		}
+
+		@Override
+		public DatagramChannel bind(SocketAddress local) {
+			return this;
+		}
+
+		@Override
+		public <T> DatagramChannel setOption(SocketOption<T> name, T value) {
+			return this;
+		}
+
+		@Override
+		public <T> T getOption(SocketOption<T> name) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Set<SocketOption<?>> supportedOptions() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public DatagramSocket socket() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean isConnected() {
+			return false;
+		}
+
+		@Override
+		public DatagramChannel connect(SocketAddress remote) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public DatagramChannel disconnect() {
+			return this;
+		}
+
+		@Override
+		public SocketAddress getRemoteAddress() {
+			return null;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long read(ByteBuffer[] dsts, int offset, int length) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SocketAddress getLocalAddress() {
+			return null;
+		}
+
+		@Override
+		public MembershipKey join(InetAddress group, NetworkInterface interf) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public MembershipKey join(InetAddress group, NetworkInterface interf, InetAddress source) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		protected void implCloseSelectableChannel() {}
+
+		@Override
+		protected void implConfigureBlocking(boolean block) {}
+	}
+
+	static class WritableKey extends SelectionKey {
+
+		final SelectableChannel channel;
+
+		WritableKey(SelectableChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public SelectableChannel channel() {
+			return channel;
+		}
+
+		@Override
+		public Selector selector() {
+			return null;
+		}
+
+		@Override
+		public boolean isValid() {
+			return true;
+		}
+
+		@Override
+		public void cancel() {}
+
+		@Override
+		public int interestOps() {
+			return OP_READ | OP_WRITE;
+		}
+
+		@Override
+		public SelectionKey interestOps(int ops) {
+			return this;
+		}
+
+		@Override
+		public int readyOps() {
+			return OP_WRITE;
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package lbms.plugins.mldht.kad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import the8472.bencode.BEncoder;
+
+import lbms.plugins.mldht.DHTConfiguration;
+import lbms.plugins.mldht.kad.DHT.DHTtype;
+
+public class RoutingTableSnapshotTest {
+	
+	Path storage;
+	
+	@Before
+	public void setup() throws IOException {
+		storage = Files.createTempDirectory("mldht-table");
+	}
+	
+	@After
+	public void cleanup() throws IOException {
+		try(Stream<Path> files = Files.list(storage)) {
+			for(Path p : files.collect(Collectors.toList()))
+				Files.delete(p);
+		}
+		Files.delete(storage);
+	}
+	
+	DHT buildPersistentDHT() {
+		DHT dht = NodeFactory.buildDHT(DHTtype.IPV6_DHT);
+		dht.config = new DHTConfiguration() {
+			@Override
+			public boolean noRouterBootstrap() {
+				return true;
+			}
+			
+			@Override
+			public boolean isPersistingID() {
+				return true;
+			}
+			
+			@Override
+			public Path getStoragePath() {
+				return storage;
+			}
+			
+			@Override
+			public int getListeningPort() {
+				return 0;
+			}
+			
+			@Override
+			public boolean allowMultiHoming() {
+				return false;
+			}
+		};
+		dht.getNode().initKey(dht.config);
+		return dht;
+	}
+	
+	@Test
+	public void testEntryRoundTrip() throws Exception {
+		KBucketEntry v4 = new KBucketEntry(new InetSocketAddress(InetAddress.getByName("1.2.3.4"), 6881), Key.createRandomKey());
+		v4.signalScheduledRequest();
+		v4.signalResponse(150);
+		v4.setVersion(new byte[] {'m', 'l', 0, 1});
+		
+		KBucketEntry v6 = new KBucketEntry(new InetSocketAddress(NodeFactory.generateIp((byte) 0), 1337), Key.createRandomKey());
+		v6.signalScheduledRequest();
+		v6.signalRequestTimeout();
+		
+		ByteBuffer buf = ByteBuffer.allocate(v4.binarySize() + v6.binarySize());
+		v4.writeBinary(buf);
+		v6.writeBinary(buf);
+		assertFalse(buf.hasRemaining());
+		buf.flip();
+		
+		KBucketEntry read4 = KBucketEntry.readBinary(buf);
+		KBucketEntry read6 = KBucketEntry.readBinary(buf);
+		assertFalse(buf.hasRemaining());
+		
+		assertEquals(v4, read4);
+		assertTrue(read4.verifiedReachable());
+		assertEquals(150, read4.getRTT());
+		assertEquals(v4.getLastSeen(), read4.getLastSeen());
+		assertEquals(v4.getCreationTime(), read4.getCreationTime());
+		assertEquals(v4.lastSendTime(), read4.lastSendTime());
+		assertEquals(v4.getVersion(), read4.getVersion());
+		
+		assertEquals(v6, read6);
+		assertFalse(read6.verifiedReachable());
+		assertEquals(1, read6.getFailedQueries());
+		assertEquals(v6.getRTT(), read6.getRTT());
+		assertFalse(read6.getVersion().isPresent());
+	}
+	
+	@Test
+	public void testTableRoundTrip() throws Exception {
+		DHT dht = buildPersistentDHT();
+		Node node = dht.getNode();
+		NodeFactory.fillTable(node);
+		
+		Path tableFile = storage.resolve("table.cache");
+		node.saveTable(tableFile);
+		
+		DHT restoredDHT = buildPersistentDHT();
+		Node restored = restoredDHT.getNode();
+		assertEquals(node.getRootID(), restored.getRootID());
+		restored.loadTable(tableFile);
+		
+		assertEquals(node.getNumEntriesInRoutingTable(), restored.getNumEntriesInRoutingTable());
+		assertEquals(node.table().size(), restored.table().size());
+		assertTrue(restored.table().stream().flatMap(e -> e.getBucket().entriesStream()).allMatch(KBucketEntry::eligibleForNodesList));
+		assertEquals(node.getRandomEntry().map(e -> restored.table().entryForId(e.getID()).getBucket().getEntries().contains(e)), Optional.of(true));
+	}
+	
+	@Test
+	public void testLegacyTable() throws Exception {
+		DHT dht = buildPersistentDHT();
+		Node node = dht.getNode();
+		NodeFactory.fillTable(node);
+		
+		Map<String, Object> tableMap = new TreeMap<>();
+		tableMap.put("mainEntries", node.table().stream().flatMap(e -> e.getBucket().entriesStream()).map(KBucketEntry::toBencoded).collect(Collectors.toList()));
+		tableMap.put("timestamp", System.currentTimeMillis());
+		tableMap.put("oldKey", node.getRootID().getHash());
+		
+		Path tableFile = storage.resolve("table.cache");
+		ByteBuffer encoded = new BEncoder().encode(tableMap, 1024 * 1024);
+		byte[] bytes = new byte[encoded.remaining()];
+		encoded.get(bytes);
+		Files.write(tableFile, bytes);
+		
+		Node restored = buildPersistentDHT().getNode();
+		restored.loadTable(tableFile);
+		
+		assertEquals(node.getNumEntriesInRoutingTable(), restored.getNumEntriesInRoutingTable());
+	}
+	
+}
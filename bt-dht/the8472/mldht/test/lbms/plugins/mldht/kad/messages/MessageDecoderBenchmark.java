@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package lbms.plugins.mldht.kad.messages;
+
+import static the8472.bencode.Utils.str2ary;
+
+import the8472.bencode.BDecoder;
+
+import lbms.plugins.mldht.kad.DHT.DHTtype;
+import lbms.plugins.mldht.kad.messages.MessageBase.Method;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Compares single-pass decoding of typical incoming packets with generic decoding into a map.
+ *
+ * Generic decoding is only the first stage of the previous decoding path (which then walked the map to build the message),
+ * so it's a lower bound of the cost of that path.
+ *
+ * Run with: java -cp ... lbms.plugins.mldht.kad.messages.MessageDecoderBenchmark [iterations]
+ */
+public class MessageDecoderBenchmark {
+	
+	static final String ID = "abcdefghij0123456789";
+	
+	static final String[] PACKETS = {
+		"d1:ad2:id20:"+ID+"e1:q4:ping1:t2:aa1:v4:UT011:y1:qe",
+		"d1:ad2:id20:"+ID+"9:info_hash20:"+ID+"e1:q9:get_peers1:t2:aa1:v4:LT011:y1:qe",
+		"d1:ad2:id20:"+ID+"6:target20:"+ID+"4:wantl2:n4ee1:q9:find_node1:t2:aa1:y1:qe",
+		"d1:rd2:id20:"+ID+"5:nodes208:" + new String(new char[208]).replace('\0', 'n') + "5:token8:abcdefghe1:t2:aa1:v4:UT011:y1:re",
+		"d2:ip6:abcdef1:rd2:id20:"+ID+"5:token8:abcdefgh6:valuesl6:abcdef6:abcdef6:abcdef6:abcdefee1:t2:aa1:y1:re",
+	};
+	
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+		
+		ByteBuffer[] packets = new ByteBuffer[PACKETS.length];
+		for(int i=0;i<packets.length;i++)
+			packets[i] = ByteBuffer.wrap(str2ary(PACKETS[i]));
+		
+		MessageDecoder decoder = new MessageDecoder();
+		Function<byte[], Optional<Method>> mapper = mtid -> Optional.of(Method.GET_PEERS);
+		BDecoder mapDecoder = new BDecoder();
+		
+		long bestMapTime = Long.MAX_VALUE;
+		long bestSinglePassTime = Long.MAX_VALUE;
+		
+		for(int round=0;round<10;round++) {
+			bestMapTime = Math.min(bestMapTime, measure(iterations, packets, p -> mapDecoder.decode(p.duplicate())));
+			bestSinglePassTime = Math.min(bestSinglePassTime, measure(iterations, packets, p -> {
+				try {
+					return decoder.decode(p, mapper, DHTtype.IPV4_DHT);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}));
+		}
+		
+		System.out.printf("map decoding: %d ns/packet%nsingle-pass decoding into messages: %d ns/packet%n",
+				bestMapTime / iterations, bestSinglePassTime / iterations);
+	}
+	
+	static volatile Object sink;
+	
+	static long measure(int iterations, ByteBuffer[] packets, Function<ByteBuffer, Object> decode) {
+		long start = System.nanoTime();
+		for(int i=0;i<iterations;i++)
+			sink = decode.apply(packets[i % packets.length]);
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package lbms.plugins.mldht.kad.messages;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static the8472.bencode.Utils.str2ary;
+
+import the8472.bencode.Tokenizer.BDecodingException;
+
+import lbms.plugins.mldht.kad.DHT.DHTtype;
+import lbms.plugins.mldht.kad.Key;
+import lbms.plugins.mldht.kad.messages.MessageBase.Method;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageDecoderTest {
+	
+	static final String ID = "abcdefghij0123456789";
+	static final String TARGET = "0123456789abcdefghij";
+	
+	static final Function<byte[], Optional<Method>> MAPPER = mtid -> Optional.of(Method.GET_PEERS);
+	
+	MessageDecoder decoder;
+	
+	@Before
+	public void setup() {
+		decoder = new MessageDecoder();
+	}
+	
+	MessageBase decode(String message) throws Exception {
+		ByteBuffer buf = ByteBuffer.wrap(str2ary(message));
+		MessageBase msg = decoder.decode(buf, MAPPER, DHTtype.IPV4_DHT);
+		assertEquals(0, buf.position());
+		return msg;
+	}
+	
+	@Test
+	public void testPingRequest() throws Exception {
+		MessageBase msg = decode("d1:ad2:id20:"+ID+"e1:q4:ping1:t2:aa1:v4:UT011:y1:qe");
+		
+		assertTrue(msg instanceof PingRequest);
+		assertEquals(new Key(str2ary(ID)), msg.getID());
+		assertArrayEquals(str2ary("aa"), msg.getMTID());
+		assertArrayEquals(str2ary("UT01"), msg.getVersion().get());
+	}
+	
+	@Test
+	public void testUnknownKeysAreSkipped() throws Exception {
+		MessageBase msg = decode("d1:ad2:id20:"+ID+"5:extrad1:xli1ei2ee1:yd1:z1:wee9:info_hash20:"+TARGET+"6:noseedi1e4:wantl2:n42:n6ee1:q9:get_peers1:t2:aa1:xl1:ai3ee1:y1:qe");
+		
+		assertTrue(msg instanceof GetPeersRequest);
+		GetPeersRequest req = (GetPeersRequest) msg;
+		assertEquals(new Key(str2ary(TARGET)), req.getTarget());
+		assertTrue(req.isNoSeeds());
+		assertFalse(req.isScrape());
+		assertTrue(req.doesWant4());
+		assertTrue(req.doesWant6());
+	}
+	
+	@Test
+	public void testGetPeersResponse() throws Exception {
+		MessageBase msg = decode("d2:ip6:\1\2\3\4\5\6" + "1:rd2:id20:"+ID+"5:token4:abcd6:valuesl6:\12\0\0\1\32\341" + "6:\12\0\0\2\32\341" + "3:xyzee1:t2:aa1:y1:re");
+		
+		assertTrue(msg instanceof GetPeersResponse);
+		GetPeersResponse rsp = (GetPeersResponse) msg;
+		assertEquals(new Key(str2ary(ID)), rsp.getID());
+		assertArrayEquals(str2ary("abcd"), rsp.getToken());
+		// entry with invalid length is skipped
+		assertEquals(2, rsp.getPeerItems().size());
+		assertEquals("/1.2.3.4:1286", rsp.getPublicIP().toString());
+	}
+	
+	@Test
+	public void testErrorMessage() throws Exception {
+		MessageBase msg = decode("d1:eli203e14:Protocol Errore1:t2:aa1:y1:ee");
+		
+		assertTrue(msg instanceof ErrorMessage);
+		ErrorMessage err = (ErrorMessage) msg;
+		assertEquals(203, err.getCode());
+		assertEquals("Protocol Error", err.getMessage());
+		assertEquals(Method.GET_PEERS, err.getMethod());
+	}
+	
+	@Test
+	public void testDecoderSharedBetweenServers() throws Exception {
+		ByteBuffer error = ByteBuffer.wrap(str2ary("d1:eli203e14:Protocol Errore1:t2:aa1:y1:ee"));
+		
+		// transaction IDs are resolved by the server, that passes its mapper to the decoder
+		ErrorMessage first = (ErrorMessage) decoder.decode(error, mtid -> Optional.of(Method.PING), DHTtype.IPV4_DHT);
+		ErrorMessage second = (ErrorMessage) decoder.decode(error, mtid -> Optional.of(Method.FIND_NODE), DHTtype.IPV6_DHT);
+		
+		assertEquals(Method.PING, first.getMethod());
+		assertEquals(Method.FIND_NODE, second.getMethod());
+	}
+	
+	@Test
+	public void testInvalidArguments() throws Exception {
+		try {
+			decode("d1:ad2:id3:abce1:q9:get_peers1:t2:aa1:y1:qe");
+			fail("expected exception");
+		} catch (MessageException e) {
+			// expected
+		}
+		// needed to send an error reply
+		assertArrayEquals(str2ary("aa"), decoder.getTransactionId().get());
+		assertEquals(Method.GET_PEERS, decoder.getRequestMethod());
+		
+		try {
+			decode("d1:ali1ee1:q4:ping1:t2:aa1:y1:qe");
+			fail("expected exception");
+		} catch (MessageException e) {
+			// expected
+		}
+		
+		try {
+			decode("d1:rd2:idd1:x1:yee1:t2:aa1:y1:re");
+			fail("expected exception");
+		} catch (MessageException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testInvalidBencoding() throws Exception {
+		String[] invalid = {
+			"",
+			"li1ee",
+			"d1:ad2:id20:"+ID+"e1:q4:ping1:t2:aa1:y1:q",
+			"d1:ad2:id20:"+ID+"e1:q4:ping1:t2:aa1:t2:bb1:y1:qe",
+			"d1:ad2:id20:"+ID+"2:id20:"+ID+"e1:q4:ping1:t2:aa1:y1:qe",
+			"d1:ad2:id20:"+ID+"i1ei2ee1:q4:ping1:t2:aa1:y1:qe",
+		};
+		
+		for(String message : invalid) {
+			try {
+				decode(message);
+				fail("expected exception for " + message);
+			} catch (BDecodingException e) {
+				// expected
+			}
+			
+			// decoder must be reusable after a failure
+			assertTrue(decode("d1:ad2:id20:"+ID+"e1:q4:ping1:t2:aa1:y1:qe") instanceof PingRequest);
+		}
+	}
+	
+	@Test
+	public void testRoundTrip() throws Exception {
+		AnnounceRequest req = new AnnounceRequest(new Key(str2ary(TARGET)), 6881, str2ary("token"));
+		req.setID(new Key(str2ary(ID)));
+		req.setMTID(str2ary("ab"));
+		req.setSeed(true);
+		req.setName(ByteBuffer.wrap(str2ary("name")));
+		
+		ByteBuffer encoded = ByteBuffer.allocate(1500);
+		req.encode(encoded);
+		
+		AnnounceRequest decoded = (AnnounceRequest) decoder.decode(encoded, MAPPER, DHTtype.IPV4_DHT);
+		assertEquals(req.getInfoHash(), decoded.getInfoHash());
+		assertEquals(6881, decoded.getPort());
+		assertArrayEquals(str2ary("token"), decoded.getToken());
+		assertTrue(decoded.isSeed());
+		assertEquals(ByteBuffer.wrap(str2ary("name")), decoded.getName().get());
+	}
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package lbms.plugins.mldht.kad.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import lbms.plugins.mldht.kad.utils.LatencyHistogram.Snapshot;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBucketBoundaries() {
+		for(int bucket=0;bucket<LatencyHistogram.NUM_BUCKETS;bucket++) {
+			long lower = LatencyHistogram.lowerBound(bucket);
+			long upper = LatencyHistogram.upperBound(bucket);
+			assertEquals(bucket, LatencyHistogram.bucketFor(lower));
+			assertEquals(bucket, LatencyHistogram.bucketFor(upper));
+			if(bucket > 0)
+				assertEquals(LatencyHistogram.upperBound(bucket - 1) + 1, lower);
+			// relative resolution
+			assertTrue(upper - lower <= Math.max(0, lower / LatencyHistogram.SUB_BUCKETS));
+		}
+		assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.NUM_BUCKETS - 1));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+
+		Snapshot empty = h.snapshot();
+		assertEquals(0, empty.getCount());
+		assertEquals(0, empty.getValueAtPercentile(99));
+
+		IntStream.rangeClosed(1, 1000).forEach(h::record);
+		h.record(-5);
+		h.record(Long.MAX_VALUE);
+
+		Snapshot s = h.snapshot();
+		assertEquals(1002, s.getCount());
+		assertEquals(LatencyHistogram.MAX_VALUE, s.getMax());
+
+		// within bucket resolution
+		assertEquals(500, s.getValueAtPercentile(50), 500 / LatencyHistogram.SUB_BUCKETS);
+		assertEquals(900, s.getValueAtPercentile(90), 900 / LatencyHistogram.SUB_BUCKETS);
+		assertEquals(0, s.getValueAtPercentile(0));
+		assertEquals(LatencyHistogram.MAX_VALUE, s.getValueAtPercentile(100));
+
+		long sum = 0;
+		for(int i=0;i<s.getBucketCount();i++)
+			sum += s.getCountInBucket(i);
+		assertEquals(s.getCount(), sum);
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		LatencyHistogram h = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for(int i=0;i<threads.length;i++) {
+			threads[i] = new Thread(() -> {
+				for(int j=0;j<10000;j++)
+					h.record(ThreadLocalRandom.current().nextInt(10000));
+			});
+			threads[i].start();
+		}
+		for(Thread t : threads)
+			t.join();
+
+		assertEquals(40000, h.snapshot().getCount());
+	}
+
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package the8472.mldht.indexing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import the8472.mldht.indexing.TorrentDumper.FetchStats;
+import the8472.mldht.indexing.TorrentDumper.FetchStats.State;
+
+import lbms.plugins.mldht.kad.KBucketEntry;
+import lbms.plugins.mldht.kad.Key;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FetchStatsStoreTest {
+
+	static final int SEGMENT_SIZE = 64 * 1024;
+
+	Path dir;
+	FetchStatsStore store;
+
+	@Before
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("fetchstats");
+		store = new FetchStatsStore(dir, SEGMENT_SIZE);
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		store.close();
+		try(Stream<Path> st = Files.walk(dir)) {
+			for(Path p : st.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+				Files.delete(p);
+		}
+	}
+
+	static FetchStats stats(Key k, State st, int insertCount) {
+		return new FetchStats(k, fs -> {
+			fs.recentSources = new ArrayList<>();
+			fs.recentSources.add(new KBucketEntry(new InetSocketAddress("10.0.0.1", 1234), Key.createRandomKey()));
+			fs.insertCount = insertCount;
+			fs.creationTime = System.currentTimeMillis();
+			fs.state = st;
+		});
+	}
+
+	@Test
+	public void testPutSupersedesOtherStates() throws IOException {
+		Key k = Key.createRandomKey();
+
+		store.put(stats(k, State.INITIAL, 1));
+		assertEquals(1, store.count(State.INITIAL));
+
+		store.put(stats(k, State.PRIORITY, 2));
+		assertEquals(0, store.count(State.INITIAL));
+		assertEquals(1, store.count(State.PRIORITY));
+
+		FetchStats read = store.get(k);
+		assertEquals(State.PRIORITY, read.state);
+		assertEquals(2, read.insertCount);
+		assertEquals(1, read.recentSources.size());
+
+		store.markDumped(k);
+		assertNull(store.get(k));
+		assertTrue(store.isDumped(k));
+		assertEquals(0, store.count(State.PRIORITY));
+	}
+
+	@Test
+	public void testReload() throws IOException {
+		Key a = Key.createRandomKey();
+		Key b = Key.createRandomKey();
+		Key c = Key.createRandomKey();
+
+		store.put(stats(a, State.INITIAL, 1));
+		store.put(stats(b, State.FAILED, 3));
+		store.put(stats(c, State.INITIAL, 1));
+		store.remove(c);
+		store.markDumped(Key.createRandomKey());
+		store.close();
+
+		store = new FetchStatsStore(dir, SEGMENT_SIZE);
+
+		assertEquals(State.INITIAL, store.get(a).state);
+		assertEquals(3, store.get(b).insertCount);
+		assertNull(store.get(c));
+		assertEquals(1, store.count(State.INITIAL));
+		assertEquals(1, store.count(State.FAILED));
+		assertEquals(1, store.dumped.size());
+	}
+
+	@Test
+	public void testTornTailIsTruncated() throws IOException {
+		Key a = Key.createRandomKey();
+		store.put(stats(a, State.INITIAL, 1));
+		store.put(stats(Key.createRandomKey(), State.INITIAL, 1));
+		store.close();
+
+		Path segment;
+		try(Stream<Path> st = Files.list(dir)) {
+			segment = st.findFirst().get();
+		}
+
+		long size = Files.size(segment);
+
+		try(FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			ch.truncate(size - 5);
+			// garbage that can't be a valid record
+			ch.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 1, 0, 0, 0}), ch.size());
+		}
+
+		store = new FetchStatsStore(dir, SEGMENT_SIZE);
+		assertNotNull(store.get(a));
+		assertEquals(1, store.count(State.INITIAL));
+
+		// appends continue after the last valid record
+		Key b = Key.createRandomKey();
+		store.put(stats(b, State.INITIAL, 1));
+		store.close();
+		store = new FetchStatsStore(dir, SEGMENT_SIZE);
+		assertNotNull(store.get(a));
+		assertNotNull(store.get(b));
+	}
+
+	@Test
+	public void testRemoveIfAndSample() throws IOException {
+		Set<Key> failed = new HashSet<>();
+		for(int i=0;i<100;i++) {
+			Key k = Key.createRandomKey();
+			store.put(stats(k, State.FAILED, i % 2 + 1));
+			failed.add(k);
+		}
+
+		store.removeIf(State.FAILED, st -> st.insertCount == 1);
+		assertEquals(50, store.count(State.FAILED));
+
+		List<FetchStats> sample = store.sample(State.FAILED, 20, k -> false);
+		assertEquals(20, sample.size());
+		assertEquals(20, sample.stream().map(FetchStats::getK).distinct().count());
+		assertTrue(sample.stream().allMatch(st -> st.insertCount == 2 && failed.contains(st.getK())));
+
+		// everything skipped or exhausted
+		assertEquals(0, store.sample(State.FAILED, 20, k -> true).size());
+		assertEquals(50, store.sample(State.FAILED, 200, k -> false).size());
+		assertEquals(0, store.sample(State.PRIORITY, 20, k -> false).size());
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		List<Key> keys = new ArrayList<>();
+		for(int i=0;i<200;i++)
+			keys.add(Key.createRandomKey());
+
+		// enough rewrites of the same keys to roll over a few segments
+		int rounds = 0;
+		while(store.segments.size() < 4) {
+			for(Key k : keys)
+				store.put(stats(k, State.INITIAL, rounds + 1));
+			rounds++;
+		}
+
+		store.markDumped(keys.get(0));
+		store.remove(keys.get(1));
+
+		long before = store.segments.values().stream().mapToLong(s -> s.size).sum();
+		store.compact();
+		long after = store.segments.values().stream().mapToLong(s -> s.size).sum();
+
+		assertTrue(after < before);
+		assertTrue(store.segments.size() < 4);
+
+		verifyCompacted(keys, rounds);
+		store.close();
+		store = new FetchStatsStore(dir, SEGMENT_SIZE);
+		verifyCompacted(keys, rounds);
+	}
+
+	void verifyCompacted(List<Key> keys, int rounds) throws IOException {
+		assertFalse(store.isEmpty());
+		assertTrue(store.isDumped(keys.get(0)));
+		assertNull(store.get(keys.get(1)));
+		assertEquals(keys.size() - 2, store.count(State.INITIAL));
+		for(Key k : keys.subList(2, keys.size()))
+			assertEquals(rounds, store.get(k).insertCount);
+	}
+
+}
@@ -25,8 +25,9 @@ import org.apache.http.client.ResponseHandler;
 import org.apache.http.entity.ContentType;
 import org.apache.http.util.EntityUtils;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 
 class CommonsHttpResponseHandler implements ResponseHandler<TrackerResponse> {
@@ -69,9 +70,11 @@ class CommonsHttpResponseHandler implements ResponseHandler<TrackerResponse> {
                     charset = defaultHttpCharset;
                 }
 
-                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-                entity.writeTo(bytes);
-                return httpResponseHandler.handleResponse(bytes.toByteArray(), charset);
+                // parse the response directly from the (possibly decompressed) content stream;
+                // closing the stream returns the underlying connection to the pool
+                try (InputStream in = new BufferedInputStream(entity.getContent())) {
+                    return httpResponseHandler.handleResponse(in, charset);
+                }
             } catch (IOException e) {
                 return TrackerResponse.exceptional(new BtException("Failed to read tracker response", e));
             }
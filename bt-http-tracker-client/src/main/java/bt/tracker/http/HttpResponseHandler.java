@@ -55,12 +55,21 @@ class HttpResponseHandler {
     private static final String CRYPTO_FLAGS_KEY = "crypto_flags";
 
     private BEObjectModel trackerResponseModel;
+    private final int maxResponseSize;
 
     /**
      * @since 1.0
      */
     public HttpResponseHandler() {
+        this(HttpTrackerConfig.DEFAULT_MAX_RESPONSE_SIZE);
+    }
 
+    /**
+     * @param maxResponseSize Maximum size of a response, that is read from an input stream
+     * @since 1.8
+     */
+    public HttpResponseHandler(int maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
         try {
             try (InputStream in = HttpResponseHandler.class.getResourceAsStream("/tracker_response.yml")) {
                 trackerResponseModel = new YamlBEObjectModelLoader().load(in);
@@ -72,12 +81,13 @@ class HttpResponseHandler {
 
     /**
      * Read response from an input stream.
+     * Responses, that are larger than the configured limit, are rejected as soon as the limit is exceeded.
      *
      * @param charset Encoding to use for reading a response from the input stream
      * @since 1.0
      */
     public TrackerResponse handleResponse(InputStream in, Charset charset) {
-        try (BEParser parser = new BEParser(in)) {
+        try (BEParser parser = new BEParser(in, maxResponseSize)) {
             return handleResponse(parser, charset);
         } catch (Exception e) {
             return TrackerResponse.exceptional(e);
@@ -77,6 +77,24 @@ public class HttpTracker implements Tracker {
                        EncryptionPolicy encryptionPolicy,
                        InetAddress localAddress,
                        int numberOfPeersToRequestFromTracker) {
+        this(trackerUrl, idService, peerRegistry, encryptionPolicy, buildClient(localAddress),
+                numberOfPeersToRequestFromTracker, HttpTrackerConfig.DEFAULT_MAX_RESPONSE_SIZE);
+    }
+
+    /**
+     * @param trackerUrl Tracker URL
+     * @param idService Identity service
+     * @param httpClient HTTP client to use for sending tracker requests; may be shared with other trackers
+     * @param maxResponseSize Maximum size of a tracker response in bytes
+     * @since 1.8
+     */
+    public HttpTracker(String trackerUrl,
+                       IdentityService idService,
+                       IPeerRegistry peerRegistry,
+                       EncryptionPolicy encryptionPolicy,
+                       HttpClient httpClient,
+                       int numberOfPeersToRequestFromTracker,
+                       int maxResponseSize) {
         try {
             this.baseUri = new URI(trackerUrl);
         } catch (URISyntaxException e) {
@@ -87,8 +105,8 @@ public class HttpTracker implements Tracker {
         this.peerRegistry = peerRegistry;
         this.encryptionPolicy = encryptionPolicy;
         this.numberOfPeersToRequestFromTracker = numberOfPeersToRequestFromTracker;
-        this.httpClient = buildClient(localAddress);
-        this.httpResponseHandler = new CommonsHttpResponseHandler(new bt.tracker.http.HttpResponseHandler());
+        this.httpClient = httpClient;
+        this.httpResponseHandler = new CommonsHttpResponseHandler(new bt.tracker.http.HttpResponseHandler(maxResponseSize));
 
         this.trackerIds = new ConcurrentHashMap<>();
     }
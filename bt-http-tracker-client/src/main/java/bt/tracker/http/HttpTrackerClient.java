@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.tracker.http;
+
+import bt.runtime.Config;
+import bt.service.IRuntimeLifecycleBinder;
+import com.google.inject.Inject;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runtime-wide HTTP client, that is shared by all HTTP tracker instances.
+ *
+ * Maintains a pool of persistent connections with per-tracker limits,
+ * so that subsequent announces to the same tracker reuse an existing (possibly TLS) connection.
+ *
+ * @since 1.8
+ */
+public class HttpTrackerClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpTrackerClient.class);
+
+    private final CloseableHttpClient httpClient;
+
+    @Inject
+    public HttpTrackerClient(IRuntimeLifecycleBinder lifecycleBinder, Config config, HttpTrackerConfig trackerConfig) {
+        this.httpClient = buildClient(config.getAcceptorAddress(), trackerConfig);
+        lifecycleBinder.onShutdown("Shutdown HTTP tracker client", this::shutdown);
+    }
+
+    private static CloseableHttpClient buildClient(InetAddress localAddress, HttpTrackerConfig trackerConfig) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setLocalAddress(localAddress)
+                .setConnectTimeout(toIntMillis(trackerConfig.getConnectTimeout()))
+                .setSocketTimeout(toIntMillis(trackerConfig.getReadTimeout()))
+                .setConnectionRequestTimeout(toIntMillis(trackerConfig.getConnectionRequestTimeout()))
+                .build();
+
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setDefaultRequestConfig(requestConfig)
+                .setMaxConnTotal(trackerConfig.getMaxConnections())
+                .setMaxConnPerRoute(trackerConfig.getMaxConnectionsPerTracker())
+                .setKeepAliveStrategy(createKeepAliveStrategy(trackerConfig.getKeepAliveDuration().toMillis()))
+                .evictExpiredConnections()
+                .evictIdleConnections(trackerConfig.getMaxIdleTime().toMillis(), TimeUnit.MILLISECONDS)
+                .disableCookieManagement()
+                .disableAuthCaching();
+
+        if (!trackerConfig.isCompressionEnabled()) {
+            builder.disableContentCompression();
+        }
+        return builder.build();
+    }
+
+    private static int toIntMillis(Duration duration) {
+        return (int) Math.min(Integer.MAX_VALUE, duration.toMillis());
+    }
+
+    private static ConnectionKeepAliveStrategy createKeepAliveStrategy(long maxKeepAliveMillis) {
+        return (response, context) -> {
+            // negative value means that the server did not specify the keep-alive timeout
+            long keepAliveMillis = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return (keepAliveMillis < 0) ? maxKeepAliveMillis : Math.min(keepAliveMillis, maxKeepAliveMillis);
+        };
+    }
+
+    /**
+     * @return Shared HTTP client
+     * @since 1.8
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    private void shutdown() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close HTTP tracker client", e);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.tracker.http;
+
+import java.time.Duration;
+
+/**
+ * Provides configuration for the HTTP tracker client.
+ *
+ * Setters throw {@link IllegalArgumentException} on non-positive limits and null or negative durations.
+ *
+ * @since 1.8
+ */
+public class HttpTrackerConfig {
+
+    /**
+     * Default maximum size of a tracker response in bytes.
+     *
+     * @since 1.8
+     */
+    public static final int DEFAULT_MAX_RESPONSE_SIZE = 1024 * 1024;
+
+    private int maxConnections;
+    private int maxConnectionsPerTracker;
+    private Duration connectTimeout;
+    private Duration readTimeout;
+    private Duration connectionRequestTimeout;
+    private Duration keepAliveDuration;
+    private Duration maxIdleTime;
+    private boolean compressionEnabled;
+    private int maxResponseSize;
+
+    /**
+     * @since 1.8
+     */
+    public HttpTrackerConfig() {
+        this.maxConnections = 100;
+        this.maxConnectionsPerTracker = 2;
+        this.connectTimeout = Duration.ofSeconds(10);
+        this.readTimeout = Duration.ofSeconds(30);
+        this.connectionRequestTimeout = Duration.ofSeconds(30);
+        this.keepAliveDuration = Duration.ofMinutes(2);
+        this.maxIdleTime = Duration.ofMinutes(1);
+        this.compressionEnabled = true;
+        this.maxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
+    }
+
+    /**
+     * @see #setMaxConnections(int)
+     * @since 1.8
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param maxConnections Maximum number of simultaneously open connections to all HTTP trackers
+     * @since 1.8
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = requirePositive(maxConnections, "max connections");
+    }
+
+    /**
+     * @see #setMaxConnectionsPerTracker(int)
+     * @since 1.8
+     */
+    public int getMaxConnectionsPerTracker() {
+        return maxConnectionsPerTracker;
+    }
+
+    /**
+     * @param maxConnectionsPerTracker Maximum number of simultaneously open connections to a single tracker host
+     * @since 1.8
+     */
+    public void setMaxConnectionsPerTracker(int maxConnectionsPerTracker) {
+        this.maxConnectionsPerTracker = requirePositive(maxConnectionsPerTracker, "max connections per tracker");
+    }
+
+    /**
+     * @see #setConnectTimeout(Duration)
+     * @since 1.8
+     */
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @param connectTimeout Timeout for establishing a connection to a tracker
+     * @since 1.8
+     */
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = requireNonNegative(connectTimeout, "connect timeout");
+    }
+
+    /**
+     * @see #setReadTimeout(Duration)
+     * @since 1.8
+     */
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * @param readTimeout Maximum period of inactivity while waiting for tracker response data
+     * @since 1.8
+     */
+    public void setReadTimeout(Duration readTimeout) {
+        this.readTimeout = requireNonNegative(readTimeout, "read timeout");
+    }
+
+    /**
+     * @see #setConnectionRequestTimeout(Duration)
+     * @since 1.8
+     */
+    public Duration getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /**
+     * @param connectionRequestTimeout Timeout for leasing a connection from the shared connection pool
+     * @since 1.8
+     */
+    public void setConnectionRequestTimeout(Duration connectionRequestTimeout) {
+        this.connectionRequestTimeout = requireNonNegative(connectionRequestTimeout, "connection request timeout");
+    }
+
+    /**
+     * @see #setKeepAliveDuration(Duration)
+     * @since 1.8
+     */
+    public Duration getKeepAliveDuration() {
+        return keepAliveDuration;
+    }
+
+    /**
+     * @param keepAliveDuration Maximum amount of time to keep a persistent connection alive,
+     *                          if the tracker did not specify a shorter period in its Keep-Alive header
+     * @since 1.8
+     */
+    public void setKeepAliveDuration(Duration keepAliveDuration) {
+        this.keepAliveDuration = requireNonNegative(keepAliveDuration, "keep-alive duration");
+    }
+
+    /**
+     * @see #setMaxIdleTime(Duration)
+     * @since 1.8
+     */
+    public Duration getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /**
+     * @param maxIdleTime Pooled connections, that have not been used for this amount of time, will be closed
+     * @since 1.8
+     */
+    public void setMaxIdleTime(Duration maxIdleTime) {
+        this.maxIdleTime = requireNonNegative(maxIdleTime, "max idle time");
+    }
+
+    /**
+     * @see #setCompressionEnabled(boolean)
+     * @since 1.8
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * @param compressionEnabled Indicates whether compressed (gzip, deflate) tracker responses should be requested
+     * @since 1.8
+     */
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * @see #setMaxResponseSize(int)
+     * @since 1.8
+     */
+    public int getMaxResponseSize() {
+        return maxResponseSize;
+    }
+
+    /**
+     * @param maxResponseSize Maximum size of a (decompressed) tracker response in bytes;
+     *                        larger responses are rejected without reading them to the end
+     * @since 1.8
+     */
+    public void setMaxResponseSize(int maxResponseSize) {
+        this.maxResponseSize = requirePositive(maxResponseSize, "max response size");
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Illegal " + name + ": " + value + "; expected a positive number");
+        }
+        return value;
+    }
+
+    private static Duration requireNonNegative(Duration value, String name) {
+        if (value == null || value.isNegative()) {
+            throw new IllegalArgumentException("Illegal " + name + ": " + value + "; expected a non-negative duration");
+        }
+        return value;
+    }
+}
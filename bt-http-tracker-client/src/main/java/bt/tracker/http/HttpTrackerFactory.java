@@ -23,8 +23,7 @@ import bt.service.IdentityService;
 import bt.tracker.Tracker;
 import bt.tracker.TrackerFactory;
 import com.google.inject.Inject;
-
-import java.net.InetAddress;
+import org.apache.http.client.HttpClient;
 
 /**
  * Creates HTTP tracker clients.
@@ -36,21 +35,27 @@ public class HttpTrackerFactory implements TrackerFactory {
     private IdentityService idService;
     private IPeerRegistry peerRegistry;
     private EncryptionPolicy encryptionPolicy;
-    private InetAddress localAddress;
+    private HttpClient httpClient;
     private int numberOfPeersToRequestFromTracker;
+    private int maxResponseSize;
 
     @Inject
-    public HttpTrackerFactory(IdentityService idService, IPeerRegistry peerRegistry, Config config) {
+    public HttpTrackerFactory(IdentityService idService,
+                              IPeerRegistry peerRegistry,
+                              HttpTrackerClient httpTrackerClient,
+                              HttpTrackerConfig trackerConfig,
+                              Config config) {
         this.idService = idService;
         this.peerRegistry = peerRegistry;
         this.encryptionPolicy = config.getEncryptionPolicy();
-        this.localAddress = config.getAcceptorAddress();
+        this.httpClient = httpTrackerClient.getHttpClient();
         this.numberOfPeersToRequestFromTracker = config.getNumberOfPeersToRequestFromTracker();
+        this.maxResponseSize = trackerConfig.getMaxResponseSize();
     }
 
     @Override
     public Tracker getTracker(String trackerUrl) {
-        return new HttpTracker(trackerUrl, idService, peerRegistry, encryptionPolicy, localAddress,
-                numberOfPeersToRequestFromTracker);
+        return new HttpTracker(trackerUrl, idService, peerRegistry, encryptionPolicy, httpClient,
+                numberOfPeersToRequestFromTracker, maxResponseSize);
     }
 }
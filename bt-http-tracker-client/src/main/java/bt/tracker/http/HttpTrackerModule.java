@@ -19,6 +19,7 @@ package bt.tracker.http;
 import bt.module.ServiceModule;
 import com.google.inject.Binder;
 import com.google.inject.Module;
+import com.google.inject.Singleton;
 
 /**
  * Provides support for integration with HTTP trackers.
@@ -27,8 +28,27 @@ import com.google.inject.Module;
  */
 public class HttpTrackerModule implements Module {
 
+    private HttpTrackerConfig config;
+
+    /**
+     * @since 1.0
+     */
+    public HttpTrackerModule() {
+        this.config = new HttpTrackerConfig();
+    }
+
+    /**
+     * @since 1.8
+     */
+    public HttpTrackerModule(HttpTrackerConfig config) {
+        this.config = config;
+    }
+
     @Override
     public void configure(Binder binder) {
+        binder.bind(HttpTrackerConfig.class).toInstance(config);
+        binder.bind(HttpTrackerClient.class).in(Singleton.class);
+
         ServiceModule.extend(binder).addTrackerFactory(HttpTrackerFactory.class, "http", "https");
     }
 }
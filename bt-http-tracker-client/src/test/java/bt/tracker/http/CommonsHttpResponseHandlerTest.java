@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.tracker.http;
+
+import bt.net.Peer;
+import bt.tracker.TrackerResponse;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class CommonsHttpResponseHandlerTest {
+
+    private static HttpResponse response(int status, InputStream content, ContentType contentType) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "Reason");
+        if (content != null) {
+            response.setEntity(new InputStreamEntity(content, contentType));
+        }
+        return response;
+    }
+
+    private static InputStream resource(String name) {
+        return CommonsHttpResponseHandlerTest.class.getResourceAsStream(name);
+    }
+
+    @Test
+    public void testHandleResponse_BodyIsStreamed() {
+        AtomicBoolean closed = new AtomicBoolean();
+        InputStream content = new FilterInputStream(resource("tracker_response_success1")) {
+            @Override
+            public void close() throws IOException {
+                closed.set(true);
+                super.close();
+            }
+        };
+
+        CommonsHttpResponseHandler handler = new CommonsHttpResponseHandler(new HttpResponseHandler());
+        TrackerResponse trackerResponse = handler.handleResponse(response(200, content, null));
+
+        assertTrue(trackerResponse.isSuccess());
+        assertEquals(3591, trackerResponse.getInterval());
+        int peers = 0;
+        for (Peer peer : trackerResponse.getPeers()) {
+            peers++;
+        }
+        assertEquals(9, peers);
+        // closing the content releases the connection back to the pool
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testHandleResponse_Failure() {
+        CommonsHttpResponseHandler handler = new CommonsHttpResponseHandler(new HttpResponseHandler());
+        TrackerResponse trackerResponse = handler.handleResponse(response(200, resource("tracker_response_failure1"), null));
+
+        assertFalse(trackerResponse.isSuccess());
+        assertEquals("Invalid info_hash (0 - )", trackerResponse.getErrorMessage());
+    }
+
+    @Test
+    public void testHandleResponse_Charset() {
+        HttpResponseHandler delegate = mock(HttpResponseHandler.class);
+        CommonsHttpResponseHandler handler = new CommonsHttpResponseHandler(delegate);
+
+        handler.handleResponse(response(200, new ByteArrayInputStream(new byte[1]), null));
+        verify(delegate).handleResponse(any(InputStream.class), eq(Charset.forName("ISO-8859-1")));
+
+        handler.handleResponse(response(200, new ByteArrayInputStream(new byte[1]),
+                ContentType.create("text/plain", "UTF-8")));
+        verify(delegate).handleResponse(any(InputStream.class), eq(Charset.forName("UTF-8")));
+    }
+
+    @Test
+    public void testHandleResponse_ErrorStatus() {
+        HttpResponseHandler delegate = mock(HttpResponseHandler.class);
+        CommonsHttpResponseHandler handler = new CommonsHttpResponseHandler(delegate);
+
+        TrackerResponse trackerResponse = handler.handleResponse(
+                response(404, new ByteArrayInputStream(new byte[1]), null));
+
+        assertFalse(trackerResponse.isSuccess());
+        assertTrue(trackerResponse.getError().isPresent());
+        verify(delegate, never()).handleResponse(any(InputStream.class), any(Charset.class));
+    }
+
+    @Test
+    public void testHandleResponse_NoEntity() {
+        TrackerResponse trackerResponse = new CommonsHttpResponseHandler(new HttpResponseHandler())
+                .handleResponse(response(200, null, null));
+
+        assertNotNull(trackerResponse);
+        assertFalse(trackerResponse.isSuccess());
+        assertTrue(trackerResponse.getError().isPresent());
+    }
+}
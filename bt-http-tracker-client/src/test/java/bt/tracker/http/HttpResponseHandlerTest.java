@@ -22,6 +22,7 @@ import bt.tracker.TrackerResponse;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
@@ -65,6 +66,26 @@ public class HttpResponseHandlerTest {
                 createPeer(null, new byte[]{(byte)176,99,67,43}, 28391));
     }
 
+    @Test
+    public void handleResponse_TooLarge() {
+        // endless string value of the failure reason
+        byte[] prefix = "d14:failure reason999999999:".getBytes(defaultCharset);
+        long[] read = new long[1];
+        InputStream in = new InputStream() {
+            @Override
+            public int read() {
+                long position = read[0]++;
+                return (position < prefix.length) ? prefix[(int) position] : 'x';
+            }
+        };
+
+        TrackerResponse trackerResponse = new HttpResponseHandler(1024).handleResponse(in, defaultCharset);
+
+        assertFalse(trackerResponse.isSuccess());
+        assertNotNull(trackerResponse.getError().orElse(null));
+        assertEquals(1025, read[0]);
+    }
+
     private void assertHasPeers(Iterator<Peer> actual, Peer... expected) {
 
         int expectedLength = expected.length, actualLength = 0;
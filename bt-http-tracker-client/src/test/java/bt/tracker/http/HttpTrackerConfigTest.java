@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.tracker.http;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpTrackerConfigTest {
+
+    @Test
+    public void testDefaults() {
+        HttpTrackerConfig config = new HttpTrackerConfig();
+
+        assertEquals(100, config.getMaxConnections());
+        assertEquals(2, config.getMaxConnectionsPerTracker());
+        assertEquals(Duration.ofSeconds(10), config.getConnectTimeout());
+        assertEquals(Duration.ofSeconds(30), config.getReadTimeout());
+        assertEquals(Duration.ofSeconds(30), config.getConnectionRequestTimeout());
+        assertEquals(Duration.ofMinutes(2), config.getKeepAliveDuration());
+        assertEquals(Duration.ofMinutes(1), config.getMaxIdleTime());
+        assertTrue(config.isCompressionEnabled());
+        assertEquals(HttpTrackerConfig.DEFAULT_MAX_RESPONSE_SIZE, config.getMaxResponseSize());
+    }
+
+    @Test
+    public void testSetters() {
+        HttpTrackerConfig config = new HttpTrackerConfig();
+        config.setMaxConnections(10);
+        config.setMaxConnectionsPerTracker(1);
+        // zero means infinite timeout for the underlying client
+        config.setReadTimeout(Duration.ZERO);
+
+        assertEquals(10, config.getMaxConnections());
+        assertEquals(1, config.getMaxConnectionsPerTracker());
+        assertEquals(Duration.ZERO, config.getReadTimeout());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxConnections_NotPositive() {
+        new HttpTrackerConfig().setMaxConnections(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxConnectionsPerTracker_NotPositive() {
+        new HttpTrackerConfig().setMaxConnectionsPerTracker(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConnectTimeout_Negative() {
+        new HttpTrackerConfig().setConnectTimeout(Duration.ofSeconds(-1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxResponseSize_NotPositive() {
+        new HttpTrackerConfig().setMaxResponseSize(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testKeepAliveDuration_Null() {
+        new HttpTrackerConfig().setKeepAliveDuration(null);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.data;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static bt.TestUtil.assertExceptionWithMessage;
+import static bt.data.ChunkDescriptorTestUtil.mockStorageUnits;
+import static org.junit.Assert.assertEquals;
+
+public class FileOffsetIndexTest {
+
+    @Test
+    public void testIndex_Offsets() {
+        List<StorageUnit> units = mockStorageUnits(100, 1, 50);
+        FileOffsetIndex index = new FileOffsetIndex(units);
+
+        assertEquals(3, index.size());
+        assertEquals(0, index.getOffset(0));
+        assertEquals(100, index.getOffset(1));
+        assertEquals(101, index.getOffset(2));
+        assertEquals(151, index.getTotalSize());
+    }
+
+    @Test
+    public void testIndex_UnitIndex() {
+        List<StorageUnit> units = mockStorageUnits(100, 1, 50);
+        FileOffsetIndex index = new FileOffsetIndex(units);
+
+        assertEquals(0, index.getUnitIndex(0));
+        assertEquals(0, index.getUnitIndex(99));
+        assertEquals(1, index.getUnitIndex(100));
+        assertEquals(2, index.getUnitIndex(101));
+        assertEquals(2, index.getUnitIndex(150));
+    }
+
+    @Test
+    public void testIndex_UnitIndex_EmptyUnitsAreSkipped() {
+        List<StorageUnit> units = mockStorageUnits(10, 0, 0, 10);
+        FileOffsetIndex index = new FileOffsetIndex(units);
+
+        assertEquals(0, index.getUnitIndex(9));
+        assertEquals(3, index.getUnitIndex(10));
+    }
+
+    @Test
+    public void testIndex_UnitIndex_InvalidOffset() {
+        FileOffsetIndex index = new FileOffsetIndex(mockStorageUnits(10));
+        assertExceptionWithMessage(it -> index.getUnitIndex(10), "Invalid offset: 10, expected 0..9");
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.data;
+
+import bt.TestUtil;
+import bt.data.digest.SHA1Digester;
+import bt.metainfo.Torrent;
+import bt.service.CryptoUtil;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static bt.data.ChunkDescriptorTestUtil.mockTorrent;
+import static bt.data.ChunkDescriptorTestUtil.mockTorrentFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LazyChunkDescriptorListTest {
+
+    @Rule
+    public TestFileSystemStorage storage = new TestFileSystemStorage();
+
+    private final ChunkVerifier verifier = new DefaultChunkVerifier(SHA1Digester.rolling(8), 1);
+
+    private DataDescriptor createDataDescriptor(byte[] contents, long chunkSize) {
+        int chunksTotal = (int) (contents.length / chunkSize);
+        byte[][] hashes = new byte[chunksTotal][];
+        for (int i = 0; i < chunksTotal; i++) {
+            hashes[i] = CryptoUtil.getSha1Digest(Arrays.copyOfRange(contents, (int) (i * chunkSize), (int) ((i + 1) * chunkSize)));
+        }
+        Torrent torrent = mockTorrent("lazy.bin", contents.length, chunkSize, hashes,
+                mockTorrentFile(contents.length, "lazy.bin"));
+        return new DataDescriptorFactory(verifier, 4).createDescriptor(torrent, storage);
+    }
+
+    @Test
+    public void testChunks_MaterializedOnDemand() {
+        byte[] contents = TestUtil.sequence(64);
+        DataDescriptor descriptor = createDataDescriptor(contents, 16);
+        LazyChunkDescriptorList chunks = (LazyChunkDescriptorList) descriptor.getChunkDescriptors();
+
+        assertEquals(4, chunks.size());
+        // initial verification must not retain any descriptors
+        assertEquals(0, chunks.getMaterializedCount());
+
+        ChunkDescriptor chunk = chunks.get(1);
+        assertSame(chunk, chunks.get(1));
+        assertEquals(1, chunks.getMaterializedCount());
+        assertEquals(4, chunk.blockCount());
+        assertTrue(chunk.isEmpty());
+    }
+
+    @Test
+    public void testChunks_ReleasedWhenVerified() {
+        byte[] contents = TestUtil.sequence(64);
+        DataDescriptor descriptor = createDataDescriptor(contents, 16);
+        LazyChunkDescriptorList chunks = (LazyChunkDescriptorList) descriptor.getChunkDescriptors();
+
+        ChunkDescriptor chunk = chunks.get(2);
+        chunk.getData().putBytes(Arrays.copyOfRange(contents, 32, 48));
+        assertTrue(chunk.isComplete());
+        assertTrue(verifier.verify(chunk));
+        descriptor.getBitfield().markVerified(2);
+
+        ChunkDescriptor verified = chunks.get(2);
+        assertNotSame(chunk, verified);
+        assertEquals(0, chunks.getMaterializedCount());
+        assertTrue(verified.isComplete());
+        assertFalse(verified.isEmpty());
+        assertEquals(4, verified.blockCount());
+        assertEquals(4, verified.lastBlockSize());
+        assertArrayEquals(Arrays.copyOfRange(contents, 32, 48), verified.getData().getBytes());
+        assertArrayEquals(chunk.getChecksum(), verified.getChecksum());
+    }
+}
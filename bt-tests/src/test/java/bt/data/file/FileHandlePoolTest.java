@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.data.file;
+
+import bt.module.ServiceModule;
+import bt.runtime.BtRuntime;
+import bt.runtime.BtRuntimeBuilder;
+import bt.runtime.Config;
+import bt.service.IRuntimeLifecycleBinder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class FileHandlePoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file1, file2, file3;
+
+    @Before
+    public void setUp() throws Exception {
+        file1 = Files.createFile(folder.getRoot().toPath().resolve("file1"));
+        file2 = Files.createFile(folder.getRoot().toPath().resolve("file2"));
+        file3 = Files.createFile(folder.getRoot().toPath().resolve("file3"));
+    }
+
+    @Test
+    public void testPool_HitsAndMisses() throws Exception {
+        FileHandlePool pool = new FileHandlePool(2);
+
+        FileHandlePool.FileHandle handle = pool.acquire(file1);
+        pool.release(handle);
+        assertSame(handle, pool.acquire(file1));
+        pool.release(handle);
+
+        assertEquals(1, pool.getMissCount());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(0, pool.getEvictionCount());
+        assertEquals(1, pool.getOpenFileCount());
+    }
+
+    @Test
+    public void testPool_LeastRecentlyUsedIsEvicted() throws Exception {
+        FileHandlePool pool = new FileHandlePool(2);
+
+        FileHandlePool.FileHandle handle1 = pool.acquire(file1);
+        pool.release(handle1);
+        FileHandlePool.FileHandle handle2 = pool.acquire(file2);
+        pool.release(handle2);
+        // file1 becomes the most recently used
+        pool.release(pool.acquire(file1));
+
+        FileHandlePool.FileHandle handle3 = pool.acquire(file3);
+        pool.release(handle3);
+
+        assertEquals(1, pool.getEvictionCount());
+        assertEquals(2, pool.getOpenFileCount());
+        assertTrue(handle1.channel().isOpen());
+        assertFalse(handle2.channel().isOpen());
+        assertTrue(handle3.channel().isOpen());
+
+        // evicted file is re-opened on demand
+        FileHandlePool.FileHandle reopened = pool.acquire(file2);
+        assertTrue(reopened.channel().isOpen());
+        pool.release(reopened);
+        assertEquals(4, pool.getMissCount());
+    }
+
+    @Test
+    public void testPool_FileInUseIsNotEvicted() throws Exception {
+        FileHandlePool pool = new FileHandlePool(1);
+
+        FileHandlePool.FileHandle handle1 = pool.acquire(file1);
+        FileHandlePool.FileHandle handle2 = pool.acquire(file2);
+
+        // limit is exceeded, because both files are in use
+        assertEquals(2, pool.getOpenFileCount());
+        assertTrue(handle1.channel().isOpen());
+        assertTrue(handle2.channel().isOpen());
+
+        pool.release(handle1);
+        pool.release(handle2);
+        pool.release(pool.acquire(file3));
+
+        assertEquals(1, pool.getOpenFileCount());
+        assertFalse(handle1.channel().isOpen());
+        assertFalse(handle2.channel().isOpen());
+    }
+
+    @Test
+    public void testPool_CloseFileInUse() throws Exception {
+        FileHandlePool pool = new FileHandlePool(2);
+
+        FileHandlePool.FileHandle handle = pool.acquire(file1);
+        pool.close(file1);
+        assertEquals(0, pool.getOpenFileCount());
+        assertTrue(handle.channel().isOpen());
+
+        pool.release(handle);
+        assertFalse(handle.channel().isOpen());
+    }
+
+    @Test
+    public void testPool_FailedOpenIsNotPooled() throws Exception {
+        FileHandlePool pool = new FileHandlePool(2);
+        Path missing = folder.getRoot().toPath().resolve("missing");
+
+        try {
+            pool.acquire(missing);
+            fail("Expected I/O error");
+        } catch (NoSuchFileException e) {
+            // expected
+        }
+        assertEquals(0, pool.getOpenFileCount());
+
+        // next request tries to open the file again
+        Files.createFile(missing);
+        FileHandlePool.FileHandle handle = pool.acquire(missing);
+        assertTrue(handle.channel().isOpen());
+        pool.release(handle);
+        assertEquals(2, pool.getMissCount());
+        assertEquals(1, pool.getOpenFileCount());
+    }
+
+    @Test
+    public void testPool_CloseAll() throws Exception {
+        FileHandlePool pool = new FileHandlePool(2);
+
+        FileHandlePool.FileHandle handle1 = pool.acquire(file1);
+        pool.release(handle1);
+        FileHandlePool.FileHandle handle2 = pool.acquire(file2);
+        pool.closeAll();
+
+        assertEquals(0, pool.getOpenFileCount());
+        assertFalse(handle1.channel().isOpen());
+        // file in use is closed, when it's released
+        assertTrue(handle2.channel().isOpen());
+        pool.release(handle2);
+        assertFalse(handle2.channel().isOpen());
+    }
+
+    @Test
+    public void testPool_BoundInRuntime() {
+        Config config = new Config();
+        config.setMaxOpenFiles(7);
+        BtRuntime runtime = new BtRuntimeBuilder(config).disableStandardExtensions().build();
+
+        FileHandlePool pool = runtime.service(FileHandlePool.class);
+        assertEquals(7, pool.getMaxOpenFiles());
+        assertSame(pool, runtime.service(FileHandlePool.class));
+    }
+
+    @Test
+    public void testPool_ClosedOnRuntimeShutdown() throws Exception {
+        Config config = new Config();
+        IRuntimeLifecycleBinder lifecycleBinder = mock(IRuntimeLifecycleBinder.class);
+        FileHandlePool pool = new ServiceModule(config).provideFileHandlePool(config, lifecycleBinder);
+        pool.release(pool.acquire(file1));
+
+        ArgumentCaptor<Runnable> shutdownHook = ArgumentCaptor.forClass(Runnable.class);
+        verify(lifecycleBinder).onShutdown(anyString(), shutdownHook.capture());
+        shutdownHook.getValue().run();
+        assertEquals(0, pool.getOpenFileCount());
+    }
+
+    @Test
+    public void testStorage_DefaultPoolIsReplaced() {
+        Path root = folder.getRoot().toPath();
+        FileHandlePool runtimePool = new FileHandlePool(1);
+
+        FileSystemStorage storage = new FileSystemStorage(root);
+        assertNotSame(storage, storage.withDefaultFilePool(runtimePool));
+
+        // explicitly passed pool takes precedence
+        FileSystemStorage explicitStorage = new FileSystemStorage(root, FileAllocationStrategy.NONE, new FileHandlePool(1));
+        assertSame(explicitStorage, explicitStorage.withDefaultFilePool(runtimePool));
+    }
+
+    @Test
+    public void testStorageUnits_ShareLimit() throws Exception {
+        FileHandlePool pool = new FileHandlePool(1);
+        Path root = folder.getRoot().toPath();
+        FileSystemStorageUnit unit1 = new FileSystemStorageUnit(root, "dir/unit1", 4,
+                FileAllocationStrategy.NONE, new HashSet<>(), pool);
+        FileSystemStorageUnit unit2 = new FileSystemStorageUnit(root, "dir/unit2", 4,
+                FileAllocationStrategy.NONE, new HashSet<>(), pool);
+
+        unit1.writeBlock(new byte[]{1, 2, 3, 4}, 0);
+        unit2.writeBlock(new byte[]{5, 6, 7, 8}, 0);
+        assertEquals(1, pool.getOpenFileCount());
+
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, unit1.readBlock(0, 4));
+        assertArrayEquals(new byte[]{5, 6, 7, 8}, unit2.readBlock(0, 4));
+        assertEquals(1, pool.getOpenFileCount());
+        assertEquals(3, pool.getEvictionCount());
+
+        unit1.close();
+        unit2.close();
+        assertEquals(0, pool.getOpenFileCount());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.data.file;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileSystemStorageUnitTest {
+
+    private static final long CAPACITY = 3 * 1024 * 1024 + 17;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void setUp() {
+        root = folder.getRoot().toPath();
+    }
+
+    @Test
+    public void testAllocation_None() throws Exception {
+        FileSystemStorageUnit unit = createUnit("a/b/file", FileAllocationStrategy.NONE, new HashSet<>());
+        unit.writeBlock(new byte[]{1, 2, 3}, 0);
+        unit.close();
+
+        assertEquals(3, unit.size());
+    }
+
+    @Test
+    public void testAllocation_Sparse() throws Exception {
+        testAllocation(FileAllocationStrategy.SPARSE);
+    }
+
+    @Test
+    public void testAllocation_Full() throws Exception {
+        testAllocation(FileAllocationStrategy.FULL);
+    }
+
+    private void testAllocation(FileAllocationStrategy strategy) throws Exception {
+        FileSystemStorageUnit unit = createUnit("a/b/file", strategy, new HashSet<>());
+        unit.writeBlock(new byte[]{1, 2, 3}, 5);
+
+        assertEquals(CAPACITY, unit.size());
+        assertArrayEquals(new byte[]{0, 0, 0, 0, 0, 1, 2, 3, 0}, unit.readBlock(0, 9));
+        assertArrayEquals(new byte[3], unit.readBlock(CAPACITY - 3, 3));
+
+        // existing data must not be overwritten when the file is opened again
+        unit.close();
+        unit = createUnit("a/b/file", strategy, new HashSet<>());
+        unit.writeBlock(new byte[]{4}, 0);
+        assertArrayEquals(new byte[]{4, 0, 0, 0, 0, 1, 2, 3}, unit.readBlock(0, 8));
+        assertEquals(CAPACITY, unit.size());
+        unit.close();
+    }
+
+    @Test
+    public void testCreateDirectories_Shared() throws Exception {
+        Set<Path> createdDirectories = new HashSet<>();
+        FileSystemStorageUnit unit1 = createUnit("a/b/c/file1", FileAllocationStrategy.NONE, createdDirectories);
+        FileSystemStorageUnit unit2 = createUnit("a/b/file2", FileAllocationStrategy.NONE, createdDirectories);
+
+        unit1.writeBlock(new byte[]{1}, 0);
+        assertTrue(createdDirectories.contains(root.resolve("a/b/c")));
+        assertTrue(createdDirectories.contains(root.resolve("a/b")));
+        assertTrue(createdDirectories.contains(root.resolve("a")));
+
+        unit2.writeBlock(new byte[]{2}, 0);
+        assertTrue(Files.exists(root.resolve("a/b/file2")));
+
+        unit1.close();
+        unit2.close();
+    }
+
+    @Test
+    public void testCreateDirectories_RemovedAfterCreation() throws Exception {
+        Set<Path> createdDirectories = new HashSet<>();
+        FileSystemStorageUnit unit1 = createUnit("a/file1", FileAllocationStrategy.NONE, createdDirectories);
+        unit1.writeBlock(new byte[]{1}, 0);
+        unit1.close();
+
+        Files.delete(root.resolve("a/file1"));
+        Files.delete(root.resolve("a"));
+        assertFalse(Files.exists(root.resolve("a")));
+
+        FileSystemStorageUnit unit2 = createUnit("a/file2", FileAllocationStrategy.NONE, createdDirectories);
+        unit2.writeBlock(new byte[]{2}, 0);
+        assertTrue(Files.exists(root.resolve("a/file2")));
+        unit2.close();
+    }
+
+    private FileSystemStorageUnit createUnit(String path, FileAllocationStrategy strategy, Set<Path> createdDirectories) {
+        return new FileSystemStorageUnit(root, path, CAPACITY, strategy, createdDirectories, new FileHandlePool());
+    }
+}
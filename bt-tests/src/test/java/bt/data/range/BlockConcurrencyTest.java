@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.data.range;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlockConcurrencyTest {
+
+    @Test
+    public void testBlockSet_ConcurrentWritesOfDifferentBlocks() throws Exception {
+        int blockSize = 16, blockCount = 1000;
+        BlockRange<ByteRange> range = Ranges.blockRange(new ByteRange(new byte[blockSize * blockCount]), blockSize);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch done = new CountDownLatch(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                long offset = i * blockSize;
+                executor.submit(() -> {
+                    range.getSubrange(offset).putBytes(new byte[blockSize]);
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < blockCount; i++) {
+            assertTrue(range.getBlockSet().isPresent(i));
+        }
+        assertTrue(range.getBlockSet().isComplete());
+    }
+
+    @Test
+    public void testBlockRangeLock_OnlyOverlappingBlocksAreBlocked() throws Exception {
+        int blockSize = 16;
+        RangeLock lock = new BlockRangeLock(blockSize * 4, blockSize);
+        lock.lockWrite(0, blockSize);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch nonOverlapping = new CountDownLatch(1);
+            executor.submit(() -> {
+                lock.lockWrite(blockSize, blockSize * 3);
+                lock.unlockWrite(blockSize, blockSize * 3);
+                nonOverlapping.countDown();
+            });
+            assertTrue(nonOverlapping.await(5, TimeUnit.SECONDS));
+
+            CountDownLatch overlapping = new CountDownLatch(1);
+            executor.submit(() -> {
+                lock.lockRead(blockSize / 2, blockSize);
+                lock.unlockRead(blockSize / 2, blockSize);
+                overlapping.countDown();
+            });
+            assertFalse(overlapping.await(200, TimeUnit.MILLISECONDS));
+
+            lock.unlockWrite(0, blockSize);
+            assertTrue(overlapping.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
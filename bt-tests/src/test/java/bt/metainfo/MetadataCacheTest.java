@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.metainfo;
+
+import bt.runtime.Config;
+import bt.service.CryptoUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MetadataCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("metadata");
+    }
+
+    @Test
+    public void testCache_PutAndGet() {
+        byte[] metadata = metadata("torrent1");
+        TorrentId torrentId = torrentId(metadata);
+
+        MetadataCache cache = createCache(1024);
+        assertFalse(cache.get(torrentId).isPresent());
+
+        cache.put(torrentId, metadata);
+
+        // new instance to make sure that the metadata has been persisted
+        Optional<byte[]> cached = createCache(1024).get(torrentId);
+        assertTrue(cached.isPresent());
+        assertArrayEquals(metadata, cached.get());
+    }
+
+    @Test
+    public void testCache_CorruptedEntryIsRemoved() throws Exception {
+        byte[] metadata = metadata("torrent1");
+        TorrentId torrentId = torrentId(metadata);
+
+        MetadataCache cache = createCache(1024);
+        cache.put(torrentId, metadata);
+
+        Path file = directory.resolve(torrentId.toString() + ".info");
+        assertTrue(Files.exists(file));
+        Files.write(file, metadata("corrupted"));
+
+        assertFalse(cache.get(torrentId).isPresent());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testCache_LeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        byte[] metadata1 = metadata("torrent1"), metadata2 = metadata("torrent2"), metadata3 = metadata("torrent3");
+        TorrentId torrentId1 = torrentId(metadata1), torrentId2 = torrentId(metadata2), torrentId3 = torrentId(metadata3);
+
+        // enough space for two entries
+        MetadataCache cache = createCache(metadata1.length * 2);
+        cache.put(torrentId1, metadata1);
+        cache.put(torrentId2, metadata2);
+        setLastModifiedTime(torrentId1, 1000);
+        setLastModifiedTime(torrentId2, 2000);
+
+        // torrent1 becomes the most recently used entry
+        assertTrue(cache.get(torrentId1).isPresent());
+
+        cache.put(torrentId3, metadata3);
+
+        assertTrue(cache.get(torrentId1).isPresent());
+        assertFalse(cache.get(torrentId2).isPresent());
+        assertTrue(cache.get(torrentId3).isPresent());
+    }
+
+    @Test
+    public void testCache_ExistingEntriesAreLoadedOnStartup() throws Exception {
+        byte[] metadata1 = metadata("torrent1"), metadata2 = metadata("torrent2"), metadata3 = metadata("torrent3");
+        TorrentId torrentId1 = torrentId(metadata1), torrentId2 = torrentId(metadata2), torrentId3 = torrentId(metadata3);
+
+        MetadataCache previous = createCache(metadata1.length * 2);
+        previous.put(torrentId1, metadata1);
+        previous.put(torrentId2, metadata2);
+        // torrent2 has been used less recently in the previous session
+        setLastModifiedTime(torrentId1, 2000);
+        setLastModifiedTime(torrentId2, 1000);
+
+        MetadataCache cache = createCache(metadata1.length * 2);
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(metadata1.length + metadata2.length, cache.getTotalSize());
+
+        cache.put(torrentId3, metadata3);
+
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(metadata1.length + metadata3.length, cache.getTotalSize());
+        assertTrue(cache.get(torrentId1).isPresent());
+        assertFalse(cache.get(torrentId2).isPresent());
+        assertTrue(cache.get(torrentId3).isPresent());
+    }
+
+    @Test
+    public void testCache_ReplacedEntryIsCountedOnce() {
+        byte[] metadata = metadata("torrent1");
+        TorrentId torrentId = torrentId(metadata);
+
+        MetadataCache cache = createCache(1024);
+        cache.put(torrentId, metadata);
+        cache.put(torrentId, metadata);
+
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(metadata.length, cache.getTotalSize());
+    }
+
+    @Test
+    public void testCache_Disabled() {
+        byte[] metadata = metadata("torrent1");
+        TorrentId torrentId = torrentId(metadata);
+
+        MetadataCache cache = new MetadataCache(new Config());
+        cache.put(torrentId, metadata);
+        assertFalse(cache.get(torrentId).isPresent());
+    }
+
+    private MetadataCache createCache(long maxSize) {
+        Config config = new Config();
+        config.setMetadataCacheDirectory(directory);
+        config.setMaxMetadataCacheSize(maxSize);
+        return new MetadataCache(config);
+    }
+
+    private void setLastModifiedTime(TorrentId torrentId, long millis) throws Exception {
+        Files.setLastModifiedTime(directory.resolve(torrentId.toString() + ".info"), FileTime.fromMillis(millis));
+    }
+
+    private static byte[] metadata(String name) {
+        return ("d4:name" + name.length() + ":" + name + "e").getBytes(Charset.forName("UTF-8"));
+    }
+
+    private static TorrentId torrentId(byte[] metadata) {
+        return TorrentId.fromBytes(CryptoUtil.getSha1Digest(metadata));
+    }
+}
@@ -16,6 +16,7 @@
 
 package bt.metainfo;
 
+import bt.BtException;
 import bt.bencoding.BtParseException;
 import bt.tracker.AnnounceKey;
 import org.junit.Before;
@@ -31,6 +32,7 @@ import java.util.Optional;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class MetadataServiceTest {
 
@@ -127,4 +129,23 @@ public class MetadataServiceTest {
         assertNotNull(exception);
         assertArrayEquals(Arrays.copyOfRange(bytes, 0, 30), exception.getScannedContents());
     }
+
+    @Test
+    public void testBuildTorrent_ValidationMessages() {
+
+        // missing piece length
+        String metainfo = "d8:announce15:http://t.co/ann4:infod6:lengthi1e4:name1:a6:pieces0:ee";
+        byte[] bytes = metainfo.getBytes(Charset.forName("ASCII"));
+
+        BtException exception = null;
+        try {
+            metadataService.fromByteArray(bytes);
+        } catch (BtException e) {
+            exception = e;
+        }
+
+        assertNotNull(exception);
+        assertTrue(exception.getMessage(), exception.getMessage().startsWith("Validation failed for torrent metainfo"));
+        assertTrue(exception.getMessage(), exception.getMessage().contains("piece length"));
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.net;
+
+import bt.metainfo.TorrentId;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionAllocatorTest {
+
+    private static TorrentId torrentId(int i) {
+        byte[] bytes = new byte[TorrentId.length()];
+        bytes[0] = (byte) i;
+        return TorrentId.fromBytes(bytes);
+    }
+
+    private static ConnectionDemand demand(boolean seeding, int connectedPeers, int interestedPeers) {
+        return new ConnectionDemand() {
+            @Override
+            public boolean isSeeding() {
+                return seeding;
+            }
+
+            @Override
+            public int getConnectedPeers() {
+                return connectedPeers;
+            }
+
+            @Override
+            public int getInterestedPeers() {
+                return interestedPeers;
+            }
+
+            @Override
+            public List<Peer> getLeastUsefulPeers(int count) {
+                return Collections.emptyList();
+            }
+        };
+    }
+
+    @Test
+    public void testAllocate_LeechingTorrentsShareEqually() {
+        Map<TorrentId, ConnectionDemand> demands = new HashMap<>();
+        demands.put(torrentId(1), demand(false, 0, 0));
+        demands.put(torrentId(2), demand(false, 0, 0));
+
+        Map<TorrentId, Integer> allocations = ConnectionAllocator.allocate(demands, 100, 100);
+        assertEquals(50, (int) allocations.get(torrentId(1)));
+        assertEquals(50, (int) allocations.get(torrentId(2)));
+    }
+
+    @Test
+    public void testAllocate_PerTorrentLimitIsRespected() {
+        Map<TorrentId, ConnectionDemand> demands = new HashMap<>();
+        demands.put(torrentId(1), demand(false, 0, 0));
+
+        Map<TorrentId, Integer> allocations = ConnectionAllocator.allocate(demands, 100, 30);
+        assertEquals(30, (int) allocations.get(torrentId(1)));
+    }
+
+    @Test
+    public void testAllocate_IdleSeedsDoNotHogConnections() {
+        Map<TorrentId, ConnectionDemand> demands = new HashMap<>();
+        demands.put(torrentId(1), demand(false, 10, 0));
+        for (int i = 2; i < 12; i++) {
+            demands.put(torrentId(i), demand(true, 20, 0));
+        }
+
+        Map<TorrentId, Integer> allocations = ConnectionAllocator.allocate(demands, 100, 100);
+        int leechingAllocation = allocations.get(torrentId(1));
+        int total = leechingAllocation;
+        for (int i = 2; i < 12; i++) {
+            int seedingAllocation = allocations.get(torrentId(i));
+            assertTrue(seedingAllocation >= 1 && seedingAllocation <= 4);
+            total += seedingAllocation;
+        }
+        assertTrue(leechingAllocation > 50);
+        assertTrue(total <= 100);
+    }
+
+    @Test
+    public void testAllocate_SeedsWithInterestedPeers() {
+        Map<TorrentId, ConnectionDemand> demands = new HashMap<>();
+        demands.put(torrentId(1), demand(true, 40, 40));
+        demands.put(torrentId(2), demand(true, 40, 1));
+
+        Map<TorrentId, Integer> allocations = ConnectionAllocator.allocate(demands, 60, 100);
+        assertTrue(allocations.get(torrentId(1)) > allocations.get(torrentId(2)));
+        assertTrue(allocations.get(torrentId(1)) + allocations.get(torrentId(2)) <= 60);
+    }
+
+    @Test
+    public void testAllocate_SpareBudgetIsDistributed() {
+        Map<TorrentId, ConnectionDemand> demands = new HashMap<>();
+        demands.put(torrentId(1), demand(true, 0, 0));
+        demands.put(torrentId(2), demand(true, 10, 5));
+
+        // connections are not scarce, so seeds should not be restricted
+        Map<TorrentId, Integer> allocations = ConnectionAllocator.allocate(demands, 100, 40);
+        assertEquals(40, (int) allocations.get(torrentId(1)));
+        assertEquals(40, (int) allocations.get(torrentId(2)));
+    }
+
+    @Test
+    public void testAllocate_MoreTorrentsThanBudget() {
+        Map<TorrentId, ConnectionDemand> demands = new HashMap<>();
+        demands.put(torrentId(1), demand(false, 0, 0));
+        for (int i = 2; i <= 40; i++) {
+            demands.put(torrentId(i), demand(true, 20, 0));
+        }
+
+        Map<TorrentId, Integer> allocations = ConnectionAllocator.allocate(demands, 20, 100);
+        assertEquals(40, allocations.size());
+        // the global budget is never exceeded
+        assertEquals(20, allocations.values().stream().mapToInt(Integer::intValue).sum());
+        // the leeching torrent has the highest weight, the rest is handed out one connection per seed
+        assertEquals(5, (int) allocations.get(torrentId(1)));
+        assertEquals(15, allocations.values().stream().filter(allocation -> allocation == 1).count());
+    }
+}
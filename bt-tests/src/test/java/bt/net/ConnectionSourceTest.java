@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.net;
+
+import bt.metainfo.TorrentId;
+import bt.peer.IPeerScoreboard;
+import bt.runtime.Config;
+import bt.service.IRuntimeLifecycleBinder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConnectionSourceTest {
+
+    private static final TorrentId TORRENT_ID = TorrentId.fromBytes(new byte[TorrentId.length()]);
+
+    // order, in which connection tasks have been executed
+    private List<String> executed;
+    private CountDownLatch firstConnectionBlocked;
+    private CountDownLatch releaseFirstConnection;
+
+    private BlockingQueue<ConnectionRoutine> incoming;
+    private CountDownLatch incomingSubmitted;
+    private int acceptedCount;
+
+    private IPeerScoreboard scoreboard;
+    private ConnectionSource connectionSource;
+    private List<Runnable> startupHooks;
+    private List<Runnable> shutdownHooks;
+
+    @Before
+    public void setUp() {
+        executed = Collections.synchronizedList(new ArrayList<>());
+        firstConnectionBlocked = new CountDownLatch(1);
+        releaseFirstConnection = new CountDownLatch(1);
+        incoming = new LinkedBlockingQueue<>();
+        incomingSubmitted = new CountDownLatch(1);
+
+        IPeerConnectionFactory connectionFactory = mock(IPeerConnectionFactory.class);
+        when(connectionFactory.createOutgoingConnection(any(Peer.class), any(TorrentId.class))).thenAnswer(invocation -> {
+            Peer peer = invocation.getArgumentAt(0, Peer.class);
+            executed.add("outgoing:" + peer.getPort());
+            if (peer.getPort() == 1) {
+                firstConnectionBlocked.countDown();
+                releaseFirstConnection.await();
+            }
+            return ConnectionResult.failure("Test");
+        });
+
+        IPeerConnectionPool connectionPool = mock(IPeerConnectionPool.class);
+        scoreboard = mock(IPeerScoreboard.class);
+
+        // the only connection worker is kept busy, so that the requests are queued
+        Config config = new Config();
+        config.setMaxPendingConnectionRequests(1);
+
+        IRuntimeLifecycleBinder lifecycleBinder = mock(IRuntimeLifecycleBinder.class);
+        connectionSource = new ConnectionSource(Collections.singleton(this::acceptIncoming),
+                connectionFactory, connectionPool, scoreboard, lifecycleBinder, config);
+
+        ArgumentCaptor<Runnable> startupCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(lifecycleBinder, atLeastOnce()).onStartup(anyString(), startupCaptor.capture());
+        startupHooks = startupCaptor.getAllValues();
+        ArgumentCaptor<Runnable> shutdownCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(lifecycleBinder, atLeastOnce()).onShutdown(anyString(), shutdownCaptor.capture());
+        shutdownHooks = shutdownCaptor.getAllValues();
+    }
+
+    @After
+    public void tearDown() {
+        releaseFirstConnection.countDown();
+        shutdownHooks.forEach(Runnable::run);
+    }
+
+    // invoked by the acceptor thread only
+    private ConnectionRoutine acceptIncoming() {
+        if (acceptedCount++ > 0) {
+            // the next connection is accepted only after the previous one has been submitted for processing
+            incomingSubmitted.countDown();
+        }
+        try {
+            return incoming.take();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Acceptor has been shut down", e);
+        }
+    }
+
+    @Test
+    public void testOutgoingConnections_ServedInScoreOrder() throws Exception {
+        startupHooks.forEach(Runnable::run);
+
+        CompletableFuture<ConnectionResult> first = connect(1, 0);
+        assertTrue(firstConnectionBlocked.await(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<ConnectionResult>> queued = Arrays.asList(
+                connect(2, 0.1), connect(3, 0.9), connect(4, 0.5), connect(5, 0.5));
+
+        incoming.add(new ConnectionRoutine() {
+            @Override
+            public SocketAddress getRemoteAddress() {
+                return new InetSocketAddress(InetAddress.getLoopbackAddress(), 100);
+            }
+
+            @Override
+            public ConnectionResult establish() {
+                executed.add("incoming");
+                return ConnectionResult.failure("Test");
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        assertTrue(incomingSubmitted.await(5, TimeUnit.SECONDS));
+
+        releaseFirstConnection.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<ConnectionResult> connection : queued) {
+            connection.get(5, TimeUnit.SECONDS);
+        }
+
+        // incoming connections go first; peers with equal scores are connected to in the order of requests
+        assertEquals(Arrays.asList("outgoing:1", "incoming", "outgoing:3", "outgoing:4", "outgoing:5", "outgoing:2"),
+                executed);
+    }
+
+    private CompletableFuture<ConnectionResult> connect(int port, double score) {
+        Peer peer = new InetPeer(InetAddress.getLoopbackAddress(), port);
+        when(scoreboard.getScore(peer)).thenReturn(score);
+        return connectionSource.getConnectionAsync(peer, TORRENT_ID);
+    }
+}
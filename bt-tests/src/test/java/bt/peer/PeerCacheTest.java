@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.peer;
+
+import bt.net.InetPeer;
+import bt.protocol.crypto.EncryptionPolicy;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PeerCacheTest {
+
+    private static InetSocketAddress address(int i) throws Exception {
+        return new InetSocketAddress(InetAddress.getByAddress(new byte[]{10, (byte) (i >> 16), (byte) (i >> 8), (byte) i}), 6881);
+    }
+
+    @Test
+    public void testCache_StoreAndGet() throws Exception {
+        PeerCache cache = new PeerCache(100);
+        PeerOptions options = PeerOptions.defaultOptions().withEncryptionPolicy(EncryptionPolicy.REQUIRE_ENCRYPTED);
+        cache.store(new InetPeer(address(1), options));
+
+        assertEquals(EncryptionPolicy.REQUIRE_ENCRYPTED,
+                cache.getPeerForAddress(address(1)).getOptions().getEncryptionPolicy());
+        assertEquals(address(1), cache.getPeerForAddress(address(1)).getInetSocketAddress());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCache_DistinguishesIPv6() throws Exception {
+        PeerCache cache = new PeerCache(100);
+        InetSocketAddress ipv6 = new InetSocketAddress(InetAddress.getByName("2001:db8::1"), 6881);
+        InetSocketAddress ipv6OtherPort = new InetSocketAddress(InetAddress.getByName("2001:db8::1"), 6882);
+        cache.store(new InetPeer(ipv6,
+                PeerOptions.defaultOptions().withEncryptionPolicy(EncryptionPolicy.REQUIRE_PLAINTEXT)));
+
+        assertEquals(EncryptionPolicy.REQUIRE_PLAINTEXT, cache.getPeerForAddress(ipv6).getOptions().getEncryptionPolicy());
+        assertEquals(PeerOptions.defaultOptions().getEncryptionPolicy(),
+                cache.getPeerForAddress(ipv6OtherPort).getOptions().getEncryptionPolicy());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCache_Bounded() throws Exception {
+        int maxSize = 1000;
+        PeerCache cache = new PeerCache(maxSize);
+        for (int i = 0; i < maxSize * 10; i++) {
+            cache.store(new InetPeer(address(i)));
+        }
+
+        assertTrue(cache.size() <= maxSize + 16);
+        assertEquals(maxSize * 10, cache.size() + cache.getEvictedCount());
+    }
+}
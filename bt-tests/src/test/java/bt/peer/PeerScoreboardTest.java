@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.peer;
+
+import bt.net.InetPeer;
+import bt.net.Peer;
+import bt.runtime.Config;
+import bt.service.IRuntimeLifecycleBinder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class PeerScoreboardTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Peer peer(int port) throws Exception {
+        return new InetPeer(InetAddress.getByAddress(new byte[]{127, 0, 0, 1}), port);
+    }
+
+    @Test
+    public void testScore_UnknownPeer() throws Exception {
+        PeerScoreboard scoreboard = new PeerScoreboard(mock(IRuntimeLifecycleBinder.class), new Config());
+        assertEquals(0, scoreboard.getScore(peer(1)), 0);
+    }
+
+    @Test
+    public void testScore_SourceType() throws Exception {
+        PeerScoreboard scoreboard = new PeerScoreboard(mock(IRuntimeLifecycleBinder.class), new Config());
+        scoreboard.onPeerDiscovered(peer(1), PeerSourceType.DHT);
+        scoreboard.onPeerDiscovered(peer(2), PeerSourceType.LSD);
+
+        assertTrue(scoreboard.getScore(peer(1)) > 0);
+        assertTrue(scoreboard.getScore(peer(2)) > scoreboard.getScore(peer(1)));
+    }
+
+    @Test
+    public void testScore_ConnectionsAndThroughput() throws Exception {
+        PeerScoreboard scoreboard = new PeerScoreboard(mock(IRuntimeLifecycleBinder.class), new Config());
+        Peer unreachable = peer(1), slow = peer(2), fast = peer(3);
+        scoreboard.onPeerDiscovered(unreachable, PeerSourceType.TRACKER);
+        scoreboard.onPeerDiscovered(slow, PeerSourceType.TRACKER);
+        scoreboard.onPeerDiscovered(fast, PeerSourceType.TRACKER);
+
+        scoreboard.onConnectionFailed(unreachable);
+        scoreboard.onConnectionEstablished(slow, Duration.ofSeconds(5));
+        scoreboard.onConnectionEstablished(fast, Duration.ofMillis(50));
+        scoreboard.onSessionFinished(fast, 10 * 1024 * 1024, 0, Duration.ofSeconds(10));
+
+        assertTrue(scoreboard.getScore(slow) > scoreboard.getScore(unreachable));
+        assertTrue(scoreboard.getScore(fast) > scoreboard.getScore(slow));
+    }
+
+    @Test
+    public void testScores_PersistedBetweenSessions() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("scores");
+        Config config = new Config();
+        config.setPeerScoreboardFile(file);
+
+        IRuntimeLifecycleBinder lifecycleBinder = mock(IRuntimeLifecycleBinder.class);
+        PeerScoreboard scoreboard = new PeerScoreboard(lifecycleBinder, config);
+        scoreboard.onPeerDiscovered(peer(1), PeerSourceType.PEX);
+        scoreboard.onConnectionEstablished(peer(1), Duration.ofMillis(100));
+        double score = scoreboard.getScore(peer(1));
+
+        ArgumentCaptor<Runnable> shutdownHook = ArgumentCaptor.forClass(Runnable.class);
+        verify(lifecycleBinder).onShutdown(anyString(), shutdownHook.capture());
+        shutdownHook.getValue().run();
+
+        lifecycleBinder = mock(IRuntimeLifecycleBinder.class);
+        scoreboard = new PeerScoreboard(lifecycleBinder, config);
+        ArgumentCaptor<Runnable> startupHook = ArgumentCaptor.forClass(Runnable.class);
+        verify(lifecycleBinder).onStartup(anyString(), startupHook.capture());
+        startupHook.getValue().run();
+
+        assertEquals(score, scoreboard.getScore(peer(1)), 0.0001);
+    }
+}
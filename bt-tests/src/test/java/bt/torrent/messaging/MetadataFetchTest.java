@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bt.torrent.messaging;
+
+import bt.net.InetPeer;
+import bt.net.Peer;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MetadataFetchTest {
+
+    private static final int BLOCK_SIZE = 4;
+    private static final long TIMEOUT = 1000;
+
+    private static Peer peer(int port) throws Exception {
+        return new InetPeer(InetAddress.getByAddress(new byte[]{127, 0, 0, 1}), port);
+    }
+
+    private static byte[] block(int blockIndex, int length) {
+        byte[] block = new byte[length];
+        Arrays.fill(block, (byte) blockIndex);
+        return block;
+    }
+
+    @Test
+    public void testFetch_BlocksAreStripedAmongPeers() throws Exception {
+        Peer peer1 = peer(1), peer2 = peer(2);
+        MetadataFetch fetch = new MetadataFetch(BLOCK_SIZE * 4 + 2, BLOCK_SIZE, TIMEOUT);
+        assertEquals(5, fetch.getBlockCount());
+
+        assertEquals(Arrays.asList(0, 1), fetch.nextRequests(peer1, 2, 0));
+        assertEquals(Arrays.asList(2, 3), fetch.nextRequests(peer2, 2, 0));
+        // peer1 has reached the limit of pending requests
+        assertEquals(Collections.emptyList(), fetch.nextRequests(peer1, 2, 0));
+
+        assertTrue(fetch.onBlockReceived(peer1, 0, block(0, BLOCK_SIZE)));
+        assertEquals(Collections.singletonList(4), fetch.nextRequests(peer1, 2, 0));
+
+        // invalid length of the last block
+        assertFalse(fetch.onBlockReceived(peer1, 4, block(4, BLOCK_SIZE)));
+        assertTrue(fetch.onBlockReceived(peer1, 4, block(4, 2)));
+        // duplicate
+        assertFalse(fetch.onBlockReceived(peer2, 0, block(0, BLOCK_SIZE)));
+
+        assertTrue(fetch.onBlockReceived(peer1, 1, block(1, BLOCK_SIZE)));
+        assertTrue(fetch.onBlockReceived(peer2, 2, block(2, BLOCK_SIZE)));
+        assertFalse(fetch.isComplete());
+        assertTrue(fetch.onBlockReceived(peer2, 3, block(3, BLOCK_SIZE)));
+        assertTrue(fetch.isComplete());
+
+        byte[] bytes = fetch.getBytes();
+        assertEquals(BLOCK_SIZE * 4 + 2, bytes.length);
+        assertArrayEquals(block(4, 2), Arrays.copyOfRange(bytes, BLOCK_SIZE * 4, bytes.length));
+    }
+
+    @Test
+    public void testFetch_ExpiredRequestsAreReassigned() throws Exception {
+        Peer peer1 = peer(1), peer2 = peer(2);
+        MetadataFetch fetch = new MetadataFetch(BLOCK_SIZE * 2, BLOCK_SIZE, TIMEOUT);
+
+        assertEquals(Arrays.asList(0, 1), fetch.nextRequests(peer1, 2, 0));
+        assertEquals(Collections.emptyList(), fetch.nextRequests(peer2, 2, TIMEOUT - 1));
+        assertEquals(Arrays.asList(0, 1), fetch.nextRequests(peer2, 2, TIMEOUT));
+    }
+
+    @Test
+    public void testFetch_RejectedRequestsAreReassigned() throws Exception {
+        Peer peer1 = peer(1), peer2 = peer(2);
+        MetadataFetch fetch = new MetadataFetch(BLOCK_SIZE * 2, BLOCK_SIZE, TIMEOUT);
+
+        assertEquals(Arrays.asList(0, 1), fetch.nextRequests(peer1, 2, 0));
+        fetch.onRequestsRejected(peer1);
+        assertEquals(Arrays.asList(0, 1), fetch.nextRequests(peer2, 2, 0));
+    }
+
+    @Test
+    public void testFetch_VerificationFailed_SuspectedBlocksAreDiscarded() throws Exception {
+        Peer peer1 = peer(1), peer2 = peer(2), peer3 = peer(3);
+        MetadataFetch fetch = new MetadataFetch(BLOCK_SIZE * 3, BLOCK_SIZE, TIMEOUT);
+
+        fetch.nextRequests(peer1, 2, 0);
+        fetch.nextRequests(peer2, 1, 0);
+        fetch.onBlockReceived(peer1, 0, block(0, BLOCK_SIZE));
+        fetch.onBlockReceived(peer1, 1, block(1, BLOCK_SIZE));
+        fetch.onBlockReceived(peer2, 2, block(2, BLOCK_SIZE));
+        assertTrue(fetch.isComplete());
+
+        // peer2 has contributed less, so it is suspected first
+        assertEquals(peer2, fetch.onVerificationFailed());
+        assertFalse(fetch.isComplete());
+        assertTrue(fetch.isExcluded(peer2));
+        assertEquals(Collections.emptyList(), fetch.nextRequests(peer2, 3, 0));
+        // blocks from peer1 are kept
+        assertEquals(Collections.singletonList(2), fetch.nextRequests(peer3, 3, 0));
+
+        assertTrue(fetch.onBlockReceived(peer3, 2, block(2, BLOCK_SIZE)));
+        assertTrue(fetch.isComplete());
+        assertEquals(peer2, fetch.onVerificationSucceeded());
+        assertTrue(fetch.isExcluded(peer2));
+        assertFalse(fetch.isExcluded(peer3));
+    }
+
+    @Test
+    public void testFetch_VerificationFailed_InnocentSuspectIsCleared() throws Exception {
+        Peer peer1 = peer(1), peer2 = peer(2);
+        MetadataFetch fetch = new MetadataFetch(BLOCK_SIZE * 3, BLOCK_SIZE, TIMEOUT);
+
+        fetch.onBlockReceived(peer1, 0, block(0, BLOCK_SIZE));
+        fetch.onBlockReceived(peer1, 1, block(1, BLOCK_SIZE));
+        fetch.onBlockReceived(peer2, 2, block(2, BLOCK_SIZE));
+        assertEquals(peer2, fetch.onVerificationFailed());
+
+        // re-fetched from peer1, still invalid: peer1 is the only contributor now
+        fetch.onBlockReceived(peer1, 2, block(2, BLOCK_SIZE));
+        assertEquals(peer1, fetch.onVerificationFailed());
+        assertTrue(fetch.isExcluded(peer1));
+        assertFalse(fetch.isExcluded(peer2));
+        assertFalse(fetch.hasBlocks());
+
+        List<Integer> requests = fetch.nextRequests(peer2, 3, 0);
+        assertEquals(Arrays.asList(0, 1, 2), requests);
+        assertNull(fetch.onVerificationSucceeded());
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.messaging;
+
+import bt.net.InetPeer;
+import bt.net.Peer;
+import bt.protocol.Message;
+import bt.torrent.UploadSlotPool;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class TorrentChokerTest {
+
+    private static final long RECHOKE_MILLIS = TorrentChoker.RECHOKE_INTERVAL.toMillis();
+    // time of the first update, that triggers both rechoke and optimistic unchoke
+    private static final long START_MILLIS = TorrentChoker.OPTIMISTIC_UNCHOKE_INTERVAL.toMillis();
+
+    private static Peer peer(int port) throws Exception {
+        return new InetPeer(InetAddress.getByAddress(new byte[]{127, 0, 0, 1}), port);
+    }
+
+    private static PeerWorker interestedWorker() {
+        ConnectionState connectionState = new ConnectionState();
+        connectionState.setPeerInterested(true);
+        return new PeerWorker() {
+            @Override
+            public ConnectionState getConnectionState() {
+                return connectionState;
+            }
+
+            @Override
+            public void accept(Message message) {
+            }
+
+            @Override
+            public Message get() {
+                return null;
+            }
+        };
+    }
+
+    private static Map<Peer, PeerWorker> interestedWorkers(int count) throws Exception {
+        Map<Peer, PeerWorker> workers = new HashMap<>();
+        for (int i = 1; i <= count; i++) {
+            workers.put(peer(i), interestedWorker());
+        }
+        return workers;
+    }
+
+    @Test
+    public void testUploadSlotsPerTorrent() throws Exception {
+        Map<Peer, PeerWorker> workers = interestedWorkers(10);
+        UploadSlotPool slotPool = new UploadSlotPool(100);
+        TorrentChoker choker = new TorrentChoker(slotPool, 4);
+
+        choker.update(workers, false, START_MILLIS);
+
+        assertEquals(4, choker.getUnchokedPeers().size());
+        assertNotNull(choker.getOptimisticallyUnchokedPeer());
+        assertFalse(choker.getUnchokedPeers().contains(choker.getOptimisticallyUnchokedPeer()));
+        assertEquals(96, slotPool.getAvailableSlots());
+
+        long proposedUnchokes = workers.values().stream()
+                .filter(worker -> !worker.getConnectionState().getShouldChoke().orElse(true))
+                .count();
+        assertEquals(5, proposedUnchokes);
+    }
+
+    @Test
+    public void testGlobalUploadSlots() throws Exception {
+        UploadSlotPool slotPool = new UploadSlotPool(3);
+        TorrentChoker choker1 = new TorrentChoker(slotPool, 2),
+                choker2 = new TorrentChoker(slotPool, 2);
+
+        choker1.update(interestedWorkers(5), false, START_MILLIS);
+        choker2.update(interestedWorkers(5), false, START_MILLIS);
+
+        assertEquals(2, choker1.getUnchokedPeers().size());
+        assertEquals(1, choker2.getUnchokedPeers().size());
+        assertEquals(0, slotPool.getAvailableSlots());
+        // optimistic unchoke is not constrained by the global limit
+        assertNotNull(choker2.getOptimisticallyUnchokedPeer());
+    }
+
+    @Test
+    public void testLeeching_ReciprocateToFastestUploaders() throws Exception {
+        Map<Peer, PeerWorker> workers = interestedWorkers(6);
+        TorrentChoker choker = new TorrentChoker(new UploadSlotPool(100), 2);
+
+        long now = START_MILLIS;
+        choker.update(workers, false, now);
+
+        Peer fast1 = peer(5), fast2 = peer(6);
+        workers.get(fast1).getConnectionState().incrementDownloaded(1000000);
+        workers.get(fast2).getConnectionState().incrementDownloaded(2000000);
+        workers.get(peer(1)).getConnectionState().incrementDownloaded(1000);
+
+        choker.update(workers, false, now + RECHOKE_MILLIS);
+
+        assertEquals(2, choker.getUnchokedPeers().size());
+        assertTrue(choker.getUnchokedPeers().contains(fast1));
+        assertTrue(choker.getUnchokedPeers().contains(fast2));
+    }
+
+    @Test
+    public void testSlotsAreReleased() throws Exception {
+        Map<Peer, PeerWorker> workers = interestedWorkers(2);
+        UploadSlotPool slotPool = new UploadSlotPool(100);
+        TorrentChoker choker = new TorrentChoker(slotPool, 4);
+
+        choker.update(workers, true, START_MILLIS);
+        assertEquals(2, choker.getUnchokedPeers().size());
+        assertEquals(98, slotPool.getAvailableSlots());
+
+        // one peer is not interested anymore, another one disconnects
+        workers.get(peer(1)).getConnectionState().setPeerInterested(false);
+        choker.onPeerRemoved(peer(2));
+        workers.remove(peer(2));
+        choker.update(workers, true, START_MILLIS + 1000);
+
+        assertTrue(choker.getUnchokedPeers().isEmpty());
+        assertEquals(100, slotPool.getAvailableSlots());
+    }
+
+    @Test
+    public void testRejectedRead_SlotIsReleasedAndReproposed() throws Exception {
+        Map<Peer, PeerWorker> workers = interestedWorkers(1);
+        UploadSlotPool slotPool = new UploadSlotPool(1);
+        TorrentChoker choker = new TorrentChoker(slotPool, 1);
+        Peer peer = peer(1);
+        ConnectionState connectionState = workers.get(peer).getConnectionState();
+
+        choker.update(workers, true, START_MILLIS);
+        assertTrue(choker.getUnchokedPeers().contains(peer));
+        Choker.choker().handleConnection(connectionState, message -> {});
+        assertFalse(connectionState.isChoking());
+
+        // storage rejected a read (see PeerRequestConsumer), and the choke has been sent
+        connectionState.setShouldChoke(true);
+        Choker.choker().handleConnection(connectionState, message -> {});
+        assertTrue(connectionState.isChoking());
+
+        choker.update(workers, true, START_MILLIS + 1000);
+
+        // the slot has been released and given out again, the peer is eligible for unchoking
+        assertEquals(0, slotPool.getAvailableSlots());
+        assertTrue(choker.getUnchokedPeers().contains(peer));
+        assertEquals(Optional.of(Boolean.FALSE), connectionState.getShouldChoke());
+    }
+
+    @Test
+    public void testPeerRemovedConcurrently() throws Exception {
+        Peer removed = peer(1);
+        Map<Peer, PeerWorker> workers = new HashMap<Peer, PeerWorker>(interestedWorkers(3)) {
+            @Override
+            public PeerWorker get(Object key) {
+                // peer disconnects after it has been seen by iteration
+                return removed.equals(key) ? null : super.get(key);
+            }
+        };
+        UploadSlotPool slotPool = new UploadSlotPool(100);
+        TorrentChoker choker = new TorrentChoker(slotPool, 4);
+
+        choker.update(workers, false, START_MILLIS);
+        choker.update(workers, false, START_MILLIS + RECHOKE_MILLIS);
+
+        assertEquals(3, choker.getUnchokedPeers().size() + (choker.getOptimisticallyUnchokedPeer() == null ? 0 : 1));
+    }
+}
@@ -55,7 +55,7 @@ public class YourIPMessageHandler implements MessageHandler<YourIP> {
             BEMap message = parser.readMap();
             String address = new String(message.getValue().get(YourIP.addressField()).getContent(), Charset.forName("UTF-8"));
             context.setMessage(new YourIP(address));
-            return message.getContent().length;
+            return message.getContentLength();
         }
     }
 